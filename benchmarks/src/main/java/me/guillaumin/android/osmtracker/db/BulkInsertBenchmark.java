@@ -0,0 +1,104 @@
+package me.guillaumin.android.osmtracker.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insertion of the trackpoints of one track into a new database through
+ * the ContentResolver: one insert() per point, one bulkInsert() or one
+ * applyBatch() of insert operations. The values and the operations are
+ * built before the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+public class BulkInsertBenchmark {
+
+	private static final long START_TIME = 1356998400000L;
+
+	@Param({"insert", "bulkInsert", "applyBatch"})
+	public String method;
+
+	@Param({"100000"})
+	public int points;
+
+	private TrackDatabase db;
+	private Uri uri;
+	private ContentValues[] values;
+	private ArrayList<ContentProviderOperation> operations;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		final DataHelper dataHelper;
+		final long trackId;
+
+		db = new TrackDatabase();
+		trackId = db.newTrack(START_TIME);
+		uri = TrackContentProvider.trackPointsUri(trackId);
+		dataHelper = new DataHelper(db.context);
+		values = new ContentValues[points];
+		for (int i = 0; i < points; i++) {
+			values[i] = dataHelper.getTrackPointValues(trackId, TrackDatabase.fix(START_TIME, i, 1));
+		}
+		operations = new ArrayList<ContentProviderOperation>(points);
+		for (ContentValues v: values) {
+			operations.add(ContentProviderOperation.newInsert(uri).withValues(v).build());
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		db.delete();
+	}
+
+	@Benchmark
+	public void insert(final DbCounters counters) throws OperationApplicationException {
+		final long commits0 = SQLiteDatabase.getCommitCount();
+		final long notifications0 = db.contentResolver.getNotifyCount();
+		final long start = System.nanoTime();
+		final long elapsed;
+
+		if ("insert".equals(method)) {
+			for (ContentValues v: values) {
+				db.contentResolver.insert(uri, v);
+			}
+		}else if ("bulkInsert".equals(method)) {
+			db.contentResolver.bulkInsert(uri, values);
+		}else {
+			db.contentResolver.applyBatch(TrackContentProvider.AUTHORITY, operations);
+		}
+		elapsed = System.nanoTime() - start;
+
+		counters.commits = SQLiteDatabase.getCommitCount() - commits0;
+		counters.notifications = db.contentResolver.getNotifyCount() - notifications0;
+		counters.rows = db.count(uri);
+		if (counters.rows != points) throw new IllegalStateException(counters.rows + " rows written of " + points);
+		counters.usPerRow = elapsed / 1000.0 / points;
+		counters.rowsPerSecond = points * 1e9 / elapsed;
+	}
+
+}
@@ -0,0 +1,30 @@
+package me.guillaumin.android.osmtracker.db;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Logging during an export, last session: mean and max time of a fix
+ * insert, fixes inserted after the next one was due, exports completed,
+ * and size of the write-ahead log before and after the track is stopped.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class ContentionCounters {
+
+	public double meanWriteMs;
+	public double maxWriteMs;
+	public long stalls;
+	public long exports;
+	public double walKb;
+	public double walKbStopped;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		meanWriteMs = maxWriteMs = walKb = walKbStopped = 0;
+		stalls = exports = 0;
+	}
+}
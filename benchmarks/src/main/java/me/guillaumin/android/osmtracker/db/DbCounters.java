@@ -0,0 +1,28 @@
+package me.guillaumin.android.osmtracker.db;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Database writes of the last session: throughput, mean time per written
+ * row, SQLite commits and change notifications sent by the ContentResolver.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class DbCounters {
+
+	public long rows;
+	public double rowsPerSecond;
+	public double usPerRow;
+	public long commits;
+	public long notifications;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		rowsPerSecond = usPerRow = 0;
+		rows = commits = notifications = 0;
+	}
+}
@@ -0,0 +1,141 @@
+package me.guillaumin.android.osmtracker.db;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SESSION_S seconds of logging at rateHz, one insert() per fix, watched
+ * by a trackpoint observer as the track views: reading all the points of
+ * the track on each notification (requery, as
+ * DisplayTrackView did), or only the inserted ones (append). The provider
+ * coalesces the notifications over window ms. The uptime clock is
+ * simulated: it follows the fix times, and the delayed notifications are
+ * run when due, so the score is the database and observer time of the
+ * session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+public class ObserverBenchmark {
+
+	private static final int SESSION_S = 300;
+	private static final long START_TIME = 1356998400000L;
+
+	@Param({"0", "1000"})
+	public long window;
+
+	@Param({"requery", "append"})
+	public String observer;
+
+	@Param({"1", "10"})
+	public int rateHz;
+
+	private TrackDatabase db;
+	private long trackId;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		SystemClock.setUptimeMillis(0);
+		db = new TrackDatabase();
+		db.provider.setNotifyWindow(window);
+		trackId = db.newTrack(START_TIME);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		SystemClock.setUptimeMillis(-1);
+		db.delete();
+	}
+
+	@Benchmark
+	public void session(final ObserverCounters counters) {
+		final int fixes = SESSION_S * rateHz;
+		final Uri uri = TrackContentProvider.trackPointsUri(trackId);
+		final DataHelper dataHelper = new DataHelper(db.context);
+		final TrackObserver o = new TrackObserver(uri, "append".equals(observer), counters);
+
+		db.contentResolver.registerContentObserver(uri, true, o);
+		for (int i = 0; i < fixes; i++) {
+			SystemClock.setUptimeMillis(i * 1000L / rateHz);
+			Handler.runDue();
+			db.addTrackPoint(dataHelper, trackId, TrackDatabase.fix(START_TIME, i, rateHz));
+		}
+		SystemClock.setUptimeMillis(fixes * 1000L / rateHz + window);
+		Handler.runDue();
+		db.contentResolver.unregisterContentObserver(o);
+
+		if (o.points != fixes) throw new IllegalStateException(o.points + " points observed of " + fixes);
+	}
+
+	private final class TrackObserver extends ContentObserver {
+		final Uri uri;
+		final boolean append;
+		final ObserverCounters counters;
+		long lastId = -1;
+		int points;
+
+		TrackObserver(Uri uri, boolean append, ObserverCounters counters) {
+			super(null);
+			this.uri = uri;
+			this.append = append;
+			this.counters = counters;
+		}
+
+		@Override
+		public void onChange(boolean selfChange, Uri changed) {
+			final long changedId = TrackContentProvider.getLastRowId(changed);
+			counters.notifications++;
+			if (append && changedId != -1 && changedId <= lastId) {
+				return;
+			}
+
+			final Cursor c = append
+					? db.contentResolver.query(uri, new String[] {Schema.COL_ID, Schema.COL_LATITUDE, Schema.COL_LONGITUDE},
+							Schema.COL_ID + " > ?", new String[] {Long.toString(lastId)}, Schema.COL_ID + " asc")
+					: db.contentResolver.query(uri, null, null, null, Schema.COL_TIMESTAMP + " asc");
+			try {
+				double sum = 0;
+				if (!append) points = 0;
+				final int id = c.getColumnIndex(Schema.COL_ID);
+				final int lat = c.getColumnIndex(Schema.COL_LATITUDE);
+				final int lon = c.getColumnIndex(Schema.COL_LONGITUDE);
+				while (c.moveToNext()) {
+					sum += c.getDouble(lat) + c.getDouble(lon);
+					lastId = Math.max(lastId, c.getLong(id));
+					points++;
+				}
+				counters.queries++;
+				counters.rowsRead += c.getCount();
+				if (Double.isNaN(sum)) throw new IllegalStateException();
+			} finally {
+				c.close();
+			}
+		}
+	}
+
+}
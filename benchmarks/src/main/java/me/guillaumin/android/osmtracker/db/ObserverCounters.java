@@ -0,0 +1,25 @@
+package me.guillaumin.android.osmtracker.db;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Trackpoint observer of the last session: change notifications received,
+ * queries run and rows read by the observer.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class ObserverCounters {
+
+	public long notifications;
+	public long queries;
+	public long rowsRead;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		notifications = queries = rowsRead = 0;
+	}
+}
@@ -0,0 +1,112 @@
+package me.guillaumin.android.osmtracker.db;
+
+import java.io.File;
+import java.io.IOException;
+
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.location.Location;
+import android.net.Uri;
+
+/**
+ * TrackContentProvider on a new database in a temporary directory,
+ * registered in the ContentResolver of the host Context.
+ */
+public final class TrackDatabase {
+
+	public final File dir;
+	public final Context context;
+	public final ContentResolver contentResolver;
+	final TrackContentProvider provider;
+
+	public TrackDatabase() throws IOException {
+		dir = File.createTempFile("osmtracker-db", "");
+		if (!dir.delete() || !dir.mkdir()) throw new IOException("Can not create " + dir);
+		context = new Context(dir);
+		contentResolver = context.getContentResolver();
+		provider = new TrackContentProvider();
+		contentResolver.addProvider(TrackContentProvider.AUTHORITY, provider);
+	}
+
+	/**
+	 * @return Id of the new active track
+	 */
+	public long newTrack(long startDate) {
+		final ContentValues values = new ContentValues();
+		values.put(Schema.COL_START_DATE, startDate);
+		values.put(Schema.COL_ACTIVE, Schema.VAL_TRACK_ACTIVE);
+		return ContentUris.parseId(contentResolver.insert(TrackContentProvider.CONTENT_URI_TRACK, values));
+	}
+
+	/**
+	 * Adds a point of a track in its own insert(), as the trackpoints were
+	 * written before TrackPointWriter
+	 */
+	public void addTrackPoint(DataHelper dataHelper, long trackId, Location location) {
+		contentResolver.insert(TrackContentProvider.trackPointsUri(trackId),
+				dataHelper.getTrackPointValues(trackId, location));
+	}
+
+	/**
+	 * Adds points fixes of a track logged at rateHz, in one bulkInsert()
+	 */
+	public void addTrackPoints(long trackId, long startTime, int points, int rateHz) {
+		final DataHelper dataHelper = new DataHelper(context);
+		final ContentValues[] values = new ContentValues[points];
+		for (int i = 0; i < points; i++) {
+			values[i] = dataHelper.getTrackPointValues(trackId, fix(startTime, i, rateHz));
+		}
+		contentResolver.bulkInsert(TrackContentProvider.trackPointsUri(trackId), values);
+	}
+
+	/**
+	 * @return New connection to the database of the provider
+	 */
+	SQLiteDatabase open() {
+		return SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath("OSMTracker"), null);
+	}
+
+	int count(Uri uri) {
+		final Cursor c = contentResolver.query(uri, null, null, null, null);
+		try {
+			return c.getCount();
+		}finally {
+			c.close();
+		}
+	}
+
+	/**
+	 * Deletes the directory. The provider has no close(), its connection
+	 * is left to the GC.
+	 */
+	public void delete() {
+		delete(dir);
+	}
+
+	private static void delete(File f) {
+		final File files[] = f.listFiles();
+		if (files != null) {
+			for (File c: files) delete(c);
+		}
+		f.delete();
+	}
+
+	/**
+	 * @return Location of the fix n of a track logged at rateHz, walking north-east
+	 */
+	static Location fix(long startTime, int n, int rateHz) {
+		final Location l = new Location("gps");
+		l.setTime(startTime + n * 1000L / rateHz);
+		l.setLatitude(48.1173 + n * 1e-6);
+		l.setLongitude(11.5167 + n * 1e-6);
+		l.setAltitude(545.4 + (n % 10));
+		l.setAccuracy(5 + (n % 7));
+		return l;
+	}
+}
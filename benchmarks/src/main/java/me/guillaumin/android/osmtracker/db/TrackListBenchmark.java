@@ -0,0 +1,159 @@
+package me.guillaumin.android.osmtracker.db;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import me.guillaumin.android.osmtracker.db.model.Track;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading of the track list with the start and end of each track, as
+ * TrackManager and TrackDetail: the track query of TrackContentProvider,
+ * reading the track summaries (summary), or the former query counting the
+ * points of the tracks joined with the track table, followed by the start
+ * and end queries of each track (join).
+ *
+ * setUp() checks the summaries written by bulkInsert() against the ones
+ * rebuilt from the points, as DatabaseHelper.onUpgrade().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrackListBenchmark {
+
+	private static final long START_TIME = 1356998400000L;
+
+	/* Track query of the version 14 of the database */
+	private static final String JOIN_QUERY = "select " + Schema.TBL_TRACK + "." + Schema.COL_ID + " as " + Schema.COL_ID
+			+ ", " + Schema.TBL_TRACK + "." + Schema.COL_NAME + " as " + Schema.COL_NAME + ", " + Schema.COL_START_DATE
+			+ ", count(" + Schema.TBL_TRACKPOINT + "." + Schema.COL_ID + ") as " + Schema.COL_TRACKPOINT_COUNT
+			+ ", (select count(" + Schema.TBL_WAYPOINT + "." + Schema.COL_TRACK_ID + ") from " + Schema.TBL_WAYPOINT
+			+ " where " + Schema.TBL_WAYPOINT + "." + Schema.COL_TRACK_ID + " = " + Schema.TBL_TRACK + "." + Schema.COL_ID
+			+ ") as " + Schema.COL_WAYPOINT_COUNT
+			+ " from " + Schema.TBL_TRACK + " left join " + Schema.TBL_TRACKPOINT + " on " + Schema.TBL_TRACK + "."
+			+ Schema.COL_ID + " = " + Schema.TBL_TRACKPOINT + "." + Schema.COL_TRACK_ID
+			+ " group by " + Schema.TBL_TRACK + "." + Schema.COL_ID;
+
+	@Param({"join", "summary"})
+	public String query;
+
+	@Param({"20"})
+	public int tracks;
+
+	/** Trackpoints per track */
+	@Param({"1000", "10000"})
+	public int points;
+
+	private TrackDatabase db;
+	private SQLiteDatabase connection;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		db = new TrackDatabase();
+		for (int i = 0; i < tracks; i++) {
+			final long start = START_TIME + i * 24 * 3600 * 1000L;
+			final long trackId = db.newTrack(start);
+			db.addTrackPoints(trackId, start, points, 1);
+		}
+		connection = db.open();
+		checkSummaries();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		connection.close();
+		db.delete();
+	}
+
+	private void checkSummaries() {
+		final String incremental = summaries();
+		for (int i = 0; i < tracks; i++) {
+			TrackSummary.build(connection, i + 1).save(connection);
+		}
+		final String rebuilt = summaries();
+		if (!incremental.equals(rebuilt)) {
+			throw new IllegalStateException("Summaries differ from the points: " + incremental + " / " + rebuilt);
+		}
+	}
+
+	private String summaries() {
+		final StringBuilder sb = new StringBuilder();
+		final Cursor c = db.contentResolver.query(TrackContentProvider.CONTENT_URI_TRACK, null, null, null, null);
+		try {
+			while (c.moveToNext()) {
+				final Track t = Track.build(c.getLong(c.getColumnIndex(Schema.COL_ID)), c, db.contentResolver, false);
+				if (t.getTpCount().intValue() != points) {
+					throw new IllegalStateException("Track: " + t.getTpCount() + " points");
+				}
+				sb.append(t.getTpCount()).append(' ').append(t.getStartDateAsString()).append(' ')
+						.append(t.getEndDateAsString()).append(' ').append(t.getDistance()).append(' ')
+						.append(t.getElevationGain()).append('\n');
+			}
+		} finally {
+			c.close();
+		}
+		return sb.toString();
+	}
+
+	@Benchmark
+	public long trackList() {
+		long sum = 0;
+
+		if ("summary".equals(query)) {
+			final Cursor c = db.contentResolver.query(TrackContentProvider.CONTENT_URI_TRACK, null, null, null,
+					Schema.COL_START_DATE + " asc");
+			try {
+				while (c.moveToNext()) {
+					final Track t = Track.build(c.getLong(c.getColumnIndex(Schema.COL_ID)), c, db.contentResolver, true);
+					sum += t.getTpCount() + t.getStartDateAsString().length() + t.getEndDateAsString().length();
+				}
+			} finally {
+				c.close();
+			}
+		}else {
+			final Cursor c = connection.rawQuery(JOIN_QUERY, null);
+			try {
+				while (c.moveToNext()) {
+					final String trackId = Long.toString(c.getLong(c.getColumnIndex(Schema.COL_ID)));
+					sum += c.getInt(c.getColumnIndex(Schema.COL_TRACKPOINT_COUNT));
+					sum += endPoint(trackId, "asc") + endPoint(trackId, "desc");
+				}
+			} finally {
+				c.close();
+			}
+		}
+		return sum;
+	}
+
+	/* Start and end queries of the version 14 */
+	private long endPoint(String trackId, String order) {
+		final Cursor c = connection.query(Schema.TBL_TRACKPOINT, null, Schema.COL_TRACK_ID + " = ?",
+				new String[] {trackId}, null, null, Schema.COL_ID + " " + order, "1");
+		try {
+			return c.moveToFirst() ? c.getLong(c.getColumnIndex(Schema.COL_TIMESTAMP)) : 0;
+		}finally {
+			c.close();
+		}
+	}
+
+}
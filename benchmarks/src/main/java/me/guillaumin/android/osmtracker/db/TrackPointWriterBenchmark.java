@@ -0,0 +1,106 @@
+package me.guillaumin.android.osmtracker.db;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Trackpoints of SESSION_S seconds of logging at rateHz written to a new
+ * database through the TrackContentProvider: one insert() per fix, or
+ * buffered by TrackPointWriter. Fixes are given back to back with the
+ * location times of the rate, so the age bound of
+ * the writer applies and the session time is the database time. The
+ * uptime clock is simulated and follows the fix times: the delayed change
+ * notifications of the provider are sent when due.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+public class TrackPointWriterBenchmark {
+
+	private static final int SESSION_S = 60;
+	private static final long START_TIME = 1356998400000L;
+
+	@Param({"insert", "batched"})
+	public String writer;
+
+	@Param({"1", "5", "10"})
+	public int rateHz;
+
+	private TrackDatabase db;
+	private long trackId;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		SystemClock.setUptimeMillis(0);
+		db = new TrackDatabase();
+		trackId = db.newTrack(START_TIME);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		SystemClock.setUptimeMillis(-1);
+		db.delete();
+	}
+
+	@Benchmark
+	public void session(final DbCounters counters) {
+		final int fixes = SESSION_S * rateHz;
+		final Uri uri = TrackContentProvider.trackPointsUri(trackId);
+		final long commits0 = SQLiteDatabase.getCommitCount();
+		final long notifications0 = db.contentResolver.getNotifyCount();
+		final long start = System.nanoTime();
+		final long elapsed;
+
+		if ("insert".equals(writer)) {
+			final DataHelper dataHelper = new DataHelper(db.context);
+			for (int i = 0; i < fixes; i++) {
+				SystemClock.setUptimeMillis(i * 1000L / rateHz);
+				Handler.runDue();
+				db.addTrackPoint(dataHelper, trackId, TrackDatabase.fix(START_TIME, i, rateHz));
+			}
+		}else {
+			final Handler handler = new Handler();
+			final TrackPointWriter w = new TrackPointWriter(db.context, handler);
+			for (int i = 0; i < fixes; i++) {
+				SystemClock.setUptimeMillis(i * 1000L / rateHz);
+				Handler.runDue();
+				w.track(trackId, TrackDatabase.fix(START_TIME, i, rateHz));
+			}
+			w.flush();
+			if (handler.getDelayedCount() != 0) throw new IllegalStateException("Age timer left pending");
+		}
+		SystemClock.setUptimeMillis(SESSION_S * 1000L + TrackContentProvider.NOTIFY_WINDOW_MS);
+		Handler.runDue();
+		elapsed = System.nanoTime() - start;
+
+		counters.commits = SQLiteDatabase.getCommitCount() - commits0;
+		counters.notifications = db.contentResolver.getNotifyCount() - notifications0;
+		counters.rows = db.count(uri);
+		if (counters.rows != fixes) throw new IllegalStateException(counters.rows + " rows written of " + fixes);
+		counters.usPerRow = elapsed / 1000.0 / fixes;
+		counters.rowsPerSecond = fixes * 1e9 / elapsed;
+	}
+
+}
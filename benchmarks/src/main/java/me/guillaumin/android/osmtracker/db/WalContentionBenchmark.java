@@ -0,0 +1,151 @@
+package me.guillaumin.android.osmtracker.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import me.guillaumin.android.osmtracker.OSMTracker;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.preference.PreferenceManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SESSION_S seconds of logging at RATE_HZ in real time, one insert() per
+ * fix, while another thread exports a track of EXPORTED_POINTS points
+ * again and again, reading its trackpoints by time
+ * as ExportTrackTask. The database has a rollback journal (delete, API
+ * level < 11) or write-ahead logging (wal), and the synchronous level of
+ * the preferences. The track is stopped at the end of the session, which
+ * checkpoints the log.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+public class WalContentionBenchmark {
+
+	private static final int SESSION_S = 5;
+	private static final int RATE_HZ = 10;
+	private static final int EXPORTED_POINTS = 100000;
+	private static final long START_TIME = 1356998400000L;
+
+	@Param({"delete", "wal"})
+	public String journal;
+
+	@Param({"FULL", "NORMAL"})
+	public String synchronous;
+
+	private TrackDatabase db;
+	private long exportedTrackId;
+	private long trackId;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		Build.VERSION.SDK_INT = "wal".equals(journal) ? Build.VERSION_CODES.JELLY_BEAN : Build.VERSION_CODES.GINGERBREAD;
+		db = new TrackDatabase();
+		PreferenceManager.getDefaultSharedPreferences(db.context).edit()
+				.putString(OSMTracker.Preferences.KEY_DB_SYNCHRONOUS, synchronous).commit();
+		exportedTrackId = db.newTrack(START_TIME);
+		db.addTrackPoints(exportedTrackId, START_TIME, EXPORTED_POINTS, 1);
+		new DataHelper(db.context).stopTracking(exportedTrackId);
+		trackId = db.newTrack(START_TIME + EXPORTED_POINTS * 1000L);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		Build.VERSION.SDK_INT = Build.VERSION_CODES.JELLY_BEAN;
+		db.delete();
+	}
+
+	@Benchmark
+	public void session(final ContentionCounters counters) throws InterruptedException {
+		final int fixes = SESSION_S * RATE_HZ;
+		final long periodNs = TimeUnit.SECONDS.toNanos(1) / RATE_HZ;
+		final DataHelper dataHelper = new DataHelper(db.context);
+		final Exporter exporter = new Exporter(TrackContentProvider.trackPointsUri(exportedTrackId));
+		final File wal = new File(db.context.getDatabasePath("OSMTracker").getPath() + "-wal");
+
+		exporter.start();
+		long totalNs = 0, maxNs = 0;
+		final long start = System.nanoTime();
+		for (int i = 0; i < fixes; i++) {
+			final long due = start + i * periodNs;
+			final long wait = due - System.nanoTime();
+			if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+
+			final long t = System.nanoTime();
+			db.addTrackPoint(dataHelper, trackId, TrackDatabase.fix(START_TIME + EXPORTED_POINTS * 1000L, i, RATE_HZ));
+			final long ns = System.nanoTime() - t;
+			totalNs += ns;
+			maxNs = Math.max(maxNs, ns);
+			if (ns > periodNs) counters.stalls++;
+		}
+		exporter.interrupt();
+		exporter.join();
+		if (exporter.failure != null) throw exporter.failure;
+
+		counters.walKb = wal.length() / 1024.0;
+		dataHelper.stopTracking(trackId);
+		counters.walKbStopped = wal.length() / 1024.0;
+		counters.meanWriteMs = totalNs / 1e6 / fixes;
+		counters.maxWriteMs = maxNs / 1e6;
+		counters.exports = exporter.exports;
+
+		if (db.count(TrackContentProvider.trackPointsUri(trackId)) != fixes) throw new IllegalStateException();
+	}
+
+	/**
+	 * Reads all the trackpoints of a track by time until interrupted
+	 */
+	private final class Exporter extends Thread {
+		final Uri uri;
+		volatile int exports;
+		volatile RuntimeException failure;
+
+		Exporter(Uri uri) {
+			super("export");
+			this.uri = uri;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!isInterrupted()) {
+					final Cursor c = db.contentResolver.query(uri, null, null, null, Schema.COL_TIMESTAMP + " asc");
+					try {
+						double sum = 0;
+						final int lat = c.getColumnIndex(Schema.COL_LATITUDE);
+						final int lon = c.getColumnIndex(Schema.COL_LONGITUDE);
+						while (c.moveToNext()) sum += c.getDouble(lat) + c.getDouble(lon);
+						if (c.getCount() != EXPORTED_POINTS || Double.isNaN(sum)) throw new IllegalStateException();
+					} finally {
+						c.close();
+					}
+					exports++;
+				}
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,40 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+
+/**
+ * Synchronous reader of the bulk IN endpoint, as UsbSerialController
+ * before API 18: one bulkTransfer() at a time into a packet buffer,
+ * copied into the caller's buffer. Baseline of UsbInputStreamBenchmark.
+ */
+final class BulkTransferInputStream extends InputStream {
+
+	private static final int READ_TIMEOUT_MS = 30000;
+
+	private final UsbDeviceConnection connection;
+	private final UsbEndpoint endpoint;
+	private final byte rcvPkt[];
+
+	BulkTransferInputStream(UsbDeviceConnection connection, UsbEndpoint bulkInEndpoint) {
+		this.connection = connection;
+		this.endpoint = bulkInEndpoint;
+		this.rcvPkt = new byte[bulkInEndpoint.getMaxPacketSize()];
+	}
+
+	@Override
+	public int read() throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int count) throws IOException {
+		final int rcvd = connection.bulkTransfer(endpoint, rcvPkt, Math.min(count, rcvPkt.length), READ_TIMEOUT_MS);
+		if (rcvd < 0) throw new IOException("bulkTransfer() error");
+		System.arraycopy(rcvPkt, 0, buffer, offset, rcvd);
+		return rcvd;
+	}
+}
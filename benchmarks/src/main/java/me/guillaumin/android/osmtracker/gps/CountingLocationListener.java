@@ -0,0 +1,30 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Bundle;
+
+/**
+ * Location listener counting received fixes
+ */
+class CountingLocationListener implements LocationListener {
+
+	long fixes;
+
+	@Override
+	public void onLocationChanged(Location location) {
+		fixes += 1;
+	}
+
+	@Override
+	public void onStatusChanged(String provider, int status, Bundle extras) {
+	}
+
+	@Override
+	public void onProviderEnabled(String provider) {
+	}
+
+	@Override
+	public void onProviderDisabled(String provider) {
+	}
+}
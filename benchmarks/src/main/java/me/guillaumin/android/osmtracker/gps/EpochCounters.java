@@ -0,0 +1,34 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * NmeaEpochStats of the last replay: how the NMEA epochs were closed and
+ * the mean fix latency, scaled to the real time.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class EpochCounters {
+
+	public long closedOnSentence;
+	public long closedByTimer;
+	public long closedByNextEpoch;
+	public double latencyMs;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		closedOnSentence = closedByTimer = closedByNextEpoch = 0;
+		latencyMs = 0;
+	}
+
+	void set(NmeaEpochStats stats, float speed) {
+		closedOnSentence = stats.getClosedOnSentence();
+		closedByTimer = stats.getClosedByTimer();
+		closedByNextEpoch = stats.getClosedByNextEpoch();
+		latencyMs = stats.getMeanLatency() * speed;
+	}
+}
@@ -0,0 +1,22 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Number of fixes delivered to location listeners, reported by JMH as fixes/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class FixCounters {
+
+	public long fixes;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		fixes = 0;
+	}
+}
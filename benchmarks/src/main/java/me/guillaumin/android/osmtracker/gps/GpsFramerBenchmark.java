@@ -0,0 +1,100 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GpsInputReader framers on already split streams.
+ * One operation is one pass over all frames of the input.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GpsFramerBenchmark {
+
+	@Param({"nmea:115200", "sirf:115200", "ubx:115200"})
+	public String input;
+
+	private byte[] data;
+	private int[] frames;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		data = GpsStreams.load(input);
+		frames = GpsStreams.split(data);
+	}
+
+	@Benchmark
+	public int looksLikeNmea(StreamCounters counters) {
+		int res = 0;
+		for (int i = 0; i < frames.length; i += 2) {
+			final int offset = frames[i];
+			if (GpsStreams.isNmea(data, offset)) {
+				res += GpsInputReader.looksLikeNmea(data, offset, data.length);
+				counters.sentences += 1;
+				counters.bytes += frames[i+1];
+			}
+		}
+		return res;
+	}
+
+	@Benchmark
+	public int looksLikeSirf(StreamCounters counters) {
+		int res = 0;
+		for (int i = 0; i < frames.length; i += 2) {
+			final int offset = frames[i];
+			if (GpsStreams.isSirf(data, offset)) {
+				res += GpsInputReader.looksLikeSirf(data, offset, data.length);
+				counters.sentences += 1;
+				counters.bytes += frames[i+1];
+			}
+		}
+		return res;
+	}
+
+	@Benchmark
+	public int sirfCsum(StreamCounters counters) {
+		int res = 0;
+		for (int i = 0; i < frames.length; i += 2) {
+			final int offset = frames[i];
+			if (GpsStreams.isSirf(data, offset)) {
+				/* Payload without start sequence, length, checksum and end sequence */
+				res += GpsInputReader.sirfCsum(data, offset + 4, frames[i+1] - 8);
+				counters.sentences += 1;
+				counters.bytes += frames[i+1];
+			}
+		}
+		return res;
+	}
+
+	@Benchmark
+	public int looksLikeUbx(StreamCounters counters) {
+		int res = 0;
+		for (int i = 0; i < frames.length; i += 2) {
+			final int offset = frames[i];
+			if (GpsStreams.isUbx(data, offset)) {
+				res += GpsInputReader.looksLikeUbx(data, offset, data.length);
+				counters.sentences += 1;
+				counters.bytes += frames[i+1];
+			}
+		}
+		return res;
+	}
+
+}
@@ -0,0 +1,87 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * GpsInputReader.loop() over a whole stream: reading, framing and
+ * ReceiverInternalState parsing. One operation is one pass over the input.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GpsInputReaderBenchmark {
+
+	@Param({"nmea:4800", "nmea:9600", "nmea:38400", "nmea:115200", "gnss:115200", "sirf:115200", "ubx:115200"})
+	public String input;
+
+	private byte[] data;
+
+	private ReceiverInternalState internalState;
+
+	private final CountingLocationListener listener = new CountingLocationListener();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		data = GpsStreams.load(input);
+		internalState = new ReceiverInternalState("benchmark");
+		internalState.requestLocationUpdates(0, 0, listener);
+	}
+
+	@Benchmark
+	public void loop(final StreamCounters counters, final FixCounters fixCounters,
+			final Blackhole bh) throws IOException {
+		final InputStream in = new GpsStreams.FullReadInputStream(data, data.length);
+		final GpsInputReader reader = new GpsInputReader(in) {
+
+			@Override
+			protected void onRawDataReceived(byte[] buf, int offset, int length) {
+				counters.bytes += length;
+			}
+
+			@Override
+			protected void onNmeaReceived(byte[] buf, int offset, int length) {
+				counters.sentences += 1;
+				bh.consume(internalState.putNmeaMessage(buf, offset, length));
+			}
+
+			@Override
+			protected void onSirfReceived(byte[] buf, int offset, int length) {
+				counters.sentences += 1;
+				bh.consume(internalState.putSirfMessage(buf, offset, length));
+			}
+
+			@Override
+			protected void onUbxReceived(byte[] buf, int offset, int length) {
+				counters.sentences += 1;
+				bh.consume(internalState.putUbxMessage(buf, offset, length));
+			}
+
+			@Override
+			protected void onBufferFlushed() {
+			}
+		};
+		final long fixes = listener.fixes;
+		reader.loop();
+		fixCounters.fixes += listener.fixes - fixes;
+	}
+
+}
@@ -0,0 +1,128 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency from the arrival of the last byte of a message on the link to
+ * onNmeaReceived() / onSirfReceived() / onUbxReceived(). The reader callbacks are the same as
+ * in the UsbReceiver and BluetoothReceiver InputReader classes.
+ *
+ * One operation: the simulated device sends one message in a single
+ * transfer and waits until the reader has parsed it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GpsInputReaderLatencyBenchmark {
+
+	@Param({"nmea:4800", "sirf:115200", "ubx:115200"})
+	public String input;
+
+	private byte[] data;
+	private int[] frames;
+	private int frame;
+
+	private SerialLinkInputStream link;
+	private Thread readerThread;
+
+	private volatile long received;
+	private long sent;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		final ReceiverInternalState internalState;
+		final GpsInputReader reader;
+
+		data = GpsStreams.load(input);
+		frames = GpsStreams.split(data);
+		frame = 0;
+		received = sent = 0;
+
+		internalState = new ReceiverInternalState("benchmark");
+		internalState.requestLocationUpdates(0, 0, new CountingLocationListener());
+
+		link = new SerialLinkInputStream(64 * 1024);
+		reader = new GpsInputReader(link) {
+			@Override
+			protected void onRawDataReceived(byte[] buf, int offset, int length) {
+			}
+
+			@Override
+			protected void onNmeaReceived(byte[] buf, int offset, int length) {
+				internalState.putNmeaMessage(buf, offset, length);
+				received += 1;
+			}
+
+			@Override
+			protected void onSirfReceived(byte[] buf, int offset, int length) {
+				internalState.putSirfMessage(buf, offset, length);
+				received += 1;
+			}
+
+			@Override
+			protected void onUbxReceived(byte[] buf, int offset, int length) {
+				internalState.putUbxMessage(buf, offset, length);
+				received += 1;
+			}
+
+			@Override
+			protected void onBufferFlushed() {
+			}
+		};
+
+		readerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					reader.loop();
+				} catch (IOException e) {
+					/* Link closed */
+				}
+			}
+		}, "GpsInputReaderLatency");
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		link.close();
+		readerThread.interrupt();
+		readerThread.join(1000);
+	}
+
+	@Benchmark
+	public long messageLatency() {
+		final int offset = frames[2*frame];
+		final int length = frames[2*frame+1];
+
+		frame += 1;
+		if (2*frame == frames.length) frame = 0;
+
+		link.send(data, offset, length);
+		sent += 1;
+		while (received != sent) {
+			Thread.yield();
+		}
+		return sent;
+	}
+
+}
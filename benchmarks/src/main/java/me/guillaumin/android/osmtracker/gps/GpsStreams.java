@@ -0,0 +1,562 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Benchmark inputs: recorded .raw logs written by GPSLogger.RawDataLogger
+ * and synthetic receiver output.
+ *
+ * Inputs are selected with a single string:
+ * <ul>
+ * <li><code>nmea:&lt;baudrate&gt;</code> - synthetic NMEA stream. The update rate
+ * (1-10 Hz) is the highest one that fits the bandwidth of the serial link;</li>
+ * <li><code>gnss:&lt;baudrate&gt;</code> - synthetic NMEA 4.10 stream of a multi-GNSS
+ * receiver: GN talker, GSA per constellation, GSV with 42 satellites of GPS,
+ * GLONASS, Galileo and BeiDou;</li>
+ * <li><code>rmc:&lt;baudrate&gt;</code> - synthetic NMEA stream without GGA sentences:
+ * GSA, RMC every epoch, GSV once per second;</li>
+ * <li><code>sirf:&lt;baudrate&gt;</code> - synthetic SiRF binary stream (MID 41 + MID 4);</li>
+ * <li><code>raw:&lt;path&gt;</code> - recorded .raw log.</li>
+ * </ul>
+ */
+final class GpsStreams {
+
+	/** Duration of the synthetic streams */
+	static final int SYNTHETIC_DURATION_S = 600;
+
+	private static final int[] UPDATE_RATES_HZ = {10, 5, 4, 2, 1};
+
+	/** Number of bits per byte on a 8N1 serial line */
+	private static final int BITS_PER_BYTE = 10;
+
+	private GpsStreams() {
+	}
+
+	/* Flavors of the synthetic NMEA stream */
+	static final int NMEA_GPS = 0;
+	static final int NMEA_MULTI_GNSS = 1;
+	static final int NMEA_NO_GGA = 2;
+
+	static byte[] load(String input) throws IOException {
+		return load(input, SYNTHETIC_DURATION_S);
+	}
+
+	/**
+	 * @param durationS Duration of the synthetic streams
+	 */
+	static byte[] load(String input, int durationS) throws IOException {
+		final int sep = input.indexOf(':');
+		if (sep < 0) throw new IllegalArgumentException("Wrong input: " + input);
+		final String type = input.substring(0, sep);
+		final String arg = input.substring(sep+1);
+
+		if ("nmea".equals(type)) {
+			return syntheticNmea(Integer.parseInt(arg), durationS, NMEA_GPS);
+		}else if ("gnss".equals(type)) {
+			return syntheticNmea(Integer.parseInt(arg), durationS, NMEA_MULTI_GNSS);
+		}else if ("rmc".equals(type)) {
+			return syntheticNmea(Integer.parseInt(arg), durationS, NMEA_NO_GGA);
+		}else if ("sirf".equals(type)) {
+			return syntheticSirf(Integer.parseInt(arg), durationS);
+		}else if ("ubx".equals(type)) {
+			return syntheticUbx(Integer.parseInt(arg), durationS);
+		}else if ("raw".equals(type)) {
+			return Files.readAllBytes(Paths.get(arg));
+		}
+		throw new IllegalArgumentException("Wrong input type: " + input);
+	}
+
+	/**
+	 * Splits the stream into NMEA, SiRF and UBX frames with the GpsInputReader framers.
+	 * @return frames[2*i] - offset of frame i, frames[2*i+1] - length of frame i
+	 */
+	static int[] split(final byte[] data) {
+		int[] frames = new int[1024];
+		int cnt = 0;
+		int p = 0;
+
+		while (p < data.length) {
+			int size = GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG;
+			if (data[p] == '$') {
+				size = GpsInputReader.looksLikeNmea(data, p, data.length);
+			}else if ((data[p] & 0xff) == 0xa0) {
+				size = GpsInputReader.looksLikeSirf(data, p, data.length);
+			}else if ((data[p] & 0xff) == 0xb5) {
+				size = GpsInputReader.looksLikeUbx(data, p, data.length);
+			}
+			if (size > 0) {
+				if (2*cnt+2 > frames.length) frames = Arrays.copyOf(frames, 2*frames.length);
+				frames[2*cnt] = p;
+				frames[2*cnt+1] = size;
+				cnt += 1;
+				p += size;
+			}else {
+				p += 1;
+			}
+		}
+
+		return Arrays.copyOf(frames, 2*cnt);
+	}
+
+	static boolean isNmea(final byte[] data, int offset) {
+		return data[offset] == '$';
+	}
+
+	static boolean isSirf(final byte[] data, int offset) {
+		return (data[offset] & 0xff) == 0xa0;
+	}
+
+	static boolean isUbx(final byte[] data, int offset) {
+		return (data[offset] & 0xff) == 0xb5;
+	}
+
+	/**
+	 * @return update rate of the synthetic stream for the given baudrate
+	 */
+	static int updateRate(int baudrate, int epochBytes, int secondBytes) {
+		final int budget = baudrate / BITS_PER_BYTE;
+		for (int hz: UPDATE_RATES_HZ) {
+			if (hz * epochBytes + secondBytes <= budget)
+				return hz;
+		}
+		return 1;
+	}
+
+	/**
+	 * Synthetic NMEA output of a moving receiver: GGA, GSA, RMC every epoch,
+	 * GSV with 12 satellites once per second.
+	 * @param flavor NMEA_GPS, NMEA_MULTI_GNSS or NMEA_NO_GGA
+	 */
+	static byte[] syntheticNmea(int baudrate, int durationS, int flavor) {
+		final Track track = new Track();
+		final StringBuilder sb = new StringBuilder(256);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(baudrate / BITS_PER_BYTE * durationS);
+		final int hz;
+
+		/* Estimate sizes of the epoch and of the GSV sequence */
+		appendEpoch(sb, track, 0, flavor);
+		final int epochBytes = sb.length();
+		sb.setLength(0);
+		appendGsv(sb, 0, flavor == NMEA_MULTI_GNSS);
+		final int secondBytes = sb.length();
+
+		hz = updateRate(baudrate, epochBytes, secondBytes);
+
+		for (int s = 0; s < durationS; ++s) {
+			for (int e = 0; e < hz; ++e) {
+				final int ms = s * 1000 + e * (1000 / hz);
+				sb.setLength(0);
+				track.move(ms);
+				appendEpoch(sb, track, ms, flavor);
+				if (e == 0) appendGsv(sb, s, flavor == NMEA_MULTI_GNSS);
+				write(out, sb);
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	private static void write(ByteArrayOutputStream out, CharSequence s) {
+		try {
+			out.write(s.toString().getBytes(GpsInputReader.NMEA_CHARSET));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void appendEpoch(StringBuilder sb, Track t, int ms, int flavor) {
+		final String time = nmeaTime(ms);
+		final String lat = nmeaDegrees(Math.abs(t.lat), 2) + (t.lat < 0 ? ",S" : ",N");
+		final String lon = nmeaDegrees(Math.abs(t.lon), 3) + (t.lon < 0 ? ",W" : ",E");
+
+		if (flavor == NMEA_NO_GGA) {
+			appendSentence(sb, "GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,1.3,2.1");
+			appendSentence(sb, String.format(Locale.US, "GPRMC,%s,A,%s,%s,%05.1f,%05.1f,230394,003.1,W",
+					time, lat, lon, t.speedKnots, t.bearing));
+		}else if (flavor == NMEA_GPS) {
+			appendSentence(sb, String.format(Locale.US, "GPGGA,%s,%s,%s,1,08,0.9,%.1f,M,46.9,M,,",
+					time, lat, lon, t.alt));
+			appendSentence(sb, "GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,1.3,2.1");
+			appendSentence(sb, String.format(Locale.US, "GPRMC,%s,A,%s,%s,%05.1f,%05.1f,230394,003.1,W",
+					time, lat, lon, t.speedKnots, t.bearing));
+		}else {
+			appendSentence(sb, String.format(Locale.US, "GNGGA,%s,%s,%s,1,24,0.6,%.1f,M,46.9,M,,",
+					time, lat, lon, t.alt));
+			appendSentence(sb, "GNGSA,A,3,01,02,04,05,09,12,17,18,,,,,1.2,0.6,1.0,1");
+			appendSentence(sb, "GNGSA,A,3,65,66,72,73,80,81,,,,,,,1.2,0.6,1.0,2");
+			appendSentence(sb, "GNGSA,A,3,02,07,11,19,26,,,,,,,,1.2,0.6,1.0,3");
+			appendSentence(sb, "GNGSA,A,3,06,09,14,16,,,,,,,,,1.2,0.6,1.0,4");
+			appendSentence(sb, String.format(Locale.US, "GNRMC,%s,A,%s,%s,%05.1f,%05.1f,230394,003.1,W,A,V",
+					time, lat, lon, t.speedKnots, t.bearing));
+		}
+	}
+
+	private static final int[] GSV_GP = {1, 2, 4, 5, 9, 12, 17, 18, 24, 25, 26, 29};
+	private static final int[] GSV_GL = {65, 66, 72, 73, 74, 80, 81, 82, 87, 88};
+	private static final int[] GSV_GA = {2, 7, 8, 11, 12, 19, 24, 25, 26, 33};
+	private static final int[] GSV_GB = {6, 9, 14, 16, 21, 22, 26, 29, 35, 39};
+
+	private static void appendGsv(StringBuilder sb, int s, boolean multiGnss) {
+		if (!multiGnss) {
+			appendGsv(sb, s);
+		}else {
+			appendGsv(sb, "GP", GSV_GP, s);
+			appendGsv(sb, "GL", GSV_GL, s);
+			appendGsv(sb, "GA", GSV_GA, s);
+			appendGsv(sb, "GB", GSV_GB, s);
+		}
+	}
+
+	/**
+	 * NMEA 4.10 GSV sequence with signal ID 1
+	 */
+	private static void appendGsv(StringBuilder sb, String talker, int[] prns, int s) {
+		final int parts = (prns.length + 3) / 4;
+		final StringBuilder body = new StringBuilder(80);
+
+		for (int part = 0; part < parts; ++part) {
+			body.setLength(0);
+			body.append(String.format(Locale.US, "%sGSV,%d,%d,%02d", talker, parts, part+1, prns.length));
+			for (int i = part * 4; i < Math.min(prns.length, part * 4 + 4); ++i) {
+				body.append(String.format(Locale.US, ",%02d,%02d,%03d,%02d",
+						prns[i], 10 + (i * 7) % 80, (i * 37) % 360, 25 + (s + i) % 25));
+			}
+			body.append(",1");
+			appendSentence(sb, body.toString());
+		}
+	}
+
+	private static void appendGsv(StringBuilder sb, int s) {
+		final int snr = 30 + s % 20;
+		appendSentence(sb, String.format(Locale.US,
+				"GPGSV,3,1,12,01,40,083,%d,02,17,308,%d,04,07,344,%d,05,22,228,%d", snr, snr+1, snr+2, snr+3));
+		appendSentence(sb, String.format(Locale.US,
+				"GPGSV,3,2,12,09,40,083,%d,12,17,308,%d,17,07,344,,18,22,228,%d", snr, snr+1, snr+3));
+		appendSentence(sb, String.format(Locale.US,
+				"GPGSV,3,3,12,24,40,083,%d,25,17,308,%d,26,07,344,%d,29,22,228,%d", snr, snr+1, snr+2, snr+3));
+	}
+
+	private static void appendSentence(StringBuilder sb, String body) {
+		int csum = 0;
+		for (int i = 0; i < body.length(); ++i) csum ^= body.charAt(i);
+		sb.append('$').append(body).append('*')
+			.append(String.format("%02X", csum)).append("\r\n");
+	}
+
+	private static String nmeaTime(int ms) {
+		final int s = 12 * 3600 + ms / 1000;
+		return String.format(Locale.US, "%02d%02d%02d.%02d",
+				(s / 3600) % 24, (s / 60) % 60, s % 60, (ms % 1000) / 10);
+	}
+
+	private static String nmeaDegrees(double deg, int degDigits) {
+		final int d = (int)deg;
+		final double min = (deg - d) * 60.0;
+		return String.format(Locale.US, "%0" + degDigits + "d%07.4f", d, min);
+	}
+
+	/**
+	 * Synthetic SiRF binary output: MID 41 every epoch, MID 4 once per second
+	 */
+	static byte[] syntheticSirf(int baudrate, int durationS) {
+		final Track track = new Track();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(baudrate / BITS_PER_BYTE * durationS);
+		final byte geodetic[] = new byte[91];
+		final byte tracker[] = new byte[8 + 15 * 12];
+		final int hz = updateRate(baudrate, geodetic.length + 8, tracker.length + 8);
+
+		for (int s = 0; s < durationS; ++s) {
+			for (int e = 0; e < hz; ++e) {
+				final int ms = s * 1000 + e * (1000 / hz);
+				track.move(ms);
+				fillGeodeticNavData(geodetic, track, ms);
+				writeSirf(out, geodetic);
+				if (e == 0) {
+					fillTrackerData(tracker, s);
+					writeSirf(out, tracker);
+				}
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * SiRF binary output of one epoch: MID 41, MID 4 if withTracker
+	 */
+	static byte[] sirfEpoch(int ms, boolean withTracker) {
+		return sirfEpoch(ms, withTracker, true);
+	}
+
+	/**
+	 * @param hasFix false to mark MID 41 navigation invalid
+	 */
+	static byte[] sirfEpoch(int ms, boolean withTracker, boolean hasFix) {
+		final Track track = new Track();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(300);
+		final byte geodetic[] = new byte[91];
+
+		track.move(ms);
+		fillGeodeticNavData(geodetic, track, ms);
+		if (!hasFix) put2(geodetic, 1, 1);
+		writeSirf(out, geodetic);
+		if (withTracker) {
+			final byte tracker[] = new byte[8 + 15 * 12];
+			fillTrackerData(tracker, ms / 1000);
+			writeSirf(out, tracker);
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeSirf(ByteArrayOutputStream out, byte payload[]) {
+		final int csum = GpsInputReader.sirfCsum(payload, 0, payload.length);
+		out.write(0xa0);
+		out.write(0xa2);
+		out.write(payload.length >> 8);
+		out.write(payload.length & 0xff);
+		out.write(payload, 0, payload.length);
+		out.write(csum >> 8);
+		out.write(csum & 0xff);
+		out.write(0xb0);
+		out.write(0xb3);
+	}
+
+	private static void put2(byte[] b, int p, int v) {
+		b[p] = (byte)(v >> 8);
+		b[p+1] = (byte)v;
+	}
+
+	private static void put4(byte[] b, int p, int v) {
+		b[p] = (byte)(v >> 24);
+		b[p+1] = (byte)(v >> 16);
+		b[p+2] = (byte)(v >> 8);
+		b[p+3] = (byte)v;
+	}
+
+	/* Payload offsets are 4 less than message offsets used in ReceiverInternalState.SirfFix */
+	private static void fillGeodeticNavData(byte[] p, Track t, int ms) {
+		final int s = 12 * 3600 + ms / 1000;
+		Arrays.fill(p, (byte)0);
+		p[0] = 41;
+		put2(p, 1, 0);
+		put2(p, 11, 1994);
+		p[13] = 3;
+		p[14] = 23;
+		p[15] = (byte)((s / 3600) % 24);
+		p[16] = (byte)((s / 60) % 60);
+		put2(p, 17, (s % 60) * 1000 + ms % 1000);
+		put4(p, 19, 0x0000131a);
+		put4(p, 23, (int)Math.round(t.lat * 1.0e7));
+		put4(p, 27, (int)Math.round(t.lon * 1.0e7));
+		put4(p, 31, (int)Math.round((t.alt + 46.9) * 100.0));
+		put4(p, 35, (int)Math.round(t.alt * 100.0));
+		p[39] = 21;
+		put2(p, 40, (int)Math.round(t.speedKnots * 0.514444 * 100.0));
+		put2(p, 42, (int)Math.round(t.bearing * 100.0));
+		put4(p, 50, 350);
+		p[88] = 8;
+		p[89] = 5;
+	}
+
+	private static void fillTrackerData(byte[] p, int s) {
+		final int prns[] = {1, 2, 4, 5, 9, 12, 17, 18, 24, 25, 26, 29};
+		Arrays.fill(p, (byte)0);
+		p[0] = 4;
+		p[7] = 12;
+		for (int i = 0; i < 12; ++i) {
+			final int c = 8 + 15 * i;
+			p[c] = (byte)prns[i];
+			p[c+1] = (byte)(i * 20);
+			p[c+2] = (byte)(20 + i * 10);
+			put2(p, c+3, 0xbf);
+			for (int j = 0; j < 10; ++j) p[c+5+j] = (byte)(30 + (s + i + j) % 20);
+		}
+	}
+
+	/**
+	 * Synthetic u-blox UBX output: NAV-DOP and NAV-PVT every epoch,
+	 * NAV-SAT with 12 satellites once per second
+	 */
+	static byte[] syntheticUbx(int baudrate, int durationS) {
+		final Track track = new Track();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(baudrate / BITS_PER_BYTE * durationS);
+		final byte dop[] = new byte[18];
+		final byte pvt[] = new byte[92];
+		final byte sat[] = new byte[8 + 12 * 12];
+		final int hz = updateRate(baudrate, dop.length + pvt.length + 16, sat.length + 8);
+
+		for (int s = 0; s < durationS; ++s) {
+			for (int e = 0; e < hz; ++e) {
+				final int ms = s * 1000 + e * (1000 / hz);
+				track.move(ms);
+				fillNavDop(dop, ms);
+				writeUbx(out, 0x01, 0x04, dop);
+				fillNavPvt(pvt, track, ms);
+				writeUbx(out, 0x01, 0x07, pvt);
+				if (e == 0) {
+					fillNavSat(sat, s);
+					writeUbx(out, 0x01, 0x35, sat);
+				}
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	private static void writeUbx(ByteArrayOutputStream out, int msgClass, int msgId, byte payload[]) {
+		final byte msg[] = new byte[payload.length + 8];
+		final int csum;
+
+		msg[0] = (byte)0xb5;
+		msg[1] = (byte)0x62;
+		msg[2] = (byte)msgClass;
+		msg[3] = (byte)msgId;
+		msg[4] = (byte)payload.length;
+		msg[5] = (byte)(payload.length >> 8);
+		System.arraycopy(payload, 0, msg, 6, payload.length);
+		csum = GpsInputReader.ubxCsum(msg, 2, payload.length + 4);
+		msg[msg.length-2] = (byte)(csum >> 8);
+		msg[msg.length-1] = (byte)csum;
+		out.write(msg, 0, msg.length);
+	}
+
+	private static void putLe2(byte[] b, int p, int v) {
+		b[p] = (byte)v;
+		b[p+1] = (byte)(v >> 8);
+	}
+
+	private static void putLe4(byte[] b, int p, int v) {
+		b[p] = (byte)v;
+		b[p+1] = (byte)(v >> 8);
+		b[p+2] = (byte)(v >> 16);
+		b[p+3] = (byte)(v >> 24);
+	}
+
+	/* GPS time of week of the synthetic stream start: Wednesday 12:00:00 */
+	private static int iTow(int ms) {
+		return (3 * 24 + 12) * 3600 * 1000 + ms;
+	}
+
+	private static void fillNavDop(byte[] p, int ms) {
+		Arrays.fill(p, (byte)0);
+		putLe4(p, 0, iTow(ms));
+		putLe2(p, 4, 280);
+		putLe2(p, 6, 250);
+		putLe2(p, 8, 120);
+		putLe2(p, 10, 210);
+		putLe2(p, 12, 130);
+		putLe2(p, 14, 90);
+		putLe2(p, 16, 95);
+	}
+
+	private static void fillNavPvt(byte[] p, Track t, int ms) {
+		final int s = 12 * 3600 + ms / 1000;
+		Arrays.fill(p, (byte)0);
+		putLe4(p, 0, iTow(ms));
+		putLe2(p, 4, 1994);
+		p[6] = 3;
+		p[7] = 23;
+		p[8] = (byte)((s / 3600) % 24);
+		p[9] = (byte)((s / 60) % 60);
+		p[10] = (byte)(s % 60);
+		p[11] = 0x07;
+		putLe4(p, 16, (ms % 1000) * 1000000);
+		p[20] = 3;
+		p[21] = 0x01;
+		p[23] = 8;
+		putLe4(p, 24, (int)Math.round(t.lon * 1.0e7));
+		putLe4(p, 28, (int)Math.round(t.lat * 1.0e7));
+		putLe4(p, 32, (int)Math.round((t.alt + 46.9) * 1000.0));
+		putLe4(p, 36, (int)Math.round(t.alt * 1000.0));
+		putLe4(p, 40, 3500);
+		putLe4(p, 44, 5200);
+		putLe4(p, 60, (int)Math.round(t.speedKnots * 0.514444 * 1000.0));
+		putLe4(p, 64, (int)Math.round(t.bearing * 1.0e5));
+		putLe2(p, 76, 250);
+	}
+
+	private static void fillNavSat(byte[] p, int s) {
+		final int prns[] = {1, 2, 4, 5, 9, 12, 17, 18, 24, 25, 26, 29};
+		Arrays.fill(p, (byte)0);
+		putLe4(p, 0, iTow(s * 1000));
+		p[4] = 1;
+		p[5] = 12;
+		for (int i = 0; i < 12; ++i) {
+			final int c = 8 + 12 * i;
+			p[c] = 0;
+			p[c+1] = (byte)prns[i];
+			p[c+2] = (byte)(30 + (s + i) % 20);
+			p[c+3] = (byte)(10 + i * 6);
+			putLe2(p, c+4, i * 30);
+			putLe4(p, c+8, (i < 8 ? 0x08 : 0) | 0x1800 | 0x07);
+		}
+	}
+
+	/**
+	 * Receiver moving with constant speed along a circle
+	 */
+	private static final class Track {
+		double lat, lon, alt;
+		double speedKnots, bearing;
+
+		void move(int ms) {
+			final double a = ms / 1000.0 / 600.0 * 2 * Math.PI;
+			lat = 48.1173 + 0.01 * Math.sin(a);
+			lon = 11.5166 + 0.015 * Math.cos(a);
+			alt = 545.4 + 10 * Math.sin(3 * a);
+			speedKnots = 22.4;
+			bearing = (Math.toDegrees(a) + 90.0) % 360.0;
+		}
+	}
+
+	/**
+	 * Returns the requested number of bytes on every read, cycling over the data,
+	 * until the byte budget is exhausted.
+	 */
+	static final class FullReadInputStream extends InputStream {
+		private final byte[] data;
+		private int pos;
+		private long remaining;
+
+		FullReadInputStream(byte[] data, long budget) {
+			this.data = data;
+			this.pos = 0;
+			this.remaining = budget;
+		}
+
+		@Override
+		public int read() throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining < len) return -1;
+			int done = 0;
+			while (done < len) {
+				final int n = Math.min(len - done, data.length - pos);
+				System.arraycopy(data, pos, b, off + done, n);
+				done += n;
+				pos += n;
+				if (pos == data.length) pos = 0;
+			}
+			remaining -= len;
+			return len;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int)Math.min(remaining, Integer.MAX_VALUE);
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serial link usage of the last session with a ScriptedReceiver: bytes of
+ * the configured epochs, load of the link, delivered fixes and the protocol
+ * of the receiver at the end of the session, time to first fix and the
+ * aiding accepted by the receiver.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class LinkCounters {
+
+	public double bytesPerEpoch;
+	public double linkLoadPercent;
+	public long intervalMs;
+	public long fixes;
+	public long ignoredCommands;
+	public long restored;
+	public long binary;
+	public long ttffMs;
+	public long aided;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		bytesPerEpoch = linkLoadPercent = 0;
+		intervalMs = fixes = ignoredCommands = restored = binary = ttffMs = aided = 0;
+	}
+}
@@ -0,0 +1,85 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fix latency of the NMEA epoch assembly. ReplayReceiver replays the log
+ * paced by the time of the fixes, SPEED times faster than real
+ * time. The NmeaEpochStats of the replay are reported by EpochCounters.
+ * One operation is a replay of the whole log, the counters are reported
+ * for the single measurement iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+public class NmeaEpochLatencyBenchmark {
+
+	private static final float SPEED = 10;
+
+	/** Duration of the synthetic streams */
+	private static final int DURATION_S = 20;
+
+	private static final long REPLAY_TIMEOUT_S = 60;
+
+	@Param({"nmea:4800", "nmea:115200", "gnss:115200", "rmc:4800"})
+	public String input;
+
+	private File log;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		final byte[] data = GpsStreams.load(input, DURATION_S);
+		final OutputStream out;
+
+		log = File.createTempFile("replay", ".raw");
+		log.deleteOnExit();
+		out = new FileOutputStream(log);
+		try {
+			out.write(data);
+		}finally {
+			out.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		log.delete();
+	}
+
+	@Benchmark
+	public void replay(final EpochCounters counters)
+			throws InterruptedException {
+		final ReplayReceiver receiver = new ReplayReceiver(log.getPath());
+		final ReplayReceiverBenchmark.ReplayListener listener = new ReplayReceiverBenchmark.ReplayListener();
+
+		receiver.setSpeed(SPEED);
+		receiver.requestLocationUpdates(0, 0, listener);
+		if (!listener.finished.await(REPLAY_TIMEOUT_S, TimeUnit.SECONDS))
+			throw new IllegalStateException("Replay of " + log + " timed out");
+		receiver.removeUpdates(listener);
+
+		counters.set(receiver.getNmeaEpochStats(null), SPEED);
+	}
+
+}
@@ -0,0 +1,234 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import android.location.Location;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serial link usage of an external receiver configured by ReceiverConfigurator
+ * for the registered listeners. A ScriptedReceiver on a 4800 baud link outputs
+ * EPOCHS epochs, the commands written by the configurator are applied to the
+ * following epochs. Epochs are sent EPOCH_PACE_MS apart, so the timers of
+ * the SiRF binary protocol switch run. At the end of the session the
+ * default output is restored.
+ * The receiver starts cold, the configurator aids it with a location of
+ * the previous day.
+ * Results are reported by LinkCounters for the steady state, the second half
+ * of the session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+public class ReceiverConfiguratorBenchmark {
+
+	private static final int BAUDRATE = ScriptedReceiver.DEFAULT_BAUDRATE;
+	private static final int BITS_PER_BYTE = 10;
+	private static final int EPOCHS = 120;
+	private static final int EPOCH_PACE_MS = 20;
+
+	@Param({"sirf", "mtk", "ublox"})
+	public String vendor;
+
+	/**
+	 * Registered listeners: "location", "status" (location and GpsStatus
+	 * listeners, like GPSLogger), "status:200" (the same, location updates
+	 * requested every 200 ms).
+	 */
+	@Param({"location", "status", "status:200"})
+	public String listeners;
+
+	@Param({"true", "false"})
+	public boolean configure;
+
+	@Benchmark
+	public void session(final LinkCounters counters) throws IOException {
+		final ReceiverInternalState state = new ReceiverInternalState("scripted");
+		final ScriptedReceiver device = new ScriptedReceiver(ScriptedReceiver.vendor(vendor));
+		final ScriptedLink link = new ScriptedLink(device);
+		final CountingLocationListener locationListener = new CountingLocationListener();
+		final ReceiverConfigurator configurator = new ReceiverConfigurator(BAUDRATE) {
+			@Override
+			protected void write(byte[] cmd) {
+				device.command(cmd);
+			}
+
+			@Override
+			protected boolean canChangeBaudRate() {
+				return true;
+			}
+
+			@Override
+			protected void changeBaudRate(int baudrate) {
+				device.setHostBaudRate(baudrate);
+			}
+		};
+		final GpsStatus.Listener statusListener = new GpsStatus.Listener() {
+			@Override
+			public void onGpsStatusChanged(int event) {
+			}
+		};
+
+		if (configure) {
+			final Location aiding = new Location("scripted");
+			aiding.setLatitude(48.1173);
+			aiding.setLongitude(11.5167);
+			aiding.setAltitude(545.4);
+			aiding.setAccuracy(10);
+			aiding.setTime(System.currentTimeMillis() - 24 * 3600 * 1000L);
+			configurator.setAidingLocation(aiding);
+		}
+		state.startFirstFix();
+		state.requestLocationUpdates(listeners.startsWith("status:") ? Long.parseLong(listeners.substring(7)) : 0,
+				0, locationListener);
+		if (listeners.startsWith("status")) state.addGpsStatusListener(statusListener);
+
+		new GpsInputReader(link) {
+			@Override
+			protected void onRawDataReceived(byte[] buf, int offset, int length) {
+				link.onParsed(length);
+			}
+
+			@Override
+			protected void onNmeaReceived(byte[] buf, int offset, int length) {
+				configurator.onNmeaReceived(buf, offset, length);
+				state.putNmeaMessage(buf, offset, length);
+			}
+
+			@Override
+			protected void onNmeaReceived(String nmea) {
+			}
+
+			@Override
+			protected void onSirfReceived(byte[] buf, int offset, int length) {
+				configurator.onSirfReceived();
+				state.putSirfMessage(buf, offset, length);
+			}
+
+			@Override
+			protected void onUbxReceived(byte[] buf, int offset, int length) {
+				configurator.onUbxReceived(buf, offset, length);
+			}
+
+			@Override
+			protected void onBufferFlushed() {
+			}
+
+			@Override
+			protected long onIdle() {
+				long timeout = 0;
+				if (configure)
+					timeout = configurator.configure(state.hasGpsStatusListeners(), state.getMinTime(),
+							state.hasCurrentLocation());
+				link.onIdle();
+				return minIdleTimeout(timeout, state.checkEpochTimeout());
+			}
+		}.loop();
+
+		final int baudrate = device.getBaudRate();
+		counters.intervalMs = device.getIntervalMs();
+		counters.binary = device.isBinary() ? 1 : 0;
+		configurator.restoreDefaults();
+
+		counters.bytesPerEpoch = (double)link.steadyBytes / link.steadyEpochs;
+		counters.linkLoadPercent = 100.0 * counters.bytesPerEpoch * BITS_PER_BYTE * 1000
+				/ baudrate / counters.intervalMs;
+		counters.fixes = locationListener.fixes;
+		counters.ignoredCommands = device.getIgnoredCommands();
+		counters.restored = device.hasDefaultOutput() ? 1 : 0;
+		counters.ttffMs = state.getGpsStatus(null).getTimeToFirstFix();
+		counters.aided = device.isAided() ? 1 : 0;
+	}
+
+	/**
+	 * Input stream of the serial link. The next epoch is sent when the
+	 * previous one is parsed, so the commands written after an epoch are
+	 * applied to the next one.
+	 */
+	private static final class ScriptedLink extends InputStream {
+		private final ScriptedReceiver device;
+		private byte[] data;
+		private int pos;
+		private int epochs;
+		private long sentBytes;
+		private long parsedBytes;
+		private boolean idle;
+
+		long steadyBytes;
+		int steadyEpochs;
+
+		ScriptedLink(ScriptedReceiver device) {
+			this.device = device;
+			this.data = device.banner();
+			this.pos = 0;
+			this.epochs = 0;
+			this.sentBytes = data.length;
+			this.parsedBytes = 0;
+			this.idle = false;
+		}
+
+		synchronized void onParsed(int length) {
+			parsedBytes += length;
+		}
+
+		synchronized void onIdle() {
+			if (parsedBytes == sentBytes) {
+				idle = true;
+				notifyAll();
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			final int n;
+
+			if (pos == data.length) {
+				if (epochs == EPOCHS) return -1;
+				try {
+					while (!idle && (sentBytes != 0)) wait();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				idle = false;
+				try {
+					Thread.sleep(EPOCH_PACE_MS);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				data = device.nextEpoch();
+				pos = 0;
+				epochs += 1;
+				sentBytes += data.length;
+				if (epochs > EPOCHS / 2) {
+					steadyBytes += data.length;
+					steadyEpochs += 1;
+				}
+			}
+			n = Math.min(len, data.length - pos);
+			System.arraycopy(data, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+	}
+
+}
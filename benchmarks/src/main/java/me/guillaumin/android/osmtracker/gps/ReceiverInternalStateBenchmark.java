@@ -0,0 +1,114 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ReceiverInternalState.putNmeaMessage() / putSirfMessage() / putUbxMessage().
+ *
+ * One operation feeds all messages of one fix, so ops/s is fixes/s and
+ * gc.alloc.rate.norm of the gc profiler (-prof gc) is bytes allocated per fix.
+ * The input is split into fixes in setUp() by replaying it once with a listener.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceiverInternalStateBenchmark {
+
+	@Param({"nmea:4800", "nmea:115200", "gnss:115200", "sirf:115200", "ubx:115200"})
+	public String input;
+
+	/** Number of registered location listeners */
+	@Param({"1", "4", "8"})
+	public int listeners;
+
+	private byte[] data;
+	private int[] frames;
+
+	/* Frames of fix i: [fixFrames[i], fixFrames[i+1]) */
+	private int[] fixFrames;
+	private int fixPos;
+
+	private ReceiverInternalState internalState;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		data = GpsStreams.load(input);
+		frames = GpsStreams.split(data);
+		fixFrames = splitFixes();
+		if (fixFrames.length < 2) {
+			throw new IllegalStateException("No fixes in input " + input);
+		}
+
+		internalState = new ReceiverInternalState("benchmark");
+		for (int i = 0; i < listeners; ++i) {
+			internalState.requestLocationUpdates(0, 0, new CountingLocationListener());
+		}
+		fixPos = 0;
+	}
+
+	private int[] splitFixes() {
+		final ReceiverInternalState state = new ReceiverInternalState("split");
+		final CountingLocationListener listener = new CountingLocationListener();
+		int[] res = new int[1024];
+		int cnt = 0;
+
+		state.requestLocationUpdates(0, 0, listener);
+		res[cnt++] = 0;
+		for (int i = 0; i < frames.length / 2; ++i) {
+			final long fixes = listener.fixes;
+			put(state, i);
+			if (listener.fixes != fixes) {
+				if (cnt == res.length) res = Arrays.copyOf(res, 2 * res.length);
+				res[cnt++] = i+1;
+			}
+		}
+		return Arrays.copyOf(res, cnt);
+	}
+
+	private boolean put(ReceiverInternalState state, int frame) {
+		final int offset = frames[2*frame];
+		final int length = frames[2*frame+1];
+		if (GpsStreams.isNmea(data, offset)) {
+			return state.putNmeaMessage(data, offset, length);
+		}else if (GpsStreams.isSirf(data, offset)) {
+			return state.putSirfMessage(data, offset, length);
+		}else {
+			return state.putUbxMessage(data, offset, length);
+		}
+	}
+
+	@Benchmark
+	public boolean putMessagesOfOneFix(StreamCounters counters) {
+		boolean res = true;
+		final int from = fixFrames[fixPos];
+		final int to = fixFrames[fixPos+1];
+
+		for (int i = from; i < to; ++i) {
+			res &= put(internalState, i);
+			counters.bytes += frames[2*i+1];
+		}
+		counters.sentences += to - from;
+
+		if (++fixPos == fixFrames.length - 1) fixPos = 0;
+		return res;
+	}
+
+}
@@ -0,0 +1,101 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.location.LocationProvider;
+import android.os.Bundle;
+
+/**
+ * Unthrottled ReplayReceiver: memory-mapped log reading, framing, parsing
+ * and delivery to a location listener on the replay thread.
+ * One operation is a replay of the whole log.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayReceiverBenchmark {
+
+	private static final long REPLAY_TIMEOUT_S = 60;
+
+	@Param({"nmea:4800", "nmea:115200", "sirf:115200", "ubx:115200"})
+	public String input;
+
+	private File log;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		final byte[] data = GpsStreams.load(input);
+		final OutputStream out;
+
+		log = File.createTempFile("replay", ".raw");
+		log.deleteOnExit();
+		out = new FileOutputStream(log);
+		try {
+			out.write(data);
+		}finally {
+			out.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		log.delete();
+	}
+
+	@Benchmark
+	public void replay(final FixCounters fixCounters)
+			throws InterruptedException {
+		final ReplayReceiver receiver = new ReplayReceiver(log.getPath());
+		final ReplayListener listener = new ReplayListener();
+
+		receiver.setSpeed(ReplayReceiver.SPEED_UNTHROTTLED);
+		receiver.requestLocationUpdates(0, 0, listener);
+		if (!listener.finished.await(REPLAY_TIMEOUT_S, TimeUnit.SECONDS))
+			throw new IllegalStateException("Replay of " + log + " timed out");
+		receiver.removeUpdates(listener);
+
+		fixCounters.fixes += listener.fixes;
+	}
+
+	/**
+	 * Counts fixes, signals when the replay thread reports the end of the log
+	 */
+	static final class ReplayListener extends CountingLocationListener {
+
+		final CountDownLatch finished = new CountDownLatch(1);
+
+		private boolean started;
+
+		@Override
+		public void onStatusChanged(String provider, int status, Bundle extras) {
+			if (status != LocationProvider.OUT_OF_SERVICE) {
+				started = true;
+			}else if (started) {
+				finished.countDown();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,315 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Scripted external receiver on a serial link. Outputs NMEA epochs with
+ * GGA, GLL, GSA, GSV, RMC, VTG and ZDA sentences and obeys the configuration
+ * commands of its vendor: SiRF PSRF103, MTK PMTK314 / PMTK220 or u-blox
+ * CFG-MSG / CFG-RATE / CFG-CFG. Commands of other vendors are ignored.
+ * MTK and u-blox receivers acknowledge the commands.
+ *
+ * SiRF receiver is switched to the binary protocol (MID 41, MID 4) with
+ * PSRF100 and back to NMEA with MID 129. Output and commands are garbled
+ * when the baudrate of the host differs from the baudrate of the receiver.
+ *
+ * The receiver starts cold: the first fix is output after
+ * COLD_START_EPOCHS epochs, or AIDED_START_EPOCHS epochs after the aiding
+ * of its vendor (SiRF PSRF104 / MID 128, MTK PMTK740 / PMTK741, u-blox
+ * MGA-INI) is received.
+ */
+final class ScriptedReceiver {
+
+	static final int SIRF = ReceiverConfigurator.VENDOR_SIRF;
+	static final int MTK = ReceiverConfigurator.VENDOR_MTK;
+	static final int UBLOX = ReceiverConfigurator.VENDOR_UBLOX;
+
+	/* Default output, GGA, GLL, GSA, GSV, RMC, VTG, ZDA */
+	private static final int SIRF_DEFAULT_RATES[] = {1, 0, 1, 5, 1, 0, 0, 0, 0};
+	private static final int DEFAULT_RATES[] = {1, 1, 1, 1, 1, 1, 0, 0, 1};
+
+	static final int DEFAULT_BAUDRATE = 4800;
+
+	static final int COLD_START_EPOCHS = 40;
+	static final int AIDED_START_EPOCHS = 5;
+
+	private final int vendor;
+	private final int defaultRates[];
+	private final int rates[];
+	private int intervalMs = 1000;
+	private int baudrate = DEFAULT_BAUDRATE;
+	private int hostBaudrate = DEFAULT_BAUDRATE;
+	private boolean binary = false;
+	private int epoch = 0;
+	private int fixEpoch = COLD_START_EPOCHS;
+	private boolean aided = false;
+	private int acceptedCommands = 0;
+	private int ignoredCommands = 0;
+	private final ByteArrayOutputStream replies = new ByteArrayOutputStream();
+
+	ScriptedReceiver(int vendor) {
+		this.vendor = vendor;
+		this.defaultRates = vendor == SIRF ? SIRF_DEFAULT_RATES : DEFAULT_RATES;
+		this.rates = defaultRates.clone();
+	}
+
+	static int vendor(String name) {
+		if ("sirf".equals(name)) return SIRF;
+		if ("mtk".equals(name)) return MTK;
+		if ("ublox".equals(name)) return UBLOX;
+		throw new IllegalArgumentException("Unknown vendor " + name);
+	}
+
+	int getIntervalMs() {
+		return intervalMs;
+	}
+
+	int getAcceptedCommands() {
+		return acceptedCommands;
+	}
+
+	int getBaudRate() {
+		return baudrate;
+	}
+
+	boolean isBinary() {
+		return binary;
+	}
+
+	void setHostBaudRate(int baudrate) {
+		this.hostBaudrate = baudrate;
+	}
+
+	boolean isAided() {
+		return aided;
+	}
+
+	int getIgnoredCommands() {
+		return ignoredCommands;
+	}
+
+	boolean hasDefaultOutput() {
+		return Arrays.equals(rates, defaultRates) && (intervalMs == 1000)
+				&& !binary && (baudrate == DEFAULT_BAUDRATE);
+	}
+
+	/**
+	 * Startup banner of the receiver
+	 */
+	byte[] banner() {
+		switch (vendor) {
+		case SIRF:
+			return ReceiverConfigurator.nmeaCommand("PSRFTXT,Version GSW3.5.0");
+		case UBLOX:
+			return ReceiverConfigurator.nmeaCommand("GPTXT,01,01,02,u-blox ag - www.u-blox.com");
+		default:
+			return new byte[0];
+		}
+	}
+
+	/**
+	 * Output of the next epoch, preceded by the replies to the commands
+	 */
+	byte[] nextEpoch() {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		final int ms = epoch * intervalMs;
+		final String time = String.format(Locale.US, "%02d%02d%02d.%02d",
+				12 + ms / 3600000, (ms / 60000) % 60, (ms / 1000) % 60, (ms % 1000) / 10);
+
+		out.write(replies.toByteArray(), 0, replies.size());
+		replies.reset();
+
+		if (binary) {
+			final byte b[] = GpsStreams.sirfEpoch(ms, ms % 1000 == 0, epoch >= fixEpoch);
+			out.write(b, 0, b.length);
+		}else if (epoch >= fixEpoch) {
+			appendNmeaEpoch(out, time);
+		}else {
+			appendNoFixEpoch(out, time);
+		}
+
+		epoch += 1;
+		return baudrate == hostBaudrate ? out.toByteArray() : garble(out.toByteArray());
+	}
+
+	/**
+	 * Data received at a wrong baudrate
+	 */
+	private static byte[] garble(final byte[] b) {
+		for (int i=0; i<b.length; ++i) b[i] = (byte)(0x80 | (b[i] * 7));
+		return b;
+	}
+
+	private void appendNmeaEpoch(ByteArrayOutputStream out, String time) {
+		if (enabled(ReceiverConfigurator.SENTENCE_GGA))
+			append(out, "GPGGA," + time + ",4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,");
+		if (enabled(ReceiverConfigurator.SENTENCE_GLL))
+			append(out, "GPGLL,4807.038,N,01131.000,E," + time + ",A,A");
+		if (enabled(ReceiverConfigurator.SENTENCE_GSA))
+			append(out, "GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,1.3,2.1");
+		if (enabled(ReceiverConfigurator.SENTENCE_GSV)) {
+			append(out, "GPGSV,3,1,12,01,40,083,46,02,17,308,41,04,07,344,39,05,22,228,45");
+			append(out, "GPGSV,3,2,12,09,40,083,46,12,17,308,41,17,07,344,,18,22,228,45");
+			append(out, "GPGSV,3,3,12,24,40,083,46,25,17,308,41,26,07,344,39,29,22,228,45");
+		}
+		if (enabled(ReceiverConfigurator.SENTENCE_RMC))
+			append(out, "GPRMC," + time + ",A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W");
+		if (enabled(ReceiverConfigurator.SENTENCE_VTG))
+			append(out, "GPVTG,084.4,T,,M,022.4,N,041.5,K,A");
+		if (enabled(ReceiverConfigurator.SENTENCE_ZDA))
+			append(out, "GPZDA," + time + ",23,03,1994,00,00");
+	}
+
+	private void appendNoFixEpoch(ByteArrayOutputStream out, String time) {
+		if (enabled(ReceiverConfigurator.SENTENCE_GGA))
+			append(out, "GPGGA," + time + ",,,,,0,00,99.9,,M,,M,,");
+		if (enabled(ReceiverConfigurator.SENTENCE_GLL))
+			append(out, "GPGLL,,,,," + time + ",V,N");
+		if (enabled(ReceiverConfigurator.SENTENCE_GSA))
+			append(out, "GPGSA,A,1,,,,,,,,,,,,,99.9,99.9,99.9");
+		if (enabled(ReceiverConfigurator.SENTENCE_GSV)) {
+			append(out, "GPGSV,1,1,04,04,,,,05,,,,09,,,,12,,,");
+		}
+		if (enabled(ReceiverConfigurator.SENTENCE_RMC))
+			append(out, "GPRMC," + time + ",V,,,,,,,230394,,,N");
+		if (enabled(ReceiverConfigurator.SENTENCE_VTG))
+			append(out, "GPVTG,,T,,M,,N,,K,N");
+		if (enabled(ReceiverConfigurator.SENTENCE_ZDA))
+			append(out, "GPZDA," + time + ",23,03,1994,00,00");
+	}
+
+	private void aid() {
+		aided = true;
+		fixEpoch = Math.min(fixEpoch, epoch + AIDED_START_EPOCHS);
+	}
+
+	private boolean enabled(int sentence) {
+		return (rates[sentence] > 0) && (epoch % rates[sentence] == 0);
+	}
+
+	private static void append(ByteArrayOutputStream out, String body) {
+		final byte b[] = ReceiverConfigurator.nmeaCommand(body);
+		out.write(b, 0, b.length);
+	}
+
+	/**
+	 * Receives a command written by the configurator
+	 */
+	void command(final byte[] cmd) {
+		final boolean accepted;
+
+		if (baudrate != hostBaudrate) {
+			accepted = false;
+		}else if ((cmd[0] & 0xff) == 0xa0) {
+			accepted = (vendor == SIRF) && binary && sirfCommand(cmd);
+		}else if (binary) {
+			accepted = false;
+		}else if ((cmd[0] & 0xff) == 0xb5) {
+			accepted = (vendor == UBLOX) && ubxCommand(cmd);
+		}else {
+			final String s;
+			try {
+				s = new String(cmd, 1, cmd.length - 6, GpsInputReader.NMEA_CHARSET);
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+			accepted = nmeaCommand(s.split(","));
+		}
+
+		if (accepted) {
+			acceptedCommands += 1;
+		}else {
+			ignoredCommands += 1;
+		}
+	}
+
+	private boolean nmeaCommand(final String f[]) {
+		if ((vendor == SIRF) && f[0].equals("PSRF100")) {
+			binary = f[1].equals("0");
+			baudrate = Integer.parseInt(f[2]);
+			return true;
+		}
+		if ((vendor == SIRF) && f[0].equals("PSRF104")) {
+			aid();
+			return true;
+		}
+		if ((vendor == SIRF) && f[0].equals("PSRF103")) {
+			rates[Integer.parseInt(f[1])] = Integer.parseInt(f[3]);
+			return true;
+		}
+		if ((vendor == MTK) && f[0].equals("PMTK314")) {
+			if (f[1].equals("-1")) {
+				System.arraycopy(defaultRates, 0, rates, 0, rates.length);
+			}else {
+				rates[ReceiverConfigurator.SENTENCE_GLL] = Integer.parseInt(f[1]);
+				rates[ReceiverConfigurator.SENTENCE_RMC] = Integer.parseInt(f[2]);
+				rates[ReceiverConfigurator.SENTENCE_VTG] = Integer.parseInt(f[3]);
+				rates[ReceiverConfigurator.SENTENCE_GGA] = Integer.parseInt(f[4]);
+				rates[ReceiverConfigurator.SENTENCE_GSA] = Integer.parseInt(f[5]);
+				rates[ReceiverConfigurator.SENTENCE_GSV] = Integer.parseInt(f[6]);
+				rates[ReceiverConfigurator.SENTENCE_ZDA] = Integer.parseInt(f[18]);
+			}
+			append(replies, "PMTK001,314,3");
+			return true;
+		}
+		if ((vendor == MTK) && (f[0].equals("PMTK740") || f[0].equals("PMTK741"))) {
+			aid();
+			append(replies, "PMTK001," + f[0].substring(4) + ",3");
+			return true;
+		}
+		if ((vendor == MTK) && f[0].equals("PMTK220")) {
+			intervalMs = Integer.parseInt(f[1]);
+			append(replies, "PMTK001,220,3");
+			return true;
+		}
+		return false;
+	}
+
+	private boolean sirfCommand(final byte[] cmd) {
+		/* MID 128 Initialize Data Source */
+		if ((cmd[4] & 0xff) == 128) {
+			aid();
+			return true;
+		}
+		/* MID 129 Switch To NMEA */
+		if ((cmd[4] & 0xff) != 129) return false;
+		for (int s=0; s<rates.length; ++s) rates[s] = cmd[6+2*s];
+		baudrate = ((cmd[26] & 0xff) << 8) | (cmd[27] & 0xff);
+		binary = false;
+		return true;
+	}
+
+	private boolean ubxCommand(final byte[] cmd) {
+		final int msgClass = cmd[2] & 0xff;
+		final int msgId = cmd[3] & 0xff;
+
+		/* MGA-INI, not acknowledged by default */
+		if ((msgClass == 0x13) && (msgId == 0x40)) {
+			aid();
+			return true;
+		}
+		if (msgClass != 0x06) return false;
+		switch (msgId) {
+		case 0x01: /* CFG-MSG */
+			if ((cmd[6] & 0xff) != 0xf0) return false;
+			rates[cmd[7]] = cmd[8];
+			break;
+		case 0x08: /* CFG-RATE */
+			intervalMs = (cmd[6] & 0xff) | ((cmd[7] & 0xff) << 8);
+			break;
+		case 0x09: /* CFG-CFG */
+			System.arraycopy(defaultRates, 0, rates, 0, rates.length);
+			intervalMs = 1000;
+			break;
+		default:
+			return false;
+		}
+		final byte ack[] = ReceiverConfigurator.ubxCommand(0x05, 0x01, new byte[] { (byte)msgClass, (byte)msgId });
+		replies.write(ack, 0, ack.length);
+		return true;
+	}
+
+}
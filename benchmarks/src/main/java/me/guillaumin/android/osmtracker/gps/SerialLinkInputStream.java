@@ -0,0 +1,73 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Blocking InputStream fed by a simulated device, like the input streams
+ * of the USB and Bluetooth links: read() blocks until the device sends data,
+ * then returns what is available.
+ */
+final class SerialLinkInputStream extends InputStream {
+
+	private final byte[] buf;
+	private int start;
+	private int end;
+	private boolean closed;
+
+	SerialLinkInputStream(int size) {
+		buf = new byte[size];
+		start = end = 0;
+		closed = false;
+	}
+
+	/**
+	 * Device side: sends b[off, off+len) in a single transfer
+	 */
+	synchronized void send(final byte[] b, int off, int len) {
+		if (end + len > buf.length) {
+			System.arraycopy(buf, start, buf, 0, end - start);
+			end -= start;
+			start = 0;
+			if (end + len > buf.length) throw new IllegalStateException("Link buffer overflow");
+		}
+		System.arraycopy(b, off, buf, end, len);
+		end += len;
+		notifyAll();
+	}
+
+	@Override
+	public synchronized int read() throws IOException {
+		final byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public synchronized int read(byte[] b, int off, int len) throws IOException {
+		final int n;
+		while (start == end && !closed) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+		}
+		if (start == end) return -1;
+		n = Math.min(len, end - start);
+		System.arraycopy(buf, start, b, off, n);
+		start += n;
+		return n;
+	}
+
+	@Override
+	public synchronized int available() {
+		return end - start;
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+}
@@ -0,0 +1,266 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbRequest;
+
+/**
+ * USB serial adapter (PL2303-like) with a receiver sending data back to
+ * back at the baudrate. The UART fills a FIFO_SIZE bytes FIFO, the host
+ * controller moves it into the pending bulk IN transfer every 1 ms frame:
+ * the head of the queued UsbRequests or the blocked bulkTransfer() call.
+ * Bytes arriving at the full FIFO are dropped, the overrun is reported by
+ * a PL2303 status notification on the interrupt endpoint.
+ *
+ * The reader thread is stalled for stallMs every STALL_INTERVAL_MS when it
+ * enters requestWait() or bulkTransfer(), like a thread descheduled or
+ * blocked on the ring buffer lock.
+ */
+final class SimulatedUsbSerial extends UsbDeviceConnection {
+
+	static final int FIFO_SIZE = 256;
+	static final int MAX_PACKET_SIZE = 64;
+
+	/* Full speed: max 19 bulk packets of 64 bytes per frame */
+	private static final int MAX_FRAME_BYTES = 19 * MAX_PACKET_SIZE;
+	private static final long FRAME_NS = 1000000;
+	private static final int BITS_PER_BYTE = 10;
+
+	static final int STALL_INTERVAL_MS = 200;
+
+	/* PL2303 status notification, UART state at offset 8 */
+	private static final int STATUS_SIZE = 10;
+	private static final int STATE_OVERRUN = 0x40;
+
+	static final UsbEndpoint BULK_IN = new UsbEndpoint(0x83, MAX_PACKET_SIZE);
+	static final UsbEndpoint INTERRUPT_IN = new UsbEndpoint(0x81, STATUS_SIZE);
+
+	private static final class Transfer {
+		final UsbRequest request;
+		final ByteBuffer buffer;
+		final int length;
+
+		Transfer(UsbRequest request, ByteBuffer buffer, int length) {
+			this.request = request;
+			this.buffer = buffer;
+			this.length = length;
+		}
+	}
+
+	private final byte data[];
+	private final int baudrate;
+	private final int stallMs;
+
+	private final byte fifo[] = new byte[FIFO_SIZE];
+	private int fifoStart;
+	private int fifoLength;
+	private int uartPos;
+
+	private final ArrayDeque<Transfer> queued = new ArrayDeque<Transfer>();
+	private final ArrayDeque<Transfer> interruptQueued = new ArrayDeque<Transfer>();
+	private final ArrayDeque<UsbRequest> completed = new ArrayDeque<UsbRequest>();
+
+	/* Blocked bulkTransfer() */
+	private byte syncBuffer[];
+	private int syncLength;
+	private int syncResult;
+
+	private boolean closed;
+	private long nextStall;
+
+	private long droppedBytes;
+	private long overrunNotifications;
+	private long startNs, endNs;
+
+	SimulatedUsbSerial(final byte data[], int baudrate, int stallMs) {
+		this.data = data;
+		this.baudrate = baudrate;
+		this.stallMs = stallMs;
+	}
+
+	/**
+	 * Starts the host controller
+	 */
+	void start() {
+		final Thread host = new Thread("SimulatedUsbHost") {
+			@Override
+			public void run() {
+				hostLoop();
+			}
+		};
+		host.setDaemon(true);
+		host.start();
+	}
+
+	synchronized long getDroppedBytes() {
+		return droppedBytes;
+	}
+
+	synchronized long getOverrunNotifications() {
+		return overrunNotifications;
+	}
+
+	/**
+	 * @return Time from the start to the end of the data, ns
+	 */
+	synchronized long getElapsedNs() {
+		return endNs - startNs;
+	}
+
+	/**
+	 * Runs the frames in real time. Frames missed while the host thread was
+	 * not scheduled are run one by one, the reader threads do not run
+	 * meanwhile.
+	 */
+	private void hostLoop() {
+		long frames = 0;
+
+		startNs = System.nanoTime();
+		for (;;) {
+			synchronized(this) {
+				while (startNs + frames * FRAME_NS <= System.nanoTime()) {
+					frames += 1;
+					runFrame(Math.min(data.length, frames * baudrate / BITS_PER_BYTE / 1000));
+					if ((uartPos == data.length) && (fifoLength == 0)) {
+						endNs = System.nanoTime();
+						closed = true;
+						notifyAll();
+						return;
+					}
+				}
+			}
+			final long sleep = startNs + frames * FRAME_NS - System.nanoTime();
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep / 1000000, (int)(sleep % 1000000));
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/* Called with the lock held */
+	private void runFrame(long uartEnd) {
+		while (uartPos < uartEnd) {
+			if (fifoLength == FIFO_SIZE) {
+				droppedBytes += 1;
+				notifyOverrun();
+			}else {
+				fifo[(fifoStart + fifoLength) % FIFO_SIZE] = data[uartPos];
+				fifoLength += 1;
+			}
+			uartPos += 1;
+		}
+		transfer();
+	}
+
+	/* Moves the FIFO into the pending transfer. Called with the lock held */
+	private void transfer() {
+		int n;
+
+		if (fifoLength == 0) return;
+
+		if (syncBuffer != null) {
+			n = Math.min(Math.min(fifoLength, syncLength), MAX_FRAME_BYTES);
+			for (int i=0; i<n; ++i) syncBuffer[i] = fifo[(fifoStart + i) % FIFO_SIZE];
+			syncResult = n;
+			syncBuffer = null;
+		}else if (!queued.isEmpty()) {
+			final Transfer t = queued.poll();
+			n = Math.min(Math.min(fifoLength, t.length), MAX_FRAME_BYTES);
+			for (int i=0; i<n; ++i) t.buffer.put(fifo[(fifoStart + i) % FIFO_SIZE]);
+			completed.add(t.request);
+		}else {
+			return;
+		}
+		fifoStart = (fifoStart + n) % FIFO_SIZE;
+		fifoLength -= n;
+		notifyAll();
+	}
+
+	/* Called with the lock held */
+	private void notifyOverrun() {
+		final Transfer t = interruptQueued.poll();
+		if (t == null) return;
+		for (int i=0; i<STATUS_SIZE; ++i) t.buffer.put(i == 8 ? (byte)STATE_OVERRUN : 0);
+		completed.add(t.request);
+		overrunNotifications += 1;
+		notifyAll();
+	}
+
+	private void stall() {
+		final long now = System.nanoTime() / 1000000;
+		if (stallMs == 0) return;
+		if (nextStall == 0) nextStall = now + STALL_INTERVAL_MS;
+		if (now < nextStall) return;
+		nextStall = now + STALL_INTERVAL_MS;
+		try {
+			Thread.sleep(stallMs);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public int bulkTransfer(UsbEndpoint endpoint, byte[] buffer, int length, int timeout) {
+		stall();
+		synchronized(this) {
+			if (closed) return -1;
+			syncBuffer = buffer;
+			syncLength = length;
+			while ((syncBuffer != null) && !closed) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					return -1;
+				}
+			}
+			if (syncBuffer != null) {
+				syncBuffer = null;
+				return -1;
+			}
+			return syncResult;
+		}
+	}
+
+	@Override
+	public UsbRequest requestWait() {
+		stall();
+		synchronized(this) {
+			while (completed.isEmpty() && !closed) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					return null;
+				}
+			}
+			return completed.poll();
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	@Override
+	protected synchronized boolean queue(UsbRequest request, ByteBuffer buffer, int length) {
+		if (closed) return false;
+		if (request.getEndpoint() == INTERRUPT_IN) {
+			interruptQueued.add(new Transfer(request, buffer, length));
+		}else {
+			queued.add(new Transfer(request, buffer, length));
+		}
+		return true;
+	}
+
+	@Override
+	protected synchronized boolean cancel(UsbRequest request) {
+		return false;
+	}
+}
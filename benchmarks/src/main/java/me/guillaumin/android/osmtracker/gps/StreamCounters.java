@@ -0,0 +1,26 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary benchmark results, reported by JMH as rates:
+ * bytes/s and sentences/s (NMEA sentences and binary frames).
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class StreamCounters {
+
+	public long bytes;
+
+	public long sentences;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		bytes = 0;
+		sentences = 0;
+	}
+}
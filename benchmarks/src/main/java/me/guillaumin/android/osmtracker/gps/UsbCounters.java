@@ -0,0 +1,29 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Bulk IN reads of the last session with a SimulatedUsbSerial: sustained
+ * throughput, bytes dropped by the adapter and the overrun notifications
+ * received from the interrupt endpoint.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class UsbCounters {
+
+	public double kbytesPerSecond;
+	public long receivedBytes;
+	public long droppedBytes;
+	public double droppedPercent;
+	public long overruns;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		kbytesPerSecond = droppedPercent = 0;
+		receivedBytes = droppedBytes = overruns = 0;
+	}
+}
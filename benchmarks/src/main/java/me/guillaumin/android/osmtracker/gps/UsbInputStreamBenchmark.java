@@ -0,0 +1,115 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sustained bulk IN reads from a SimulatedUsbSerial sending DURATION_S
+ * seconds of NMEA back to back at the full baudrate, parsed by
+ * GpsInputReader: queued UsbRequests (UsbRequestInputStream) against one
+ * synchronous bulkTransfer() at a time (BulkTransferInputStream). Results
+ * are reported by UsbCounters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+public class UsbInputStreamBenchmark {
+
+	private static final int DURATION_S = 3;
+
+	@Param({"bulkTransfer", "usbRequest"})
+	public String reader;
+
+	@Param({"115200", "921600"})
+	public int baudrate;
+
+	/**
+	 * Stall of the reader thread every SimulatedUsbSerial.STALL_INTERVAL_MS, ms
+	 */
+	@Param({"0", "50"})
+	public int stallMs;
+
+	private byte data[];
+
+	/**
+	 * Repeats the synthetic NMEA stream to fill DURATION_S seconds of the link
+	 */
+	@Setup
+	public void setUp() {
+		final byte nmea[] = GpsStreams.syntheticNmea(baudrate, DURATION_S, GpsStreams.NMEA_GPS);
+		data = new byte[baudrate / 10 * DURATION_S];
+		for (int p = 0; p < data.length; p += nmea.length) {
+			System.arraycopy(nmea, 0, data, p, Math.min(nmea.length, data.length - p));
+		}
+	}
+
+	@Benchmark
+	public void session(final UsbCounters counters) throws IOException {
+		final SimulatedUsbSerial device = new SimulatedUsbSerial(data, baudrate, stallMs);
+		final long received[] = new long[1];
+		final InputStream in;
+
+		if ("usbRequest".equals(reader)) {
+			in = new UsbRequestInputStream(device, SimulatedUsbSerial.BULK_IN, SimulatedUsbSerial.INTERRUPT_IN) {
+				@Override
+				protected void onInterrupt(ByteBuffer status) {
+					counters.overruns += 1;
+				}
+			};
+		}else {
+			in = new BulkTransferInputStream(device, SimulatedUsbSerial.BULK_IN);
+		}
+		device.start();
+
+		try {
+			new GpsInputReader(in) {
+				@Override
+				protected void onRawDataReceived(byte[] buf, int offset, int length) {
+					received[0] += length;
+				}
+
+				@Override
+				protected void onNmeaReceived(byte[] buf, int offset, int length) {
+				}
+
+				@Override
+				protected void onSirfReceived(byte[] buf, int offset, int length) {
+				}
+
+				@Override
+				protected void onUbxReceived(byte[] buf, int offset, int length) {
+				}
+
+				@Override
+				protected void onBufferFlushed() {
+				}
+			}.loop();
+		}catch (IOException e) {
+			/* End of the data: the device closes the connection */
+		}
+
+		counters.receivedBytes = received[0];
+		counters.droppedBytes = device.getDroppedBytes();
+		counters.droppedPercent = 100.0 * counters.droppedBytes / data.length;
+		counters.kbytesPerSecond = received[0] / 1024.0 * 1e9 / device.getElapsedNs();
+		if (counters.receivedBytes + counters.droppedBytes != data.length)
+			throw new IllegalStateException("Lost " + (data.length - counters.receivedBytes - counters.droppedBytes) + " bytes");
+	}
+}
@@ -0,0 +1,171 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import me.guillaumin.android.osmtracker.OSMTracker;
+import me.guillaumin.android.osmtracker.db.TrackDatabase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Export of TRACKS tracks of `points` points each to GPX files, as
+ * ExportAllTracksTask: one ExportPipeline per track on a pool of
+ * `workers` threads. The files are written to one storage device of
+ * `storageKBps` KB/s, which transfers one write at a time (0: as fast
+ * as the host can). Returns the number of bytes written.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 8)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ExportAllBenchmark {
+
+	private static final int TRACKS = 16;
+	private static final long START_TIME = 1356998400000L;
+
+	@Param({"1", "2", "4"})
+	public int workers;
+
+	@Param({"0", "8192"})
+	public int storageKBps;
+
+	@Param({"25000"})
+	public int points;
+
+	private TrackDatabase db;
+	private final List<Long> trackIds = new ArrayList<Long>();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		db = new TrackDatabase();
+		for (int i = 0; i < TRACKS; i++) {
+			final long start = START_TIME + i * points * 1000L;
+			final long trackId = db.newTrack(start);
+			db.addTrackPoints(trackId, start, points, 1);
+			trackIds.add(trackId);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		db.delete();
+	}
+
+	@Benchmark
+	public long exportAll() throws Exception {
+		final Storage storage = new Storage(storageKBps * 1024L);
+		final ExecutorService executor = Executors.newFixedThreadPool(workers);
+		final List<Future<Long>> exports = new ArrayList<Future<Long>>();
+		for (final long trackId : trackIds) {
+			exports.add(executor.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws IOException {
+					return export(storage, trackId);
+				}
+			}));
+		}
+		executor.shutdown();
+		long bytes = 0;
+		try {
+			for (Future<Long> export : exports) {
+				bytes += export.get();
+			}
+		} catch (ExecutionException e) {
+			executor.shutdownNow();
+			throw e;
+		}
+		return bytes;
+	}
+
+	private long export(Storage storage, long trackId) throws IOException {
+		final StorageOutputStream out = new StorageOutputStream(
+				new FileOutputStream(new File(db.dir, trackId + ".gpx")), storage);
+		final GpxWriter writer = new GpxWriter(out, true, OSMTracker.Preferences.VAL_OUTPUT_ACCURACY_NONE, "m", "accuracy");
+		final int count;
+		try {
+			writer.writeHeader();
+			writer.beginTrack("track", null);
+			count = new ExportPipeline(db.contentResolver, trackId).writeTrackPoints(writer, null);
+			writer.endTrack();
+			writer.writeFooter();
+		} finally {
+			writer.close();
+		}
+		if (count != points) throw new IllegalStateException(count + " points written of " + points);
+		return out.bytes;
+	}
+
+	/**
+	 * Storage device of a given bandwidth, shared by the files
+	 */
+	private static final class Storage {
+		final long bytesPerSecond;
+
+		Storage(long bytesPerSecond) {
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		/**
+		 * Blocks the writer while its bytes are "transferred", after the
+		 * writes of the other files in progress
+		 * @param writeNs Time already spent writing them to the host file
+		 */
+		synchronized void transfer(long writeNs, int len) throws InterruptedIOException {
+			if (bytesPerSecond > 0) {
+				final long wait = len * 1000000000L / bytesPerSecond - writeNs;
+				if (wait > 0) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+			}
+		}
+	}
+
+	private static final class StorageOutputStream extends FilterOutputStream {
+		private final Storage storage;
+		long bytes;
+
+		StorageOutputStream(OutputStream out, Storage storage) {
+			super(out);
+			this.storage = storage;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			final long start = System.nanoTime();
+			out.write(b, off, len);
+			bytes += len;
+			storage.transfer(System.nanoTime() - start, len);
+		}
+	}
+}
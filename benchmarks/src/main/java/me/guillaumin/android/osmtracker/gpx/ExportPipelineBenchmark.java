@@ -0,0 +1,134 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import me.guillaumin.android.osmtracker.OSMTracker;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import me.guillaumin.android.osmtracker.db.TrackDatabase;
+
+import android.database.Cursor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Export of the trackpoints of a track of `points` points from the
+ * database to a GPX file: one cursor read and written on one thread
+ * (single, as ExportTrackTask before ExportPipeline), or ExportPipeline
+ * (pipelined). The file is written at `storageKBps` KB/s, as on an SD
+ * card, or as fast as the host can (0). Returns the number of bytes
+ * written.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 8)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ExportPipelineBenchmark {
+
+	private static final long START_TIME = 1356998400000L;
+
+	@Param({"single", "pipelined"})
+	public String export;
+
+	@Param({"0", "8192"})
+	public int storageKBps;
+
+	@Param({"200000"})
+	public int points;
+
+	private TrackDatabase db;
+	private long trackId;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		db = new TrackDatabase();
+		trackId = db.newTrack(START_TIME);
+		db.addTrackPoints(trackId, START_TIME, points, 1);
+		file = new File(db.dir, "track.gpx");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		db.delete();
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		final ThrottledOutputStream out = new ThrottledOutputStream(new FileOutputStream(file), storageKBps * 1024L);
+		final GpxWriter writer = new GpxWriter(out, true, OSMTracker.Preferences.VAL_OUTPUT_ACCURACY_NONE, "m", "accuracy");
+		int count = 0;
+		try {
+			writer.beginTrack("track", null);
+			if ("single".equals(export)) {
+				final Cursor c = db.contentResolver.query(TrackContentProvider.trackPointsUri(trackId), null,
+						null, null, Schema.COL_TIMESTAMP + " asc");
+				try {
+					for (c.moveToFirst(); !c.isAfterLast(); c.moveToNext(), count++) {
+						writer.writeTrackPoint(c);
+					}
+				} finally {
+					c.close();
+				}
+			}else {
+				count = new ExportPipeline(db.contentResolver, trackId).writeTrackPoints(writer, null);
+			}
+			writer.endTrack();
+		} finally {
+			writer.close();
+		}
+		if (count != points) throw new IllegalStateException(count + " points written of " + points);
+		return out.bytes;
+	}
+
+	/**
+	 * Stream of a storage of a given bandwidth: each write blocks the
+	 * writer while its bytes are "transferred", as a synchronous write
+	 */
+	private static final class ThrottledOutputStream extends FilterOutputStream {
+		private final long bytesPerSecond;
+		long bytes;
+
+		ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+			super(out);
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			final long start = System.nanoTime();
+			out.write(b, off, len);
+			bytes += len;
+			if (bytesPerSecond > 0) {
+				final long wait = start + len * 1000000000L / bytesPerSecond - System.nanoTime();
+				if (wait > 0) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					}catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Files and directories created by an export and KB written, summed
+ * over the invocations of the iteration
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class FileCounters {
+
+	public long files;
+	public long directories;
+	public double kbytes;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		files = directories = 0;
+		kbytes = 0;
+	}
+}
@@ -0,0 +1,97 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import me.guillaumin.android.osmtracker.OSMTracker;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+
+import android.database.MatrixCursor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of the trackpoints of a track of `points` points, 1 Hz
+ * with elevation, accuracy and HDOP, to a stream that discards the bytes:
+ * the writer of ExportTrackTask before GpxWriter (legacy, over a
+ * BufferedWriter as FileWriter), or GpxWriter (streaming). The cursor is
+ * built before the measurement. Returns the number of bytes written.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class GpxWriterBenchmark {
+
+	private static final long START_TIME = 1356998400000L;
+
+	private static final String[] COLUMNS = {Schema.COL_ID, Schema.COL_TRACK_ID, Schema.COL_LATITUDE,
+		Schema.COL_LONGITUDE, Schema.COL_ELEVATION, Schema.COL_ACCURACY, Schema.COL_TIMESTAMP};
+
+	@Param({"legacy", "streaming"})
+	public String writer;
+
+	@Param({"1000000"})
+	public int points;
+
+	private MatrixCursor cursor;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		cursor = new MatrixCursor(COLUMNS, points);
+		for (int i = 0; i < points; i++) {
+			cursor.addRow(new Object[] {(long) i + 1, 1L, 48.1173 + i * 1e-6, 11.5167 + i * 1e-6,
+					545.4 + (i % 10), (double) (5 + (i % 7)), START_TIME + i * 1000L});
+		}
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		final CountingOutputStream out = new CountingOutputStream();
+		if ("legacy".equals(writer)) {
+			final Writer w = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+			new LegacyGpxWriter().writeTrackPoints("track", w, cursor, true);
+			w.close();
+		}else {
+			final GpxWriter w = new GpxWriter(out, true, OSMTracker.Preferences.VAL_OUTPUT_ACCURACY_NONE, "m", "accuracy");
+			w.beginTrack("track", null);
+			for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+				w.writeTrackPoint(cursor);
+			}
+			w.endTrack();
+			w.close();
+		}
+		return out.count;
+	}
+
+	private static final class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import me.guillaumin.android.osmtracker.OSMTracker;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+
+import android.database.Cursor;
+
+/**
+ * Trackpoint serialization of ExportTrackTask before GpxWriter: one
+ * StringBuffer and String concatenations per point, column indexes looked
+ * up per value, SimpleDateFormat timestamps and Double.toString() values.
+ */
+final class LegacyGpxWriter {
+
+	private static final String CDATA_START = "<![CDATA[";
+	private static final String CDATA_END = "]]>";
+
+	private final SimpleDateFormat pointDateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+	LegacyGpxWriter() {
+		pointDateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+	}
+
+	void writeTrackPoints(String trackName, Writer fw, Cursor c, boolean fillHDOP) throws IOException {
+		fw.write("\t" + "<trk>" + "\n");
+		fw.write("\t\t" + "<name>" + CDATA_START + trackName + CDATA_END + "</name>" + "\n");
+		fw.write("\t\t" + "<trkseg>" + "\n");
+
+		for(c.moveToFirst(); !c.isAfterLast(); c.moveToNext()) {
+			StringBuffer out = new StringBuffer();
+			out.append("\t\t\t" + "<trkpt lat=\""
+					+ c.getDouble(c.getColumnIndex(Schema.COL_LATITUDE)) + "\" "
+					+ "lon=\"" + c.getDouble(c.getColumnIndex(Schema.COL_LONGITUDE)) + "\">" + "\n");
+			if (! c.isNull(c.getColumnIndex(Schema.COL_ELEVATION))) {
+				out.append("\t\t\t\t" + "<ele>" + c.getDouble(c.getColumnIndex(Schema.COL_ELEVATION)) + "</ele>" + "\n");
+			}
+			out.append("\t\t\t\t" + "<time>" + pointDateFormatter.format(new Date(c.getLong(c.getColumnIndex(Schema.COL_TIMESTAMP)))) + "</time>" + "\n");
+
+			if(fillHDOP && ! c.isNull(c.getColumnIndex(Schema.COL_ACCURACY))) {
+				out.append("\t\t\t\t" + "<hdop>" + (c.getDouble(c.getColumnIndex(Schema.COL_ACCURACY)) / OSMTracker.HDOP_APPROXIMATION_FACTOR) + "</hdop>" + "\n");
+			}
+
+			out.append("\t\t\t" + "</trkpt>" + "\n");
+			fw.write(out.toString());
+		}
+
+		fw.write("\t\t" + "</trkseg>" + "\n");
+		fw.write("\t" + "</trk>" + "\n");
+	}
+}
@@ -0,0 +1,174 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import me.guillaumin.android.osmtracker.OSMTracker;
+import me.guillaumin.android.osmtracker.db.DataHelper;
+import me.guillaumin.android.osmtracker.db.TrackDatabase;
+import me.guillaumin.android.osmtracker.util.FileSystemUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Export of TRACKS tracks of `points` points, each with `media` pictures
+ * and voice recordings: to a directory per track with the media copied
+ * by FileSystemUtils, as ExportToStorageTask (directories), or streamed
+ * into one TrackArchive, as ExportToZipTask (zip). Returns the number of
+ * bytes written; FileCounters reports the files and directories created
+ * and the KB written.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 8)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ZipExportBenchmark {
+
+	private static final int TRACKS = 50;
+	private static final long START_TIME = 1356998400000L;
+	private static final int PICTURE_BYTES = 150 * 1024;
+	private static final int RECORDING_BYTES = 40 * 1024;
+
+	@Param({"directories", "zip"})
+	public String export;
+
+	@Param({"2000"})
+	public int points;
+
+	@Param({"0", "10"})
+	public int media;
+
+	private TrackDatabase db;
+	private final List<Long> trackIds = new ArrayList<Long>();
+	private File mediaDir;
+	private File outDir;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		db = new TrackDatabase();
+		mediaDir = new File(db.dir, "media");
+		final Random random = new Random(42);
+		for (int i = 0; i < TRACKS; i++) {
+			final long start = START_TIME + i * points * 1000L;
+			final long trackId = db.newTrack(start);
+			db.addTrackPoints(trackId, start, points, 1);
+			trackIds.add(trackId);
+
+			// Pictures and recordings: incompressible
+			final File trackDir = trackMediaDir(trackId);
+			trackDir.mkdirs();
+			for (int m = 0; m < media; m++) {
+				final boolean picture = m % 2 == 0;
+				final byte[] data = new byte[picture ? PICTURE_BYTES : RECORDING_BYTES];
+				random.nextBytes(data);
+				final OutputStream out = new FileOutputStream(new File(trackDir,
+						DataHelper.formatFilename(start + m * 1000L)
+						+ (picture ? DataHelper.EXTENSION_JPG : DataHelper.EXTENSION_3GPP)));
+				try {
+					out.write(data);
+				} finally {
+					out.close();
+				}
+			}
+		}
+		outDir = new File(db.dir, "out");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		db.delete();
+	}
+
+	@Setup(Level.Invocation)
+	public void clearOutput() {
+		delete(outDir);
+		outDir.mkdirs();
+	}
+
+	@Benchmark
+	public long exportAll(FileCounters counters) throws IOException {
+		long bytes = 0;
+		if ("zip".equals(export)) {
+			final File zipFile = new File(outDir, "tracks.zip");
+			final TrackArchive archive = new TrackArchive(new BufferedOutputStream(new FileOutputStream(zipFile), 64 * 1024));
+			try {
+				for (long trackId : trackIds) {
+					final File dir = new File(DataHelper.formatFilename(START_TIME + trackId));
+					writeGpx(archive.openEntry(new File(dir, trackId + DataHelper.EXTENSION_GPX)), trackId);
+					final File[] files = trackMediaDir(trackId).listFiles();
+					for (File file : files) {
+						archive.addFile(dir, file);
+					}
+				}
+			} finally {
+				archive.close();
+			}
+			counters.files++;
+			bytes = zipFile.length();
+		} else {
+			for (long trackId : trackIds) {
+				final File dir = new File(outDir, DataHelper.formatFilename(START_TIME + trackId));
+				dir.mkdirs();
+				final File gpx = new File(dir, trackId + DataHelper.EXTENSION_GPX);
+				writeGpx(new FileOutputStream(gpx), trackId);
+				bytes += gpx.length();
+				final File source = trackMediaDir(trackId);
+				FileSystemUtils.copyDirectoryContents(dir, source);
+				for (File file : source.listFiles()) {
+					bytes += file.length();
+				}
+				counters.files += 1 + media;
+				counters.directories++;
+			}
+		}
+		counters.kbytes += bytes / 1024.0;
+		return bytes;
+	}
+
+	private void writeGpx(OutputStream out, long trackId) throws IOException {
+		final GpxWriter writer = new GpxWriter(out, true, OSMTracker.Preferences.VAL_OUTPUT_ACCURACY_NONE, "m", "accuracy");
+		try {
+			writer.writeHeader();
+			writer.beginTrack("track", null);
+			final int count = new ExportPipeline(db.contentResolver, trackId).writeTrackPoints(writer, null);
+			if (count != points) throw new IllegalStateException(count + " points written of " + points);
+			writer.endTrack();
+			writer.writeFooter();
+		} finally {
+			writer.close();
+		}
+	}
+
+	private File trackMediaDir(long trackId) {
+		return new File(mediaDir, "track" + trackId);
+	}
+
+	private static void delete(File f) {
+		final File files[] = f.listFiles();
+		if (files != null) {
+			for (File c : files) delete(c);
+		}
+		f.delete();
+	}
+}
@@ -0,0 +1,55 @@
+package android.content;
+
+import java.util.ArrayList;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Host stub of android.content.ContentProvider
+ */
+public abstract class ContentProvider {
+
+	private Context mContext;
+
+	public void attachInfo(Context context) {
+		if (mContext == null) {
+			mContext = context;
+			onCreate();
+		}
+	}
+
+	public final Context getContext() {
+		return mContext;
+	}
+
+	public abstract boolean onCreate();
+
+	public abstract Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder);
+
+	public abstract String getType(Uri uri);
+
+	public abstract Uri insert(Uri uri, ContentValues values);
+
+	public abstract int delete(Uri uri, String selection, String[] selectionArgs);
+
+	public abstract int update(Uri uri, ContentValues values, String selection, String[] selectionArgs);
+
+	public int bulkInsert(Uri uri, ContentValues[] values) {
+		int numValues = values.length;
+		for (int i = 0; i < numValues; i++) {
+			insert(uri, values[i]);
+		}
+		return numValues;
+	}
+
+	public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+			throws OperationApplicationException {
+		final int numOperations = operations.size();
+		final ContentProviderResult[] results = new ContentProviderResult[numOperations];
+		for (int i = 0; i < numOperations; i++) {
+			results[i] = operations.get(i).apply(this, results, i);
+		}
+		return results;
+	}
+}
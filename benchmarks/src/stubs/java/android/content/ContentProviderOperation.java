@@ -0,0 +1,171 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.net.Uri;
+
+/**
+ * Host stub of android.content.ContentProviderOperation: insert, update
+ * and delete with value back references and expected counts.
+ */
+public class ContentProviderOperation {
+
+	public static final int TYPE_INSERT = 1;
+	public static final int TYPE_UPDATE = 2;
+	public static final int TYPE_DELETE = 3;
+
+	private final int mType;
+	private final Uri mUri;
+	private final String mSelection;
+	private final String[] mSelectionArgs;
+	private final ContentValues mValues;
+	private final Integer mExpectedCount;
+	private final Map<String, Integer> mValuesBackReferences;
+	private final boolean mYieldAllowed;
+
+	private ContentProviderOperation(Builder builder) {
+		mType = builder.mType;
+		mUri = builder.mUri;
+		mValues = builder.mValues;
+		mSelection = builder.mSelection;
+		mSelectionArgs = builder.mSelectionArgs;
+		mExpectedCount = builder.mExpectedCount;
+		mValuesBackReferences = builder.mValuesBackReferences;
+		mYieldAllowed = builder.mYieldAllowed;
+	}
+
+	public static Builder newInsert(Uri uri) {
+		return new Builder(TYPE_INSERT, uri);
+	}
+
+	public static Builder newUpdate(Uri uri) {
+		return new Builder(TYPE_UPDATE, uri);
+	}
+
+	public static Builder newDelete(Uri uri) {
+		return new Builder(TYPE_DELETE, uri);
+	}
+
+	public Uri getUri() {
+		return mUri;
+	}
+
+	public int getType() {
+		return mType;
+	}
+
+	public boolean isYieldAllowed() {
+		return mYieldAllowed;
+	}
+
+	public boolean isWriteOperation() {
+		return true;
+	}
+
+	public ContentValues resolveValueBackReferences(ContentProviderResult[] backRefs, int numBackRefs) {
+		final ContentValues values;
+
+		if (mValuesBackReferences == null) return mValues;
+		values = mValues == null ? new ContentValues() : new ContentValues(mValues);
+		for (Map.Entry<String, Integer> e: mValuesBackReferences.entrySet()) {
+			final int index = e.getValue();
+			if (index >= numBackRefs) throw new ArrayIndexOutOfBoundsException(index);
+			final ContentProviderResult r = backRefs[index];
+			values.put(e.getKey(), r.uri != null ? ContentUris.parseId(r.uri) : (long)r.count);
+		}
+		return values;
+	}
+
+	public ContentProviderResult apply(ContentProvider provider, ContentProviderResult[] backRefs,
+			int numBackRefs) throws OperationApplicationException {
+		final ContentValues values = resolveValueBackReferences(backRefs, numBackRefs);
+		final int numRows;
+
+		if (mType == TYPE_INSERT) {
+			final Uri newUri = provider.insert(mUri, values);
+			if (newUri == null) throw new OperationApplicationException("insert failed");
+			return new ContentProviderResult(newUri);
+		}else if (mType == TYPE_DELETE) {
+			numRows = provider.delete(mUri, mSelection, mSelectionArgs);
+		}else {
+			numRows = provider.update(mUri, values, mSelection, mSelectionArgs);
+		}
+		if (mExpectedCount != null && mExpectedCount != numRows) {
+			throw new OperationApplicationException("wrong number of rows: " + numRows);
+		}
+		return new ContentProviderResult(numRows);
+	}
+
+	public static class Builder {
+		private final int mType;
+		private final Uri mUri;
+		private String mSelection;
+		private String[] mSelectionArgs;
+		private ContentValues mValues;
+		private Integer mExpectedCount;
+		private Map<String, Integer> mValuesBackReferences;
+		private boolean mYieldAllowed;
+
+		private Builder(int type, Uri uri) {
+			mType = type;
+			mUri = uri;
+		}
+
+		public ContentProviderOperation build() {
+			return new ContentProviderOperation(this);
+		}
+
+		public Builder withValues(ContentValues values) {
+			if (mValues == null) mValues = new ContentValues();
+			mValues.putAll(values);
+			return this;
+		}
+
+		public Builder withValue(String key, Object value) {
+			if (mValues == null) mValues = new ContentValues();
+			if (value == null) {
+				mValues.putNull(key);
+			}else if (value instanceof String) {
+				mValues.put(key, (String)value);
+			}else if (value instanceof Integer) {
+				mValues.put(key, (Integer)value);
+			}else if (value instanceof Long) {
+				mValues.put(key, (Long)value);
+			}else if (value instanceof Float) {
+				mValues.put(key, (Float)value);
+			}else if (value instanceof Double) {
+				mValues.put(key, (Double)value);
+			}else if (value instanceof Boolean) {
+				mValues.put(key, (Boolean)value);
+			}else if (value instanceof byte[]) {
+				mValues.put(key, (byte[])value);
+			}else {
+				throw new IllegalArgumentException("bad value type: " + value.getClass().getName());
+			}
+			return this;
+		}
+
+		public Builder withValueBackReference(String key, int previousResult) {
+			if (mValuesBackReferences == null) mValuesBackReferences = new HashMap<String, Integer>();
+			mValuesBackReferences.put(key, previousResult);
+			return this;
+		}
+
+		public Builder withSelection(String selection, String[] selectionArgs) {
+			mSelection = selection;
+			mSelectionArgs = selectionArgs;
+			return this;
+		}
+
+		public Builder withExpectedCount(int count) {
+			mExpectedCount = count;
+			return this;
+		}
+
+		public Builder withYieldAllowed(boolean yieldAllowed) {
+			mYieldAllowed = yieldAllowed;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package android.content;
+
+import android.net.Uri;
+
+/**
+ * Host stub of android.content.ContentProviderResult
+ */
+public class ContentProviderResult {
+
+	public final Uri uri;
+	public final Integer count;
+
+	public ContentProviderResult(Uri uri) {
+		if (uri == null) throw new IllegalArgumentException("uri must not be null");
+		this.uri = uri;
+		this.count = null;
+	}
+
+	public ContentProviderResult(int count) {
+		this.count = count;
+		this.uri = null;
+	}
+
+	@Override
+	public String toString() {
+		return uri != null ? "ContentProviderResult(uri=" + uri + ")" : "ContentProviderResult(count=" + count + ")";
+	}
+}
@@ -0,0 +1,134 @@
+package android.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Host stub of android.content.ContentResolver. Calls are dispatched
+ * directly to the providers added with {@link #addProvider}, change
+ * notifications are delivered synchronously and counted.
+ */
+public class ContentResolver {
+
+	public static final String CURSOR_ITEM_BASE_TYPE = "vnd.android.cursor.item";
+	public static final String CURSOR_DIR_BASE_TYPE = "vnd.android.cursor.dir";
+
+	private static final class Registration {
+		final Uri uri;
+		final boolean notifyForDescendents;
+		final ContentObserver observer;
+
+		Registration(Uri uri, boolean notifyForDescendents, ContentObserver observer) {
+			this.uri = uri;
+			this.notifyForDescendents = notifyForDescendents;
+			this.observer = observer;
+		}
+	}
+
+	private final Context context;
+	private final Map<String, ContentProvider> providers = new HashMap<String, ContentProvider>();
+	private final List<Registration> observers = new ArrayList<Registration>();
+	private long notifications;
+
+	public ContentResolver(Context context) {
+		this.context = context;
+	}
+
+	/**
+	 * Host only: registers and creates the provider of the authority
+	 */
+	public void addProvider(String authority, ContentProvider provider) {
+		provider.attachInfo(context);
+		providers.put(authority, provider);
+	}
+
+	private ContentProvider provider(Uri uri) {
+		final ContentProvider p = providers.get(uri.getAuthority());
+		if (p == null) throw new IllegalArgumentException("Unknown authority " + uri);
+		return p;
+	}
+
+	public final Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+		return provider(uri).query(uri, projection, selection, selectionArgs, sortOrder);
+	}
+
+	public final Uri insert(Uri url, ContentValues values) {
+		return provider(url).insert(url, values);
+	}
+
+	public final int bulkInsert(Uri url, ContentValues[] values) {
+		return provider(url).bulkInsert(url, values);
+	}
+
+	public final int update(Uri uri, ContentValues values, String where, String[] selectionArgs) {
+		return provider(uri).update(uri, values, where, selectionArgs);
+	}
+
+	public final int delete(Uri url, String where, String[] selectionArgs) {
+		return provider(url).delete(url, where, selectionArgs);
+	}
+
+	public final String getType(Uri url) {
+		return provider(url).getType(url);
+	}
+
+	public ContentProviderResult[] applyBatch(String authority, ArrayList<ContentProviderOperation> operations)
+			throws OperationApplicationException {
+		final ContentProvider p = providers.get(authority);
+		if (p == null) throw new IllegalArgumentException("Unknown authority " + authority);
+		return p.applyBatch(operations);
+	}
+
+	public final synchronized void registerContentObserver(Uri uri, boolean notifyForDescendents, ContentObserver observer) {
+		observers.add(new Registration(uri, notifyForDescendents, observer));
+	}
+
+	public final synchronized void unregisterContentObserver(ContentObserver observer) {
+		for (int i = observers.size() - 1; i >= 0; --i) {
+			if (observers.get(i).observer == observer) observers.remove(i);
+		}
+	}
+
+	public void notifyChange(Uri uri, ContentObserver observer) {
+		notifyChange(uri, observer, true);
+	}
+
+	/**
+	 * Notifies the observers of the uri, of its ancestors registered with
+	 * notifyForDescendents and of its descendants, as ContentService does.
+	 */
+	public void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork) {
+		final List<ContentObserver> targets = new ArrayList<ContentObserver>();
+		final String u = uri.toString();
+
+		synchronized(this) {
+			notifications += 1;
+			for (Registration r: observers) {
+				final String o = r.uri.toString();
+				if (r.observer == observer && !observer.deliverSelfNotifications()) continue;
+				if (o.equals(u)
+						|| (r.notifyForDescendents && u.startsWith(o + "/"))
+						|| o.startsWith(u + "/")) {
+					targets.add(r.observer);
+				}
+			}
+		}
+		for (ContentObserver o: targets) {
+			o.dispatchChange(false, uri);
+		}
+	}
+
+	/**
+	 * Host only
+	 * @return Number of notifyChange() calls
+	 */
+	public synchronized long getNotifyCount() {
+		return notifications;
+	}
+}
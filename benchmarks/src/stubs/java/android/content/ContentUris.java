@@ -0,0 +1,18 @@
+package android.content;
+
+import android.net.Uri;
+
+/**
+ * Host stub of android.content.ContentUris
+ */
+public class ContentUris {
+
+	public static long parseId(Uri contentUri) {
+		final String last = contentUri.getLastPathSegment();
+		return last == null ? -1 : Long.parseLong(last);
+	}
+
+	public static Uri withAppendedId(Uri contentUri, long id) {
+		return Uri.withAppendedPath(contentUri, Long.toString(id));
+	}
+}
@@ -0,0 +1,85 @@
+package android.content;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Host stub of android.content.ContentValues
+ */
+public final class ContentValues {
+
+	private final LinkedHashMap<String, Object> mValues;
+
+	public ContentValues() {
+		mValues = new LinkedHashMap<String, Object>(8);
+	}
+
+	public ContentValues(int size) {
+		mValues = new LinkedHashMap<String, Object>(size, 1.0f);
+	}
+
+	public ContentValues(ContentValues from) {
+		mValues = new LinkedHashMap<String, Object>(from.mValues);
+	}
+
+	public void put(String key, String value) { mValues.put(key, value); }
+	public void put(String key, Byte value) { mValues.put(key, value); }
+	public void put(String key, Short value) { mValues.put(key, value); }
+	public void put(String key, Integer value) { mValues.put(key, value); }
+	public void put(String key, Long value) { mValues.put(key, value); }
+	public void put(String key, Float value) { mValues.put(key, value); }
+	public void put(String key, Double value) { mValues.put(key, value); }
+	public void put(String key, Boolean value) { mValues.put(key, value); }
+	public void put(String key, byte[] value) { mValues.put(key, value); }
+	public void putAll(ContentValues other) { mValues.putAll(other.mValues); }
+	public void putNull(String key) { mValues.put(key, null); }
+
+	public int size() { return mValues.size(); }
+	public void remove(String key) { mValues.remove(key); }
+	public void clear() { mValues.clear(); }
+	public boolean containsKey(String key) { return mValues.containsKey(key); }
+	public Object get(String key) { return mValues.get(key); }
+
+	public String getAsString(String key) {
+		final Object value = mValues.get(key);
+		return value != null ? value.toString() : null;
+	}
+
+	public Long getAsLong(String key) {
+		final Object value = mValues.get(key);
+		if (value == null) return null;
+		return value instanceof Number ? ((Number)value).longValue() : Long.valueOf(value.toString());
+	}
+
+	public Integer getAsInteger(String key) {
+		final Object value = mValues.get(key);
+		if (value == null) return null;
+		return value instanceof Number ? ((Number)value).intValue() : Integer.valueOf(value.toString());
+	}
+
+	public Double getAsDouble(String key) {
+		final Object value = mValues.get(key);
+		if (value == null) return null;
+		return value instanceof Number ? ((Number)value).doubleValue() : Double.valueOf(value.toString());
+	}
+
+	public Float getAsFloat(String key) {
+		final Object value = mValues.get(key);
+		if (value == null) return null;
+		return value instanceof Number ? ((Number)value).floatValue() : Float.valueOf(value.toString());
+	}
+
+	public Set<Map.Entry<String, Object>> valueSet() { return mValues.entrySet(); }
+	public Set<String> keySet() { return mValues.keySet(); }
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Object> e: mValues.entrySet()) {
+			if (sb.length() > 0) sb.append(' ');
+			sb.append(e.getKey()).append('=').append(e.getValue());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,147 @@
+package android.content;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Host stub of android.content.Context: a data directory for the databases,
+ * in-memory SharedPreferences and one ContentResolver.
+ */
+public class Context {
+
+	public static final int MODE_PRIVATE = 0;
+
+	private final File dataDir;
+	private final ContentResolver contentResolver;
+	private final Map<String, SharedPreferences> preferences = new HashMap<String, SharedPreferences>();
+
+	public Context(File dataDir) {
+		this.dataDir = dataDir;
+		this.contentResolver = new ContentResolver(this);
+	}
+
+	public Context getApplicationContext() {
+		return this;
+	}
+
+	public ContentResolver getContentResolver() {
+		return contentResolver;
+	}
+
+	public File getDatabasePath(String name) {
+		return new File(new File(dataDir, "databases"), name);
+	}
+
+	public File getFilesDir() {
+		return new File(dataDir, "files");
+	}
+
+	public File getCacheDir() {
+		return new File(dataDir, "cache");
+	}
+
+	public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+		SharedPreferences p = preferences.get(name);
+		if (p == null) {
+			p = new MemorySharedPreferences();
+			preferences.put(name, p);
+		}
+		return p;
+	}
+
+	private static final class MemorySharedPreferences implements SharedPreferences {
+		private final Map<String, Object> values = new HashMap<String, Object>();
+
+		@Override
+		public synchronized Map<String, ?> getAll() {
+			return new HashMap<String, Object>(values);
+		}
+
+		@Override
+		public synchronized String getString(String key, String defValue) {
+			return values.containsKey(key) ? (String)values.get(key) : defValue;
+		}
+
+		@Override
+		public synchronized int getInt(String key, int defValue) {
+			return values.containsKey(key) ? (Integer)values.get(key) : defValue;
+		}
+
+		@Override
+		public synchronized long getLong(String key, long defValue) {
+			return values.containsKey(key) ? (Long)values.get(key) : defValue;
+		}
+
+		@Override
+		public synchronized float getFloat(String key, float defValue) {
+			return values.containsKey(key) ? (Float)values.get(key) : defValue;
+		}
+
+		@Override
+		public synchronized boolean getBoolean(String key, boolean defValue) {
+			return values.containsKey(key) ? (Boolean)values.get(key) : defValue;
+		}
+
+		@Override
+		public synchronized boolean contains(String key) {
+			return values.containsKey(key);
+		}
+
+		@Override
+		public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+		}
+
+		@Override
+		public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+		}
+
+		@Override
+		public Editor edit() {
+			final Map<String, Object> changes = new HashMap<String, Object>();
+			final Object removed = new Object();
+
+			return new Editor() {
+				private Editor put(String key, Object value) {
+					changes.put(key, value);
+					return this;
+				}
+
+				@Override public Editor putString(String key, String value) { return put(key, value); }
+				@Override public Editor putInt(String key, int value) { return put(key, value); }
+				@Override public Editor putLong(String key, long value) { return put(key, value); }
+				@Override public Editor putFloat(String key, float value) { return put(key, value); }
+				@Override public Editor putBoolean(String key, boolean value) { return put(key, value); }
+				@Override public Editor remove(String key) { return put(key, removed); }
+
+				@Override
+				public Editor clear() {
+					synchronized(MemorySharedPreferences.this) {
+						for (String key: values.keySet()) changes.put(key, removed);
+					}
+					return this;
+				}
+
+				@Override
+				public boolean commit() {
+					synchronized(MemorySharedPreferences.this) {
+						for (Map.Entry<String, Object> e: changes.entrySet()) {
+							if (e.getValue() == removed) {
+								values.remove(e.getKey());
+							}else {
+								values.put(e.getKey(), e.getValue());
+							}
+						}
+					}
+					changes.clear();
+					return true;
+				}
+
+				@Override
+				public void apply() {
+					commit();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package android.content;
+
+/**
+ * Host stub of android.content.OperationApplicationException
+ */
+public class OperationApplicationException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public OperationApplicationException() {
+	}
+
+	public OperationApplicationException(String message) {
+		super(message);
+	}
+
+	public OperationApplicationException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
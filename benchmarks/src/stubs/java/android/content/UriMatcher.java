@@ -0,0 +1,98 @@
+package android.content;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.net.Uri;
+
+/**
+ * Host stub of android.content.UriMatcher, same matching rules: "#" matches
+ * a number, "*" any segment, exact segments take precedence.
+ */
+public class UriMatcher {
+
+	public static final int NO_MATCH = -1;
+
+	private static final int EXACT = 0;
+	private static final int NUMBER = 1;
+	private static final int TEXT = 2;
+
+	private int code;
+	private final int which;
+	private final String text;
+	private final List<UriMatcher> children = new ArrayList<UriMatcher>();
+
+	public UriMatcher(int code) {
+		this(code, EXACT, null);
+	}
+
+	private UriMatcher(int code, int which, String text) {
+		this.code = code;
+		this.which = which;
+		this.text = text;
+	}
+
+	public void addURI(String authority, String path, int code) {
+		UriMatcher node = this;
+		final List<String> tokens = new ArrayList<String>();
+
+		tokens.add(authority);
+		if (path != null) {
+			for (String s: path.split("/")) {
+				if (!s.isEmpty()) tokens.add(s);
+			}
+		}
+		for (String token: tokens) {
+			UriMatcher child = null;
+			for (UriMatcher c: node.children) {
+				if (token.equals(c.text)) {
+					child = c;
+					break;
+				}
+			}
+			if (child == null) {
+				child = new UriMatcher(NO_MATCH,
+						"#".equals(token) ? NUMBER : ("*".equals(token) ? TEXT : EXACT), token);
+				node.children.add(child);
+			}
+			node = child;
+		}
+		node.code = code;
+	}
+
+	public int match(Uri uri) {
+		final List<String> segments = uri.getPathSegments();
+		UriMatcher node = this;
+
+		for (int i = -1; i < segments.size(); ++i) {
+			final String u = i < 0 ? uri.getAuthority() : segments.get(i);
+			UriMatcher next = null;
+
+			for (UriMatcher c: node.children) {
+				if (c.which == EXACT && c.text.equals(u)) {
+					next = c;
+					break;
+				}
+			}
+			if (next == null) {
+				for (UriMatcher c: node.children) {
+					if ((c.which == NUMBER && isNumber(u)) || c.which == TEXT) {
+						next = c;
+						break;
+					}
+				}
+			}
+			if (next == null) return NO_MATCH;
+			node = next;
+		}
+		return node.code;
+	}
+
+	private static boolean isNumber(String s) {
+		if (s.isEmpty()) return false;
+		for (int i = 0; i < s.length(); ++i) {
+			if (s.charAt(i) < '0' || s.charAt(i) > '9') return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,33 @@
+package android.database;
+
+import android.net.Uri;
+import android.os.Handler;
+
+/**
+ * Host stub of android.database.ContentObserver. Changes are dispatched
+ * synchronously on the notifying thread.
+ */
+public abstract class ContentObserver {
+
+	public ContentObserver(Handler handler) {
+	}
+
+	public boolean deliverSelfNotifications() {
+		return false;
+	}
+
+	public void onChange(boolean selfChange) {
+	}
+
+	public void onChange(boolean selfChange, Uri uri) {
+		onChange(selfChange);
+	}
+
+	public final void dispatchChange(boolean selfChange) {
+		dispatchChange(selfChange, null);
+	}
+
+	public final void dispatchChange(boolean selfChange, Uri uri) {
+		onChange(selfChange, uri);
+	}
+}
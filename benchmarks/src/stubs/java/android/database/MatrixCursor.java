@@ -0,0 +1,145 @@
+package android.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+/**
+ * Host stub of android.database.MatrixCursor, also the result of the
+ * queries of the host SQLiteDatabase: rows are read into memory, like the
+ * CursorWindow of a SQLiteCursor.
+ */
+public class MatrixCursor implements Cursor {
+
+	private final String[] columnNames;
+	private final List<Object[]> rows;
+	private int pos = -1;
+	private boolean closed;
+
+	public MatrixCursor(String[] columnNames) {
+		this(columnNames, 16);
+	}
+
+	public MatrixCursor(String[] columnNames, int initialCapacity) {
+		this.columnNames = columnNames;
+		this.rows = new ArrayList<Object[]>(initialCapacity);
+	}
+
+	public void addRow(Object[] columnValues) {
+		if (columnValues.length != columnNames.length) throw new IllegalArgumentException();
+		rows.add(columnValues.clone());
+	}
+
+	private Object get(int column) {
+		if (pos < 0 || pos >= rows.size()) throw new CursorIndexOutOfBoundsException(pos, rows.size());
+		return rows.get(pos)[column];
+	}
+
+	@Override public int getCount() { return rows.size(); }
+	@Override public int getPosition() { return pos; }
+	@Override public boolean move(int offset) { return moveToPosition(pos + offset); }
+
+	@Override
+	public boolean moveToPosition(int position) {
+		if (position >= rows.size()) {
+			pos = rows.size();
+			return false;
+		}
+		if (position < 0) {
+			pos = -1;
+			return false;
+		}
+		pos = position;
+		return true;
+	}
+
+	@Override public boolean moveToFirst() { return moveToPosition(0); }
+	@Override public boolean moveToLast() { return moveToPosition(rows.size() - 1); }
+	@Override public boolean moveToNext() { return moveToPosition(pos + 1); }
+	@Override public boolean moveToPrevious() { return moveToPosition(pos - 1); }
+	@Override public boolean isFirst() { return pos == 0 && !rows.isEmpty(); }
+	@Override public boolean isLast() { return !rows.isEmpty() && pos == rows.size() - 1; }
+	@Override public boolean isBeforeFirst() { return rows.isEmpty() || pos == -1; }
+	@Override public boolean isAfterLast() { return rows.isEmpty() || pos == rows.size(); }
+
+	@Override
+	public int getColumnIndex(String columnName) {
+		final int dot = columnName.lastIndexOf('.');
+		final String name = dot < 0 ? columnName : columnName.substring(dot + 1);
+		for (int i = 0; i < columnNames.length; ++i) {
+			if (columnNames[i].equalsIgnoreCase(name)) return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public int getColumnIndexOrThrow(String columnName) {
+		final int i = getColumnIndex(columnName);
+		if (i < 0) throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+		return i;
+	}
+
+	@Override public String getColumnName(int columnIndex) { return columnNames[columnIndex]; }
+	@Override public String[] getColumnNames() { return columnNames; }
+	@Override public int getColumnCount() { return columnNames.length; }
+
+	@Override
+	public byte[] getBlob(int columnIndex) {
+		final Object v = get(columnIndex);
+		return v == null || v instanceof byte[] ? (byte[])v : v.toString().getBytes();
+	}
+
+	@Override
+	public String getString(int columnIndex) {
+		final Object v = get(columnIndex);
+		return v == null ? null : v.toString();
+	}
+
+	@Override public short getShort(int columnIndex) { return (short)getLong(columnIndex); }
+	@Override public int getInt(int columnIndex) { return (int)getLong(columnIndex); }
+
+	@Override
+	public long getLong(int columnIndex) {
+		final Object v = get(columnIndex);
+		if (v == null) return 0;
+		if (v instanceof Number) return ((Number)v).longValue();
+		try {
+			return Long.parseLong(v.toString());
+		}catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	@Override public float getFloat(int columnIndex) { return (float)getDouble(columnIndex); }
+
+	@Override
+	public double getDouble(int columnIndex) {
+		final Object v = get(columnIndex);
+		if (v == null) return 0;
+		if (v instanceof Number) return ((Number)v).doubleValue();
+		try {
+			return Double.parseDouble(v.toString());
+		}catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public int getType(int columnIndex) {
+		final Object v = get(columnIndex);
+		if (v == null) return FIELD_TYPE_NULL;
+		if (v instanceof Long || v instanceof Integer) return FIELD_TYPE_INTEGER;
+		if (v instanceof Double || v instanceof Float) return FIELD_TYPE_FLOAT;
+		if (v instanceof byte[]) return FIELD_TYPE_BLOB;
+		return FIELD_TYPE_STRING;
+	}
+
+	@Override public boolean isNull(int columnIndex) { return get(columnIndex) == null; }
+	@Override public void close() { closed = true; }
+	@Override public boolean isClosed() { return closed; }
+	@Override public void registerContentObserver(ContentObserver observer) { }
+	@Override public void unregisterContentObserver(ContentObserver observer) { }
+	@Override public void setNotificationUri(ContentResolver cr, Uri uri) { }
+}
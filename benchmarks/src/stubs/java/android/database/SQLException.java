@@ -0,0 +1,20 @@
+package android.database;
+
+/**
+ * Host stub of android.database.SQLException
+ */
+public class SQLException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public SQLException() {
+	}
+
+	public SQLException(String error) {
+		super(error);
+	}
+
+	public SQLException(String error, Throwable cause) {
+		super(error, cause);
+	}
+}
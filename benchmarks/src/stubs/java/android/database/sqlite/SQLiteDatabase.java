@@ -0,0 +1,607 @@
+package android.database.sqlite;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+/**
+ * Host stub of android.database.sqlite.SQLiteDatabase on SQLite JDBC
+ * connections. Like the platform (API 16): a pool with one primary
+ * connection, used by the writes and, in rollback journal mode, by the
+ * reads as well; with write-ahead logging, {@link #WAL_READERS} more
+ * connections for the reads of the threads without transaction.
+ * Transactions are per thread and hold the primary connection until the
+ * outermost endTransaction(); statements outside a transaction are
+ * committed one by one. Each connection has a cache of compiled statements.
+ *
+ * Host only: {@link #getCommitCount()}, the number of transactions
+ * committed by all the databases, implicit ones included.
+ */
+public class SQLiteDatabase {
+
+	public interface CursorFactory {
+	}
+
+	public static final int CONFLICT_NONE = 0;
+	public static final int CONFLICT_ROLLBACK = 1;
+	public static final int CONFLICT_ABORT = 2;
+	public static final int CONFLICT_FAIL = 3;
+	public static final int CONFLICT_IGNORE = 4;
+	public static final int CONFLICT_REPLACE = 5;
+
+	private static final String[] CONFLICT_VALUES = new String[]
+			{"", " OR ROLLBACK ", " OR ABORT ", " OR FAIL ", " OR IGNORE ", " OR REPLACE "};
+
+	/* Statement cache size of SQLiteConnection */
+	private static final int STATEMENT_CACHE_SIZE = 25;
+
+	/**
+	 * Read connections of the pool with write-ahead logging, as the
+	 * default pool size of 4 connections of the platform
+	 */
+	public static final int WAL_READERS = 3;
+
+	/* Transaction of a thread */
+	private static final class Session {
+		int depth;
+		boolean failed;
+		boolean innerSuccessful;
+	}
+
+	private final String path;
+	private final Connection connection;
+	private final PreparedStatement lastInsertRowId;
+
+	/* Held by the thread using the primary connection */
+	private final ReentrantLock primaryLock = new ReentrantLock(true);
+
+	/* Idle read connections, null without write-ahead logging */
+	private volatile BlockingQueue<Connection> readers;
+	private final List<Connection> readerConnections = new ArrayList<Connection>();
+
+	private final Map<Connection, Map<String, PreparedStatement>> statementCaches =
+			new HashMap<Connection, Map<String, PreparedStatement>>();
+
+	private final ThreadLocal<Session> sessions = new ThreadLocal<Session>() {
+		@Override
+		protected Session initialValue() {
+			return new Session();
+		}
+	};
+
+	private static long commits;
+
+	private SQLiteDatabase(String path) {
+		this.path = path;
+		this.connection = open(path);
+		try {
+			this.lastInsertRowId = connection.prepareStatement("select last_insert_rowid()");
+		}catch (SQLException e) {
+			throw new SQLiteException("Can not open " + path, e);
+		}
+	}
+
+	private static Connection open(String path) {
+		try {
+			Class.forName("org.sqlite.JDBC");
+			return DriverManager.getConnection("jdbc:sqlite:" + path);
+		}catch (ClassNotFoundException e) {
+			throw new SQLiteException("No SQLite JDBC driver", e);
+		}catch (SQLException e) {
+			throw new SQLiteException("Can not open " + path, e);
+		}
+	}
+
+	public static SQLiteDatabase openOrCreateDatabase(File file, CursorFactory factory) {
+		return openOrCreateDatabase(file.getPath(), factory);
+	}
+
+	public static SQLiteDatabase openOrCreateDatabase(String path, CursorFactory factory) {
+		return new SQLiteDatabase(path);
+	}
+
+	public static boolean deleteDatabase(File file) {
+		boolean deleted = file.delete();
+		deleted |= new File(file.getPath() + "-journal").delete();
+		deleted |= new File(file.getPath() + "-shm").delete();
+		deleted |= new File(file.getPath() + "-wal").delete();
+		return deleted;
+	}
+
+	public final String getPath() {
+		return path;
+	}
+
+	public boolean isOpen() {
+		try {
+			return !connection.isClosed();
+		}catch (SQLException e) {
+			return false;
+		}
+	}
+
+	public void close() {
+		closeReaders();
+		synchronized (statementCaches) {
+			for (Map<String, PreparedStatement> cache: statementCaches.values()) {
+				for (PreparedStatement s: cache.values()) close(s);
+			}
+			statementCaches.clear();
+		}
+		close(lastInsertRowId);
+		try {
+			connection.close();
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}
+	}
+
+	private void closeReaders() {
+		final BlockingQueue<Connection> r = readers;
+		if (r == null) return;
+		readers = null;
+		for (Connection c: readerConnections) {
+			try {
+				// Waits for the readers in progress
+				r.take();
+				synchronized (statementCaches) {
+					final Map<String, PreparedStatement> cache = statementCaches.remove(c);
+					if (cache != null) for (PreparedStatement s: cache.values()) close(s);
+				}
+				c.close();
+			}catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}catch (SQLException e) {
+				/* ignored */
+			}
+		}
+		readerConnections.clear();
+	}
+
+	/* Connection pool */
+
+	/**
+	 * @param readOnly The statement does not write: with write-ahead
+	 * logging, threads without transaction use a read connection
+	 * @return Connection to run a statement on, to {@link #release(Connection)}
+	 */
+	Connection acquire(boolean readOnly) {
+		if (sessions.get().depth > 0) return connection;
+		final BlockingQueue<Connection> r = readers;
+		if (readOnly && r != null) {
+			try {
+				return r.take();
+			}catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLiteException("interrupted", e);
+			}
+		}
+		primaryLock.lock();
+		return connection;
+	}
+
+	void release(Connection c) {
+		if (c == connection) {
+			if (sessions.get().depth == 0) primaryLock.unlock();
+		}else {
+			readers.add(c);
+		}
+	}
+
+	private static void close(Statement s) {
+		try {
+			s.close();
+		}catch (SQLException e) {
+			/* ignored */
+		}
+	}
+
+	/**
+	 * Host only
+	 * @return Number of committed transactions of all the databases
+	 */
+	public static synchronized long getCommitCount() {
+		return commits;
+	}
+
+	private static synchronized void onCommit() {
+		commits += 1;
+	}
+
+	/* Transactions */
+
+	public void beginTransaction() {
+		final Session s = sessions.get();
+		if (s.depth == 0) {
+			primaryLock.lock();
+			try {
+				connection.setAutoCommit(false);
+			}catch (SQLException e) {
+				primaryLock.unlock();
+				throw new SQLiteException(e.getMessage(), e);
+			}
+			s.failed = false;
+		}
+		s.depth += 1;
+		s.innerSuccessful = false;
+	}
+
+	public void beginTransactionNonExclusive() {
+		beginTransaction();
+	}
+
+	public void setTransactionSuccessful() {
+		final Session s = sessions.get();
+		if (s.depth == 0) throw new IllegalStateException("no transaction pending");
+		if (s.innerSuccessful) throw new IllegalStateException("setTransactionSuccessful may only be called once per call to beginTransaction");
+		s.innerSuccessful = true;
+	}
+
+	public void endTransaction() {
+		final Session s = sessions.get();
+		if (s.depth == 0) throw new IllegalStateException("no transaction pending");
+		if (!s.innerSuccessful) s.failed = true;
+		s.innerSuccessful = false;
+		s.depth -= 1;
+		if (s.depth != 0) return;
+		try {
+			if (s.failed) {
+				connection.rollback();
+			}else {
+				connection.commit();
+				onCommit();
+			}
+			connection.setAutoCommit(true);
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}finally {
+			primaryLock.unlock();
+		}
+	}
+
+	public boolean inTransaction() {
+		return sessions.get().depth != 0;
+	}
+
+	public boolean yieldIfContendedSafely() {
+		return false;
+	}
+
+	/* Host only: a write statement outside a transaction is committed */
+	void onWrite() {
+		if (sessions.get().depth == 0) onCommit();
+	}
+
+	/* Statements */
+
+	/* Compiled statement of the connection, used by the thread holding it */
+	private PreparedStatement prepare(Connection c, String sql) {
+		Map<String, PreparedStatement> cache;
+		synchronized (statementCaches) {
+			cache = statementCaches.get(c);
+			if (cache == null) {
+				cache = new LinkedHashMap<String, PreparedStatement>(STATEMENT_CACHE_SIZE, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+						if (size() <= STATEMENT_CACHE_SIZE) return false;
+						close(eldest.getValue());
+						return true;
+					}
+				};
+				statementCaches.put(c, cache);
+			}
+		}
+		PreparedStatement s = cache.get(sql);
+		if (s == null) {
+			try {
+				s = c.prepareStatement(sql);
+			}catch (SQLException e) {
+				throw new SQLiteException(e.getMessage() + ", while compiling: " + sql, e);
+			}
+			cache.put(sql, s);
+		}
+		return s;
+	}
+
+	/* Statement of the primary connection */
+	PreparedStatement prepareUncached(String sql) {
+		try {
+			return connection.prepareStatement(sql);
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage() + ", while compiling: " + sql, e);
+		}
+	}
+
+	long lastInsertRowId() throws SQLException {
+		final ResultSet rs = lastInsertRowId.executeQuery();
+		try {
+			rs.next();
+			return rs.getLong(1);
+		}finally {
+			rs.close();
+		}
+	}
+
+	public SQLiteStatement compileStatement(String sql) {
+		return new SQLiteStatement(this, sql);
+	}
+
+	private static void bind(PreparedStatement s, int index, Object value) throws SQLException {
+		if (value == null) {
+			s.setNull(index, java.sql.Types.NULL);
+		}else if (value instanceof Boolean) {
+			s.setLong(index, ((Boolean)value) ? 1 : 0);
+		}else if (value instanceof Float || value instanceof Double) {
+			s.setDouble(index, ((Number)value).doubleValue());
+		}else if (value instanceof Number) {
+			s.setLong(index, ((Number)value).longValue());
+		}else if (value instanceof byte[]) {
+			s.setBytes(index, (byte[])value);
+		}else {
+			s.setString(index, value.toString());
+		}
+	}
+
+	public void execSQL(String sql) {
+		execSQL(sql, new Object[0]);
+	}
+
+	public void execSQL(String sql, Object[] bindArgs) {
+		final Connection c = acquire(false);
+		try {
+			final PreparedStatement s = prepareUncached(sql);
+			try {
+				for (int i = 0; i < bindArgs.length; ++i) bind(s, i + 1, bindArgs[i]);
+				s.execute();
+				onWrite();
+			}catch (SQLException e) {
+				throw new SQLiteException(e.getMessage() + ", while executing: " + sql, e);
+			}finally {
+				close(s);
+			}
+		}finally {
+			release(c);
+		}
+	}
+
+	public long insert(String table, String nullColumnHack, ContentValues values) {
+		try {
+			return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_NONE);
+		}catch (android.database.SQLException e) {
+			return -1;
+		}
+	}
+
+	public long insertOrThrow(String table, String nullColumnHack, ContentValues values) {
+		return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_NONE);
+	}
+
+	public long replace(String table, String nullColumnHack, ContentValues initialValues) {
+		try {
+			return insertWithOnConflict(table, nullColumnHack, initialValues, CONFLICT_REPLACE);
+		}catch (android.database.SQLException e) {
+			return -1;
+		}
+	}
+
+	public long insertWithOnConflict(String table, String nullColumnHack,
+			ContentValues initialValues, int conflictAlgorithm) {
+		final StringBuilder sql = new StringBuilder();
+		final int size = (initialValues != null && initialValues.size() > 0) ? initialValues.size() : 0;
+		final Object[] bindArgs = new Object[size];
+		final PreparedStatement s;
+
+		sql.append("INSERT");
+		sql.append(CONFLICT_VALUES[conflictAlgorithm]);
+		sql.append(" INTO ");
+		sql.append(table);
+		sql.append('(');
+		if (size > 0) {
+			int i = 0;
+			for (String colName: initialValues.keySet()) {
+				sql.append((i > 0) ? "," : "");
+				sql.append(colName);
+				bindArgs[i++] = initialValues.get(colName);
+			}
+			sql.append(')');
+			sql.append(" VALUES (");
+			for (i = 0; i < size; i++) {
+				sql.append((i > 0) ? ",?" : "?");
+			}
+		}else {
+			sql.append(nullColumnHack + ") VALUES (NULL");
+		}
+		sql.append(')');
+
+		final Connection c = acquire(false);
+		try {
+			s = prepare(c, sql.toString());
+			for (int i = 0; i < size; ++i) bind(s, i + 1, bindArgs[i]);
+			s.executeUpdate();
+			onWrite();
+			return lastInsertRowId();
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}finally {
+			release(c);
+		}
+	}
+
+	public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+		final StringBuilder sql = new StringBuilder(120);
+		final int setValuesSize = values.size();
+		final int bindArgsSize = (whereArgs == null) ? setValuesSize : (setValuesSize + whereArgs.length);
+		final Object[] bindArgs = new Object[bindArgsSize];
+		final PreparedStatement s;
+		int i = 0;
+
+		if (values.size() == 0) throw new IllegalArgumentException("Empty values");
+		sql.append("UPDATE ");
+		sql.append(table);
+		sql.append(" SET ");
+		for (String colName: values.keySet()) {
+			sql.append((i > 0) ? "," : "");
+			sql.append(colName);
+			bindArgs[i++] = values.get(colName);
+			sql.append("=?");
+		}
+		if (whereArgs != null) {
+			for (i = setValuesSize; i < bindArgsSize; i++) {
+				bindArgs[i] = whereArgs[i - setValuesSize];
+			}
+		}
+		if (whereClause != null && whereClause.length() > 0) {
+			sql.append(" WHERE ");
+			sql.append(whereClause);
+		}
+
+		final Connection c = acquire(false);
+		try {
+			s = prepare(c, sql.toString());
+			for (i = 0; i < bindArgsSize; ++i) bind(s, i + 1, bindArgs[i]);
+			final int n = s.executeUpdate();
+			onWrite();
+			return n;
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}finally {
+			release(c);
+		}
+	}
+
+	public int delete(String table, String whereClause, String[] whereArgs) {
+		final String sql = "DELETE FROM " + table
+				+ ((whereClause != null && whereClause.length() > 0) ? " WHERE " + whereClause : "");
+		final Connection c = acquire(false);
+		try {
+			final PreparedStatement s = prepare(c, sql);
+			if (whereArgs != null) {
+				for (int i = 0; i < whereArgs.length; ++i) bind(s, i + 1, whereArgs[i]);
+			}
+			final int n = s.executeUpdate();
+			onWrite();
+			return n;
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}finally {
+			release(c);
+		}
+	}
+
+	public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+			String groupBy, String having, String orderBy) {
+		return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+	}
+
+	public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+			String groupBy, String having, String orderBy, String limit) {
+		return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+	}
+
+	public Cursor query(boolean distinct, String table, String[] columns, String selection,
+			String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
+		return rawQuery(SQLiteQueryBuilder.buildQueryString(distinct, table, columns, selection,
+				groupBy, having, orderBy, limit), selectionArgs);
+	}
+
+	public Cursor rawQuery(String sql, String[] selectionArgs) {
+		// Pragmas may write, as the platform runs them on the primary connection
+		final Connection c = acquire(!sql.regionMatches(true, 0, "PRAGMA", 0, 6));
+		try {
+			final PreparedStatement s = prepare(c, sql);
+			if (selectionArgs != null) {
+				for (int i = 0; i < selectionArgs.length; ++i) bind(s, i + 1, selectionArgs[i]);
+			}
+			final ResultSet rs = s.executeQuery();
+			try {
+				final ResultSetMetaData md = rs.getMetaData();
+				final String[] names = new String[md.getColumnCount()];
+				for (int i = 0; i < names.length; ++i) names[i] = md.getColumnLabel(i + 1);
+				final MatrixCursor cursor = new MatrixCursor(names);
+				final Object[] row = new Object[names.length];
+				while (rs.next()) {
+					for (int i = 0; i < names.length; ++i) row[i] = rs.getObject(i + 1);
+					cursor.addRow(row);
+				}
+				return cursor;
+			}finally {
+				rs.close();
+			}
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage() + ", while executing: " + sql, e);
+		}finally {
+			release(c);
+		}
+	}
+
+	public boolean isReadOnly() {
+		return false;
+	}
+
+	public int getVersion() {
+		final Cursor c = rawQuery("PRAGMA user_version", null);
+		try {
+			return c.moveToFirst() ? c.getInt(0) : 0;
+		}finally {
+			c.close();
+		}
+	}
+
+	public void setVersion(int version) {
+		execSQL("PRAGMA user_version = " + version);
+	}
+
+	public boolean enableWriteAheadLogging() {
+		if (inTransaction()) throw new IllegalStateException("Write Ahead Logging (WAL) mode cannot be enabled or disabled while there are transactions in progress.");
+		if (readers != null) return true;
+		if (":memory:".equals(path)) return false;
+		final Cursor c = rawQuery("PRAGMA journal_mode=WAL", null);
+		try {
+			if (!c.moveToFirst() || !"wal".equalsIgnoreCase(c.getString(0))) return false;
+		}finally {
+			c.close();
+		}
+		final BlockingQueue<Connection> r = new ArrayBlockingQueue<Connection>(WAL_READERS);
+		for (int i = 0; i < WAL_READERS; ++i) {
+			final Connection reader = open(path);
+			readerConnections.add(reader);
+			r.add(reader);
+		}
+		readers = r;
+		return true;
+	}
+
+	public void disableWriteAheadLogging() {
+		if (inTransaction()) throw new IllegalStateException("Write Ahead Logging (WAL) mode cannot be enabled or disabled while there are transactions in progress.");
+		closeReaders();
+		rawQuery("PRAGMA journal_mode=DELETE", null).close();
+	}
+
+	public boolean isWriteAheadLoggingEnabled() {
+		final Cursor c = rawQuery("PRAGMA journal_mode", null);
+		try {
+			return c.moveToFirst() && "wal".equalsIgnoreCase(c.getString(0));
+		}finally {
+			c.close();
+		}
+	}
+}
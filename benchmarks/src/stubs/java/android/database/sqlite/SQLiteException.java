@@ -0,0 +1,22 @@
+package android.database.sqlite;
+
+import android.database.SQLException;
+
+/**
+ * Host stub of android.database.sqlite.SQLiteException
+ */
+public class SQLiteException extends SQLException {
+
+	private static final long serialVersionUID = 1L;
+
+	public SQLiteException() {
+	}
+
+	public SQLiteException(String error) {
+		super(error);
+	}
+
+	public SQLiteException(String error, Throwable cause) {
+		super(error, cause);
+	}
+}
@@ -0,0 +1,109 @@
+package android.database.sqlite;
+
+import java.io.File;
+
+import android.content.Context;
+
+/**
+ * Host stub of android.database.sqlite.SQLiteOpenHelper: one connection
+ * shared by getWritableDatabase() and getReadableDatabase().
+ */
+public abstract class SQLiteOpenHelper {
+
+	private final Context mContext;
+	private final String mName;
+	private final int mNewVersion;
+	private SQLiteDatabase mDatabase;
+	private boolean mEnableWriteAheadLogging;
+
+	public SQLiteOpenHelper(Context context, String name, SQLiteDatabase.CursorFactory factory, int version) {
+		if (version < 1) throw new IllegalArgumentException("Version must be >= 1, was " + version);
+		mContext = context;
+		mName = name;
+		mNewVersion = version;
+	}
+
+	public String getDatabaseName() {
+		return mName;
+	}
+
+	public synchronized void setWriteAheadLoggingEnabled(boolean enabled) {
+		if (mEnableWriteAheadLogging != enabled) {
+			if (mDatabase != null && mDatabase.isOpen()) {
+				if (enabled) {
+					mDatabase.enableWriteAheadLogging();
+				}else {
+					mDatabase.disableWriteAheadLogging();
+				}
+			}
+			mEnableWriteAheadLogging = enabled;
+		}
+	}
+
+	public synchronized SQLiteDatabase getWritableDatabase() {
+		return getDatabaseLocked();
+	}
+
+	public synchronized SQLiteDatabase getReadableDatabase() {
+		return getDatabaseLocked();
+	}
+
+	private SQLiteDatabase getDatabaseLocked() {
+		final SQLiteDatabase db;
+		final int version;
+
+		if (mDatabase != null && mDatabase.isOpen()) return mDatabase;
+
+		if (mName == null) {
+			db = SQLiteDatabase.openOrCreateDatabase(":memory:", null);
+		}else {
+			final File path = mContext.getDatabasePath(mName);
+			path.getParentFile().mkdirs();
+			db = SQLiteDatabase.openOrCreateDatabase(path, null);
+		}
+		onConfigure(db);
+		if (mEnableWriteAheadLogging) db.enableWriteAheadLogging();
+
+		version = db.getVersion();
+		if (version != mNewVersion) {
+			db.beginTransaction();
+			try {
+				if (version == 0) {
+					onCreate(db);
+				}else if (version > mNewVersion) {
+					onDowngrade(db, version, mNewVersion);
+				}else {
+					onUpgrade(db, version, mNewVersion);
+				}
+				db.setVersion(mNewVersion);
+				db.setTransactionSuccessful();
+			}finally {
+				db.endTransaction();
+			}
+		}
+		onOpen(db);
+		mDatabase = db;
+		return db;
+	}
+
+	public synchronized void close() {
+		if (mDatabase != null && mDatabase.isOpen()) {
+			mDatabase.close();
+			mDatabase = null;
+		}
+	}
+
+	public void onConfigure(SQLiteDatabase db) {
+	}
+
+	public abstract void onCreate(SQLiteDatabase db);
+
+	public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+	public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		throw new SQLiteException("Can't downgrade database from version " + oldVersion + " to " + newVersion);
+	}
+
+	public void onOpen(SQLiteDatabase db) {
+	}
+}
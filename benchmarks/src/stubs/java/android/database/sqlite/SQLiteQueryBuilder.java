@@ -0,0 +1,101 @@
+package android.database.sqlite;
+
+import android.database.Cursor;
+
+/**
+ * Host stub of android.database.sqlite.SQLiteQueryBuilder
+ */
+public class SQLiteQueryBuilder {
+
+	private String mTables = "";
+	private StringBuilder mWhereClause = null;
+	private boolean mDistinct;
+
+	public void setDistinct(boolean distinct) {
+		mDistinct = distinct;
+	}
+
+	public String getTables() {
+		return mTables;
+	}
+
+	public void setTables(String inTables) {
+		mTables = inTables;
+	}
+
+	public void appendWhere(CharSequence inWhere) {
+		if (mWhereClause == null) mWhereClause = new StringBuilder(inWhere.length() + 16);
+		if (mWhereClause.length() == 0) mWhereClause.append('(');
+		mWhereClause.append(inWhere);
+	}
+
+	public static String buildQueryString(boolean distinct, String tables, String[] columns,
+			String where, String groupBy, String having, String orderBy, String limit) {
+		final StringBuilder query = new StringBuilder(120);
+
+		if (isEmpty(groupBy) && !isEmpty(having)) {
+			throw new IllegalArgumentException("HAVING clauses are only permitted when using a groupBy clause");
+		}
+		query.append("SELECT ");
+		if (distinct) query.append("DISTINCT ");
+		if (columns != null && columns.length != 0) {
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) query.append(", ");
+				query.append(columns[i]);
+			}
+			query.append(' ');
+		}else {
+			query.append("* ");
+		}
+		query.append("FROM ");
+		query.append(tables);
+		appendClause(query, " WHERE ", where);
+		appendClause(query, " GROUP BY ", groupBy);
+		appendClause(query, " HAVING ", having);
+		appendClause(query, " ORDER BY ", orderBy);
+		appendClause(query, " LIMIT ", limit);
+		return query.toString();
+	}
+
+	private static void appendClause(StringBuilder s, String name, String clause) {
+		if (!isEmpty(clause)) {
+			s.append(name);
+			s.append(clause);
+		}
+	}
+
+	private static boolean isEmpty(String s) {
+		return s == null || s.length() == 0;
+	}
+
+	public String buildQuery(String[] projectionIn, String selection, String groupBy,
+			String having, String sortOrder, String limit) {
+		final StringBuilder where = new StringBuilder();
+		final boolean hasBaseWhereClause = mWhereClause != null && mWhereClause.length() > 0;
+
+		if (hasBaseWhereClause) {
+			where.append(mWhereClause.toString());
+			where.append(')');
+		}
+		if (selection != null && selection.length() > 0) {
+			if (hasBaseWhereClause) where.append(" AND ");
+			where.append('(');
+			where.append(selection);
+			where.append(')');
+		}
+		return buildQueryString(mDistinct, mTables, projectionIn, where.toString(),
+				groupBy, having, sortOrder, limit);
+	}
+
+	public Cursor query(SQLiteDatabase db, String[] projectionIn, String selection,
+			String[] selectionArgs, String groupBy, String having, String sortOrder) {
+		return query(db, projectionIn, selection, selectionArgs, groupBy, having, sortOrder, null);
+	}
+
+	public Cursor query(SQLiteDatabase db, String[] projectionIn, String selection,
+			String[] selectionArgs, String groupBy, String having, String sortOrder, String limit) {
+		if (mTables == null) return null;
+		return db.rawQuery(buildQuery(projectionIn, selection, groupBy, having, sortOrder, limit),
+				selectionArgs);
+	}
+}
@@ -0,0 +1,153 @@
+package android.database.sqlite;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Host stub of android.database.sqlite.SQLiteStatement, compiled on the
+ * primary connection of the database
+ */
+public final class SQLiteStatement {
+
+	private final SQLiteDatabase db;
+	private final String sql;
+	private final PreparedStatement statement;
+
+	SQLiteStatement(SQLiteDatabase db, String sql) {
+		this.db = db;
+		this.sql = sql;
+		this.statement = db.prepareUncached(sql);
+	}
+
+	public void bindNull(int index) {
+		try {
+			statement.setNull(index, java.sql.Types.NULL);
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}
+	}
+
+	public void bindLong(int index, long value) {
+		try {
+			statement.setLong(index, value);
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}
+	}
+
+	public void bindDouble(int index, double value) {
+		try {
+			statement.setDouble(index, value);
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}
+	}
+
+	public void bindString(int index, String value) {
+		if (value == null) throw new IllegalArgumentException("the bind value at index " + index + " is null");
+		try {
+			statement.setString(index, value);
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}
+	}
+
+	public void bindBlob(int index, byte[] value) {
+		if (value == null) throw new IllegalArgumentException("the bind value at index " + index + " is null");
+		try {
+			statement.setBytes(index, value);
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}
+	}
+
+	public void clearBindings() {
+		try {
+			statement.clearParameters();
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage(), e);
+		}
+	}
+
+	public void execute() {
+		final Connection c = db.acquire(false);
+		try {
+			statement.execute();
+			db.onWrite();
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage() + ", while executing: " + sql, e);
+		}finally {
+			db.release(c);
+		}
+	}
+
+	public int executeUpdateDelete() {
+		final Connection c = db.acquire(false);
+		try {
+			final int n = statement.executeUpdate();
+			db.onWrite();
+			return n;
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage() + ", while executing: " + sql, e);
+		}finally {
+			db.release(c);
+		}
+	}
+
+	public long executeInsert() {
+		final Connection c = db.acquire(false);
+		try {
+			final int n = statement.executeUpdate();
+			db.onWrite();
+			return n > 0 ? db.lastInsertRowId() : -1;
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage() + ", while executing: " + sql, e);
+		}finally {
+			db.release(c);
+		}
+	}
+
+	public long simpleQueryForLong() {
+		final Connection c = db.acquire(false);
+		try {
+			final ResultSet rs = statement.executeQuery();
+			try {
+				if (!rs.next()) throw new SQLiteException("no rows");
+				return rs.getLong(1);
+			}finally {
+				rs.close();
+			}
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage() + ", while executing: " + sql, e);
+		}finally {
+			db.release(c);
+		}
+	}
+
+	public String simpleQueryForString() {
+		final Connection c = db.acquire(false);
+		try {
+			final ResultSet rs = statement.executeQuery();
+			try {
+				if (!rs.next()) throw new SQLiteException("no rows");
+				return rs.getString(1);
+			}finally {
+				rs.close();
+			}
+		}catch (SQLException e) {
+			throw new SQLiteException(e.getMessage() + ", while executing: " + sql, e);
+		}finally {
+			db.release(c);
+		}
+	}
+
+	public void close() {
+		try {
+			statement.close();
+		}catch (SQLException e) {
+			/* ignored */
+		}
+	}
+}
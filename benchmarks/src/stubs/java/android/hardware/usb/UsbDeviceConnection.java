@@ -0,0 +1,35 @@
+package android.hardware.usb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Host stub of android.hardware.usb.UsbDeviceConnection. Without a device
+ * transfers fail: the benchmarks override the transfer methods to
+ * simulate one. queue() and cancel() are called by the UsbRequest stub.
+ */
+public class UsbDeviceConnection {
+
+	public int bulkTransfer(UsbEndpoint endpoint, byte[] buffer, int length, int timeout) {
+		return -1;
+	}
+
+	public int controlTransfer(int requestType, int request, int value, int index,
+			byte[] buffer, int length, int timeout) {
+		return -1;
+	}
+
+	public UsbRequest requestWait() {
+		return null;
+	}
+
+	public void close() {
+	}
+
+	protected boolean queue(UsbRequest request, ByteBuffer buffer, int length) {
+		return false;
+	}
+
+	protected boolean cancel(UsbRequest request) {
+		return false;
+	}
+}
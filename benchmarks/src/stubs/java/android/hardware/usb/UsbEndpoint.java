@@ -0,0 +1,19 @@
+package android.hardware.usb;
+
+/**
+ * Host stub of android.hardware.usb.UsbEndpoint
+ */
+public class UsbEndpoint {
+
+	private final int mAddress;
+	private final int mMaxPacketSize;
+
+	public UsbEndpoint(int address, int maxPacketSize) {
+		mAddress = address;
+		mMaxPacketSize = maxPacketSize;
+	}
+
+	public int getAddress() { return mAddress; }
+	public int getDirection() { return mAddress & 0x80; }
+	public int getMaxPacketSize() { return mMaxPacketSize; }
+}
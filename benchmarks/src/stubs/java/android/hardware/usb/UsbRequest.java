@@ -0,0 +1,41 @@
+package android.hardware.usb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Host stub of android.hardware.usb.UsbRequest. Transfers are passed to
+ * the UsbDeviceConnection, simulated by the benchmark.
+ */
+public class UsbRequest {
+
+	private UsbDeviceConnection mConnection;
+	private UsbEndpoint mEndpoint;
+	private Object mClientData;
+
+	public boolean initialize(UsbDeviceConnection connection, UsbEndpoint endpoint) {
+		mConnection = connection;
+		mEndpoint = endpoint;
+		return true;
+	}
+
+	public void close() {
+		mConnection = null;
+	}
+
+	public UsbEndpoint getEndpoint() { return mEndpoint; }
+
+	public Object getClientData() { return mClientData; }
+
+	public void setClientData(Object data) { mClientData = data; }
+
+	/**
+	 * On completion the position of the buffer is the length of the transfer
+	 */
+	public boolean queue(ByteBuffer buffer, int length) {
+		return mConnection != null && mConnection.queue(this, buffer, length);
+	}
+
+	public boolean cancel() {
+		return mConnection != null && mConnection.cancel(this);
+	}
+}
@@ -0,0 +1,14 @@
+package android.location;
+
+/**
+ * Host stub of android.location.GpsSatellite
+ */
+public final class GpsSatellite {
+	public int getPrn() { return 0; }
+	public float getSnr() { return 0; }
+	public float getElevation() { return 0; }
+	public float getAzimuth() { return 0; }
+	public boolean hasEphemeris() { return false; }
+	public boolean hasAlmanac() { return false; }
+	public boolean usedInFix() { return false; }
+}
@@ -0,0 +1,21 @@
+package android.location;
+
+import java.util.Collections;
+
+/**
+ * Host stub of android.location.GpsStatus
+ */
+public final class GpsStatus {
+	public static final int GPS_EVENT_STARTED = 1;
+	public static final int GPS_EVENT_STOPPED = 2;
+	public static final int GPS_EVENT_FIRST_FIX = 3;
+	public static final int GPS_EVENT_SATELLITE_STATUS = 4;
+
+	public int getTimeToFirstFix() {
+		return 0;
+	}
+
+	public Iterable<GpsSatellite> getSatellites() {
+		return Collections.emptyList();
+	}
+}
@@ -0,0 +1,126 @@
+package android.location;
+
+import android.os.Bundle;
+
+/**
+ * Host stub of android.location.Location. Copies the extras bundle
+ * like the platform class does.
+ */
+public class Location {
+	private String mProvider;
+	private long mTime;
+	private double mLatitude;
+	private double mLongitude;
+	private boolean mHasAltitude;
+	private double mAltitude;
+	private boolean mHasSpeed;
+	private float mSpeed;
+	private boolean mHasBearing;
+	private float mBearing;
+	private boolean mHasAccuracy;
+	private float mAccuracy;
+	private Bundle mExtras;
+
+	public Location(String provider) {
+		mProvider = provider;
+	}
+
+	public Location(Location l) {
+		set(l);
+	}
+
+	public void set(Location l) {
+		mProvider = l.mProvider;
+		mTime = l.mTime;
+		mLatitude = l.mLatitude;
+		mLongitude = l.mLongitude;
+		mHasAltitude = l.mHasAltitude;
+		mAltitude = l.mAltitude;
+		mHasSpeed = l.mHasSpeed;
+		mSpeed = l.mSpeed;
+		mHasBearing = l.mHasBearing;
+		mBearing = l.mBearing;
+		mHasAccuracy = l.mHasAccuracy;
+		mAccuracy = l.mAccuracy;
+		mExtras = (l.mExtras == null) ? null : new Bundle(l.mExtras);
+	}
+
+	public void reset() {
+		mProvider = null;
+		mTime = 0;
+		mLatitude = 0;
+		mLongitude = 0;
+		mHasAltitude = false;
+		mAltitude = 0;
+		mHasSpeed = false;
+		mSpeed = 0;
+		mHasBearing = false;
+		mBearing = 0;
+		mHasAccuracy = false;
+		mAccuracy = 0;
+		mExtras = null;
+	}
+
+	/**
+	 * Spherical approximation, good enough for the host runs
+	 */
+	public static void distanceBetween(double startLatitude, double startLongitude,
+			double endLatitude, double endLongitude, float[] results) {
+		final double r = 6371008.8;
+		final double dLat = Math.toRadians(endLatitude - startLatitude);
+		final double dLon = Math.toRadians(endLongitude - startLongitude);
+		final double a = Math.sin(dLat/2) * Math.sin(dLat/2)
+				+ Math.cos(Math.toRadians(startLatitude)) * Math.cos(Math.toRadians(endLatitude))
+				* Math.sin(dLon/2) * Math.sin(dLon/2);
+		results[0] = (float)(2 * r * Math.atan2(Math.sqrt(a), Math.sqrt(1-a)));
+	}
+
+	public float distanceTo(Location dest) {
+		float[] results = new float[1];
+		distanceBetween(mLatitude, mLongitude, dest.mLatitude, dest.mLongitude, results);
+		return results[0];
+	}
+
+	public String getProvider() { return mProvider; }
+	public void setProvider(String provider) { mProvider = provider; }
+
+	public long getTime() { return mTime; }
+	public void setTime(long time) { mTime = time; }
+
+	public double getLatitude() { return mLatitude; }
+	public void setLatitude(double latitude) { mLatitude = latitude; }
+
+	public double getLongitude() { return mLongitude; }
+	public void setLongitude(double longitude) { mLongitude = longitude; }
+
+	public boolean hasAltitude() { return mHasAltitude; }
+	public double getAltitude() { return mAltitude; }
+	public void setAltitude(double altitude) { mAltitude = altitude; mHasAltitude = true; }
+	public void removeAltitude() { mAltitude = 0; mHasAltitude = false; }
+
+	public boolean hasSpeed() { return mHasSpeed; }
+	public float getSpeed() { return mSpeed; }
+	public void setSpeed(float speed) { mSpeed = speed; mHasSpeed = true; }
+	public void removeSpeed() { mSpeed = 0; mHasSpeed = false; }
+
+	public boolean hasBearing() { return mHasBearing; }
+	public float getBearing() { return mBearing; }
+	public void setBearing(float bearing) { mBearing = bearing; mHasBearing = true; }
+	public void removeBearing() { mBearing = 0; mHasBearing = false; }
+
+	public boolean hasAccuracy() { return mHasAccuracy; }
+	public float getAccuracy() { return mAccuracy; }
+	public void setAccuracy(float accuracy) { mAccuracy = accuracy; mHasAccuracy = true; }
+	public void removeAccuracy() { mAccuracy = 0; mHasAccuracy = false; }
+
+	public Bundle getExtras() { return mExtras; }
+	public void setExtras(Bundle extras) { mExtras = (extras == null) ? null : new Bundle(extras); }
+
+	@Override
+	public String toString() {
+		return "Location[" + mProvider + " " + mLatitude + "," + mLongitude
+				+ (mHasAltitude ? " alt=" + mAltitude : "")
+				+ (mHasAccuracy ? " acc=" + mAccuracy : "")
+				+ " t=" + mTime + "]";
+	}
+}
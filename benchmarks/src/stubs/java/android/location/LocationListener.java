@@ -0,0 +1,13 @@
+package android.location;
+
+import android.os.Bundle;
+
+/**
+ * Host stub of android.location.LocationListener
+ */
+public interface LocationListener {
+	void onLocationChanged(Location location);
+	void onStatusChanged(String provider, int status, Bundle extras);
+	void onProviderEnabled(String provider);
+	void onProviderDisabled(String provider);
+}
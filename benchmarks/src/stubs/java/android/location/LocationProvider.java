@@ -0,0 +1,10 @@
+package android.location;
+
+/**
+ * Host stub of android.location.LocationProvider
+ */
+public class LocationProvider {
+	public static final int OUT_OF_SERVICE = 0;
+	public static final int TEMPORARILY_UNAVAILABLE = 1;
+	public static final int AVAILABLE = 2;
+}
@@ -0,0 +1,152 @@
+package android.net;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Host stub of android.net.Uri: hierarchical "scheme://authority/path?query"
+ * URIs only, no fragment.
+ */
+public final class Uri {
+
+	public static final class Builder {
+		private final Uri uri;
+		private final StringBuilder query;
+
+		private Builder(Uri uri) {
+			this.uri = uri;
+			this.query = new StringBuilder(uri.query == null ? "" : uri.query);
+		}
+
+		public Builder appendQueryParameter(String key, String value) {
+			if (query.length() > 0) query.append('&');
+			query.append(encode(key)).append('=').append(encode(value));
+			return this;
+		}
+
+		public Uri build() {
+			return new Uri(uri.scheme, uri.authority, uri.pathSegments, query.length() == 0 ? null : query.toString());
+		}
+	}
+
+	private final String scheme;
+	private final String authority;
+	private final List<String> pathSegments;
+	private final String query;
+	private final String string;
+
+	private Uri(String scheme, String authority, List<String> pathSegments, String query) {
+		final StringBuilder sb = new StringBuilder();
+
+		this.scheme = scheme;
+		this.authority = authority;
+		this.pathSegments = Collections.unmodifiableList(pathSegments);
+		this.query = query;
+		sb.append(scheme).append("://").append(authority);
+		for (String s: pathSegments) sb.append('/').append(s);
+		if (query != null) sb.append('?').append(query);
+		this.string = sb.toString();
+	}
+
+	public static Uri parse(String uriString) {
+		final int schemeEnd = uriString.indexOf("://");
+		final int queryStart = uriString.indexOf('?');
+		final String rest;
+		final int authorityEnd;
+		final List<String> segments = new ArrayList<String>();
+
+		if (schemeEnd < 0) throw new IllegalArgumentException("Unsupported URI: " + uriString);
+		rest = uriString.substring(schemeEnd + 3, queryStart < 0 ? uriString.length() : queryStart);
+		authorityEnd = rest.indexOf('/');
+		if (authorityEnd >= 0) {
+			for (String s: rest.substring(authorityEnd + 1).split("/")) {
+				if (!s.isEmpty()) segments.add(s);
+			}
+		}
+		return new Uri(uriString.substring(0, schemeEnd),
+				authorityEnd < 0 ? rest : rest.substring(0, authorityEnd),
+				segments, queryStart < 0 ? null : uriString.substring(queryStart + 1));
+	}
+
+	public static Uri withAppendedPath(Uri baseUri, String pathSegment) {
+		final List<String> segments = new ArrayList<String>(baseUri.pathSegments);
+		for (String s: pathSegment.split("/")) {
+			if (!s.isEmpty()) segments.add(s);
+		}
+		return new Uri(baseUri.scheme, baseUri.authority, segments, baseUri.query);
+	}
+
+	public Builder buildUpon() {
+		return new Builder(this);
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public String getQueryParameter(String key) {
+		if (query == null) return null;
+		for (String p: query.split("&")) {
+			final int eq = p.indexOf('=');
+			if (decode(eq < 0 ? p : p.substring(0, eq)).equals(key)) return eq < 0 ? "" : decode(p.substring(eq + 1));
+		}
+		return null;
+	}
+
+	public String getScheme() {
+		return scheme;
+	}
+
+	public String getAuthority() {
+		return authority;
+	}
+
+	public List<String> getPathSegments() {
+		return pathSegments;
+	}
+
+	public String getLastPathSegment() {
+		return pathSegments.isEmpty() ? null : pathSegments.get(pathSegments.size() - 1);
+	}
+
+	public String getPath() {
+		final StringBuilder sb = new StringBuilder();
+		for (String s: pathSegments) sb.append('/').append(s);
+		return sb.toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return (o instanceof Uri) && string.equals(((Uri)o).string);
+	}
+
+	@Override
+	public int hashCode() {
+		return string.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return string;
+	}
+
+	private static String encode(String s) {
+		try {
+			return URLEncoder.encode(s, "UTF-8");
+		}catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String decode(String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		}catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * Host stub of android.os.Build
+ */
+public class Build {
+
+	public static class VERSION {
+		/**
+		 * Host only: not final, hosts set it to run the code paths of
+		 * another release
+		 */
+		public static int SDK_INT = 16;
+	}
+
+	public static class VERSION_CODES {
+		public static final int GINGERBREAD = 9;
+		public static final int HONEYCOMB = 11;
+		public static final int ICE_CREAM_SANDWICH = 14;
+		public static final int JELLY_BEAN = 16;
+	}
+}
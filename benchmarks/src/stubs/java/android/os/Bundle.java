@@ -0,0 +1,59 @@
+package android.os;
+
+import java.util.HashMap;
+
+/**
+ * Host stub of android.os.Bundle backed by a HashMap
+ */
+public final class Bundle {
+	private final HashMap<String, Object> mMap;
+
+	public Bundle() {
+		mMap = new HashMap<String, Object>();
+	}
+
+	public Bundle(int capacity) {
+		mMap = new HashMap<String, Object>(capacity);
+	}
+
+	public Bundle(Bundle b) {
+		mMap = new HashMap<String, Object>(b.mMap);
+	}
+
+	public void clear() { mMap.clear(); }
+	public int size() { return mMap.size(); }
+	public boolean isEmpty() { return mMap.isEmpty(); }
+	public boolean containsKey(String key) { return mMap.containsKey(key); }
+	public Object get(String key) { return mMap.get(key); }
+
+	public void putInt(String key, int value) { mMap.put(key, value); }
+	public void putLong(String key, long value) { mMap.put(key, value); }
+	public void putFloat(String key, float value) { mMap.put(key, value); }
+	public void putDouble(String key, double value) { mMap.put(key, value); }
+	public void putString(String key, String value) { mMap.put(key, value); }
+
+	public int getInt(String key) {
+		Object o = mMap.get(key);
+		return o instanceof Integer ? (Integer)o : 0;
+	}
+
+	public long getLong(String key) {
+		Object o = mMap.get(key);
+		return o instanceof Long ? (Long)o : 0L;
+	}
+
+	public float getFloat(String key) {
+		Object o = mMap.get(key);
+		return o instanceof Float ? (Float)o : 0.0f;
+	}
+
+	public double getDouble(String key) {
+		Object o = mMap.get(key);
+		return o instanceof Double ? (Double)o : 0.0;
+	}
+
+	public String getString(String key) {
+		Object o = mMap.get(key);
+		return o instanceof String ? (String)o : null;
+	}
+}
@@ -0,0 +1,21 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * Host stub of android.os.Environment. The external storage is a directory
+ * of java.io.tmpdir, or of the "osmtracker.sdcard" system property.
+ */
+public class Environment {
+
+	public static final String MEDIA_MOUNTED = "mounted";
+
+	public static File getExternalStorageDirectory() {
+		return new File(System.getProperty("osmtracker.sdcard",
+				new File(System.getProperty("java.io.tmpdir"), "osmtracker-sdcard").getPath()));
+	}
+
+	public static String getExternalStorageState() {
+		return MEDIA_MOUNTED;
+	}
+}
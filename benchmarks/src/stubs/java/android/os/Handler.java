@@ -0,0 +1,217 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Host stub of android.os.Handler. There is no message queue on the host:
+ * messages are dispatched synchronously on the sending thread and recycled.
+ * Delayed messages and callbacks are kept pending until they are removed
+ * or run by {@link #runDue()}, there is no looper to run them.
+ */
+public class Handler {
+
+	public interface Callback {
+		boolean handleMessage(Message msg);
+	}
+
+	/* Handlers with delayed messages or callbacks */
+	private static final Set<Handler> sDelaying = Collections.newSetFromMap(new WeakHashMap<Handler, Boolean>());
+
+	private final Callback mCallback;
+	private final ArrayList<Object> mDelayed = new ArrayList<Object>();
+
+	/* SystemClock.uptimeMillis() when the delayed item of the same index is due */
+	private final ArrayList<Long> mDue = new ArrayList<Long>();
+
+	public Handler() {
+		this((Callback)null);
+	}
+
+	public Handler(Callback callback) {
+		mCallback = callback;
+	}
+
+	public Handler(Looper looper) {
+		this((Callback)null);
+	}
+
+	public Handler(Looper looper, Callback callback) {
+		this(callback);
+	}
+
+	public void handleMessage(Message msg) {
+	}
+
+	public void dispatchMessage(Message msg) {
+		if (mCallback != null && mCallback.handleMessage(msg)) {
+			return;
+		}
+		handleMessage(msg);
+	}
+
+	public final Message obtainMessage() {
+		return obtainMessage(0, 0, 0, null);
+	}
+
+	public final Message obtainMessage(int what) {
+		return obtainMessage(what, 0, 0, null);
+	}
+
+	public final Message obtainMessage(int what, Object obj) {
+		return obtainMessage(what, 0, 0, obj);
+	}
+
+	public final Message obtainMessage(int what, int arg1, int arg2) {
+		return obtainMessage(what, arg1, arg2, null);
+	}
+
+	public final Message obtainMessage(int what, int arg1, int arg2, Object obj) {
+		Message m = Message.obtain();
+		m.what = what;
+		m.arg1 = arg1;
+		m.arg2 = arg2;
+		m.obj = obj;
+		m.target = this;
+		return m;
+	}
+
+	public final boolean sendMessage(Message msg) {
+		msg.target = this;
+		dispatchMessage(msg);
+		msg.recycle();
+		return true;
+	}
+
+	public final boolean sendMessageDelayed(Message msg, long delayMillis) {
+		if (delayMillis <= 0) return sendMessage(msg);
+		msg.target = this;
+		delay(msg, delayMillis);
+		return true;
+	}
+
+	public final boolean sendEmptyMessage(int what) {
+		return sendMessage(obtainMessage(what));
+	}
+
+	public final boolean sendEmptyMessageDelayed(int what, long delayMillis) {
+		return sendMessageDelayed(obtainMessage(what), delayMillis);
+	}
+
+	public final boolean post(Runnable r) {
+		r.run();
+		return true;
+	}
+
+	public final boolean postDelayed(Runnable r, long delayMillis) {
+		if (delayMillis <= 0) return post(r);
+		delay(r, delayMillis);
+		return true;
+	}
+
+	private void delay(Object o, long delayMillis) {
+		synchronized (mDelayed) {
+			mDelayed.add(o);
+			mDue.add(SystemClock.uptimeMillis() + delayMillis);
+		}
+		synchronized (sDelaying) {
+			sDelaying.add(this);
+		}
+	}
+
+	/**
+	 * Host only: runs the delayed messages and callbacks of all handlers
+	 * that are due at SystemClock.uptimeMillis(), on the calling thread
+	 * @return Number of the messages and callbacks run
+	 */
+	public static int runDue() {
+		final ArrayList<Handler> handlers;
+		int n = 0;
+
+		synchronized (sDelaying) {
+			handlers = new ArrayList<Handler>(sDelaying);
+		}
+		for (Handler h: handlers) {
+			for (;;) {
+				final Object o = h.takeDue(SystemClock.uptimeMillis());
+				if (o == null) break;
+				if (o instanceof Message) {
+					h.dispatchMessage((Message)o);
+					((Message)o).recycle();
+				}else {
+					((Runnable)o).run();
+				}
+				n++;
+			}
+		}
+		return n;
+	}
+
+	private Object takeDue(long now) {
+		synchronized (mDelayed) {
+			int first = -1;
+			for (int i = 0; i < mDelayed.size(); ++i) {
+				if (mDue.get(i) <= now && (first < 0 || mDue.get(i) < mDue.get(first))) first = i;
+			}
+			if (first < 0) return null;
+			mDue.remove(first);
+			return mDelayed.remove(first);
+		}
+	}
+
+	/**
+	 * Host only
+	 * @return Number of the pending delayed messages and callbacks
+	 */
+	public final int getDelayedCount() {
+		synchronized (mDelayed) {
+			return mDelayed.size();
+		}
+	}
+
+	public final boolean hasMessages(int what) {
+		synchronized (mDelayed) {
+			for (Object o: mDelayed) {
+				if ((o instanceof Message) && ((Message)o).what == what) return true;
+			}
+		}
+		return false;
+	}
+
+	public final void removeMessages(int what) {
+		synchronized (mDelayed) {
+			for (int i = mDelayed.size() - 1; i >= 0; --i) {
+				final Object o = mDelayed.get(i);
+				if ((o instanceof Message) && ((Message)o).what == what) {
+					mDelayed.remove(i);
+					mDue.remove(i);
+				}
+			}
+		}
+	}
+
+	public final void removeCallbacks(Runnable r) {
+		synchronized (mDelayed) {
+			for (int i = mDelayed.size() - 1; i >= 0; --i) {
+				if (mDelayed.get(i) == r) {
+					mDelayed.remove(i);
+					mDue.remove(i);
+				}
+			}
+		}
+	}
+
+	public final void removeCallbacksAndMessages(Object token) {
+		if (token != null) return;
+		synchronized (mDelayed) {
+			mDelayed.clear();
+			mDue.clear();
+		}
+	}
+
+	public final Looper getLooper() {
+		return Looper.getMainLooper();
+	}
+}
@@ -0,0 +1,45 @@
+package android.os;
+
+/**
+ * Host stub of android.os.HandlerThread. Handlers run their messages on
+ * the sending thread on the host, so the thread only waits for quit().
+ */
+public class HandlerThread extends Thread {
+
+	private final Object mLock = new Object();
+	private boolean mQuit;
+
+	public HandlerThread(String name) {
+		super(name);
+		setDaemon(true);
+	}
+
+	public HandlerThread(String name, int priority) {
+		this(name);
+	}
+
+	@Override
+	public void run() {
+		synchronized (mLock) {
+			while (!mQuit) {
+				try {
+					mLock.wait();
+				}catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	public Looper getLooper() {
+		return Looper.getMainLooper();
+	}
+
+	public boolean quit() {
+		synchronized (mLock) {
+			mQuit = true;
+			mLock.notifyAll();
+		}
+		return true;
+	}
+}
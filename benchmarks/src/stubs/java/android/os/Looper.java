@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * Host stub of android.os.Looper
+ */
+public final class Looper {
+	private static final Looper sMainLooper = new Looper();
+
+	private Looper() {
+	}
+
+	public static Looper getMainLooper() {
+		return sMainLooper;
+	}
+
+	public static Looper myLooper() {
+		return sMainLooper;
+	}
+}
@@ -0,0 +1,69 @@
+package android.os;
+
+/**
+ * Host stub of android.os.Message with the same recycling pool
+ * as the platform class.
+ */
+public final class Message {
+	private static final int MAX_POOL_SIZE = 50;
+	private static final Object sPoolSync = new Object();
+	private static Message sPool;
+	private static int sPoolSize = 0;
+
+	public int what;
+	public int arg1;
+	public int arg2;
+	public Object obj;
+
+	Handler target;
+	Bundle data;
+	Message next;
+
+	public static Message obtain() {
+		synchronized (sPoolSync) {
+			if (sPool != null) {
+				Message m = sPool;
+				sPool = m.next;
+				m.next = null;
+				sPoolSize--;
+				return m;
+			}
+		}
+		return new Message();
+	}
+
+	public void recycle() {
+		what = arg1 = arg2 = 0;
+		obj = null;
+		target = null;
+		data = null;
+		synchronized (sPoolSync) {
+			if (sPoolSize < MAX_POOL_SIZE) {
+				next = sPool;
+				sPool = this;
+				sPoolSize++;
+			}
+		}
+	}
+
+	public Bundle getData() {
+		if (data == null) data = new Bundle();
+		return data;
+	}
+
+	public Bundle peekData() {
+		return data;
+	}
+
+	public void setData(Bundle b) {
+		data = b;
+	}
+
+	public Handler getTarget() {
+		return target;
+	}
+
+	public void sendToTarget() {
+		target.sendMessage(this);
+	}
+}
@@ -0,0 +1,37 @@
+package android.os;
+
+/**
+ * Host stub of android.os.SystemClock. Hosts can replace the uptime
+ * clock with a simulated one, see {@link #setUptimeMillis(long)}.
+ */
+public final class SystemClock {
+
+	private static volatile long sUptimeMillis = -1;
+
+	private SystemClock() {
+	}
+
+	public static long uptimeMillis() {
+		final long t = sUptimeMillis;
+		return t >= 0 ? t : System.nanoTime() / 1000000L;
+	}
+
+	/**
+	 * Host only: sets the simulated uptime, -1 to use the system clock again
+	 */
+	public static void setUptimeMillis(long t) {
+		sUptimeMillis = t;
+	}
+
+	public static long elapsedRealtime() {
+		return System.nanoTime() / 1000000L;
+	}
+
+	public static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
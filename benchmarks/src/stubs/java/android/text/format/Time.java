@@ -0,0 +1,79 @@
+package android.text.format;
+
+/**
+ * Host stub of android.text.format.Time. Only UTC is supported.
+ * Conversions are done arithmetically so that the stub does not
+ * allocate and does not distort allocation numbers.
+ */
+public class Time {
+	public int second;
+	public int minute;
+	public int hour;
+	public int monthDay;
+	public int month;
+	public int year;
+	public String timezone;
+
+	public Time(String timezone) {
+		this.timezone = timezone;
+	}
+
+	public Time() {
+		this("UTC");
+	}
+
+	public void set(int second, int minute, int hour, int monthDay, int month, int year) {
+		this.second = second;
+		this.minute = minute;
+		this.hour = hour;
+		this.monthDay = monthDay;
+		this.month = month;
+		this.year = year;
+	}
+
+	public void set(long millis) {
+		long days = Math.floorDiv(millis, 86400000L);
+		long secs = Math.floorMod(millis, 86400000L) / 1000L;
+
+		/* civil_from_days() */
+		long z = days + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long doe = z - era * 146097;
+		long yoe = (doe - doe/1460 + doe/36524 - doe/146096) / 365;
+		long doy = doe - (365*yoe + yoe/4 - yoe/100);
+		long mp = (5*doy + 2)/153;
+		long d = doy - (153*mp+2)/5 + 1;
+		long m = mp < 10 ? mp+3 : mp-9;
+		long y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+
+		set((int)(secs % 60), (int)(secs / 60 % 60), (int)(secs / 3600),
+				(int)d, (int)m - 1, (int)y);
+	}
+
+	public void setToNow() {
+		set(System.currentTimeMillis());
+	}
+
+	/**
+	 * Fields are normalized like java.util.Calendar does it.
+	 */
+	public long toMillis(boolean ignoreDst) {
+		long y = year + Math.floorDiv(month, 12);
+		long m = Math.floorMod(month, 12) + 1;
+
+		/* days_from_civil() */
+		y -= m <= 2 ? 1 : 0;
+		long era = Math.floorDiv(y, 400);
+		long yoe = y - era * 400;
+		long doy = (153*(m > 2 ? m-3 : m+9) + 2)/5 + monthDay-1;
+		long doe = yoe * 365 + yoe/4 - yoe/100 + doy;
+		long days = era * 146097 + doe - 719468;
+
+		return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+	}
+
+	public String format3339(boolean allDay) {
+		return String.format("%04d-%02d-%02dT%02d:%02d:%02d.000Z",
+				year, month+1, monthDay, hour, minute, second);
+	}
+}
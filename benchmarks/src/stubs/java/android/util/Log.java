@@ -0,0 +1,21 @@
+package android.util;
+
+/**
+ * Host stub of android.util.Log. Messages are dropped.
+ */
+public final class Log {
+
+	private Log() {
+	}
+
+	public static int v(String tag, String msg) { return 0; }
+	public static int v(String tag, String msg, Throwable tr) { return 0; }
+	public static int d(String tag, String msg) { return 0; }
+	public static int d(String tag, String msg, Throwable tr) { return 0; }
+	public static int i(String tag, String msg) { return 0; }
+	public static int i(String tag, String msg, Throwable tr) { return 0; }
+	public static int w(String tag, String msg) { return 0; }
+	public static int w(String tag, String msg, Throwable tr) { return 0; }
+	public static int e(String tag, String msg) { return 0; }
+	public static int e(String tag, String msg, Throwable tr) { return 0; }
+}
@@ -0,0 +1,41 @@
+package junit.framework;
+
+/**
+ * Host stub of the JUnit 3 junit.framework.Assert of the platform, used
+ * for debug assertions in the gps package
+ */
+public class Assert {
+
+	protected Assert() {
+	}
+
+	public static void assertTrue(boolean condition) {
+		if (!condition) fail();
+	}
+
+	public static void assertEquals(int expected, int actual) {
+		if (expected != actual) fail("expected:<" + expected + "> but was:<" + actual + ">");
+	}
+
+	public static void assertEquals(long expected, long actual) {
+		if (expected != actual) fail("expected:<" + expected + "> but was:<" + actual + ">");
+	}
+
+	public static void assertEquals(Object expected, Object actual) {
+		if (expected == null ? actual != null : !expected.equals(actual)) {
+			fail("expected:<" + expected + "> but was:<" + actual + ">");
+		}
+	}
+
+	public static void assertNotNull(Object object) {
+		if (object == null) fail();
+	}
+
+	public static void fail() {
+		fail(null);
+	}
+
+	public static void fail(String message) {
+		throw new AssertionFailedError(message);
+	}
+}
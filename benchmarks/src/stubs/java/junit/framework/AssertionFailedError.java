@@ -0,0 +1,13 @@
+package junit.framework;
+
+/**
+ * Host stub of the JUnit 3 junit.framework.AssertionFailedError
+ */
+public class AssertionFailedError extends AssertionError {
+
+	private static final long serialVersionUID = 1L;
+
+	public AssertionFailedError(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,23 @@
+package me.guillaumin.android.osmtracker;
+
+/**
+ * Host stub with the constants used by the gps, db and gpx packages.
+ * The real class depends on the Android resources.
+ */
+public class OSMTracker {
+
+	public final static int HDOP_APPROXIMATION_FACTOR = 4;
+
+	public static final boolean DEBUG = false;
+
+	public static final class Preferences {
+		public final static String KEY_GPS_IGNORE_CLOCK = "gps.ignoreclock";
+		public final static boolean VAL_GPS_IGNORE_CLOCK = false;
+		public final static String KEY_DB_SYNCHRONOUS = "db.synchronous";
+		public final static String VAL_DB_SYNCHRONOUS = "NORMAL";
+		public final static String VAL_OUTPUT_ACCURACY_NONE = "none";
+		public final static String VAL_OUTPUT_ACCURACY_WPT_NAME = "wpt_name";
+		public final static String VAL_OUTPUT_ACCURACY_WPT_CMT = "wpt_cmt";
+	}
+
+}
@@ -0,0 +1,14 @@
+package me.guillaumin.android.osmtracker;
+
+/**
+ * Host stub of the generated resource ids used by the db package
+ */
+public final class R {
+
+	public static final class string {
+		public static final int osm_visibility_private = 0x7f060001;
+		public static final int osm_visibility_public = 0x7f060002;
+		public static final int osm_visibility_trackable = 0x7f060003;
+		public static final int osm_visibility_identifiable = 0x7f060004;
+	}
+}
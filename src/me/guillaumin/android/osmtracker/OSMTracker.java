@@ -27,14 +27,18 @@ public class OSMTracker {
 		public final static String KEY_GPS_BUILTIN_RECEIVER = "gps.preferred.location.provider";
 		public final static String KEY_GPS_USB_RECEIVER = "gps.usb.receiver";
 		public final static String KEY_GPS_USB_BAUDRATE = "gps.usb.baudrate";
+		public final static String KEY_GPS_REPLAY_FILE = "gps.replay.file";
+		public final static String KEY_GPS_REPLAY_SPEED = "gps.replay.speed";
 		public final static String KEY_GPS_CHECKSTARTUP = "gps.checkstartup";
 		public final static String KEY_GPS_IGNORE_CLOCK = "gps.ignoreclock";
 		public final static String KEY_GPS_LOGGING_INTERVAL = "gps.logging.interval";
 		public final static String KEY_GPS_LOG_RAW_DATA = "gps.log.raw.data";
+		public final static String KEY_DB_SYNCHRONOUS = "db.synchronous";
 		public final static String KEY_OUTPUT_FILENAME = "gpx.filename";
 		public final static String KEY_OUTPUT_ACCURACY = "gpx.accuracy";
 		public final static String KEY_OUTPUT_GPX_HDOP_APPROXIMATION = "gpx.hdop.approximation";
 		public final static String KEY_OUTPUT_DIR_PER_TRACK = "gpx.directory_per_track";
+		public final static String KEY_OUTPUT_COMPRESS = "gpx.compress";
 		public final static String KEY_UI_BUTTONS_LAYOUT = "ui.buttons.layout";
 		public final static String KEY_UI_DISPLAYTRACK_OSM = "ui.displaytrack.osm";
 		public final static String KEY_UI_DISPLAY_KEEP_ON = "ui.display_keep_on";
@@ -51,10 +55,12 @@ public class OSMTracker {
 		public final static String VAL_GPS_INTERFACE = ReceiverInterfaces.BUILTIN.name();
 		public final static String VAL_GPS_BUILTIN_RECEIVER = LocationManager.GPS_PROVIDER;
 		public final static String VAL_GPS_USB_BAUDRATE = "4800";
+		public final static String VAL_GPS_REPLAY_SPEED = "1";
 		public final static boolean VAL_GPS_CHECKSTARTUP = true;
 		public final static boolean VAL_GPS_IGNORE_CLOCK = false;
 		public final static String VAL_GPS_LOGGING_INTERVAL = "0";
 		public final static boolean VAL_GPS_LOG_RAW_DATA = false;
+		public final static String VAL_DB_SYNCHRONOUS = "NORMAL";
 		
 		public final static String VAL_OUTPUT_FILENAME_NAME = "name";
 		public final static String VAL_OUTPUT_FILENAME_NAME_DATE = "name_date";
@@ -68,6 +74,7 @@ public class OSMTracker {
 		
 		public final static boolean VAL_OUTPUT_GPX_HDOP_APPROXIMATION = false;
 		public final static boolean VAL_OUTPUT_GPX_OUTPUT_DIR_PER_TRACK = true;
+		public final static boolean VAL_OUTPUT_COMPRESS = false;
 		public final static String VAL_UI_BUTTONS_LAYOUT = "default";
 		
 		public final static boolean VAL_UI_DISPLAYTRACK_OSM = false;
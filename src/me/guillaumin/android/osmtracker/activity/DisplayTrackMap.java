@@ -24,6 +24,7 @@ import android.content.SharedPreferences;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.graphics.Color;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.preference.PreferenceManager;
@@ -191,6 +192,16 @@ public class DisplayTrackMap extends Activity implements OpenStreetMapContributo
     		public void onChange(boolean selfChange) {		
     			pathChanged();		
     		}
+
+    		@Override
+    		public void onChange(boolean selfChange, Uri uri) {
+    			// API 16+: skip the query if the inserted points were already read
+    			long lastId = TrackContentProvider.getLastRowId(uri);
+    			if (lastId != -1 && lastTrackPointIdProcessed != null && lastId <= lastTrackPointIdProcessed) {
+    				return;
+    			}
+    			pathChanged();
+    		}
     	};
         
         // Register listeners for zoom buttons
@@ -6,7 +6,6 @@ import me.guillaumin.android.osmtracker.db.TrackContentProvider;
 import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
 import me.guillaumin.android.osmtracker.db.model.Track;
 import me.guillaumin.android.osmtracker.db.model.Track.OSMVisibility;
-import me.guillaumin.android.osmtracker.gpx.ExportToTempFileTask;
 import me.guillaumin.android.osmtracker.osm.OpenStreetMapConstants;
 import me.guillaumin.android.osmtracker.osm.RetrieveAccessTokenTask;
 import me.guillaumin.android.osmtracker.osm.RetrieveRequestTokenTask;
@@ -148,18 +147,13 @@ public class OpenStreetMapUpload extends TrackDetailEditor {
 	}
 
 	/**
-	 * Exports track on disk then upload to OSM.
+	 * Uploads the track to OSM, straight from the database.
 	 */
 	public void uploadToOsm() {
-		new ExportToTempFileTask(this, trackId) {
-			@Override
-			protected void executionCompleted() {
-				new UploadToOpenStreetMapTask(OpenStreetMapUpload.this, trackId, oAuthConsumer, this.getTmpFile(),
-						this.getFilename(), etDescription.getText().toString(), etTags.getText().toString(),
-						OSMVisibility.fromPosition(OpenStreetMapUpload.this.spVisibility.getSelectedItemPosition()))
-							.execute();
-			}
-		}.execute();
+		new UploadToOpenStreetMapTask(this, trackId, oAuthConsumer,
+				etDescription.getText().toString(), etTags.getText().toString(),
+				OSMVisibility.fromPosition(spVisibility.getSelectedItemPosition()))
+					.execute();
 	}
 
 }
@@ -212,6 +212,8 @@ public class Preferences extends PreferenceActivity {
 				newIface == ReceiverInterfaces.BLUETOOTH);
 		findPreference("gps.usb.category").setEnabled(
 				newIface == ReceiverInterfaces.USB);
+		findPreference("gps.replay.category").setEnabled(
+				newIface == ReceiverInterfaces.REPLAY);
 
 		switch (newIface) {
 			case BUILTIN:
@@ -223,6 +225,9 @@ public class Preferences extends PreferenceActivity {
 			case USB:
 				populateUsbGpsPreference();
 				break;
+			case REPLAY:
+				populateReplayGpsPreference();
+				break;
 		}
 	}
 
@@ -465,6 +470,57 @@ public class Preferences extends PreferenceActivity {
 	}
 
 
+	private void populateReplayGpsPreference() {
+		ListPreference lpref;
+
+		/* Raw data logs */
+		updateReplayReceiversList();
+		lpref = (ListPreference)findPreference(OSMTracker.Preferences.KEY_GPS_REPLAY_FILE);
+		lpref.setOnPreferenceChangeListener(new OnPreferenceChangeListener() {
+			@Override
+			public boolean onPreferenceChange(Preference preference, Object newValue) {
+				return updateReplayReceiversSummary(preference, newValue);
+			}
+		});
+		updateReplayReceiversSummary(lpref, lpref.getValue());
+	}
+
+	private boolean updateReplayReceiversSummary(Preference preference, Object newValue) {
+		if (newValue == null) {
+			preference.setSummary("");
+		}else {
+			Receiver r;
+
+			r = ReceiverInterfaces.REPLAY.getInterface(this).getReceiver(newValue.toString());
+			preference.setSummary(r.getName());
+		}
+
+		return true;
+	}
+
+	private void updateReplayReceiversList()
+	{
+		ListPreference lf;
+		List<Receiver> receivers;
+		String entries[], values[];
+
+		lf = (ListPreference) findPreference(OSMTracker.Preferences.KEY_GPS_REPLAY_FILE);
+		receivers = ReceiverInterfaces.REPLAY.getInterface(this).getAllReceivers();
+
+		entries = new String[receivers.size()];
+		values = new String[receivers.size()];
+		for (int i=0; i < receivers.size(); ++i) {
+			values[i] = receivers.get(i).getAddress();
+			entries[i] = receivers.get(i).getName();
+		}
+
+		lf.setEntries(entries);
+		lf.setEntryValues(values);
+		if ((lf.getValue() == null) && (entries.length > 0))
+			lf.setValue(values[0]);
+	}
+
+
 	protected void onActivityResult(int requestCode, int resultCode,
             Intent data) {
 		if (requestCode == GPS_SETTINGS_REQUEST)
@@ -1,7 +1,6 @@
 package me.guillaumin.android.osmtracker.activity;
 
 import java.io.File;
-import java.util.Date;
 
 import me.guillaumin.android.osmtracker.OSMTracker;
 import me.guillaumin.android.osmtracker.R;
@@ -529,7 +528,7 @@ public class TrackLogger extends FragmentActivity {
 		// Ensure that this location can be written to 
 		if (trackDir.exists() && trackDir.canWrite()) {
 			currentImageFile = new File(trackDir, 
-					DataHelper.FILENAME_FORMATTER.format(new Date()) + DataHelper.EXTENSION_JPG);			
+					DataHelper.formatFilename(System.currentTimeMillis()) + DataHelper.EXTENSION_JPG);			
 		} else {
 			Log.w(TAG, "The directory [" + trackDir.getAbsolutePath() + "] will not allow files to be created");
 		}
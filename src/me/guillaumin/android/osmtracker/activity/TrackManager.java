@@ -10,7 +10,9 @@ import me.guillaumin.android.osmtracker.db.TrackContentProvider;
 import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
 import me.guillaumin.android.osmtracker.db.TracklistAdapter;
 import me.guillaumin.android.osmtracker.exception.CreateTrackException;
+import me.guillaumin.android.osmtracker.gpx.ExportAllTracksTask;
 import me.guillaumin.android.osmtracker.gpx.ExportToStorageTask;
+import me.guillaumin.android.osmtracker.gpx.ExportToZipTask;
 import me.guillaumin.android.osmtracker.util.FileSystemUtils;
 import android.app.AlertDialog;
 import android.app.ListActivity;
@@ -232,15 +234,7 @@ public class TrackManager extends ListActivity {
 				.setPositiveButton(R.string.menu_exportall, new OnClickListener() {
 					@Override
 					public void onClick(DialogInterface dialog, int which) {
-						Cursor cursor = getContentResolver().query(TrackContentProvider.CONTENT_URI_TRACK,
-								null, null, null, Schema.COL_START_DATE + " desc");
-						if (cursor.moveToFirst()) {
-							int id_col = cursor.getColumnIndex(Schema.COL_ID);
-							do {
-								new ExportToStorageTask(TrackManager.this, cursor.getLong(id_col)).execute();
-							} while (cursor.moveToNext());
-						}
-						cursor.close();
+						new ExportAllTracksTask(TrackManager.this).execute();
 					}
 				})
 				.setNegativeButton(android.R.string.cancel, new OnClickListener() {
@@ -250,6 +244,9 @@ public class TrackManager extends ListActivity {
 					}
 				}).create().show();
 			break;
+		case R.id.trackmgr_menu_exportzip:
+			exportAllTracksToZip();
+			break;
 		case R.id.trackmgr_menu_settings:
 			// Start settings activity
 			startActivity(new Intent(this, Preferences.class));
@@ -439,6 +436,23 @@ public class TrackManager extends ListActivity {
 		cursor.close();
 	}
 
+	/**
+	 * Exports all tracks and their media into one ZIP file, oldest first
+	 */
+	private void exportAllTracksToZip() {
+		Cursor cursor = getContentResolver().query(TrackContentProvider.CONTENT_URI_TRACK,
+				new String[] {Schema.COL_ID}, null, null, Schema.COL_START_DATE + " asc");
+		long[] trackIds = new long[cursor.getCount()];
+		for (int i = 0; cursor.moveToNext(); i++) {
+			trackIds[i] = cursor.getLong(0);
+		}
+		cursor.close();
+
+		if (trackIds.length > 0) {
+			new ExportToZipTask(this, trackIds).execute();
+		}
+	}
+
 	/**
 	 * Sets the active track
 	 * calls {@link stopActiveTrack()} to stop all currently 
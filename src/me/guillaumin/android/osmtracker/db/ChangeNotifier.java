@@ -0,0 +1,115 @@
+package me.guillaumin.android.osmtracker.db;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Coalesces the insertion notifications of {@link TrackContentProvider}:
+ * each Uri is notified at most once per window. Insertions during the
+ * window are merged into one notification of the range of the inserted
+ * row ids, see {@link TrackContentProvider#rowIdRangeUri(Uri, long, long)},
+ * sent when the window ends.
+ *
+ * The first insertion after a quiet window is notified immediately, on the
+ * inserting thread; delayed notifications are sent on the thread of the
+ * handler.
+ */
+final class ChangeNotifier {
+
+	/**
+	 * Notification state of an Uri
+	 */
+	private final class State implements Runnable {
+		final Uri uri;
+
+		/**
+		 * Uptime of the last notification
+		 */
+		long notifiedAt;
+
+		/**
+		 * Range of the rows inserted since the last notification,
+		 * firstId is -1 if there is none
+		 */
+		long firstId = -1;
+		long lastId;
+
+		State(Uri uri) {
+			this.uri = uri;
+		}
+
+		@Override
+		public void run() {
+			final long first, last;
+			synchronized (ChangeNotifier.this) {
+				first = firstId;
+				last = lastId;
+				firstId = -1;
+				notifiedAt = SystemClock.uptimeMillis();
+			}
+			if (first != -1) {
+				notifyRange(uri, first, last);
+			}
+		}
+	}
+
+	private final ContentResolver contentResolver;
+
+	private final Handler handler;
+
+	private final long windowMs;
+
+	private final Map<Uri, State> states = new HashMap<Uri, State>();
+
+	/**
+	 * @param handler Handler of the thread of the delayed notifications
+	 * @param windowMs Minimum time between two notifications of an Uri
+	 */
+	ChangeNotifier(ContentResolver contentResolver, Handler handler, long windowMs) {
+		this.contentResolver = contentResolver;
+		this.handler = handler;
+		this.windowMs = windowMs;
+	}
+
+	/**
+	 * Notifies the insertion of rows, immediately or at the end of the
+	 * window of the Uri
+	 * @param uri Uri of the table of the rows
+	 * @param firstId Id of the first inserted row
+	 * @param lastId Id of the last inserted row
+	 */
+	void rowsInserted(Uri uri, long firstId, long lastId) {
+		synchronized (this) {
+			State s = states.get(uri);
+			if (s == null) {
+				s = new State(uri);
+				states.put(uri, s);
+			} else if (s.firstId != -1) {
+				// Already scheduled
+				s.firstId = Math.min(s.firstId, firstId);
+				s.lastId = Math.max(s.lastId, lastId);
+				return;
+			} else {
+				final long delay = s.notifiedAt + windowMs - SystemClock.uptimeMillis();
+				if (delay > 0) {
+					s.firstId = firstId;
+					s.lastId = lastId;
+					handler.postDelayed(s, delay);
+					return;
+				}
+			}
+			s.notifiedAt = SystemClock.uptimeMillis();
+		}
+		notifyRange(uri, firstId, lastId);
+	}
+
+	private void notifyRange(Uri uri, long firstId, long lastId) {
+		contentResolver.notifyChange(TrackContentProvider.rowIdRangeUri(uri, firstId, lastId), null);
+	}
+
+}
@@ -2,6 +2,7 @@ package me.guillaumin.android.osmtracker.db;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.Date;
 
 import me.guillaumin.android.osmtracker.OSMTracker;
 import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
@@ -32,6 +33,11 @@ public class DataHelper {
 	 */
 	public static final String EXTENSION_GPX = ".gpx";
 
+	/**
+	 * Gzip extension, after {@link #EXTENSION_GPX} for compressed GPX files
+	 */
+	public static final String EXTENSION_GZ = ".gz";
+
 	/**
 	 * 3GPP extension
 	 */
@@ -54,9 +60,16 @@ public class DataHelper {
 	private static final int MAX_RENAME_ATTEMPTS = 20;
 
 	/**
-	 * Formatter for various files (GPX, media)
+	 * Formatter for various files (GPX, media), one per thread as
+	 * {@link SimpleDateFormat} is not thread-safe and tracks are exported
+	 * on several threads at once. See {@link #formatFilename(long)}.
 	 */
-	public static final SimpleDateFormat FILENAME_FORMATTER = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
+	private static final ThreadLocal<SimpleDateFormat> FILENAME_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
+		}
+	};
 
 	/**
 	 * Context
@@ -80,15 +93,15 @@ public class DataHelper {
 	}
 
 	/**
-	 * Track a point into DB.
+	 * Builds the trackpoint row of a location
 	 * 
 	 * @param trackId
 	 *            Id of the track
 	 * @param location
 	 *            The Location to track
+	 * @return Values of the {@link Schema#TBL_TRACKPOINT} row
 	 */
-	public void track(long trackId, Location location) {
-		Log.v(TAG, "Tracking (trackId=" + trackId + ") location: " + location);
+	ContentValues getTrackPointValues(long trackId, Location location) {
 		ContentValues values = new ContentValues();
 		values.put(Schema.COL_TRACK_ID, trackId);
 		values.put(Schema.COL_LATITUDE, location.getLatitude());
@@ -108,9 +121,7 @@ public class DataHelper {
 			// Use GPS clock
 			values.put(Schema.COL_TIMESTAMP, location.getTime());
 		}
-
-		Uri trackUri = ContentUris.withAppendedId(TrackContentProvider.CONTENT_URI_TRACK, trackId);
-		contentResolver.insert(Uri.withAppendedPath(trackUri, Schema.TBL_TRACKPOINT + "s"), values);
+		return values;
 	}
 
 	/**
@@ -154,7 +165,7 @@ public class DataHelper {
 			}
 			if (link != null) {
 				// Rename file to match location timestamp
-				values.put(Schema.COL_LINK, renameFile(trackId, link, FILENAME_FORMATTER.format(location.getTime())));
+				values.put(Schema.COL_LINK, renameFile(trackId, link, formatFilename(location.getTime())));
 			}
 			
 			SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
@@ -347,4 +358,13 @@ public class DataHelper {
 		return _return;
 	}
 
+	/**
+	 * Formats a date for the name of a file (GPX, media) or of a directory
+	 * @param time Date, in milliseconds
+	 * @return Date as yyyy-MM-dd_HH-mm-ss
+	 */
+	public static String formatFilename(long time) {
+		return FILENAME_FORMATTER.get().format(new Date(time));
+	}
+
 }
@@ -7,11 +7,15 @@ import me.guillaumin.android.osmtracker.OSMTracker;
 import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
 import me.guillaumin.android.osmtracker.db.model.Track.OSMVisibility;
 import me.guillaumin.android.osmtracker.util.FileSystemUtils;
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
 /**
@@ -38,7 +42,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 		+ Schema.COL_TIMESTAMP + " long not null" + ")";
 
 	/**
-	 * SQL for creating index TRACKPOINT_idx (track id)
+	 * SQL for creating index TRACKPOINT_idx (track id). As every SQLite
+	 * index ends with the rowid, it is the (track id, id) index of the
+	 * track start and end and of the points ordered by id.
 	 * @since 12
 	 */
 	private static final String SQL_CREATE_IDX_TRACKPOINT_TRACK
@@ -46,6 +52,16 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 		+ Schema.TBL_TRACKPOINT
 		+ "_idx ON " + Schema.TBL_TRACKPOINT + "(" + Schema.COL_TRACK_ID + ")";
 
+	/**
+	 * SQL for creating index TRACKPOINT_time_idx (track id, timestamp), for
+	 * the points of a track ordered by time
+	 * @since 16
+	 */
+	private static final String SQL_CREATE_IDX_TRACKPOINT_TRACK_TIME
+		= "create index if not exists "
+		+ Schema.TBL_TRACKPOINT
+		+ "_time_idx ON " + Schema.TBL_TRACKPOINT + "(" + Schema.COL_TRACK_ID + ", " + Schema.COL_TIMESTAMP + ")";
+
 	/**
 	 * SQL for creating table WAYPOINT
 	 */
@@ -72,6 +88,26 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 		+ Schema.TBL_WAYPOINT
 		+ "_idx ON " + Schema.TBL_WAYPOINT + "(" + Schema.COL_TRACK_ID + ")";
 
+	/**
+	 * SQL for creating index WAYPOINT_time_idx (track id, timestamp), for
+	 * the waypoints of a track ordered by time
+	 * @since 16
+	 */
+	private static final String SQL_CREATE_IDX_WAYPOINT_TRACK_TIME
+		= "create index if not exists "
+		+ Schema.TBL_WAYPOINT
+		+ "_time_idx ON " + Schema.TBL_WAYPOINT + "(" + Schema.COL_TRACK_ID + ", " + Schema.COL_TIMESTAMP + ")";
+
+	/**
+	 * SQL for creating index WAYPOINT_uuid_idx (uuid), for the updates and
+	 * deletes of a waypoint
+	 * @since 16
+	 */
+	private static final String SQL_CREATE_IDX_WAYPOINT_UUID
+		= "create index if not exists "
+		+ Schema.TBL_WAYPOINT
+		+ "_uuid_idx ON " + Schema.TBL_WAYPOINT + "(" + Schema.COL_UUID + ")";
+
 	/**
 	 * SQL for creating table TRACK
 	 * @since 5
@@ -91,6 +127,40 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 		+ Schema.COL_OSM_UPLOAD_DATE + " long" // null indicates not yet uploaded
 		+ ")";
 
+	/**
+	 * SQL for creating index TRACK_start_date_idx (start date), for the track
+	 * list ordered by date
+	 * @since 16
+	 */
+	private static final String SQL_CREATE_IDX_TRACK_START_DATE
+		= "create index if not exists "
+		+ Schema.TBL_TRACK
+		+ "_start_date_idx ON " + Schema.TBL_TRACK + "(" + Schema.COL_START_DATE + ")";
+
+	/**
+	 * SQL for creating table TRACK_SUMMARY, maintained by {@link TrackContentProvider}
+	 * @since 15
+	 */
+	private static final String SQL_CREATE_TABLE_TRACK_SUMMARY = ""
+		+ "create table " + Schema.TBL_TRACK_SUMMARY + " ("
+		+ Schema.COL_TRACK_ID + " integer primary key,"
+		+ Schema.COL_TRACKPOINT_COUNT + " integer not null default 0,"
+		+ Schema.COL_WAYPOINT_COUNT + " integer not null default 0,"
+		+ Schema.COL_START_TIMESTAMP + " long,"
+		+ Schema.COL_START_LATITUDE + " double,"
+		+ Schema.COL_START_LONGITUDE + " double,"
+		+ Schema.COL_END_TIMESTAMP + " long,"
+		+ Schema.COL_MODIFIED_TIMESTAMP + " long,"
+		+ Schema.COL_END_LATITUDE + " double,"
+		+ Schema.COL_END_LONGITUDE + " double,"
+		+ Schema.COL_LAST_ELEVATION + " double,"
+		+ Schema.COL_MIN_LATITUDE + " double,"
+		+ Schema.COL_MAX_LATITUDE + " double,"
+		+ Schema.COL_MIN_LONGITUDE + " double,"
+		+ Schema.COL_MAX_LONGITUDE + " double,"
+		+ Schema.COL_DISTANCE + " double not null default 0,"
+		+ Schema.COL_ELEVATION_GAIN + " double not null default 0" + ")";
+
 	/**
 	 * Database name.
 	 */
@@ -112,12 +182,186 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 	 * v13: TBL_TRACK.COL_DIR is now deprecated (rxxx) v0.5.3 TODO: fill in correct revision and version
 	 * v14: add TBL_TRACK.COL_OSM_UPLOAD_DATE, TBL_TRACK.COL_DESCRIPTION,
 	 * 			TBL_TRACK.COL_TAGS and TBL_TRACK.COL_OSM_VISIBILITY for OSM upload - v0.6.0 
+	 * v15: add TBL_TRACK_SUMMARY
+	 * v16: add IDX_TRACKPOINT_TRACK_TIME, IDX_WAYPOINT_TRACK_TIME, IDX_WAYPOINT_UUID,
+	 * 			IDX_TRACK_START_DATE
+	 * v17: add TBL_TRACK_SUMMARY.COL_MODIFIED_TIMESTAMP
 	 *</pre>
 	 */
-	private static final int DB_VERSION = 14;
+	private static final int DB_VERSION = 17;
+
+	/**
+	 * Columns of {@link #getInsertTrackPointStatement()}, in bind order
+	 */
+	static final String[] TRACKPOINT_INSERT_COLUMNS = {
+		Schema.COL_TRACK_ID,
+		Schema.COL_LATITUDE,
+		Schema.COL_LONGITUDE,
+		Schema.COL_ELEVATION,
+		Schema.COL_ACCURACY,
+		Schema.COL_TIMESTAMP
+	};
+
+	/**
+	 * Columns of {@link #getInsertWayPointStatement()}, in bind order
+	 */
+	static final String[] WAYPOINT_INSERT_COLUMNS = {
+		Schema.COL_TRACK_ID,
+		Schema.COL_UUID,
+		Schema.COL_LATITUDE,
+		Schema.COL_LONGITUDE,
+		Schema.COL_ELEVATION,
+		Schema.COL_ACCURACY,
+		Schema.COL_TIMESTAMP,
+		Schema.COL_NAME,
+		Schema.COL_LINK,
+		Schema.COL_NBSATELLITES
+	};
+
+	/**
+	 * Values of {@link OSMTracker.Preferences#KEY_DB_SYNCHRONOUS}, PRAGMA synchronous levels
+	 */
+	private static final String[] SYNCHRONOUS_LEVELS = {"FULL", "NORMAL", "OFF"};
+
+	/**
+	 * Checkpoint modes of {@link #checkpoint(String)}
+	 */
+	public static final String CHECKPOINT_PASSIVE = "PASSIVE";
+	public static final String CHECKPOINT_TRUNCATE = "TRUNCATE";
+
+	/**
+	 * Compiled inserts, kept until the database is closed
+	 */
+	private SQLiteStatement insertTrackPointStatement;
+	private SQLiteStatement insertWayPointStatement;
+
+	private final Context context;
 
 	public DatabaseHelper(Context context) {
 		super(context, DB_NAME, null, DB_VERSION);
+		this.context = context;
+	}
+
+	/**
+	 * @return Compiled insert of a trackpoint with the {@link #TRACKPOINT_INSERT_COLUMNS}.
+	 * The statement is shared: bind and execute it inside a transaction of
+	 * the writable database only, the transaction serializes the callers.
+	 */
+	public synchronized SQLiteStatement getInsertTrackPointStatement() {
+		if (insertTrackPointStatement == null) {
+			insertTrackPointStatement = getWritableDatabase().compileStatement(
+					insertSql(Schema.TBL_TRACKPOINT, TRACKPOINT_INSERT_COLUMNS));
+		}
+		return insertTrackPointStatement;
+	}
+
+	/**
+	 * @return Compiled insert of a waypoint with the {@link #WAYPOINT_INSERT_COLUMNS}.
+	 * Same rules as {@link #getInsertTrackPointStatement()}.
+	 */
+	public synchronized SQLiteStatement getInsertWayPointStatement() {
+		if (insertWayPointStatement == null) {
+			insertWayPointStatement = getWritableDatabase().compileStatement(
+					insertSql(Schema.TBL_WAYPOINT, WAYPOINT_INSERT_COLUMNS));
+		}
+		return insertWayPointStatement;
+	}
+
+	private static String insertSql(String table, String[] columns) {
+		StringBuilder sql = new StringBuilder("insert into ").append(table).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			sql.append(i == 0 ? "" : ",").append(columns[i]);
+		}
+		sql.append(") values (");
+		for (int i = 0; i < columns.length; i++) {
+			sql.append(i == 0 ? "?" : ",?");
+		}
+		return sql.append(")").toString();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (insertTrackPointStatement != null) {
+			insertTrackPointStatement.close();
+			insertTrackPointStatement = null;
+		}
+		if (insertWayPointStatement != null) {
+			insertWayPointStatement.close();
+			insertWayPointStatement = null;
+		}
+		super.close();
+	}
+
+	/**
+	 * Switches the database to write-ahead logging where available
+	 * (API 11): the trackpoint inserts no longer block the readers, and
+	 * each commit appends to the log instead of rewriting the journal.
+	 * Sets the synchronous level of the preferences on the connection of
+	 * the writes.
+	 */
+	@Override
+	@TargetApi(11)
+	public void onOpen(SQLiteDatabase db) {
+		super.onOpen(db);
+		if (! db.isReadOnly()) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+				db.enableWriteAheadLogging();
+			}
+			db.execSQL("PRAGMA synchronous = " + getSynchronousLevel());
+		}
+	}
+
+	/**
+	 * @return PRAGMA synchronous level of the preferences, NORMAL by default:
+	 * with write-ahead logging a power loss can lose the last commits,
+	 * never corrupt the database
+	 */
+	private String getSynchronousLevel() {
+		String level = PreferenceManager.getDefaultSharedPreferences(context).getString(
+				OSMTracker.Preferences.KEY_DB_SYNCHRONOUS, OSMTracker.Preferences.VAL_DB_SYNCHRONOUS);
+		for (String l : SYNCHRONOUS_LEVELS) {
+			if (l.equals(level)) {
+				return l;
+			}
+		}
+		Log.w(TAG, "Unknown synchronous level " + level);
+		return OSMTracker.Preferences.VAL_DB_SYNCHRONOUS;
+	}
+
+	/**
+	 * Copies the write-ahead log into the database. Does nothing without
+	 * write-ahead logging: before API 11, or if the database is not in WAL
+	 * journal mode. Must not be called inside a transaction.
+	 * @param mode {@link #CHECKPOINT_PASSIVE} copies what it can without waiting
+	 * for the readers and the writer, {@link #CHECKPOINT_TRUNCATE} waits for them
+	 * and empties the log. SQLite before 3.8.8 (API 21) runs TRUNCATE as PASSIVE.
+	 */
+	public void checkpoint(String mode) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || !isWriteAheadLogging()) {
+			return;
+		}
+		Cursor c = getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(" + mode + ")", null);
+		try {
+			if (c.moveToFirst()) {
+				Log.v(TAG, "checkpoint(" + mode + "), busy=" + c.getInt(0) + ", log=" + c.getInt(1)
+						+ ", checkpointed=" + c.getInt(2));
+			}
+		} finally {
+			c.close();
+		}
+	}
+
+	/**
+	 * @return true if the database is in write-ahead logging mode, as
+	 * set by {@link #onOpen(SQLiteDatabase)}
+	 */
+	private boolean isWriteAheadLogging() {
+		Cursor c = getWritableDatabase().rawQuery("PRAGMA journal_mode", null);
+		try {
+			return c.moveToFirst() && "wal".equalsIgnoreCase(c.getString(0));
+		} finally {
+			c.close();
+		}
 	}
 
 	@Override
@@ -130,9 +374,28 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 		db.execSQL(SQL_CREATE_IDX_WAYPOINT_TRACK);
 		db.execSQL("drop table if exists " + Schema.TBL_TRACK);
 		db.execSQL(SQL_CREATE_TABLE_TRACK);
+		db.execSQL("drop table if exists " + Schema.TBL_TRACK_SUMMARY);
+		db.execSQL(SQL_CREATE_TABLE_TRACK_SUMMARY);
+		createIndexes(db);
+	}
+
+	/**
+	 * Creates the indexes of the queries of {@link TrackContentProvider}
+	 * @param db the database to work on
+	 */
+	private void createIndexes(SQLiteDatabase db) {
+		db.execSQL(SQL_CREATE_IDX_TRACKPOINT_TRACK_TIME);
+		db.execSQL(SQL_CREATE_IDX_WAYPOINT_TRACK_TIME);
+		db.execSQL(SQL_CREATE_IDX_WAYPOINT_UUID);
+		db.execSQL(SQL_CREATE_IDX_TRACK_START_DATE);
 	}
 
+	/**
+	 * Upgrades version by version: each case falls through to the next one,
+	 * except the ones creating tables at their current version
+	 */
 	@Override
+	@SuppressWarnings("fallthrough")
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 		switch(oldVersion){
 		case 1:
@@ -157,10 +420,38 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 			db.execSQL("alter table " + Schema.TBL_TRACK + " add column " + Schema.COL_TAGS + " text");
 			db.execSQL("alter table " + Schema.TBL_TRACK + " add column " + Schema.COL_OSM_VISIBILITY
 					+ " text default '"+OSMVisibility.Private+"'");
+		case 14:
+			// Create the track summaries, at the current version of the table
+			db.execSQL(SQL_CREATE_TABLE_TRACK_SUMMARY);
+			backfillTrackSummaries(db);
+			createIndexes(db);
+			break;
+		case 15:
+			createIndexes(db);
+		case 16:
+			// Add the modification time to the track summaries
+			db.execSQL("alter table " + Schema.TBL_TRACK_SUMMARY + " add column " + Schema.COL_MODIFIED_TIMESTAMP + " long");
+			backfillTrackSummaries(db);
 		}
 		
 	}
 
+	/**
+	 * Builds the summaries of the existing tracks from their points
+	 * @param db the database to work on 
+	 */
+	private void backfillTrackSummaries(SQLiteDatabase db) {
+		Cursor cursor = db.query(Schema.TBL_TRACK, new String[]{Schema.COL_ID}, null, null, null, null, null);
+		Log.d(TAG, "backfillTrackSummaries (" + cursor.getCount() + " tracks)");
+		try {
+			while (cursor.moveToNext()) {
+				TrackSummary.build(db, cursor.getLong(0)).save(db);
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
 	/**
 	 * copies files from the tracks to our new storage directory and removes the path reference in COL_DIR
 	 * @param db the database to work on 
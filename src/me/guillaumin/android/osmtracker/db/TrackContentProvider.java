@@ -1,17 +1,33 @@
 package me.guillaumin.android.osmtracker.db;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import me.guillaumin.android.osmtracker.OSMTracker;
+import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.util.Log;
 
 /**
@@ -44,11 +60,31 @@ public class TrackContentProvider extends ContentProvider {
 	 * Uri for a specific waypoint
 	 */
 	public static final Uri CONTENT_URI_WAYPOINT_UUID = Uri.parse("content://" + AUTHORITY + "/" + Schema.TBL_WAYPOINT + "/uuid");
+
+	/**
+	 * Minimum time between two notifications of the trackpoints or of the
+	 * waypoints of a track, ms. Insertions during this window are notified
+	 * once, see {@link #rowIdRangeUri(Uri, long, long)}.
+	 */
+	public static final long NOTIFY_WINDOW_MS = 1000;
+
+	/**
+	 * Delay of the passive checkpoint of the write-ahead log after an
+	 * insertion of trackpoints or waypoints, ms
+	 */
+	public static final long CHECKPOINT_INTERVAL_MS = 60000;
+
+	/**
+	 * Query parameter of the maximum number of trackpoints returned by a
+	 * query, see {@link #limitUri(Uri, int)}
+	 */
+	public static final String QUERY_PARAMETER_LIMIT = "limit";
 	
 	/**
-	 * tables and joins to be used within a query to get the important informations of a track
+	 * tables and joins to be used within a query to get the important informations of a track:
+	 * one row of the summary per track, the points are not read
 	 */
-	private static final String TRACK_TABLES = Schema.TBL_TRACK + " left join " + Schema.TBL_TRACKPOINT + " on " + Schema.TBL_TRACK + "." + Schema.COL_ID + " = " + Schema.TBL_TRACKPOINT + "." + Schema.COL_TRACK_ID;
+	private static final String TRACK_TABLES = Schema.TBL_TRACK + " left join " + Schema.TBL_TRACK_SUMMARY + " on " + Schema.TBL_TRACK + "." + Schema.COL_ID + " = " + Schema.TBL_TRACK_SUMMARY + "." + Schema.COL_TRACK_ID;
 	
 	/**
 	 * the projection to be used to get the important informations of a track
@@ -64,15 +100,23 @@ public class TrackContentProvider extends ContentProvider {
 		Schema.COL_TAGS,
 		Schema.COL_OSM_VISIBILITY,
 		Schema.COL_START_DATE,
-		"count(" + Schema.TBL_TRACKPOINT + "." + Schema.COL_ID + ") as " + Schema.COL_TRACKPOINT_COUNT,
-		"(SELECT count("+Schema.TBL_WAYPOINT+"."+Schema.COL_TRACK_ID+") FROM "+Schema.TBL_WAYPOINT+" WHERE "+Schema.TBL_WAYPOINT+"."+Schema.COL_TRACK_ID+" = " + Schema.TBL_TRACK + "." + Schema.COL_ID + ") as " + Schema.COL_WAYPOINT_COUNT
+		"ifnull(" + Schema.COL_TRACKPOINT_COUNT + ", 0) as " + Schema.COL_TRACKPOINT_COUNT,
+		"ifnull(" + Schema.COL_WAYPOINT_COUNT + ", 0) as " + Schema.COL_WAYPOINT_COUNT,
+		Schema.COL_START_TIMESTAMP,
+		Schema.COL_START_LATITUDE,
+		Schema.COL_START_LONGITUDE,
+		Schema.COL_END_TIMESTAMP,
+		Schema.COL_MODIFIED_TIMESTAMP,
+		Schema.COL_END_LATITUDE,
+		Schema.COL_END_LONGITUDE,
+		Schema.COL_MIN_LATITUDE,
+		Schema.COL_MAX_LATITUDE,
+		Schema.COL_MIN_LONGITUDE,
+		Schema.COL_MAX_LONGITUDE,
+		"ifnull(" + Schema.COL_DISTANCE + ", 0) as " + Schema.COL_DISTANCE,
+		"ifnull(" + Schema.COL_ELEVATION_GAIN + ", 0) as " + Schema.COL_ELEVATION_GAIN
 	};
 	
-	/**
-	 * the group by statement that is used for the track statements
-	 */
-	private static final String TRACK_TABLES_GROUP_BY = Schema.TBL_TRACK + "." + Schema.COL_ID;
-	
 	
 	
 	/**
@@ -131,47 +175,272 @@ public class TrackContentProvider extends ContentProvider {
 				"end" );		
 	}
 
+	/**
+	 * @param uri Uri of the trackpoints or of the waypoints of a track
+	 * @param firstId Id of the first inserted row
+	 * @param lastId Id of the last inserted row
+	 * @return Uri notified on insertion of the rows firstId to lastId, a
+	 * descendant of uri. Observers registered with notifyForDescendents
+	 * receive it in {@link android.database.ContentObserver#onChange(boolean, Uri)}
+	 * (API 16), see {@link #getFirstRowId(Uri)} and {@link #getLastRowId(Uri)}.
+	 */
+	public static final Uri rowIdRangeUri(Uri uri, long firstId, long lastId) {
+		return Uri.withAppendedPath(ContentUris.withAppendedId(uri, firstId), Long.toString(lastId));
+	}
+
+	/**
+	 * @param uri Uri of the trackpoints of a track
+	 * @param limit Maximum number of rows
+	 * @return Uri of the query of the first limit rows of uri, in the sort
+	 * order of the query. Pages through the trackpoints with a selection
+	 * on the sort columns after the last row of the previous page.
+	 */
+	public static final Uri limitUri(Uri uri, int limit) {
+		return uri.buildUpon().appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(limit)).build();
+	}
+
+	/**
+	 * @param uri Uri of the query, for the error message
+	 * @param limit {@link #QUERY_PARAMETER_LIMIT} parameter of the Uri
+	 * @return Maximum number of rows
+	 * @throws IllegalArgumentException if the limit is not a positive integer
+	 */
+	private static int parseLimit(Uri uri, String limit) {
+		try {
+			int rows = Integer.parseInt(limit);
+			if (rows > 0) {
+				return rows;
+			}
+		} catch (NumberFormatException nfe) {
+			// Reported below
+		}
+		throw new IllegalArgumentException("Invalid limit in URI: " + uri);
+	}
+
+	/**
+	 * @param uri Uri of a change notification
+	 * @return Id of the first inserted row, -1 if uri is not a
+	 * {@link #rowIdRangeUri(Uri, long, long)}
+	 */
+	public static final long getFirstRowId(Uri uri) {
+		return getRowId(uri, 2);
+	}
+
+	/**
+	 * @param uri Uri of a change notification
+	 * @return Id of the last inserted row, -1 if uri is not a
+	 * {@link #rowIdRangeUri(Uri, long, long)}
+	 */
+	public static final long getLastRowId(Uri uri) {
+		return getRowId(uri, 1);
+	}
+
+	private static long getRowId(Uri uri, int fromEnd) {
+		if (uri == null) {
+			return -1;
+		}
+		List<String> segments = uri.getPathSegments();
+		// track/#/trackpoints/first/last
+		if (segments.size() != 5) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(segments.get(segments.size() - fromEnd));
+		} catch (NumberFormatException nfe) {
+			return -1;
+		}
+	}
+
 	/**
 	 * Database Helper
 	 */
 	private DatabaseHelper dbHelper;
 
+	/**
+	 * Notifies the insertions of trackpoints and waypoints
+	 */
+	private ChangeNotifier changeNotifier;
+
+	/**
+	 * State of an {@link #applyBatch(ArrayList)}
+	 */
+	private static final class Batch {
+		/**
+		 * Changed Uris, notified once the batch is committed
+		 */
+		final Set<Uri> changes = new LinkedHashSet<Uri>();
+
+		/**
+		 * Ranges of the inserted trackpoint and waypoint ids by Uri,
+		 * notified once the batch is committed
+		 */
+		final Map<Uri, long[]> insertedRows = new LinkedHashMap<Uri, long[]>();
+
+		/**
+		 * Summaries of the tracks with inserted or deleted points,
+		 * written at the end of the batch
+		 */
+		final Map<Long, TrackSummary> summaries = new HashMap<Long, TrackSummary>();
+
+		/**
+		 * Tracks were deleted by a selection: summaries written by
+		 * the batch may be orphans
+		 */
+		boolean tracksDeleted = false;
+
+		/**
+		 * A track was stopped, the log is checkpointed once the batch
+		 * is committed
+		 */
+		boolean trackStopped = false;
+	}
+
+	/**
+	 * Handler of the checkpoint thread: checkpoints wait for the readers
+	 * and the writer, they do not run on the threads of the callers
+	 */
+	private Handler checkpointHandler;
+
+	/**
+	 * A passive checkpoint is scheduled
+	 */
+	private final AtomicBoolean checkpointPending = new AtomicBoolean();
+
+	/**
+	 * Passive checkpoint while a track is recorded, keeps the log short
+	 * without blocking the inserts
+	 */
+	private final Runnable passiveCheckpoint = new Runnable() {
+		@Override
+		public void run() {
+			checkpointPending.set(false);
+			dbHelper.checkpoint(DatabaseHelper.CHECKPOINT_PASSIVE);
+		}
+	};
+
+	/**
+	 * Checkpoint when a track is stopped, empties the log
+	 */
+	private final Runnable truncateCheckpoint = new Runnable() {
+		@Override
+		public void run() {
+			dbHelper.checkpoint(DatabaseHelper.CHECKPOINT_TRUNCATE);
+		}
+	};
+
+	/**
+	 * Deletes the summaries of the deleted tracks
+	 */
+	private static void deleteOrphanSummaries(SQLiteDatabase db) {
+		db.delete(Schema.TBL_TRACK_SUMMARY, Schema.COL_TRACK_ID + " not in (select " + Schema.COL_ID
+				+ " from " + Schema.TBL_TRACK + ")", null);
+	}
+
+	/**
+	 * Batch applied on the thread, null outside of a batch
+	 */
+	private final ThreadLocal<Batch> batch = new ThreadLocal<Batch>();
+
 	@Override
 	public boolean onCreate() {
 		dbHelper = new DatabaseHelper(getContext());
+		setNotifyWindow(NOTIFY_WINDOW_MS);
+		HandlerThread checkpointThread = new HandlerThread("checkpoint");
+		checkpointThread.start();
+		checkpointHandler = new Handler(checkpointThread.getLooper());
 		return true;
 	}
 
+	/**
+	 * Schedules a passive checkpoint in {@link #CHECKPOINT_INTERVAL_MS},
+	 * unless one is already scheduled
+	 */
+	private void scheduleCheckpoint() {
+		if (checkpointPending.compareAndSet(false, true)) {
+			checkpointHandler.postDelayed(passiveCheckpoint, CHECKPOINT_INTERVAL_MS);
+		}
+	}
+
+	/**
+	 * Replaces the scheduled passive checkpoint by a truncating one, now
+	 */
+	private void checkpointStoppedTrack() {
+		checkpointHandler.removeCallbacks(passiveCheckpoint);
+		checkpointPending.set(false);
+		checkpointHandler.post(truncateCheckpoint);
+	}
+
+	/**
+	 * Sets the minimum time between two notifications of the trackpoints or
+	 * of the waypoints of a track, {@link #NOTIFY_WINDOW_MS} by default
+	 */
+	void setNotifyWindow(long windowMs) {
+		// Delayed notifications are sent by the main thread
+		changeNotifier = new ChangeNotifier(getContext().getContentResolver(),
+				new Handler(Looper.getMainLooper()), windowMs);
+	}
+
 	@Override
 	public int delete(Uri uri, String selection, String[] selectionArgs) {
 		Log.v(TAG, "delete(), uri=" + uri);
 
 		int count;
-		// Select which data type to delete
-		switch (uriMatcher.match(uri)) {
-		case Schema.URI_CODE_TRACK:
-			count = dbHelper.getWritableDatabase().delete(Schema.TBL_TRACK, selection, selectionArgs);
-			break;
-		case Schema.URI_CODE_TRACK_ID:
-			// the URI matches a specific track, delete all related entities
-			String trackId = Long.toString(ContentUris.parseId(uri));
-			dbHelper.getWritableDatabase().delete(Schema.TBL_WAYPOINT, Schema.COL_TRACK_ID + " = ?", new String[] {trackId});
-			dbHelper.getWritableDatabase().delete(Schema.TBL_TRACKPOINT, Schema.COL_TRACK_ID + " = ?", new String[] {trackId});
-			count = dbHelper.getWritableDatabase().delete(Schema.TBL_TRACK, Schema.COL_ID + " = ?", new String[] {trackId});
-			break;
-		case Schema.URI_CODE_WAYPOINT_UUID:
-			String uuid = uri.getLastPathSegment();
-			if(uuid != null){
-				count = dbHelper.getWritableDatabase().delete(Schema.TBL_WAYPOINT, Schema.COL_UUID + " = ?", new String[]{uuid});
-			}else{
-				count = 0;
+		SQLiteDatabase db = dbHelper.getWritableDatabase();
+		Batch b = batch.get();
+		db.beginTransaction();
+		try {
+			// Select which data type to delete
+			switch (uriMatcher.match(uri)) {
+			case Schema.URI_CODE_TRACK:
+				count = db.delete(Schema.TBL_TRACK, selection, selectionArgs);
+				if (b != null) {
+					b.tracksDeleted = true;
+				}
+				deleteOrphanSummaries(db);
+				break;
+			case Schema.URI_CODE_TRACK_ID:
+				// the URI matches a specific track, delete all related entities
+				long id = ContentUris.parseId(uri);
+				String trackId = Long.toString(id);
+				db.delete(Schema.TBL_WAYPOINT, Schema.COL_TRACK_ID + " = ?", new String[] {trackId});
+				db.delete(Schema.TBL_TRACKPOINT, Schema.COL_TRACK_ID + " = ?", new String[] {trackId});
+				db.delete(Schema.TBL_TRACK_SUMMARY, Schema.COL_TRACK_ID + " = ?", new String[] {trackId});
+				if (b != null) {
+					b.summaries.remove(id);
+				}
+				count = db.delete(Schema.TBL_TRACK, Schema.COL_ID + " = ?", new String[] {trackId});
+				break;
+			case Schema.URI_CODE_WAYPOINT_UUID:
+				String uuid = uri.getLastPathSegment();
+				if(uuid != null){
+					// Waypoints to remove from the summaries
+					Map<Long, TrackSummary> summaries = (b != null) ? b.summaries : new HashMap<Long, TrackSummary>();
+					Query q = buildQuery(uri, new String[] {Schema.COL_TRACK_ID}, null, null, null);
+					Cursor c = q.builder.query(db, q.projection, q.selection, q.selectionArgs, null, null, null);
+					try {
+						while (c.moveToNext()) {
+							summary(db, summaries, c.getLong(0)).wayPointCount--;
+						}
+					} finally {
+						c.close();
+					}
+					count = db.delete(Schema.TBL_WAYPOINT, Schema.COL_UUID + " = ?", new String[]{uuid});
+					if (b == null) {
+						saveSummaries(db, summaries);
+					}
+				}else{
+					count = 0;
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown URI: " + uri);
 			}
-			break;
-		default:
-			throw new IllegalArgumentException("Unknown URI: " + uri);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
 		}
 
-		getContext().getContentResolver().notifyChange(uri, null);
+		notifyChange(uri, uri);
 		return count;
 	}
 
@@ -212,11 +481,10 @@ public class TrackContentProvider extends ContentProvider {
 			if (values.containsKey(Schema.COL_TRACK_ID) && values.containsKey(Schema.COL_LONGITUDE)
 					&& values.containsKey(Schema.COL_LATITUDE) && values.containsKey(Schema.COL_TIMESTAMP)) {
 
-				long rowId = dbHelper.getWritableDatabase().insert(Schema.TBL_TRACKPOINT, null, values);
+				long rowId = insertPoint(Schema.URI_CODE_TRACK_TRACKPOINTS, values);
 				if (rowId > 0) {
-					Uri trackpointUri = ContentUris.withAppendedId(uri, rowId);
-					getContext().getContentResolver().notifyChange(trackpointUri, null);
-					return trackpointUri;
+					rowsInserted(uri, rowId);
+					return ContentUris.withAppendedId(uri, rowId);
 				}
 			} else {
 				throw new IllegalArgumentException("values should provide " + Schema.COL_LONGITUDE + ", "
@@ -228,11 +496,10 @@ public class TrackContentProvider extends ContentProvider {
 			if (values.containsKey(Schema.COL_TRACK_ID) && values.containsKey(Schema.COL_LONGITUDE)
 					&& values.containsKey(Schema.COL_LATITUDE) && values.containsKey(Schema.COL_TIMESTAMP) ) {
 
-				long rowId = dbHelper.getWritableDatabase().insert(Schema.TBL_WAYPOINT, null, values);
+				long rowId = insertPoint(Schema.URI_CODE_TRACK_WAYPOINTS, values);
 				if (rowId > 0) {
-					Uri waypointUri = ContentUris.withAppendedId(uri, rowId);
-					getContext().getContentResolver().notifyChange(waypointUri, null);
-					return waypointUri;
+					rowsInserted(uri, rowId);
+					return ContentUris.withAppendedId(uri, rowId);
 				}
 			} else {
 				throw new IllegalArgumentException("values should provide " + Schema.COL_LONGITUDE + ", "
@@ -244,7 +511,7 @@ public class TrackContentProvider extends ContentProvider {
 				long rowId = dbHelper.getWritableDatabase().insert(Schema.TBL_TRACK, null, values);
 				if (rowId > 0) {
 					Uri trackUri = ContentUris.withAppendedId(CONTENT_URI_TRACK, rowId);
-					getContext().getContentResolver().notifyChange(trackUri, null);
+					notifyChange(uri, trackUri);
 					return trackUri;
 				}
 			} else {
@@ -258,11 +525,287 @@ public class TrackContentProvider extends ContentProvider {
 		return null;
 	}
 
-	
+	/**
+	 * Inserts the trackpoints or the waypoints of a track in one
+	 * transaction with a compiled statement, updates the summary of the
+	 * track once, and sends one change notification of the Uri, with the
+	 * range of the inserted ids. Other Uris are inserted row by row.
+	 */
+	@Override
+	public int bulkInsert(Uri uri, ContentValues[] values) {
+		final int uriCode = uriMatcher.match(uri);
+		SQLiteStatement insert;
+		String[] columns;
+
+		switch (uriCode) {
+		case Schema.URI_CODE_TRACK_TRACKPOINTS:
+			insert = dbHelper.getInsertTrackPointStatement();
+			columns = DatabaseHelper.TRACKPOINT_INSERT_COLUMNS;
+			break;
+		case Schema.URI_CODE_TRACK_WAYPOINTS:
+			insert = dbHelper.getInsertWayPointStatement();
+			columns = DatabaseHelper.WAYPOINT_INSERT_COLUMNS;
+			break;
+		default:
+			return super.bulkInsert(uri, values);
+		}
+		Log.v(TAG, "bulkInsert(), uri=" + uri + ", " + values.length + " rows");
+
+		for (ContentValues v : values) {
+			// Check that mandatory columns are present.
+			if (! (v.containsKey(Schema.COL_TRACK_ID) && v.containsKey(Schema.COL_LONGITUDE)
+					&& v.containsKey(Schema.COL_LATITUDE) && v.containsKey(Schema.COL_TIMESTAMP))) {
+				throw new IllegalArgumentException("values should provide " + Schema.COL_LONGITUDE + ", "
+						+ Schema.COL_LATITUDE + ", " + Schema.COL_TIMESTAMP);
+			}
+		}
+
+		int count = 0;
+		long firstId = -1, lastId = -1;
+		Map<Long, TrackSummary> summaries = new HashMap<Long, TrackSummary>();
+		SQLiteDatabase db = dbHelper.getWritableDatabase();
+		db.beginTransaction();
+		try {
+			for (ContentValues v : values) {
+				long rowId = insertRow(insert, columns, v);
+				if (rowId > 0) {
+					addToSummary(db, summaries, uriCode, v);
+					if (count == 0) {
+						firstId = rowId;
+					}
+					lastId = rowId;
+					count++;
+				}
+			}
+			saveSummaries(db, summaries);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+
+		if (count > 0) {
+			changeNotifier.rowsInserted(uri, firstId, lastId);
+			scheduleCheckpoint();
+		}
+		return count;
+	}
+
+	/**
+	 * Applies the operations in one transaction. Each changed Uri is
+	 * notified once, when the transaction is committed; inserted rows
+	 * are notified by the Uri of their table, with the range of the
+	 * inserted ids for the trackpoints and the waypoints. Trackpoints and
+	 * waypoints are inserted with compiled statements.
+	 */
+	@Override
+	public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+			throws OperationApplicationException {
+		Log.v(TAG, "applyBatch(), " + operations.size() + " operations");
+
+		if (batch.get() != null) {
+			// Nested batch, part of the outer transaction
+			return super.applyBatch(operations);
+		}
+
+		Batch b = new Batch();
+		ContentProviderResult[] results;
+		SQLiteDatabase db = dbHelper.getWritableDatabase();
+		db.beginTransaction();
+		batch.set(b);
+		try {
+			results = super.applyBatch(operations);
+			saveSummaries(db, b.summaries);
+			if (b.tracksDeleted) {
+				deleteOrphanSummaries(db);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			batch.set(null);
+			db.endTransaction();
+		}
+
+		for (Map.Entry<Uri, long[]> e : b.insertedRows.entrySet()) {
+			changeNotifier.rowsInserted(e.getKey(), e.getValue()[0], e.getValue()[1]);
+		}
+		if (b.trackStopped) {
+			checkpointStoppedTrack();
+		} else if (! b.insertedRows.isEmpty()) {
+			scheduleCheckpoint();
+		}
+		for (Uri uri : b.changes) {
+			getContext().getContentResolver().notifyChange(uri, null);
+		}
+		return results;
+	}
+
+	/**
+	 * Inserts a trackpoint or a waypoint and adds it to the summary of
+	 * its track, in one transaction. In a batch the row is inserted with
+	 * the compiled statement and the summary is written by the batch.
+	 * @param uriCode {@link Schema#URI_CODE_TRACK_TRACKPOINTS} or {@link Schema#URI_CODE_TRACK_WAYPOINTS}
+	 * @return Row id, -1 if the row was not inserted
+	 */
+	private long insertPoint(int uriCode, ContentValues values) {
+		long rowId;
+		Batch b = batch.get();
+		SQLiteDatabase db = dbHelper.getWritableDatabase();
+		db.beginTransaction();
+		try {
+			if (uriCode == Schema.URI_CODE_TRACK_TRACKPOINTS) {
+				rowId = (b != null)
+						? insertRow(dbHelper.getInsertTrackPointStatement(), DatabaseHelper.TRACKPOINT_INSERT_COLUMNS, values)
+						: db.insert(Schema.TBL_TRACKPOINT, null, values);
+			} else {
+				rowId = (b != null)
+						? insertRow(dbHelper.getInsertWayPointStatement(), DatabaseHelper.WAYPOINT_INSERT_COLUMNS, values)
+						: db.insert(Schema.TBL_WAYPOINT, null, values);
+			}
+			if (rowId > 0) {
+				if (b != null) {
+					addToSummary(db, b.summaries, uriCode, values);
+				} else {
+					Map<Long, TrackSummary> summaries = new HashMap<Long, TrackSummary>(2);
+					addToSummary(db, summaries, uriCode, values);
+					saveSummaries(db, summaries);
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return rowId;
+	}
+
+	/**
+	 * @param summaries Summaries loaded by the operation
+	 * @return Summary of the track, loaded into summaries if needed
+	 */
+	private static TrackSummary summary(SQLiteDatabase db, Map<Long, TrackSummary> summaries, long trackId) {
+		TrackSummary s = summaries.get(trackId);
+		if (s == null) {
+			s = TrackSummary.load(db, trackId);
+			summaries.put(trackId, s);
+		}
+		return s;
+	}
+
+	private static void addToSummary(SQLiteDatabase db, Map<Long, TrackSummary> summaries, int uriCode,
+			ContentValues values) {
+		TrackSummary s = summary(db, summaries, values.getAsLong(Schema.COL_TRACK_ID));
+		if (uriCode == Schema.URI_CODE_TRACK_TRACKPOINTS) {
+			s.addTrackPoint(values);
+		} else {
+			s.addWayPoint(values);
+		}
+	}
+
+	private static void saveSummaries(SQLiteDatabase db, Map<Long, TrackSummary> summaries) {
+		for (TrackSummary s : summaries.values()) {
+			s.save(db);
+		}
+	}
+
+	/**
+	 * Inserts a row with a compiled insert, inside a transaction.
+	 * @param insert Compiled insert of the table
+	 * @param columns Columns of the insert, in bind order
+	 * @param values Values of the row, columns not in the insert are refused
+	 * @return Row id, -1 if the row was not inserted
+	 */
+	private long insertRow(SQLiteStatement insert, String[] columns, ContentValues values) {
+		int bound = 0;
+		for (int i = 0; i < columns.length; i++) {
+			Object value = values.get(columns[i]);
+			if (value == null) {
+				insert.bindNull(i + 1);
+			} else {
+				if (value instanceof Double || value instanceof Float) {
+					insert.bindDouble(i + 1, ((Number) value).doubleValue());
+				} else if (value instanceof Number) {
+					insert.bindLong(i + 1, ((Number) value).longValue());
+				} else if (value instanceof Boolean) {
+					insert.bindLong(i + 1, ((Boolean) value) ? 1 : 0);
+				} else {
+					insert.bindString(i + 1, value.toString());
+				}
+				bound++;
+			}
+		}
+		if (bound != values.size()) {
+			// Null values or unknown columns
+			for (String key : values.keySet()) {
+				boolean known = false;
+				for (String c : columns) {
+					known |= c.equals(key);
+				}
+				if (! known) {
+					throw new IllegalArgumentException("Unknown column " + key);
+				}
+			}
+		}
+
+		try {
+			return insert.executeInsert();
+		} catch (SQLException e) {
+			// As SQLiteDatabase.insert()
+			Log.e(TAG, "Error inserting " + values, e);
+			return -1;
+		}
+	}
+
+	/**
+	 * Notifies the insertion of a trackpoint or of a waypoint through the
+	 * {@link ChangeNotifier}, or records it if a batch is applied on this thread
+	 * @param uri Uri of the trackpoints or of the waypoints of the track
+	 */
+	private void rowsInserted(Uri uri, long rowId) {
+		Batch b = batch.get();
+		if (b != null) {
+			long[] range = b.insertedRows.get(uri);
+			if (range == null) {
+				b.insertedRows.put(uri, new long[] {rowId, rowId});
+			} else {
+				range[0] = Math.min(range[0], rowId);
+				range[1] = Math.max(range[1], rowId);
+			}
+		} else {
+			changeNotifier.rowsInserted(uri, rowId, rowId);
+			scheduleCheckpoint();
+		}
+	}
+
+	/**
+	 * Notifies a change, or records it if a batch is applied on this thread
+	 * @param uri Uri of the operation, recorded by the batch
+	 * @param changedUri Uri notified outside of a batch
+	 */
+	private void notifyChange(Uri uri, Uri changedUri) {
+		Batch b = batch.get();
+		if (b != null) {
+			b.changes.add(uri);
+		} else {
+			getContext().getContentResolver().notifyChange(changedUri, null);
+		}
+	}
+
 	@Override
 	public Cursor query(Uri uri, String[] projection, String selectionIn, String[] selectionArgsIn, String sortOrder) {
 		Log.v(TAG, "query(), uri=" + uri);
 
+		Query q = buildQuery(uri, projection, selectionIn, selectionArgsIn, sortOrder);
+		Cursor c = q.builder.query(dbHelper.getReadableDatabase(), q.projection, q.selection, q.selectionArgs,
+				q.groupBy, null, q.sortOrder, q.limit);
+		c.setNotificationUri(getContext().getContentResolver(), uri);
+		return c;
+	}
+
+	/**
+	 * Builds the query of a Uri, as run by {@link #query(Uri, String[], String, String[], String)}.
+	 * The parameters are the ones of the query.
+	 * @return The query
+	 * @throws IllegalArgumentException if the Uri is unknown
+	 */
+	public static Query buildQuery(Uri uri, String[] projection, String selectionIn, String[] selectionArgsIn, String sortOrder) {
 		SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
 		String selection = selectionIn;
 		String[] selectionArgs = selectionArgsIn;
@@ -293,6 +836,10 @@ public class TrackContentProvider extends ContentProvider {
 			// Finished with the temporary selection arguments list. release it for GC
 			selctionArgsList.clear();
 			selctionArgsList = null;
+			String limitParameter = uri.getQueryParameter(QUERY_PARAMETER_LIMIT);
+			if (limitParameter != null) {
+				limit = Integer.toString(parseLimit(uri, limitParameter));
+			}
 			break;
 		case Schema.URI_CODE_TRACK_WAYPOINTS:
 			if (selectionIn != null || selectionArgsIn != null) {
@@ -332,7 +879,6 @@ public class TrackContentProvider extends ContentProvider {
 			qb.setTables(TRACK_TABLES);
 			if (projection == null)
 				projection = TRACK_TABLES_PROJECTION;
-			groupBy = TRACK_TABLES_GROUP_BY;
 			break;
 		case Schema.URI_CODE_TRACK_ID:
 			if (selectionIn != null || selectionArgsIn != null) {
@@ -343,7 +889,6 @@ public class TrackContentProvider extends ContentProvider {
 			qb.setTables(TRACK_TABLES);
 			if (projection == null)
 				projection = TRACK_TABLES_PROJECTION;
-			groupBy = TRACK_TABLES_GROUP_BY;
 			selection = Schema.TBL_TRACK + "." + Schema.COL_ID + " = ?";
 			selectionArgs = new String[] {trackId};			
 			break;
@@ -356,13 +901,60 @@ public class TrackContentProvider extends ContentProvider {
 			selection = Schema.COL_ACTIVE + " = ?";
 			selectionArgs = new String[] {Integer.toString(Schema.VAL_TRACK_ACTIVE)};			
 			break;
+		case Schema.URI_CODE_WAYPOINT_UUID:
+			if (selectionIn != null || selectionArgsIn != null) {
+				// Any selection/selectionArgs will be ignored
+				throw new UnsupportedOperationException();
+			}
+			qb.setTables(Schema.TBL_WAYPOINT);
+			selection = Schema.COL_UUID + " = ?";
+			selectionArgs = new String[] {uri.getLastPathSegment()};
+			break;
 		default:
 			throw new IllegalArgumentException("Unknown URI: " + uri);
 		}
 
-		Cursor c = qb.query(dbHelper.getReadableDatabase(), projection, selection, selectionArgs, groupBy, null, sortOrder, limit);
-		c.setNotificationUri(getContext().getContentResolver(), uri);
-		return c;
+		return new Query(qb, projection, selection, selectionArgs, groupBy, sortOrder, limit);
+	}
+
+	/**
+	 * Query of a Uri of the provider, see {@link #buildQuery(Uri, String[], String, String[], String)}
+	 */
+	public static final class Query {
+		private final SQLiteQueryBuilder builder;
+		private final String[] projection;
+		private final String selection;
+		private final String[] selectionArgs;
+		private final String groupBy;
+		private final String sortOrder;
+		private final String limit;
+
+		private Query(SQLiteQueryBuilder builder, String[] projection, String selection, String[] selectionArgs,
+				String groupBy, String sortOrder, String limit) {
+			this.builder = builder;
+			this.projection = projection;
+			this.selection = selection;
+			this.selectionArgs = selectionArgs;
+			this.groupBy = groupBy;
+			this.sortOrder = sortOrder;
+			this.limit = limit;
+		}
+
+		/**
+		 * @return SQL of the query, as built by {@link SQLiteQueryBuilder#query(SQLiteDatabase,
+		 * String[], String, String[], String, String, String, String)}
+		 */
+		@TargetApi(11)
+		public String getSql() {
+			return builder.buildQuery(projection, selection, groupBy, null, sortOrder, limit);
+		}
+
+		/**
+		 * @return Arguments of the selection of the query
+		 */
+		public String[] getSelectionArgs() {
+			return selectionArgs;
+		}
 	}
 
 	@Override
@@ -410,7 +1002,17 @@ public class TrackContentProvider extends ContentProvider {
 		}
 		
 		int rows = dbHelper.getWritableDatabase().update(table, values, selection, selectionArgs);
-		getContext().getContentResolver().notifyChange(uri, null);
+		notifyChange(uri, uri);
+		if (Schema.TBL_TRACK.equals(table) && rows > 0 && values.containsKey(Schema.COL_ACTIVE)
+				&& values.getAsInteger(Schema.COL_ACTIVE) == Schema.VAL_TRACK_INACTIVE) {
+			// Track stopped, see DataHelper.stopTracking()
+			Batch b = batch.get();
+			if (b != null) {
+				b.trackStopped = true;
+			} else {
+				checkpointStoppedTrack();
+			}
+		}
 		return rows;
 
 	}
@@ -422,6 +1024,7 @@ public class TrackContentProvider extends ContentProvider {
 		public static final String TBL_TRACKPOINT = "trackpoint";
 		public static final String TBL_WAYPOINT = "waypoint";
 		public static final String TBL_TRACK = "track";
+		public static final String TBL_TRACK_SUMMARY = "track_summary";
 		
 		public static final String COL_ID = "_id";
 		public static final String COL_TRACK_ID = "track_id";
@@ -444,9 +1047,23 @@ public class TrackContentProvider extends ContentProvider {
 		public static final String COL_EXPORT_DATE = "export_date";
 		public static final String COL_OSM_UPLOAD_DATE = "osm_upload_date";
 		
-		// virtual colums that are used in some sqls but dont exist in database
+		// columns of the track summary, returned by the track queries
 		public static final String COL_TRACKPOINT_COUNT = "tp_count";
 		public static final String COL_WAYPOINT_COUNT = "wp_count";
+		public static final String COL_START_TIMESTAMP = "start_timestamp";
+		public static final String COL_START_LATITUDE = "start_latitude";
+		public static final String COL_START_LONGITUDE = "start_longitude";
+		public static final String COL_END_TIMESTAMP = "end_timestamp";
+		public static final String COL_MODIFIED_TIMESTAMP = "modified_timestamp";
+		public static final String COL_END_LATITUDE = "end_latitude";
+		public static final String COL_END_LONGITUDE = "end_longitude";
+		public static final String COL_LAST_ELEVATION = "last_elevation";
+		public static final String COL_MIN_LATITUDE = "min_latitude";
+		public static final String COL_MAX_LATITUDE = "max_latitude";
+		public static final String COL_MIN_LONGITUDE = "min_longitude";
+		public static final String COL_MAX_LONGITUDE = "max_longitude";
+		public static final String COL_DISTANCE = "distance";
+		public static final String COL_ELEVATION_GAIN = "elevation_gain";
 		
 		// Codes for UriMatcher
 		public static final int URI_CODE_TRACK = 3;
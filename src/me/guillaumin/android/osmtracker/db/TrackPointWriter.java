@@ -0,0 +1,137 @@
+package me.guillaumin.android.osmtracker.db;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.util.Log;
+
+/**
+ * Write-behind buffer of the trackpoints. Locations are collected and
+ * written by one {@link ContentResolver#bulkInsert(android.net.Uri, ContentValues[])}:
+ * one transaction and one change notification for the whole group.
+ *
+ * The group is written when {@link #MAX_PENDING_POINTS} points are
+ * buffered, when the oldest one is {@link #MAX_PENDING_AGE_MS} old, when
+ * the track changes, or on {@link #flush()}. If the process is killed, at
+ * most the last {@link #MAX_PENDING_POINTS} points and
+ * {@link #MAX_PENDING_AGE_MS} of the track are lost.
+ *
+ * Not thread safe: used on the thread of the handler given to the
+ * constructor, the age timer runs there.
+ */
+public class TrackPointWriter {
+
+	private static final String TAG = TrackPointWriter.class.getSimpleName();
+
+	/**
+	 * Max number of buffered points
+	 */
+	public static final int MAX_PENDING_POINTS = 20;
+
+	/**
+	 * Max age of the buffered points, ms
+	 */
+	public static final long MAX_PENDING_AGE_MS = 5000;
+
+	private final DataHelper dataHelper;
+
+	private final ContentResolver contentResolver;
+
+	private final Handler handler;
+
+	private final ContentValues[] pending = new ContentValues[MAX_PENDING_POINTS];
+
+	private int pendingCount = 0;
+
+	/**
+	 * Track of the buffered points
+	 */
+	private long pendingTrackId = -1;
+
+	/**
+	 * Time of the oldest buffered location
+	 */
+	private long oldestTime;
+
+	/**
+	 * Writes the points when no new location comes before {@link #MAX_PENDING_AGE_MS}
+	 */
+	private final Runnable flushRunnable = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * @param c
+	 *            Application context.
+	 * @param handler
+	 *            Handler of the thread of the writer
+	 */
+	public TrackPointWriter(Context c, Handler handler) {
+		this.dataHelper = new DataHelper(c);
+		this.contentResolver = c.getContentResolver();
+		this.handler = handler;
+	}
+
+	/**
+	 * Buffers a point of the track, writes the buffered points if a
+	 * bound is reached.
+	 *
+	 * @param trackId
+	 *            Id of the track
+	 * @param location
+	 *            The Location to track
+	 */
+	public void track(long trackId, Location location) {
+		final long age;
+
+		if (pendingCount > 0 && trackId != pendingTrackId) {
+			flush();
+		}
+
+		pending[pendingCount++] = dataHelper.getTrackPointValues(trackId, location);
+		if (pendingCount == 1) {
+			pendingTrackId = trackId;
+			oldestTime = location.getTime();
+			handler.postDelayed(flushRunnable, MAX_PENDING_AGE_MS);
+		}
+
+		// Location time going back is a clock change, written as well
+		age = location.getTime() - oldestTime;
+		if (pendingCount == MAX_PENDING_POINTS || age >= MAX_PENDING_AGE_MS || age < 0) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the buffered points in one transaction
+	 */
+	public void flush() {
+		final ContentValues[] values;
+
+		if (pendingCount == 0) return;
+
+		handler.removeCallbacks(flushRunnable);
+		values = new ContentValues[pendingCount];
+		System.arraycopy(pending, 0, values, 0, pendingCount);
+		for (int i = 0; i < pendingCount; i++) {
+			pending[i] = null;
+		}
+		pendingCount = 0;
+
+		Log.v(TAG, "Writing " + values.length + " trackpoints of track " + pendingTrackId);
+		contentResolver.bulkInsert(TrackContentProvider.trackPointsUri(pendingTrackId), values);
+	}
+
+	/**
+	 * @return Number of the buffered points
+	 */
+	public int getPendingCount() {
+		return pendingCount;
+	}
+
+}
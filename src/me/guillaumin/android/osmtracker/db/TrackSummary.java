@@ -0,0 +1,210 @@
+package me.guillaumin.android.osmtracker.db;
+
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.location.Location;
+
+/**
+ * Row of {@link Schema#TBL_TRACK_SUMMARY}: counts, first and last points,
+ * time of the last modification, bounding box, distance and elevation gain
+ * of a track, updated as its points are inserted so the track queries do
+ * not read the points.
+ *
+ * Trackpoints are only appended, in the order of their ids: the last
+ * inserted point is the end of the track.
+ */
+final class TrackSummary {
+
+	private static final String[] COLUMNS = {
+		Schema.COL_TRACKPOINT_COUNT,
+		Schema.COL_WAYPOINT_COUNT,
+		Schema.COL_START_TIMESTAMP,
+		Schema.COL_START_LATITUDE,
+		Schema.COL_START_LONGITUDE,
+		Schema.COL_END_TIMESTAMP,
+		Schema.COL_END_LATITUDE,
+		Schema.COL_END_LONGITUDE,
+		Schema.COL_LAST_ELEVATION,
+		Schema.COL_MIN_LATITUDE,
+		Schema.COL_MAX_LATITUDE,
+		Schema.COL_MIN_LONGITUDE,
+		Schema.COL_MAX_LONGITUDE,
+		Schema.COL_DISTANCE,
+		Schema.COL_ELEVATION_GAIN,
+		Schema.COL_MODIFIED_TIMESTAMP
+	};
+
+	final long trackId;
+
+	int trackPointCount;
+	int wayPointCount;
+
+	private long startTime, endTime;
+	private double startLat, startLon, endLat, endLon;
+	private double minLat, maxLat, minLon, maxLon;
+
+	/**
+	 * Elevation of the last point with one, null if none
+	 */
+	private Double lastElevation;
+
+	/**
+	 * Latest time of the trackpoints and way points, null if none
+	 */
+	private Long modifiedTime;
+
+	private double distance;
+	private double elevationGain;
+
+	private final float[] distanceResult = new float[1];
+
+	TrackSummary(long trackId) {
+		this.trackId = trackId;
+	}
+
+	/**
+	 * @return Summary of the track, empty if it has none
+	 */
+	static TrackSummary load(SQLiteDatabase db, long trackId) {
+		TrackSummary s = new TrackSummary(trackId);
+		Cursor c = db.query(Schema.TBL_TRACK_SUMMARY, COLUMNS, Schema.COL_TRACK_ID + " = ?",
+				new String[] {Long.toString(trackId)}, null, null, null);
+		try {
+			if (c.moveToFirst()) {
+				s.trackPointCount = c.getInt(0);
+				s.wayPointCount = c.getInt(1);
+				if (s.trackPointCount > 0) {
+					s.startTime = c.getLong(2);
+					s.startLat = c.getDouble(3);
+					s.startLon = c.getDouble(4);
+					s.endTime = c.getLong(5);
+					s.endLat = c.getDouble(6);
+					s.endLon = c.getDouble(7);
+					s.lastElevation = c.isNull(8) ? null : c.getDouble(8);
+					s.minLat = c.getDouble(9);
+					s.maxLat = c.getDouble(10);
+					s.minLon = c.getDouble(11);
+					s.maxLon = c.getDouble(12);
+					s.distance = c.getDouble(13);
+					s.elevationGain = c.getDouble(14);
+				}
+				s.modifiedTime = c.isNull(15) ? null : c.getLong(15);
+			}
+		} finally {
+			c.close();
+		}
+		return s;
+	}
+
+	/**
+	 * Adds a trackpoint appended to the track
+	 * @param values Values of the inserted {@link Schema#TBL_TRACKPOINT} row
+	 */
+	void addTrackPoint(ContentValues values) {
+		addTrackPoint(values.getAsDouble(Schema.COL_LATITUDE), values.getAsDouble(Schema.COL_LONGITUDE),
+				values.getAsDouble(Schema.COL_ELEVATION), values.getAsLong(Schema.COL_TIMESTAMP));
+	}
+
+	void addTrackPoint(double lat, double lon, Double elevation, long time) {
+		if (trackPointCount == 0) {
+			startTime = time;
+			startLat = minLat = maxLat = lat;
+			startLon = minLon = maxLon = lon;
+		} else {
+			Location.distanceBetween(endLat, endLon, lat, lon, distanceResult);
+			distance += distanceResult[0];
+			minLat = Math.min(minLat, lat);
+			maxLat = Math.max(maxLat, lat);
+			minLon = Math.min(minLon, lon);
+			maxLon = Math.max(maxLon, lon);
+		}
+		if (elevation != null) {
+			if (lastElevation != null && elevation > lastElevation) {
+				elevationGain += elevation - lastElevation;
+			}
+			lastElevation = elevation;
+		}
+		endTime = time;
+		endLat = lat;
+		endLon = lon;
+		trackPointCount++;
+		modified(time);
+	}
+
+	/**
+	 * Adds a way point of the track
+	 * @param values Values of the inserted {@link Schema#TBL_WAYPOINT} row
+	 */
+	void addWayPoint(ContentValues values) {
+		wayPointCount++;
+		modified(values.getAsLong(Schema.COL_TIMESTAMP));
+	}
+
+	private void modified(long time) {
+		if (modifiedTime == null || time > modifiedTime) {
+			modifiedTime = time;
+		}
+	}
+
+	/**
+	 * Writes the summary
+	 */
+	void save(SQLiteDatabase db) {
+		ContentValues values = new ContentValues();
+		values.put(Schema.COL_TRACK_ID, trackId);
+		values.put(Schema.COL_TRACKPOINT_COUNT, trackPointCount);
+		values.put(Schema.COL_WAYPOINT_COUNT, wayPointCount);
+		if (trackPointCount > 0) {
+			values.put(Schema.COL_START_TIMESTAMP, startTime);
+			values.put(Schema.COL_START_LATITUDE, startLat);
+			values.put(Schema.COL_START_LONGITUDE, startLon);
+			values.put(Schema.COL_END_TIMESTAMP, endTime);
+			values.put(Schema.COL_END_LATITUDE, endLat);
+			values.put(Schema.COL_END_LONGITUDE, endLon);
+			values.put(Schema.COL_LAST_ELEVATION, lastElevation);
+			values.put(Schema.COL_MIN_LATITUDE, minLat);
+			values.put(Schema.COL_MAX_LATITUDE, maxLat);
+			values.put(Schema.COL_MIN_LONGITUDE, minLon);
+			values.put(Schema.COL_MAX_LONGITUDE, maxLon);
+		}
+		values.put(Schema.COL_DISTANCE, distance);
+		values.put(Schema.COL_ELEVATION_GAIN, elevationGain);
+		values.put(Schema.COL_MODIFIED_TIMESTAMP, modifiedTime);
+		db.replace(Schema.TBL_TRACK_SUMMARY, null, values);
+	}
+
+	/**
+	 * Rebuilds the summary of a track from its points
+	 */
+	static TrackSummary build(SQLiteDatabase db, long trackId) {
+		TrackSummary s = new TrackSummary(trackId);
+		String[] selectionArgs = new String[] {Long.toString(trackId)};
+		Cursor c = db.query(Schema.TBL_TRACKPOINT,
+				new String[] {Schema.COL_LATITUDE, Schema.COL_LONGITUDE, Schema.COL_ELEVATION, Schema.COL_TIMESTAMP},
+				Schema.COL_TRACK_ID + " = ?", selectionArgs, null, null, Schema.COL_ID + " asc");
+		try {
+			while (c.moveToNext()) {
+				s.addTrackPoint(c.getDouble(0), c.getDouble(1), c.isNull(2) ? null : c.getDouble(2), c.getLong(3));
+			}
+		} finally {
+			c.close();
+		}
+
+		c = db.rawQuery("select count(*), max(" + Schema.COL_TIMESTAMP + ") from " + Schema.TBL_WAYPOINT
+				+ " where " + Schema.COL_TRACK_ID + " = ?", selectionArgs);
+		try {
+			if (c.moveToFirst()) {
+				s.wayPointCount = c.getInt(0);
+				if (!c.isNull(1)) {
+					s.modified(c.getLong(1));
+				}
+			}
+		} finally {
+			c.close();
+		}
+		return s;
+	}
+
+}
@@ -57,6 +57,7 @@ public class Track {
 	
 	private Long startDate=null, endDate=null;
 	private Float startLat=null, startLong=null, endLat=null, endLong=null;
+	private double distance, elevationGain;
 	
 	private boolean extraInformationRead = false;
 	
@@ -92,6 +93,22 @@ public class Track {
 		
 		out.wpCount = tc.getInt(tc.getColumnIndex(Schema.COL_WAYPOINT_COUNT));
 		
+		// Track queries return the summary of the track, no need to query the points
+		int startIdx = tc.getColumnIndex(Schema.COL_START_TIMESTAMP);
+		if (startIdx != -1) {
+			if (!tc.isNull(startIdx)) {
+				out.startDate = tc.getLong(startIdx);
+				out.startLat = tc.getFloat(tc.getColumnIndex(Schema.COL_START_LATITUDE));
+				out.startLong = tc.getFloat(tc.getColumnIndex(Schema.COL_START_LONGITUDE));
+				out.endDate = tc.getLong(tc.getColumnIndex(Schema.COL_END_TIMESTAMP));
+				out.endLat = tc.getFloat(tc.getColumnIndex(Schema.COL_END_LATITUDE));
+				out.endLong = tc.getFloat(tc.getColumnIndex(Schema.COL_END_LONGITUDE));
+			}
+			out.distance = tc.getDouble(tc.getColumnIndex(Schema.COL_DISTANCE));
+			out.elevationGain = tc.getDouble(tc.getColumnIndex(Schema.COL_ELEVATION_GAIN));
+			out.extraInformationRead = true;
+		}
+		
 		if(withExtraInformation){
 			out.readExtraInformation();
 		}
@@ -246,5 +263,20 @@ public class Track {
 		readExtraInformation();
 		return endLong;
 	}
+
+	/**
+	 * @return Length of the track in meters, 0 if the cursor had no summary
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	/**
+	 * @return Sum of the elevation increases between the trackpoints in meters,
+	 * 0 if the cursor had no summary
+	 */
+	public double getElevationGain() {
+		return elevationGain;
+	}
 	
 }
@@ -127,6 +127,11 @@ public class BluetoothReceiver extends Receiver {
 		return internalState.getGpsStatus(status);
 	}
 
+	@Override
+	public NmeaEpochStats getNmeaEpochStats(NmeaEpochStats stats) {
+		return internalState.getNmeaEpochStats(stats);
+	}
+
 	private synchronized void activateBtService() {
 
 		if ( !internalState.hasListeners()
@@ -167,6 +172,7 @@ public class BluetoothReceiver extends Receiver {
 
 		/* Stop service thread */
 		if (mServiceThread != null) {
+			mServiceThread.restoreDefaults();
 			mServiceThread.cancel();
 			mServiceThread = null;
 		}
@@ -206,6 +212,7 @@ public class BluetoothReceiver extends Receiver {
 			break;
 		case STATE_CONNECTED:
 			newStatus = LocationProvider.TEMPORARILY_UNAVAILABLE;
+			internalState.startFirstFix();
 			break;
 		default:
 			if (D) fail();
@@ -262,6 +269,8 @@ public class BluetoothReceiver extends Receiver {
        private BluetoothSocket mSocket;
        private InputReader mInputReader = null;
        private OutputStream mOutputStream = null;
+       private Configurator mConfigurator = null;
+       private LastLocationStore mLocationStore;
 
        private int mConnectionState;
        private volatile boolean cancelRequested = false;
@@ -271,6 +280,10 @@ public class BluetoothReceiver extends Receiver {
            Log.i(TAG, "BEGIN ServiceThread");
            setName("BluetoothServiceThread");
 
+           mLocationStore = new LastLocationStore(BluetoothReceiver.this.mContext, BluetoothReceiver.this.getAddress());
+           final Location savedLocation = mLocationStore.load();
+           if (savedLocation != null) internalState.setLastKnownLocation(savedLocation);
+
            /* Connect */
            setState(STATE_CONNECTING, null, "Connecting to " + BluetoothReceiver.this.getName() + "...");
            mConnectionState = STATE_CONNECTING;
@@ -330,6 +343,7 @@ public class BluetoothReceiver extends Receiver {
         			   setState(STATE_RECONNECTING, "Bluetooth connection lost: " + e.getLocalizedMessage());
         		   }
         	   }
+        	   mLocationStore.save(internalState.getLastKnownLocation());
            } /* for(;!cancelRequested;) */
        } /* run() */
 
@@ -344,7 +358,10 @@ public class BluetoothReceiver extends Receiver {
         	   s.connect();
         	   synchronized(this) {
         		   mSocket = s;
-        		   mInputReader = new InputReader(s.getInputStream());
+        		   /* Baudrate of the receiver behind the Bluetooth link is unknown */
+        		   mConfigurator = new Configurator(0);
+        		   mConfigurator.setAidingLocation(internalState.getLastKnownLocation());
+        		   mInputReader = new InputReader(s.getInputStream(), mConfigurator);
         		   mOutputStream = s.getOutputStream();
         	   }
            }catch (IOException e) {
@@ -380,6 +397,17 @@ public class BluetoothReceiver extends Receiver {
            }
        }
 
+       /**
+        * Restores the default output of the receiver before disconnect
+        */
+       public void restoreDefaults() {
+    	   Configurator c;
+    	   synchronized(this) {
+    		   c = mConfigurator;
+    	   }
+    	   if (c != null) c.restoreDefaults();
+       }
+
        public void cancel() {
     	   BluetoothSocket s;
     	   synchronized(this) {
@@ -423,30 +451,66 @@ public class BluetoothReceiver extends Receiver {
     		BluetoothReceiver.this.onConnectionStateChanged(oldState, state, toast, statusMessage);
     	}
 
+    	private class Configurator extends ReceiverConfigurator {
+
+    		   public Configurator(int baudrate) { super(baudrate); }
+
+    		   @Override
+    		   protected void write(byte[] cmd) {
+    			   ServiceThread.this.write(cmd);
+    		   }
+    	   }
+
     	private class InputReader extends GpsInputReader {
 
-    		   public InputReader(InputStream s) { super(s); }
+    		   private final Configurator configurator;
+
+    		   public InputReader(InputStream s, Configurator c) {
+    			   super(s);
+    			   this.configurator = c;
+    		   }
 
     		   @Override
     		   protected void onRawDataReceived(byte[] buf, int offset, int length) {
     			   rawDataTransporter.onRawDataReceived(buf, offset, length);
     		   }
 
+    		   @Override
+    		   protected void onNmeaReceived(byte[] buf, int offset, int length) {
+    			   configurator.onNmeaReceived(buf, offset, length);
+    			   internalState.putNmeaMessage(buf, offset, length);
+    		   }
+
     		   @Override
     		   protected void onNmeaReceived(String nmea) {
-    			   if (D) Log.i(TAG, "NMEA: " + nmea.trim());
-    			   internalState.putNmeaMessage(nmea);
+    			   Log.i(TAG, "NMEA: " + nmea.trim());
     		   }
 
     		   @Override
     		   protected void onSirfReceived(byte[] buf, int offset, int length) {
+    			   configurator.onSirfReceived();
     			   internalState.putSirfMessage(buf, offset, length);
     		   }
 
+    		   @Override
+    		   protected void onUbxReceived(byte[] buf, int offset, int length) {
+    			   configurator.onUbxReceived(buf, offset, length);
+    			   internalState.putUbxMessage(buf, offset, length);
+    		   }
+
     		   @Override
     		   protected void onBufferFlushed() {
     			   if (D) Log.v(TAG, "onBufferFlushed()");
     		   }
+
+    		   @Override
+    		   protected long onIdle() {
+    			   final long configureTimeout = configurator.configure(
+    					   internalState.hasGpsStatusListeners(), internalState.getMinTime(),
+    					   internalState.hasCurrentLocation());
+    			   mLocationStore.saveIfStale(internalState.getLastFixTime(), internalState);
+    			   return minIdleTimeout(configureTimeout, internalState.checkEpochTimeout());
+    		   }
     	   }
    }
 
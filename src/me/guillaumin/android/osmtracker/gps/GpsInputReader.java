@@ -6,7 +6,6 @@ import java.io.UnsupportedEncodingException;
 
 import me.guillaumin.android.osmtracker.OSMTracker;
 
-import android.os.SystemClock;
 import android.util.Log;
 import static junit.framework.Assert.*;
 
@@ -19,30 +18,75 @@ public abstract class GpsInputReader {
 
     static final String NMEA_CHARSET = "ISO-8859-1";
 
-    static final long READ_TIMEOUT_MS = 200;
-
 	static final int LOOKS_NOT_LIKE_GPS_MSG = 0;
 	static final int LOOKS_LIKE_TRUNCATED_MSG = -1;
 
-	private InputStream in;
+	/**
+	 * Max message size: SiRF or UBX message with 1023 bytes payload.
+	 * Truncated messages longer than this are skipped as garbage.
+	 */
+	static final int MAX_MESSAGE_SIZE = 1023 + 8;
+
+	static final int DEFAULT_BUFFER_SIZE = 2048;
+
+	/**
+	 * The ring buffer grows up to this size when the parser does not keep up
+	 * with the link
+	 */
+	static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream in;
+
+	/*
+	 * Ring buffer, filled by the reader thread and consumed by loop().
+	 * The first MAX_MESSAGE_SIZE bytes of the ring are mirrored after its
+	 * end, so every message starting in the ring is contiguous in buf.
+	 * buf.length = capacity + MAX_MESSAGE_SIZE, capacity is a power of 2.
+	 * Only the reader thread writes to buf and replaces it when growing.
+	 */
 	private byte buf[];
-	private int pos;
+	private int mask;
+	private final int maxCapacity;
+
+	/* Total number of bytes received and consumed. Guarded by this */
+	private long head;
+	private long tail;
+
+	/* End of stream or read error. Guarded by this */
+	private boolean eof;
+	private IOException readException;
+
+	private volatile boolean stopRequested;
 
 	public GpsInputReader(InputStream inputStream) {
-		this(inputStream, 2048);
+		this(inputStream, DEFAULT_BUFFER_SIZE);
 	}
 
+	/**
+	 * @param in Input stream
+	 * @param size Initial size of the ring buffer. Rounded up to the power of 2.
+	 */
 	public GpsInputReader(InputStream in, final int size) {
+		int capacity;
+
 		if (size <= 0) {
 			throw new IllegalArgumentException("size <= 0");
 		}
 		this.in = in;
-		buf = new byte[size];
-		pos=0;
+
+		capacity = Integer.highestOneBit(Math.max(size, MAX_MESSAGE_SIZE) - 1) << 1;
+		buf = new byte[capacity + MAX_MESSAGE_SIZE];
+		mask = capacity - 1;
+		maxCapacity = Math.max(capacity, MAX_BUFFER_SIZE);
+		head = tail = 0;
+		eof = false;
+		readException = null;
+		stopRequested = false;
 	}
 
 	/**
-	 * Called after read() with received data
+	 * Called with received data before it is parsed. Data that wraps around
+	 * the end of the ring buffer is passed in two calls.
 	 *
 	 * @param buf
 	 * @param offset
@@ -52,9 +96,20 @@ public abstract class GpsInputReader {
 
 	/**
 	 * Called for every fully received NMEA sentence
+	 * @param buf Input buffer
+	 * @param offset Offset of received sentence
+	 * @param length Sentence length, including <CR><LF>
+	 */
+	protected abstract void onNmeaReceived(final byte[] buf, int offset, int length);
+
+	/**
+	 * Debug hook. Called for every fully received NMEA sentence
+	 * in addition to {@link #onNmeaReceived(byte[], int, int)}, only if
+	 * OSMTracker.DEBUG is set.
 	 * @param nmea
 	 */
-	protected abstract void onNmeaReceived(String nmea);
+	protected void onNmeaReceived(String nmea) {
+	}
 
 	/**
 	 * Called for every fully received SiRF message
@@ -65,18 +120,46 @@ public abstract class GpsInputReader {
 	protected abstract void onSirfReceived(final byte[] buf, int offset, int length);
 
 	/**
-	 * Called when input buffer is flushed out
+	 * Called for every fully received u-blox UBX message
+	 * @param buf Input buffer
+	 * @param offset Offset of received message
+	 * @param length Message length, including sync chars and checksum
+	 */
+	protected abstract void onUbxReceived(final byte[] buf, int offset, int length);
+
+	/**
+	 * Called when all the received data is parsed
 	 */
 	protected abstract void onBufferFlushed();
 
 	/**
-	 *
+	 * Called on the parser thread when all the received data is parsed and
+	 * before waiting for new data.
+	 * @return Max time to wait for new data before the next call, ms.
+	 * 0 - wait indefinitely.
+	 */
+	protected long onIdle() {
+		return 0;
+	}
+
+	/**
+	 * @return The shorter of two onIdle() timeouts, 0 - not limited
+	 */
+	protected static long minIdleTimeout(long t1, long t2) {
+		if (t1 == 0) return t2;
+		if (t2 == 0) return t1;
+		return Math.min(t1, t2);
+	}
+
+	/**
+	 * @param buf Input buffer
+	 * @param startPos Start of the message
+	 * @param pos End of received data
 	 * @return LOOKS_NOT_LIKE_GPS_MSG - does not looks like NMEA message;
 	 * @return LOOKS_LIKE_TRUNCATED_MSG - may be truncated NMEA message;
 	 * @return >0 -  looks like NMEA message, returns message size, including <CR><LF>
-	 * TODO: add tests
 	 */
-	final private int looksLikeNmea(final int startPos) {
+	static int looksLikeNmea(final byte[] buf, final int startPos, final int pos) {
 		int p;
 		int c;
 
@@ -92,7 +175,7 @@ public abstract class GpsInputReader {
 
         /* 2-characters TalkerID and first 2 characters of message type ($GPxx, $PSRF) */
 		for(; p<5+startPos; ++p) {
-			if (p >= this.pos)
+			if (p >= pos)
 				return LOOKS_LIKE_TRUNCATED_MSG;
 			c = buf[p];
 			if( ! ((c >= 'a' && c <= 'z')
@@ -103,7 +186,7 @@ public abstract class GpsInputReader {
 
 		/* Rest of message type and fields */
 		for(;;++p) {
-            if (p >= this.pos)
+            if (p >= pos)
                 return LOOKS_LIKE_TRUNCATED_MSG;
             c = buf[p];
             // <CR>
@@ -115,7 +198,7 @@ public abstract class GpsInputReader {
             	int tHi, tLo;
             	int providedCsum, ourCsum;
 
-            	if (p+3 >= this.pos)
+            	if (p+3 >= pos)
             		return LOOKS_LIKE_TRUNCATED_MSG;
             	if (buf[p+3] != '\r')
             		return LOOKS_NOT_LIKE_GPS_MSG;
@@ -148,17 +231,18 @@ public abstract class GpsInputReader {
 	}
 
 	/**
-	 *
+	 * @param buf Input buffer
+	 * @param startPos Start of the message
+	 * @param pos End of received data
 	 * @return LOOKS_NOT_LIKE_GPS_MSG - does not looks like SiRF message;
 	 * @return LOOKS_LIKE_TRUNCATED_MSG - may be truncated SiRF message;
 	 * @return >0 -  looks like SiRF message, returns message size
-	 * TODO: add tests
 	 */
-	final private int looksLikeSirf(final int startPos) {
+	static int looksLikeSirf(final byte[] buf, final int startPos, final int pos) {
 		int ourCsum, providedCsum;
 		int payloadSize;
 
-		if (this.pos - startPos < 2)
+		if (pos - startPos < 2)
 			return LOOKS_LIKE_TRUNCATED_MSG;
 
 		/* Start sequence 0xA0 0xA2 */
@@ -203,7 +287,7 @@ public abstract class GpsInputReader {
 	}
 
 
-	final private static int sirfCsum(final byte[] buf,
+	static int sirfCsum(final byte[] buf,
 			final int startPos,
 			final int payloadSize) {
 		int i;
@@ -220,122 +304,338 @@ public abstract class GpsInputReader {
 	}
 
 
+	/**
+	 * @param buf Input buffer
+	 * @param startPos Start of the message
+	 * @param pos End of received data
+	 * @return LOOKS_NOT_LIKE_GPS_MSG - does not looks like UBX message;
+	 * @return LOOKS_LIKE_TRUNCATED_MSG - may be truncated UBX message;
+	 * @return >0 -  looks like UBX message, returns message size
+	 */
+	static int looksLikeUbx(final byte[] buf, final int startPos, final int pos) {
+		int payloadSize;
+		int ourCsum;
+
+		if (pos - startPos < 2)
+			return LOOKS_LIKE_TRUNCATED_MSG;
+
+		/* Sync chars 0xB5 0x62 */
+		if ( ((buf[startPos+0]&0xff) != 0xb5)  || ((buf[startPos+1]&0xff) != 0x62))
+			return LOOKS_NOT_LIKE_GPS_MSG;
+
+		if (pos < startPos+8)
+			return LOOKS_LIKE_TRUNCATED_MSG;
+
+		/* Payload size, little endian */
+		payloadSize = ((int)buf[startPos+4]&0xff) | (((int)buf[startPos+5]&0xff) << 8);
+		if (payloadSize > MAX_MESSAGE_SIZE - 8) {
+			Log.d(TAG, String.format("Wrong UBX payload size. %d > %d", payloadSize, MAX_MESSAGE_SIZE - 8));
+			return LOOKS_NOT_LIKE_GPS_MSG;
+		}
+
+		if (startPos+payloadSize+8 > pos)
+			return LOOKS_LIKE_TRUNCATED_MSG;
+
+		/* Checksum over class, id, length and payload */
+		ourCsum = ubxCsum(buf, startPos+2, payloadSize+4);
+		if (((ourCsum >> 8) != ((int)buf[startPos+6+payloadSize]&0xff))
+				|| ((ourCsum & 0xff) != ((int)buf[startPos+7+payloadSize]&0xff))) {
+			Log.d(TAG, String.format("UBX checksum mismatch 0x%02X%02X != 0x%4H",
+					buf[startPos+6+payloadSize], buf[startPos+7+payloadSize], ourCsum));
+			return LOOKS_NOT_LIKE_GPS_MSG;
+		}
+
+		return payloadSize + 8;
+	}
+
+	/**
+	 * 8-bit Fletcher checksum of the UBX message
+	 * @return CK_A << 8 | CK_B
+	 */
+	static int ubxCsum(final byte[] buf,
+			final int startPos,
+			final int length) {
+		int i;
+		int ckA, ckB;
+		final int end;
+
+		ckA = ckB = 0;
+		end = startPos + length;
+		for (i=startPos; i < end; i++) {
+			ckA += buf[i] & 0xff;
+			ckB += ckA;
+		}
+
+		return ((ckA & 0xff) << 8) | (ckB & 0xff);
+	}
+
+	/**
+	 * Reads and parses the input stream until the end of the stream or
+	 * until the calling thread is interrupted.
+	 *
+	 * Blocking reads are done by a separate reader thread, messages are
+	 * parsed and passed to the callbacks on the calling thread as soon as
+	 * they are received. To stop a reader blocked in read(), close the
+	 * input stream.
+	 *
+	 * {@link #onIdle()} is called on the same thread when there is no data
+	 * to parse, it can be used as a timer.
+	 *
+	 * @throws IOException read() error
+	 */
 	public void loop() throws IOException {
-		int rcvd, rcvdTotal;
-		int p;
-		long tmout;
-		int truncatedMsgPos, secondTruncatedMsgPos;
-
-		mainloop: for(;;) {
-
-			/* Read data */
-			if (D) assertTrue(pos != buf.length);
-			rcvdTotal = 0;
-			tmout = SystemClock.uptimeMillis()+READ_TIMEOUT_MS;
-			do {
-				rcvd = in.read(buf, pos, buf.length - pos);
-				if (rcvd < 0) {
-					Log.d(TAG, String.format("read() = %d", rcvd));
-					return;
-				}
-				rcvdTotal += rcvd;
-				pos += rcvd;
-				if (pos == buf.length) {
-					break;
-				}
+		final ReaderThread reader;
+		long rawPos;
+		long idleTimeout;
+
+		reader = new ReaderThread();
+		reader.start();
+
+		rawPos = 0;
+		idleTimeout = 0;
+		try {
+			for(;;) {
+				final byte b[];
+				final int m;
+				final long h, newTail;
+
 				synchronized(this) {
-					try {
-						wait(50);
-					} catch(InterruptedException ie) {
-						break mainloop;
+					if (idleTimeout > 0) {
+						if (isWaitingForData(rawPos))
+							wait(idleTimeout);
+					}else {
+						while (isWaitingForData(rawPos)) {
+							wait();
+						}
+					}
+					if (isWaitingForData(rawPos)) {
+						b = null;
+						m = 0;
+						h = 0;
+					}else if (head == rawPos) {
+						if (readException != null)
+							throw readException;
+						Log.d(TAG, "End of stream");
+						return;
+					}else {
+						b = buf;
+						m = mask;
+						h = head;
 					}
 				}
-				/* No data for 50ms */
-				if (in.available() == 0) {
-					if (D) Log.v(TAG, "No data available for 50ms");
-					break;
+
+				if (b == null) {
+					/* Timeout */
+					idleTimeout = onIdle();
+					continue;
+				}
+
+				/* Raw data */
+				rawPos = deliverRawData(b, m, rawPos, h);
+
+				/* Messages */
+				newTail = parse(b, m, tail, h);
+
+				synchronized(this) {
+					tail = newTail;
+					notifyAll();
 				}
-			} while (SystemClock.uptimeMillis()<tmout);
 
-			if (rcvdTotal > 0) onRawDataReceived(buf, pos-rcvdTotal, rcvdTotal);
+				if (newTail == h) onBufferFlushed();
+				idleTimeout = onIdle();
+			}
+		}catch (InterruptedException ie) {
+			Log.d(TAG, "loop() interrupted");
+		}finally {
+			reader.cancel();
+		}
+	}
+
+	/* Guarded by this */
+	private boolean isWaitingForData(long rawPos) {
+		return (head == rawPos) && !eof && (readException == null);
+	}
+
+	private long deliverRawData(final byte[] b, final int m, final long from, final long to) {
+		final int start = (int)from & m;
+		final int capacity = m + 1;
+		final int length = (int)(to - from);
+
+		if (start + length <= capacity) {
+			onRawDataReceived(b, start, length);
+		}else {
+			onRawDataReceived(b, start, capacity - start);
+			onRawDataReceived(b, 0, length - (capacity - start));
+		}
+		return to;
+	}
 
-			/* Handle all received messages */
-			p=0;
-			truncatedMsgPos = secondTruncatedMsgPos = -1;
-			while(p<pos) {
+	/**
+	 * Finds messages in b[from, to) and passes them to the callbacks
+	 * @return Position of the first unconsumed byte: start of the truncated
+	 * message or to
+	 */
+	private long parse(final byte[] b, final int m, final long from, final long to) {
+		final int capacity = m + 1;
+		long p, truncatedMsgPos;
+
+		truncatedMsgPos = -1;
+		p = from;
+		while (p < to) {
+			final int idx = (int)p & m;
+			final int c = b[idx] & 0xff;
+			final int end;
+			int msgSize;
+
+			if ((c != '$') && (c != 0xa0) && (c != 0xb5)) {
+				++p;
+				continue;
+			}
+
+			/* Contiguous data, including the mirror */
+			end = idx + (int)Math.min(to - p, capacity + MAX_MESSAGE_SIZE - idx);
+
+			if (c == '$') {
 				/* Check for NMEA message */
-				if (buf[p] == '$') {
-					int msgSize = looksLikeNmea(p);
-					if (msgSize > 0) {
-						/* NMEA message found */
+				msgSize = looksLikeNmea(b, idx, end);
+				if (msgSize > 0) {
+					/* NMEA message found */
+					onNmeaReceived(b, idx, msgSize);
+					if (D) {
 						try {
-							final String nmeaMsg = new String(buf, p, msgSize, NMEA_CHARSET);
-							if (nmeaMsg.length() != 0) {
-								onNmeaReceived(nmeaMsg);
-								p += msgSize;
-								truncatedMsgPos = secondTruncatedMsgPos = -1;
-							}else {
-								Log.d(TAG, "Conversion from NMEA_CHARSET failed");
-								++p;
-							}
+							onNmeaReceived(new String(b, idx, msgSize, NMEA_CHARSET));
 						} catch (UnsupportedEncodingException uee) {
 							Log.d(TAG, "Conversion from NMEA_CHARSET failed", uee);
-							++p;
 						}
-					}else if (msgSize == LOOKS_LIKE_TRUNCATED_MSG) {
-						if (truncatedMsgPos < 0) {
-							truncatedMsgPos = p;
-						} else if (secondTruncatedMsgPos < 0) {
-							secondTruncatedMsgPos = p;
-						}
-						++p;
-					}else {
-						if (D) assertEquals(LOOKS_NOT_LIKE_GPS_MSG, msgSize);
-						++p;
 					}
+				}
+			}else if (c == 0xa0) {
 				/* Check for SiRF message */
-				}else if ((buf[p] & 0xff) == 0xa0) {
-					int msgSize = looksLikeSirf(p);
-					if (msgSize > 0) {
-						/* SiRF message found */
-						onSirfReceived(buf, p, msgSize);
-						p += msgSize;
-						truncatedMsgPos = secondTruncatedMsgPos = -1;
-					}else if (msgSize == LOOKS_LIKE_TRUNCATED_MSG) {
-						if (truncatedMsgPos < 0) {
-							truncatedMsgPos = p;
-						} else if (secondTruncatedMsgPos < 0) {
-							secondTruncatedMsgPos = p;
+				msgSize = looksLikeSirf(b, idx, end);
+				if (msgSize > 0) {
+					/* SiRF message found */
+					onSirfReceived(b, idx, msgSize);
+				}
+			}else {
+				/* Check for UBX message */
+				msgSize = looksLikeUbx(b, idx, end);
+				if (msgSize > 0) {
+					/* UBX message found */
+					onUbxReceived(b, idx, msgSize);
+				}
+			}
+
+			if (msgSize > 0) {
+				p += msgSize;
+				truncatedMsgPos = -1;
+			}else {
+				if ((msgSize == LOOKS_LIKE_TRUNCATED_MSG)
+						&& (truncatedMsgPos < 0)
+						&& (to - p < MAX_MESSAGE_SIZE)) {
+					truncatedMsgPos = p;
+				}
+				++p;
+			}
+		} /* while(p<to) */
+
+		if (truncatedMsgPos >= 0) {
+			if (D) Log.v(TAG, "Received truncated message");
+			return truncatedMsgPos;
+		}
+		return to;
+	}
+
+	/**
+	 * Doubles the ring buffer. Called by the reader thread with the lock held.
+	 */
+	private void grow() {
+		final int capacity = mask + 1;
+		final int newCapacity = 2 * capacity;
+		final int newMask = newCapacity - 1;
+		final byte newBuf[] = new byte[newCapacity + MAX_MESSAGE_SIZE];
+
+		if (D) assertTrue(newCapacity <= maxCapacity);
+
+		for (long p = tail; p < head; ++p) {
+			newBuf[(int)p & newMask] = buf[(int)p & mask];
+		}
+		System.arraycopy(newBuf, 0, newBuf, newCapacity, MAX_MESSAGE_SIZE);
+
+		Log.d(TAG, String.format("Ring buffer size: %d -> %d", capacity, newCapacity));
+		buf = newBuf;
+		mask = newMask;
+	}
+
+	/* Reads the input stream into the ring buffer */
+	private class ReaderThread extends Thread {
+
+		public ReaderThread() {
+			setName("GpsInputReader");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				for(;;) {
+					final byte b[];
+					final int capacity, idx, free;
+					final int rcvd;
+
+					synchronized(GpsInputReader.this) {
+						/* Ring buffer full */
+						while (!stopRequested && (head - tail == mask + 1)) {
+							if (mask + 1 < maxCapacity) {
+								grow();
+							}else {
+								GpsInputReader.this.wait();
+							}
 						}
-						++p;
-					}else {
-						if (D) assertEquals(LOOKS_NOT_LIKE_GPS_MSG, msgSize);
-						++p;
+						if (stopRequested) return;
+						b = buf;
+						capacity = mask + 1;
+						idx = (int)head & mask;
+						free = Math.min(capacity - (int)(head - tail), capacity - idx);
+					}
+
+					rcvd = in.read(b, idx, free);
+
+					synchronized(GpsInputReader.this) {
+						if (rcvd < 0) {
+							Log.d(TAG, String.format("read() = %d", rcvd));
+							eof = true;
+							GpsInputReader.this.notifyAll();
+							return;
+						}
+						/* Mirror */
+						if (idx < MAX_MESSAGE_SIZE) {
+							System.arraycopy(b, idx, b, capacity + idx,
+									Math.min(rcvd, MAX_MESSAGE_SIZE - idx));
+						}
+						head += rcvd;
+						GpsInputReader.this.notifyAll();
 					}
-				}else {
-					++p;
 				}
-			} /* while(p<pos) */
-
-			/* Handle last possibly truncated GPS message */
-			if ((truncatedMsgPos == 0) && (this.pos == this.buf.length)) {
-				/* Buffer full */
-				truncatedMsgPos = secondTruncatedMsgPos;
-				if (truncatedMsgPos < 0) {
-					Log.d(TAG, String.format("Skipped %d garbage bytes", (int)this.buf.length));
+			}catch (IOException e) {
+				synchronized(GpsInputReader.this) {
+					readException = e;
+					GpsInputReader.this.notifyAll();
+				}
+			}catch (InterruptedException ie) {
+				synchronized(GpsInputReader.this) {
+					eof = true;
+					GpsInputReader.this.notifyAll();
 				}
 			}
-			if (truncatedMsgPos < 0) {
-				this.pos = 0;
-				onBufferFlushed();
-			}else if (truncatedMsgPos != 0) {
-				if (D) Log.v(TAG, "Received truncated message");
-				System.arraycopy(buf, truncatedMsgPos, buf, 0,
-						this.pos-truncatedMsgPos);
-				this.pos -= truncatedMsgPos;
-				truncatedMsgPos = secondTruncatedMsgPos = -1;
+		}
+
+		public void cancel() {
+			stopRequested = true;
+			synchronized(GpsInputReader.this) {
+				GpsInputReader.this.notifyAll();
 			}
-		} /* for(;;) */
+			this.interrupt();
+		}
 	}
 
 }
@@ -25,7 +25,7 @@ import java.util.NoSuchElementException;
  * This class is used in conjunction with the {@link Listener} interface.
  */
 public final class GpsStatus {
-    private static final int NUM_SATELLITES = 255;
+    private static final int NUM_SATELLITES = PrnMask.MAX_PRN;
 
     /* These package private values are modified by the LocationManager class */
     private int mTimeToFirstFix;
@@ -134,8 +134,8 @@ public final class GpsStatus {
      * Is synchronized to ensure that GPS status updates are atomic.
      */
     synchronized void setStatus(int svCount, int[] prns, float[] snrs,
-            float[] elevations, float[] azimuths, int ephemerisMask,
-            int almanacMask, int usedInFixMask) {
+            float[] elevations, float[] azimuths, PrnMask ephemerisMask,
+            PrnMask almanacMask, PrnMask usedInFixMask) {
         int i;
 
         for (i = 0; i < mSatellites.length; i++) {
@@ -143,18 +143,17 @@ public final class GpsStatus {
         }
 
         for (i = 0; i < svCount; i++) {
-            int prn = prns[i] - 1;
-            int prnShift = (1 << prn);
-            if (prn >= 0 && prn < mSatellites.length) {
-                GpsSatellite satellite = mSatellites[prn];
+            int prn = prns[i];
+            if (prn > 0 && prn <= mSatellites.length) {
+                GpsSatellite satellite = mSatellites[prn - 1];
 
                 satellite.mValid = true;
                 satellite.mSnr = snrs[i];
                 satellite.mElevation = elevations[i];
                 satellite.mAzimuth = azimuths[i];
-                satellite.mHasEphemeris = ((ephemerisMask & prnShift) != 0);
-                satellite.mHasAlmanac = ((almanacMask & prnShift) != 0);
-                satellite.mUsedInFix = ((usedInFixMask & prnShift) != 0);
+                satellite.mHasEphemeris = ephemerisMask.get(prn);
+                satellite.mHasAlmanac = almanacMask.get(prn);
+                satellite.mUsedInFix = usedInFixMask.get(prn);
             }
         }
     }
@@ -0,0 +1,132 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import me.guillaumin.android.osmtracker.OSMTracker;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.location.Location;
+import android.util.Log;
+
+/**
+ * Last known locations of the external receivers, kept between the sessions
+ * for the warm start aiding. One location per receiver address.
+ *
+ * Also keeps whether the receiver may have been left in the SiRF binary
+ * mode (see {@link ReceiverConfigurator#saveSirfSwitchLeft(boolean)}).
+ *
+ * Uses disk I/O, called from the service thread of the receiver. Not thread
+ * safe.
+ *
+ * @author Alexey Illarionov
+ */
+final class LastLocationStore {
+
+	// Debugging
+	private static final String TAG = LastLocationStore.class.getSimpleName();
+	private static final boolean D = OSMTracker.DEBUG;
+
+	private static final String PREFERENCES_NAME = "receiver_locations";
+
+	private static final String KEY_LATITUDE = ".latitude";
+	private static final String KEY_LONGITUDE = ".longitude";
+	private static final String KEY_ALTITUDE = ".altitude";
+	private static final String KEY_ACCURACY = ".accuracy";
+	private static final String KEY_TIME = ".time";
+	private static final String KEY_SIRF_SWITCH_LEFT = ".sirf_switch_left";
+
+	/* Min interval between the saves of one receiver while connected, ms */
+	static final long SAVE_INTERVAL_MS = 15 * 60 * 1000;
+
+	private final SharedPreferences prefs;
+	private final String address;
+
+	/* UTC time of the last saved location */
+	private long savedTime;
+
+	public LastLocationStore(Context context, String address) {
+		this.prefs = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+		this.address = address;
+		this.savedTime = 0;
+	}
+
+	/**
+	 * @return Saved location of the receiver, null if there is none
+	 */
+	public Location load() {
+		final Location l;
+
+		if (!prefs.contains(address + KEY_TIME)) return null;
+
+		l = new Location(address);
+		l.setLatitude(Double.longBitsToDouble(prefs.getLong(address + KEY_LATITUDE, 0)));
+		l.setLongitude(Double.longBitsToDouble(prefs.getLong(address + KEY_LONGITUDE, 0)));
+		if (prefs.contains(address + KEY_ALTITUDE))
+			l.setAltitude(Double.longBitsToDouble(prefs.getLong(address + KEY_ALTITUDE, 0)));
+		if (prefs.contains(address + KEY_ACCURACY))
+			l.setAccuracy(prefs.getFloat(address + KEY_ACCURACY, 0));
+		l.setTime(prefs.getLong(address + KEY_TIME, 0));
+		savedTime = l.getTime();
+
+		if (D) Log.d(TAG, "Loaded location of " + address + ": " + l);
+		return l;
+	}
+
+	/**
+	 * Saves the location if it is newer than the saved one
+	 */
+	public void save(final Location l) {
+		final SharedPreferences.Editor e;
+
+		if ((l == null) || (l.getTime() <= savedTime)) return;
+
+		e = prefs.edit();
+		e.putLong(address + KEY_LATITUDE, Double.doubleToLongBits(l.getLatitude()));
+		e.putLong(address + KEY_LONGITUDE, Double.doubleToLongBits(l.getLongitude()));
+		if (l.hasAltitude()) {
+			e.putLong(address + KEY_ALTITUDE, Double.doubleToLongBits(l.getAltitude()));
+		}else {
+			e.remove(address + KEY_ALTITUDE);
+		}
+		if (l.hasAccuracy()) {
+			e.putFloat(address + KEY_ACCURACY, l.getAccuracy());
+		}else {
+			e.remove(address + KEY_ACCURACY);
+		}
+		e.putLong(address + KEY_TIME, l.getTime());
+		if (e.commit()) {
+			savedTime = l.getTime();
+			if (D) Log.d(TAG, "Saved location of " + address);
+		}else {
+			Log.e(TAG, "Failed to save location of " + address);
+		}
+	}
+
+	/**
+	 * @return true if a switch of the receiver to the SiRF binary protocol
+	 * was left in progress
+	 */
+	public boolean isSirfSwitchLeft() {
+		return prefs.getBoolean(address + KEY_SIRF_SWITCH_LEFT, false);
+	}
+
+	public void setSirfSwitchLeft(boolean left) {
+		final SharedPreferences.Editor e = prefs.edit();
+
+		if (left) {
+			e.putBoolean(address + KEY_SIRF_SWITCH_LEFT, true);
+		}else {
+			e.remove(address + KEY_SIRF_SWITCH_LEFT);
+		}
+		if (!e.commit()) Log.e(TAG, "Failed to save SiRF switch of " + address);
+	}
+
+	/**
+	 * Saves the location if the saved one is older than {@link #SAVE_INTERVAL_MS}.
+	 * @param fixTime UTC time of the last known location, 0 if none.
+	 * Checked first, so the location is allocated only when it is saved.
+	 */
+	public void saveIfStale(long fixTime, final ReceiverInternalState state) {
+		if (fixTime - savedTime < SAVE_INTERVAL_MS) return;
+		save(state.getLastKnownLocation());
+	}
+
+}
@@ -0,0 +1,354 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Cursor over the comma-separated fields of a NMEA sentence kept in a byte
+ * buffer. Numbers are parsed in place, without creating intermediate
+ * Strings. Parse errors are reported with NumberFormatException.
+ *
+ * After {@link #reset(byte[], int, int)} the cursor points to the address
+ * field (e.g. "GPGGA"), {@link #next()} moves to the following field.
+ *
+ * @author Alexey Illarionov
+ */
+final class NmeaCursor {
+
+	/**
+	 * Max number of significant digits kept by the decimal parser
+	 */
+	private static final int MAX_DIGITS = 18;
+
+	/**
+	 * Max number of fractional digits of minutes used by parseDegrees()
+	 */
+	private static final int MAX_MINUTES_SCALE = 9;
+
+	private static final long POW10[] = {
+		1L,
+		10L,
+		100L,
+		1000L,
+		10000L,
+		100000L,
+		1000000L,
+		10000000L,
+		100000000L,
+		1000000000L,
+		10000000000L,
+		100000000000L,
+		1000000000000L,
+		10000000000000L,
+		100000000000000L,
+		1000000000000000L,
+		10000000000000000L,
+		100000000000000000L,
+		1000000000000000000L
+	};
+
+	private byte buf[];
+
+	/* Position of the first character after '$' */
+	private int msgStart;
+
+	/* End of sentence data, excluding checksum and <CR><LF> */
+	private int msgEnd;
+
+	/* Current field */
+	private int fieldStart;
+	private int fieldEnd;
+
+	/* Result of the last parseDecimal() call */
+	private long decimalMantissa;
+	private int decimalScale;
+
+	public NmeaCursor() {
+		buf = new byte[0];
+		msgStart = msgEnd = fieldStart = fieldEnd = 0;
+	}
+
+	/**
+	 * Sets the cursor to the NMEA sentence buf[offset, offset+length).
+	 * Trailing &lt;CR&gt;&lt;LF&gt; and *XX checksum are skipped.
+	 * @return false if message does not start with '$'
+	 */
+	public boolean reset(final byte[] buf, int offset, int length) {
+		int end = offset + length;
+
+		this.buf = buf;
+
+		while ((end > offset) && ((buf[end-1] == '\n') || (buf[end-1] == '\r')))
+			end -= 1;
+
+		if ((end - 3 > offset) && (buf[end-3] == '*'))
+			end -= 3;
+
+		this.msgEnd = end;
+		if ((end <= offset) || (buf[offset] != '$')) {
+			this.msgStart = this.fieldStart = this.fieldEnd = end;
+			return false;
+		}
+
+		this.msgStart = offset+1;
+		this.fieldStart = this.msgStart;
+		this.fieldEnd = indexOfComma(this.msgStart);
+
+		return true;
+	}
+
+	/**
+	 * @return Number of data fields, not counting address field.
+	 */
+	public int fieldCount() {
+		int cnt = 0;
+		for (int p=msgStart; p<msgEnd; ++p) {
+			if (buf[p] == ',') cnt += 1;
+		}
+		return cnt;
+	}
+
+	/**
+	 * Moves cursor to the next field
+	 * @return false if there is no more fields
+	 */
+	public boolean next() {
+		if (fieldEnd >= msgEnd) {
+			fieldStart = msgEnd;
+			return false;
+		}
+		fieldStart = fieldEnd + 1;
+		fieldEnd = indexOfComma(fieldStart);
+		return true;
+	}
+
+	private int indexOfComma(int from) {
+		int p;
+		for (p=from; p<msgEnd; ++p) {
+			if (buf[p] == ',') break;
+		}
+		return p;
+	}
+
+	/**
+	 * @return length of the current field
+	 */
+	public int length() {
+		return fieldEnd - fieldStart;
+	}
+
+	public boolean isEmpty() {
+		return fieldEnd == fieldStart;
+	}
+
+	/**
+	 * @return first character of the current field or 0 if field is empty
+	 */
+	public char firstChar() {
+		return isEmpty() ? 0 : (char)(buf[fieldStart] & 0xff);
+	}
+
+	/**
+	 * @return true if current field is equal to s
+	 */
+	public boolean fieldEquals(final String s) {
+		final int len = s.length();
+		if (len != length())
+			return false;
+		for (int i=0; i<len; ++i) {
+			if ((buf[fieldStart+i] & 0xff) != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if current field starting from character <i>from</i>
+	 * is equal to s. E.g. fieldEquals(2, "GGA") for "GPGGA" and "GNGGA".
+	 */
+	public boolean fieldEquals(int from, final String s) {
+		final int len = s.length();
+		if (len + from != length())
+			return false;
+		for (int i=0; i<len; ++i) {
+			if ((buf[fieldStart+from+i] & 0xff) != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return character i of the current field or 0 if the field is shorter
+	 */
+	public char charAt(int i) {
+		return (i < 0 || i >= length()) ? 0 : (char)(buf[fieldStart+i] & 0xff);
+	}
+
+	/**
+	 * Parses current field as a decimal integer
+	 * @throws NumberFormatException
+	 */
+	public int parseInt() throws NumberFormatException {
+		long res;
+		int p;
+		boolean negative;
+
+		p = fieldStart;
+		if (p == fieldEnd) throw new NumberFormatException("Empty field");
+
+		negative = false;
+		if (buf[p] == '-') {
+			negative = true;
+			p += 1;
+		}else if (buf[p] == '+') {
+			p += 1;
+		}
+		if (p == fieldEnd) throw new NumberFormatException("No digits");
+
+		res = 0;
+		for (; p<fieldEnd; ++p) {
+			final int d = buf[p] - '0';
+			if (d < 0 || d > 9) throw new NumberFormatException("Not a digit");
+			res = 10 * res + d;
+			if (res > Integer.MAX_VALUE) throw new NumberFormatException("Integer overflow");
+		}
+
+		return (int)(negative ? -res : res);
+	}
+
+	/**
+	 * Parses decimal number of the current field into decimalMantissa / 10^decimalScale.
+	 * Fractional digits beyond MAX_DIGITS significant digits are truncated.
+	 * @throws NumberFormatException
+	 */
+	private void parseDecimal() throws NumberFormatException {
+		long mantissa;
+		int scale;
+		int digits;
+		int p;
+		boolean negative, hasDigits, hasPoint;
+
+		p = fieldStart;
+		if (p == fieldEnd) throw new NumberFormatException("Empty field");
+
+		negative = false;
+		if (buf[p] == '-') {
+			negative = true;
+			p += 1;
+		}else if (buf[p] == '+') {
+			p += 1;
+		}
+
+		mantissa = 0;
+		scale = 0;
+		digits = 0;
+		hasDigits = hasPoint = false;
+		for (; p<fieldEnd; ++p) {
+			final int c = buf[p];
+			if (c == '.') {
+				if (hasPoint) throw new NumberFormatException("Multiple decimal points");
+				hasPoint = true;
+			}else if (c >= '0' && c <= '9') {
+				hasDigits = true;
+				if ((digits == MAX_DIGITS) || (scale == MAX_DIGITS)) {
+					if (!hasPoint) throw new NumberFormatException("Number too long");
+					/* Truncate fractional part */
+					continue;
+				}
+				mantissa = 10 * mantissa + (c - '0');
+				if (mantissa != 0) digits += 1;
+				if (hasPoint) scale += 1;
+			}else {
+				throw new NumberFormatException("Not a digit");
+			}
+		}
+		if (!hasDigits) throw new NumberFormatException("No digits");
+
+		this.decimalMantissa = negative ? -mantissa : mantissa;
+		this.decimalScale = scale;
+	}
+
+	/**
+	 * Parses current field as a fixed-point number
+	 * @param scale number of fractional digits to keep. Extra digits are truncated
+	 * @return value * 10^scale
+	 * @throws NumberFormatException
+	 */
+	public long parseFixed(int scale) throws NumberFormatException {
+		parseDecimal();
+		if (decimalScale > scale) {
+			return decimalMantissa / POW10[decimalScale - scale];
+		}else {
+			final long mul = POW10[scale - decimalScale];
+			final long res = decimalMantissa * mul;
+			if (res / mul != decimalMantissa) throw new NumberFormatException("Fixed-point overflow");
+			return res;
+		}
+	}
+
+	/**
+	 * Parses current field as a double
+	 * @return value or NaN if field is empty
+	 * @throws NumberFormatException
+	 */
+	public double parseDouble() throws NumberFormatException {
+		if (isEmpty()) return Double.NaN;
+		parseDecimal();
+		/* Exact for mantissas below 2^53, which covers all NMEA fields */
+		return (double)decimalMantissa / (double)POW10[decimalScale];
+	}
+
+	/**
+	 * Parses current field as a float
+	 * @return value or NaN if field is empty
+	 * @throws NumberFormatException
+	 */
+	public float parseFloat() throws NumberFormatException {
+		return (float)parseDouble();
+	}
+
+	/**
+	 * Parses NMEA (d)ddmm.mmmm coordinate of the current field
+	 * @param oppositeDirection true for 'S' or 'W' hemispheres
+	 * @return degrees or NaN if field is empty
+	 * @throws NumberFormatException
+	 */
+	public double parseDegrees(boolean oppositeDirection) throws NumberFormatException {
+		long mantissa, div, deg, minutes;
+		int scale;
+		double res;
+
+		if (isEmpty()) return Double.NaN;
+		parseDecimal();
+		if (decimalMantissa < 0) throw new NumberFormatException("Negative coordinate");
+
+		mantissa = decimalMantissa;
+		scale = decimalScale;
+		if (scale > MAX_MINUTES_SCALE) {
+			mantissa /= POW10[scale - MAX_MINUTES_SCALE];
+			scale = MAX_MINUTES_SCALE;
+		}
+
+		div = 100L * POW10[scale];
+		deg = mantissa / div;
+		minutes = mantissa - deg * div;
+
+		res = (double)deg + (double)minutes / (60.0 * POW10[scale]);
+
+		return oppositeDirection ? -res : res;
+	}
+
+	/**
+	 * @return The whole sentence. Allocates, use for logging only.
+	 */
+	@Override
+	public String toString() {
+		if (msgStart == msgEnd)
+			return "";
+		try {
+			return new String(buf, msgStart-1, msgEnd-msgStart+1, GpsInputReader.NMEA_CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			return "";
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+package me.guillaumin.android.osmtracker.gps;
+
+/**
+ * Statistics of the NMEA epoch assembly: the learned closing sentence of the
+ * receiver's sentence cycle and how the fixes were closed.
+ *
+ * Latency is the time from the first GGA or RMC sentence of the epoch to
+ * the publication of the fix.
+ *
+ * @author Alexey Illarionov
+ */
+public final class NmeaEpochStats {
+
+	static final int CLOSED_ON_SENTENCE = 0;
+	static final int CLOSED_BY_TIMER = 1;
+	static final int CLOSED_BY_NEXT_EPOCH = 2;
+
+	/* Address field of the closing sentence, NmeaFix.addressKey() */
+	int closingSentence;
+	int closingSentenceNumber;
+
+	private final int closed[] = new int[3];
+	private long latencySumMs;
+	private long latencyMaxMs;
+
+	public NmeaEpochStats() {
+		reset();
+	}
+
+	void reset() {
+		closingSentence = closingSentenceNumber = 0;
+		closed[CLOSED_ON_SENTENCE] = closed[CLOSED_BY_TIMER] = closed[CLOSED_BY_NEXT_EPOCH] = 0;
+		latencySumMs = latencyMaxMs = 0;
+	}
+
+	void set(NmeaEpochStats src) {
+		closingSentence = src.closingSentence;
+		closingSentenceNumber = src.closingSentenceNumber;
+		System.arraycopy(src.closed, 0, closed, 0, closed.length);
+		latencySumMs = src.latencySumMs;
+		latencyMaxMs = src.latencyMaxMs;
+	}
+
+	void onEpochClosed(int reason, long latencyMs) {
+		closed[reason] += 1;
+		if (latencyMs < 0) latencyMs = 0;
+		latencySumMs += latencyMs;
+		if (latencyMs > latencyMaxMs) latencyMaxMs = latencyMs;
+	}
+
+	/**
+	 * @return Learned closing sentence of the epoch, e.g. "GPRMC",
+	 * null if the sentence cycle is not learned yet
+	 */
+	public String getClosingSentence() {
+		final char address[];
+
+		if (closingSentence == 0) return null;
+		address = new char[5];
+		for (int i=0; i<5; ++i) {
+			address[i] = (char)('0' + ((closingSentence >>> (6 * (4 - i))) & 0x3f));
+		}
+		return new String(address);
+	}
+
+	/**
+	 * @return Number of the closing sentence in the epoch, e.g. 4 for the
+	 * last of 4 GNGSA sentences
+	 */
+	public int getClosingSentenceNumber() {
+		return closingSentenceNumber;
+	}
+
+	/**
+	 * @return Number of epochs closed as soon as the closing sentence was parsed
+	 */
+	public int getClosedOnSentence() {
+		return closed[CLOSED_ON_SENTENCE];
+	}
+
+	/**
+	 * @return Number of epochs closed by the timer, the closing sentence was missing
+	 */
+	public int getClosedByTimer() {
+		return closed[CLOSED_BY_TIMER];
+	}
+
+	/**
+	 * @return Number of epochs closed by the first sentence of the next epoch
+	 */
+	public int getClosedByNextEpoch() {
+		return closed[CLOSED_BY_NEXT_EPOCH];
+	}
+
+	public int getEpochs() {
+		return closed[CLOSED_ON_SENTENCE] + closed[CLOSED_BY_TIMER] + closed[CLOSED_BY_NEXT_EPOCH];
+	}
+
+	/**
+	 * @return Mean latency of the fixes, ms
+	 */
+	public float getMeanLatency() {
+		final int epochs = getEpochs();
+		return epochs == 0 ? 0 : (float)latencySumMs / epochs;
+	}
+
+	/**
+	 * @return Max latency of the fixes, ms
+	 */
+	public long getMaxLatency() {
+		return latencyMaxMs;
+	}
+
+	@Override
+	public String toString() {
+		return "closing sentence: " + getClosingSentence() + "#" + closingSentenceNumber
+				+ ", epochs: " + getEpochs()
+				+ " (on sentence: " + getClosedOnSentence()
+				+ ", by timer: " + getClosedByTimer()
+				+ ", by next epoch: " + getClosedByNextEpoch()
+				+ "), latency mean: " + getMeanLatency()
+				+ " ms, max: " + getMaxLatency() + " ms";
+	}
+
+}
@@ -0,0 +1,70 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.util.Arrays;
+
+/**
+ * Set of satellite numbers 1..{@link #MAX_PRN}, used for the ephemeris,
+ * almanac and used-in-fix masks of {@link GpsStatus}.
+ *
+ * Backed by a preallocated array of longs, so decoders keep one instance
+ * per mask and rebuild it every epoch without allocations.
+ *
+ * @author Alexey Illarionov
+ */
+final class PrnMask {
+
+	/**
+	 * Max satellite number, equal to {@link GpsStatus#getMaxSatellites()}
+	 */
+	static final int MAX_PRN = 255;
+
+	private final long words[] = new long[(MAX_PRN + 63) / 64];
+
+	public void clear() {
+		Arrays.fill(words, 0);
+	}
+
+	/**
+	 * Adds all satellites to the set
+	 */
+	public void setAll() {
+		Arrays.fill(words, -1L);
+	}
+
+	/**
+	 * Adds satellite to the set. Numbers out of 1..MAX_PRN are ignored.
+	 */
+	public void set(int prn) {
+		if (prn <= 0 || prn > MAX_PRN) return;
+		words[(prn - 1) >>> 6] |= 1L << ((prn - 1) & 63);
+	}
+
+	/**
+	 * Replaces GPS satellites 1..32 with the 32-bit mask (bit 0 - PRN 1)
+	 */
+	public void setGps(int mask) {
+		words[0] = (words[0] & 0xffffffff00000000L) | ((long)mask & 0xffffffffL);
+	}
+
+	public void set(final PrnMask src) {
+		System.arraycopy(src.words, 0, words, 0, words.length);
+	}
+
+	public boolean get(int prn) {
+		if (prn <= 0 || prn > MAX_PRN) return false;
+		return (words[(prn - 1) >>> 6] & (1L << ((prn - 1) & 63))) != 0;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("[");
+		for (int prn = 1; prn <= MAX_PRN; ++prn) {
+			if (get(prn)) {
+				if (sb.length() > 1) sb.append(',');
+				sb.append(prn);
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+}
@@ -30,6 +30,10 @@ public abstract class Receiver {
 	}
 
 
+	/**
+	 * The Location passed to the listener may be shared with the other
+	 * listeners and must not be modified.
+	 */
 	public abstract void requestLocationUpdates(long minTime, float minDistance, LocationListener listener);
 
 	public abstract void removeUpdates(LocationListener listener);
@@ -44,6 +48,14 @@ public abstract class Receiver {
 
 	public abstract GpsStatus getGpsStatus(GpsStatus status);
 
+	/**
+	 * @return Statistics of the NMEA epoch assembly, null if the receiver
+	 * does not parse NMEA
+	 */
+	public NmeaEpochStats getNmeaEpochStats(NmeaEpochStats stats) {
+		return null;
+	}
+
 
 	/* Transport of raw data to the main activity thread */
 	protected static class RawDataTransporter {
@@ -0,0 +1,979 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
+import me.guillaumin.android.osmtracker.OSMTracker;
+
+/**
+ * Configures the NMEA output of an external receiver for what the registered
+ * listeners actually consume.
+ *
+ * GGA, GSA and RMC are always kept. GSV is enabled only while there are
+ * GpsStatus listeners, and is sent every few epochs if the full sequence
+ * does not fit into the serial link. GLL, VTG and ZDA are switched off.
+ * The update rate is raised when the location listeners request updates
+ * faster than 1 Hz and the link can carry them.
+ *
+ * Commands: SiRF PSRF103, MTK PMTK314 / PMTK220, u-blox UBX CFG-MSG / CFG-RATE.
+ * The vendor is detected from the received data (proprietary sentences, UBX
+ * messages, PMTK001 and UBX ACK replies). Until it is known all the command
+ * sets are sent, receivers ignore commands of other vendors.
+ * Receivers in the SiRF binary mode are not configured.
+ *
+ * SiRF receivers in NMEA mode are switched to the SiRF binary protocol at
+ * {@link #SIRF_BINARY_BAUDRATE} with PSRF100 if the link baudrate can be
+ * changed ({@link #canChangeBaudRate()}). If no binary messages arrive
+ * within {@link #SWITCH_TIMEOUT_MS}, the receiver is asked to return to
+ * NMEA, the link returns to the original baudrate and the receiver is
+ * configured with PSRF103. A switch is saved as left in progress
+ * ({@link #saveSirfSwitchLeft(boolean)}) until the receiver is heard in
+ * NMEA at the original baudrate again. Only then, when nothing is received
+ * at all, the link alternates between the original baudrate and
+ * SIRF_BINARY_BAUDRATE to find the receiver left in the binary mode: the
+ * baudrate of other receivers is never changed.
+ *
+ * Receivers without a fix after the vendor detection are aided with the
+ * last known location ({@link #setAidingLocation(Location)}) and the time
+ * of the phone: SiRF MID 128 / PSRF104, MTK PMTK741 / PMTK740, u-blox
+ * MGA-INI. SiRF aiding restarts the navigation and clears the ephemeris,
+ * so it is sent only if the last fix is older than {@link #EPHEMERIS_VALIDITY_MS}.
+ *
+ * {@link #restoreDefaults()} restores the default output before the
+ * connection is closed.
+ *
+ * Not thread safe except {@link #restoreDefaults()}: all other methods are
+ * called from the input reader thread.
+ *
+ * @author Alexey Illarionov
+ */
+abstract class ReceiverConfigurator {
+
+	// Debugging
+	private static final String TAG = ReceiverConfigurator.class.getSimpleName();
+	private static final boolean D = OSMTracker.DEBUG;
+
+	static final int VENDOR_UNKNOWN = 0;
+	static final int VENDOR_SIRF = 1;
+	static final int VENDOR_SIRF_BINARY = 2;
+	static final int VENDOR_MTK = 3;
+	static final int VENDOR_UBLOX = 4;
+
+	/* Sentences, equal to the PSRF103 and UBX NMEA (class 0xF0) message IDs */
+	static final int SENTENCE_GGA = 0;
+	static final int SENTENCE_GLL = 1;
+	static final int SENTENCE_GSA = 2;
+	static final int SENTENCE_GSV = 3;
+	static final int SENTENCE_RMC = 4;
+	static final int SENTENCE_VTG = 5;
+	static final int SENTENCE_ZDA = 8;
+	private static final int SENTENCE_UNKNOWN = -1;
+
+	private static final int CONFIGURED_SENTENCES[] = {
+		SENTENCE_GGA, SENTENCE_GLL, SENTENCE_GSA, SENTENCE_GSV,
+		SENTENCE_RMC, SENTENCE_VTG, SENTENCE_ZDA
+	};
+
+	/* SiRF default output: GGA, GSA, RMC every second, GSV every 5 seconds */
+	private static final int SIRF_DEFAULT_RATES[] = {1, 0, 1, 5, 1, 0, 0, 0, 0};
+
+	/* Estimated sizes of the sentences of one epoch until they are measured, bytes */
+	private static final int DEFAULT_SENTENCE_BYTES[] = {75, 50, 65, 210, 70, 40, 0, 0, 40};
+
+	private static final int DEFAULT_INTERVAL_MS = 1000;
+	private static final int MIN_INTERVAL_MS = 100;
+	private static final int MAX_GSV_RATE = 5;
+
+	/* Max load of the serial link, percent */
+	private static final int MAX_LINK_LOAD = 90;
+	private static final int BITS_PER_BYTE = 10;
+
+	/* Epochs to detect the vendor before the first configuration */
+	private static final int DETECT_EPOCHS = 3;
+
+	/* SiRF binary messages to detect a fix before the aiding, several per epoch */
+	private static final int DETECT_SIRF_MESSAGES = 20;
+
+	/* Epochs between the re-evaluations of the sentence sizes */
+	private static final int EVALUATE_EPOCHS = 30;
+
+	/* Baudrate of the SiRF binary protocol */
+	static final int SIRF_BINARY_BAUDRATE = 57600;
+
+	/* Time to wait for the SiRF binary messages after the switch */
+	static final int SWITCH_TIMEOUT_MS = 3000;
+
+	/* Time without any messages before the link baudrate is changed */
+	static final int PROBE_TIMEOUT_MS = 3000;
+
+	/* Time to transmit the command before the link baudrate is changed, added to the transmission time */
+	private static final int BAUDRATE_CHANGE_DELAY_MS = 100;
+
+	private static final int SWITCH_NONE = 0;
+	private static final int SWITCH_SENT = 1;
+	private static final int SWITCH_PENDING = 2;
+	private static final int SWITCH_FALLBACK = 3;
+	private static final int SWITCH_DONE = 4;
+	private static final int SWITCH_FAILED = 5;
+
+	private static final int SIRF_MID_INITIALIZE_DATA_SOURCE = 128;
+	private static final int SIRF_MID_SWITCH_TO_NMEA = 129;
+
+	/* MID 128 reset configuration: init data valid, clear ephemeris */
+	private static final int SIRF_RESET_WARM_INIT = 0x03;
+	private static final int SIRF_CHANNELS = 12;
+
+	/* Max age of the aiding position, ms */
+	static final long MAX_AIDING_AGE_MS = 7L * 24 * 3600 * 1000;
+
+	/* Movement of the receiver since the aiding position was fixed, m/s, and the max error of the position, m */
+	private static final int AIDING_DRIFT_MPS = 30;
+	private static final int MAX_AIDING_POSITION_ERROR_M = 300000;
+
+	/* Accuracy of the time of the phone, s */
+	private static final int AIDING_TIME_ACCURACY_S = 2;
+
+	/* Receivers keep ephemeris for the warm start at least this time since the last fix, ms */
+	static final long EPHEMERIS_VALIDITY_MS = 4L * 3600 * 1000;
+
+	private static final long GPS_EPOCH_MS = 315964800000L;
+	private static final int GPS_UTC_LEAP_SECONDS = 18;
+	private static final int SECONDS_PER_WEEK = 7 * 24 * 3600;
+
+	/* WGS 84 */
+	private static final double WGS84_A = 6378137.0;
+	private static final double WGS84_E2 = 6.69437999014e-3;
+
+	private static final int AIDING_NONE = 0;
+	private static final int AIDING_PENDING = 1;
+	private static final int AIDING_DONE = 2;
+
+	private static final int UBX_CLASS_ACK = 0x05;
+	private static final int UBX_CLASS_CFG = 0x06;
+	private static final int UBX_CLASS_NMEA = 0xf0;
+	private static final int UBX_CFG_MSG = 0x01;
+	private static final int UBX_CFG_RATE = 0x08;
+	private static final int UBX_CFG_CFG = 0x09;
+	private static final int UBX_CLASS_MGA = 0x13;
+	private static final int UBX_MGA_INI = 0x40;
+	private static final int UBX_MGA_INI_POS_LLH = 0x01;
+	private static final int UBX_MGA_INI_TIME_UTC = 0x10;
+
+	/* CFG-CFG load mask: msgConf, navConf. Port settings are not reloaded */
+	private static final int UBX_CFG_CFG_LOAD_MASK = 0x0a;
+
+	private volatile int vendor = VENDOR_UNKNOWN;
+
+	/* Link baudrate, 0 if unknown */
+	private volatile int baudrate;
+
+	/* Switch to the SiRF binary protocol */
+	private int switchState;
+	private long switchTime;
+	private volatile int originalBaudrate;
+
+	/* The receiver may have been left in the SiRF binary mode by a switch */
+	private boolean switchLeft;
+
+	/* Warm start aiding */
+	private int aidingState;
+	private boolean hasAidingPosition;
+	private double aidingLatitude;
+	private double aidingLongitude;
+	private double aidingAltitude;
+	private float aidingAccuracy;
+	private long aidingFixTime;
+
+	/* Messages received, for the baudrate probe */
+	private int messages;
+	private int sirfMessages;
+	private int probeMessages;
+	private long probeTime;
+
+	/* Measured bytes and number of the sentences since the last evaluation */
+	private final long sentenceBytes[] = new long[SENTENCE_ZDA+1];
+	private final int sentenceCount[] = new int[SENTENCE_ZDA+1];
+	private final int estimatedBytes[] = DEFAULT_SENTENCE_BYTES.clone();
+
+	/* Requested configuration */
+	private boolean needSatellites;
+	private long minTime;
+
+	/* Applied configuration, rate -1 if not configured */
+	private final int appliedRates[] = new int[SENTENCE_ZDA+1];
+	private int appliedInterval;
+	private boolean isConfigured;
+	private boolean isStopped;
+
+	/* Planned configuration */
+	private final int rates[] = new int[SENTENCE_ZDA+1];
+	private int interval;
+
+	/**
+	 * @param baudrate Baudrate of the serial link or 0 if unknown (Bluetooth).
+	 * The update rate is not raised and GSV is not decimated on links of
+	 * unknown speed.
+	 */
+	public ReceiverConfigurator(int baudrate) {
+		this.baudrate = baudrate;
+		for (int i=0; i<appliedRates.length; ++i) appliedRates[i] = -1;
+		appliedInterval = DEFAULT_INTERVAL_MS;
+		isConfigured = isStopped = false;
+		needSatellites = true;
+		minTime = 0;
+		switchState = SWITCH_NONE;
+		originalBaudrate = baudrate;
+		messages = probeMessages = sirfMessages = 0;
+		probeTime = 0;
+		aidingState = AIDING_NONE;
+		hasAidingPosition = false;
+		switchLeft = false;
+	}
+
+	/**
+	 * Writes the command to the receiver
+	 */
+	protected abstract void write(byte[] cmd);
+
+	/**
+	 * @return true if the baudrate of the link can be changed with
+	 * {@link #changeBaudRate(int)}
+	 */
+	protected boolean canChangeBaudRate() {
+		return false;
+	}
+
+	/**
+	 * Changes the baudrate of the link
+	 */
+	protected void changeBaudRate(int baudrate) {
+	}
+
+	private void setLinkBaudRate(int newBaudrate) {
+		if (D) Log.d(TAG, "Link baudrate: " + baudrate + " -> " + newBaudrate);
+		changeBaudRate(newBaudrate);
+		baudrate = newBaudrate;
+	}
+
+	/**
+	 * Called when the baudrate of the link is changed by the user
+	 */
+	public void setBaudRate(int baudrate) {
+		this.baudrate = baudrate;
+		this.originalBaudrate = baudrate;
+	}
+
+	/**
+	 * Saves whether a switch to the SiRF binary protocol is left in
+	 * progress, for {@link #setSirfSwitchLeft(boolean)} on the next
+	 * connection. Called from the input reader thread.
+	 */
+	protected void saveSirfSwitchLeft(boolean left) {
+	}
+
+	/**
+	 * Enables the baudrate probe. Called before the input reader is started.
+	 * @param left true if a switch to the SiRF binary protocol was left in
+	 * progress by a previous connection, as saved by {@link #saveSirfSwitchLeft(boolean)}
+	 */
+	public void setSirfSwitchLeft(boolean left) {
+		switchLeft = left;
+	}
+
+	/**
+	 * Enables the warm start aiding. Called before the input reader is
+	 * started.
+	 * @param l Last known location of the receiver, null to aid with the
+	 * time only
+	 */
+	public void setAidingLocation(final Location l) {
+		hasAidingPosition = (l != null);
+		if (l != null) {
+			aidingLatitude = l.getLatitude();
+			aidingLongitude = l.getLongitude();
+			aidingAltitude = l.hasAltitude() ? l.getAltitude() : 0;
+			aidingAccuracy = l.hasAccuracy() ? l.getAccuracy() : 0;
+			aidingFixTime = l.getTime();
+		}
+		aidingState = AIDING_PENDING;
+	}
+
+	public int getVendor() {
+		return vendor;
+	}
+
+	/**
+	 * Counts the sentence and detects the vendor of the receiver
+	 */
+	public void onNmeaReceived(final byte[] buf, int offset, int length) {
+		final int sentence;
+
+		if (length < 6) return;
+		messages += 1;
+
+		if (buf[offset+1] == 'P') {
+			if (vendor == VENDOR_UNKNOWN) detectVendor(buf, offset, length);
+			return;
+		}
+
+		sentence = sentenceId(buf[offset+3], buf[offset+4], buf[offset+5]);
+		if (sentence == SENTENCE_UNKNOWN) {
+			if ((vendor == VENDOR_UNKNOWN)
+					&& (buf[offset+3] == 'T') && (buf[offset+4] == 'X') && (buf[offset+5] == 'T')
+					&& (indexOf(buf, offset, length, "u-blox") >= 0))
+				setVendor(VENDOR_UBLOX);
+			return;
+		}
+
+		sentenceBytes[sentence] += length;
+		sentenceCount[sentence] += 1;
+
+		if (switchLeft && (baudrate == originalBaudrate)
+				&& ((switchState == SWITCH_NONE) || (switchState == SWITCH_FAILED))) {
+			if (D) Log.d(TAG, "Receiver in NMEA at " + baudrate);
+			switchLeft = false;
+			saveSirfSwitchLeft(false);
+		}
+	}
+
+	public void onSirfReceived() {
+		messages += 1;
+		sirfMessages += 1;
+		if (vendor != VENDOR_SIRF_BINARY) setVendor(VENDOR_SIRF_BINARY);
+		if ((switchState == SWITCH_PENDING)
+				|| ((switchState == SWITCH_NONE) && (baudrate != originalBaudrate))) {
+			if (D) Log.d(TAG, "SiRF binary protocol at " + baudrate);
+			switchState = SWITCH_DONE;
+		}
+	}
+
+	public void onUbxReceived(final byte[] buf, int offset, int length) {
+		messages += 1;
+		if (vendor != VENDOR_UBLOX) setVendor(VENDOR_UBLOX);
+		if (D && (length > 4) && ((buf[offset+2] & 0xff) == UBX_CLASS_ACK)) {
+			Log.d(TAG, "UBX ACK-" + (buf[offset+3] == 1 ? "ACK" : "NAK"));
+		}
+	}
+
+	private void detectVendor(final byte[] buf, int offset, int length) {
+		if (startsWith(buf, offset, length, "$PSRF")) {
+			setVendor(VENDOR_SIRF);
+		}else if (startsWith(buf, offset, length, "$PMTK")) {
+			setVendor(VENDOR_MTK);
+		}else if (startsWith(buf, offset, length, "$PUBX")) {
+			setVendor(VENDOR_UBLOX);
+		}
+	}
+
+	private void setVendor(int newVendor) {
+		if (D) Log.d(TAG, "Receiver vendor: " + vendor + " -> " + newVendor);
+		vendor = newVendor;
+	}
+
+	/**
+	 * Applies the configuration if the consumers have changed or the sizes
+	 * of the sentences have to be re-evaluated. Called from the input reader
+	 * thread between the reads.
+	 * @param needSatellites true if there are GpsStatus listeners
+	 * @param minTime Min time between location updates requested by the
+	 * listeners, 0 to keep the default update rate
+	 * @param hasFix true if the receiver outputs a valid fix, it is not aided
+	 * @return Max time to the next call, ms. 0 if not limited.
+	 */
+	public long configure(boolean needSatellites, long minTime, boolean hasFix) {
+		final int epochs = epochs();
+		final long timeout;
+
+		if (isStopped) return 0;
+
+		if (canChangeBaudRate()) {
+			timeout = switchProtocol(SystemClock.elapsedRealtime(), epochs);
+			if (timeout != 0) return timeout;
+		}
+
+		if (aidingState == AIDING_PENDING) aid(hasFix, epochs);
+
+		if (vendor == VENDOR_SIRF_BINARY) return 0;
+
+		if (isConfigured
+				&& (needSatellites == this.needSatellites)
+				&& (minTime == this.minTime)
+				&& (epochs < EVALUATE_EPOCHS))
+			return 0;
+
+		if (!isConfigured && (epochs < DETECT_EPOCHS)) return 0;
+
+		this.needSatellites = needSatellites;
+		this.minTime = minTime;
+		if (epochs >= DETECT_EPOCHS) evaluate(epochs);
+
+		synchronized(this) {
+			if (isStopped) return 0;
+			plan(needSatellites, minTime);
+			apply();
+		}
+		return 0;
+	}
+
+	/**
+	 * Switches SiRF receiver to the binary protocol, probes the baudrates
+	 * when nothing is received.
+	 * @return Max time to the next call, ms. 0 if the switch is not in progress.
+	 */
+	private long switchProtocol(long now, int epochs) {
+		switch (switchState) {
+		case SWITCH_NONE:
+			if ((vendor == VENDOR_SIRF) && (epochs >= DETECT_EPOCHS)) {
+				final byte cmd[] = psrf100(SIRF_BINARY_BAUDRATE);
+				originalBaudrate = baudrate;
+				if (!switchLeft) {
+					switchLeft = true;
+					saveSirfSwitchLeft(true);
+				}
+				synchronized(this) {
+					if (isStopped) return 0;
+					if (D) Log.d(TAG, "Switching SiRF receiver to binary protocol at " + SIRF_BINARY_BAUDRATE);
+					write(cmd);
+					/* Set with the state for restoreDefaults() */
+					switchTime = now + transmissionTime(cmd.length) + BAUDRATE_CHANGE_DELAY_MS;
+					switchState = SWITCH_SENT;
+				}
+				return switchTime - now;
+			}
+			return switchLeft ? probeBaudRate(now) : 0;
+		case SWITCH_SENT:
+			if (now < switchTime) return switchTime - now;
+			synchronized(this) {
+				if (isStopped) return 0;
+				setLinkBaudRate(SIRF_BINARY_BAUDRATE);
+				switchState = SWITCH_PENDING;
+			}
+			switchTime = now + SWITCH_TIMEOUT_MS;
+			return SWITCH_TIMEOUT_MS;
+		case SWITCH_PENDING:
+			if (now < switchTime) return switchTime - now;
+			/* No binary messages. Return the receiver to NMEA in case only the link is broken */
+			Log.i(TAG, "SiRF binary protocol switch failed");
+			synchronized(this) {
+				if (isStopped) return 0;
+				write(sirfSwitchToNmea(originalBaudrate));
+				switchState = SWITCH_FALLBACK;
+			}
+			switchTime = now + BAUDRATE_CHANGE_DELAY_MS;
+			return BAUDRATE_CHANGE_DELAY_MS;
+		case SWITCH_FALLBACK:
+			if (now < switchTime) return switchTime - now;
+			synchronized(this) {
+				if (isStopped) return 0;
+				setLinkBaudRate(originalBaudrate);
+				switchState = SWITCH_FAILED;
+			}
+			return 0;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Alternates the link between the original baudrate and
+	 * SIRF_BINARY_BAUDRATE while nothing is received from a receiver
+	 * possibly left in the SiRF binary mode
+	 */
+	private long probeBaudRate(long now) {
+		if ((messages != probeMessages) || (probeTime == 0)) {
+			probeMessages = messages;
+			probeTime = now + PROBE_TIMEOUT_MS;
+		}else if (now >= probeTime) {
+			setLinkBaudRate(baudrate == originalBaudrate ? SIRF_BINARY_BAUDRATE : originalBaudrate);
+			probeTime = now + PROBE_TIMEOUT_MS;
+		}
+		/* Keep probing until the vendor is known */
+		return (messages == 0) ? probeTime - now : 0;
+	}
+
+	/**
+	 * Sends the aiding to the receiver without a fix once the vendor is
+	 * detected and the receiver had the time to report its fix.
+	 */
+	private void aid(boolean hasFix, int epochs) {
+		final int v = vendor;
+		final long now;
+		final long age;
+		final boolean withPosition;
+		final int positionError;
+
+		if (hasFix) {
+			if (D) Log.d(TAG, "Receiver has a fix, not aided");
+			aidingState = AIDING_DONE;
+			return;
+		}
+		if ((v == VENDOR_SIRF_BINARY) ? (sirfMessages < DETECT_SIRF_MESSAGES) : (epochs < DETECT_EPOCHS)) return;
+
+		now = System.currentTimeMillis();
+		age = now - aidingFixTime;
+		withPosition = hasAidingPosition && (age >= 0) && (age < MAX_AIDING_AGE_MS);
+		positionError = (int)Math.min(MAX_AIDING_POSITION_ERROR_M,
+				aidingAccuracy + age / 1000 * AIDING_DRIFT_MPS);
+
+		synchronized(this) {
+			if (isStopped) return;
+			if (D) Log.d(TAG, "Aiding vendor: " + v + (withPosition ? " position error: " + positionError + " m" : " time only"));
+			if (withPosition && (age > EPHEMERIS_VALIDITY_MS)) {
+				if (v == VENDOR_SIRF_BINARY) {
+					write(sirfInitializeDataSource(aidingLatitude, aidingLongitude, aidingAltitude, now));
+				}else if ((v == VENDOR_SIRF) || (v == VENDOR_UNKNOWN)) {
+					write(psrf104(aidingLatitude, aidingLongitude, aidingAltitude, now));
+				}
+			}
+			if ((v == VENDOR_MTK) || (v == VENDOR_UNKNOWN)) {
+				write(withPosition ? pmtk741(aidingLatitude, aidingLongitude, aidingAltitude, now) : pmtk740(now));
+			}
+			if ((v == VENDOR_UBLOX) || (v == VENDOR_UNKNOWN)) {
+				write(ubxMgaIniTimeUtc(now));
+				if (withPosition)
+					write(ubxMgaIniPosLlh(aidingLatitude, aidingLongitude, aidingAltitude, positionError));
+			}
+		}
+		aidingState = AIDING_DONE;
+	}
+
+	private long transmissionTime(int bytes) {
+		return baudrate == 0 ? 0 : 1000L * bytes * BITS_PER_BYTE / baudrate;
+	}
+
+	/**
+	 * Restores the default output of the receiver. No more commands are
+	 * sent after this call.
+	 *
+	 * A receiver switched to the SiRF binary protocol is returned to NMEA
+	 * with MID 129, sent at SIRF_BINARY_BAUDRATE. If PSRF100 was just sent,
+	 * the link is switched to SIRF_BINARY_BAUDRATE first, once PSRF100 is
+	 * transmitted. During the fallback the receiver already returns to NMEA.
+	 */
+	@SuppressWarnings("fallthrough")
+	public synchronized void restoreDefaults() {
+		final int v = vendor;
+
+		if (isStopped) return;
+		isStopped = true;
+
+		switch (switchState) {
+		case SWITCH_SENT:
+			SystemClock.sleep(Math.max(0, switchTime - SystemClock.elapsedRealtime()));
+			setLinkBaudRate(SIRF_BINARY_BAUDRATE);
+			/* Falls through */
+		case SWITCH_PENDING:
+		case SWITCH_DONE:
+			if (D) Log.d(TAG, "restoreDefaults() switching SiRF receiver to NMEA at " + originalBaudrate);
+			write(sirfSwitchToNmea(originalBaudrate));
+			return;
+		case SWITCH_FALLBACK:
+			return;
+		}
+
+		if (!isConfigured) return;
+
+		if (D) Log.d(TAG, "restoreDefaults() vendor: " + v);
+
+		if ((v == VENDOR_SIRF) || (v == VENDOR_UNKNOWN)) {
+			for (int s: CONFIGURED_SENTENCES) {
+				if (appliedRates[s] != SIRF_DEFAULT_RATES[s])
+					write(psrf103(s, SIRF_DEFAULT_RATES[s]));
+			}
+		}
+		if ((v == VENDOR_MTK) || (v == VENDOR_UNKNOWN)) {
+			write(nmeaCommand("PMTK314,-1"));
+			if (appliedInterval != DEFAULT_INTERVAL_MS)
+				write(pmtk220(DEFAULT_INTERVAL_MS));
+		}
+		if ((v == VENDOR_UBLOX) || (v == VENDOR_UNKNOWN)) {
+			write(ubxCfgCfgLoad());
+		}
+	}
+
+	private int epochs() {
+		return Math.max(sentenceCount[SENTENCE_GGA], sentenceCount[SENTENCE_RMC]);
+	}
+
+	/**
+	 * Updates the estimated sizes of the sentences of one epoch
+	 */
+	private void evaluate(int epochs) {
+		for (int s: CONFIGURED_SENTENCES) {
+			if (sentenceCount[s] != 0) {
+				final int rate = appliedRates[s] > 0 ? appliedRates[s] : 1;
+				estimatedBytes[s] = (int)(sentenceBytes[s] * rate / epochs);
+			}
+			sentenceBytes[s] = 0;
+			sentenceCount[s] = 0;
+		}
+	}
+
+	/**
+	 * Plans sentence rates and the update interval
+	 */
+	private void plan(boolean needSatellites, long minTime) {
+		final int budget = baudrate / BITS_PER_BYTE * MAX_LINK_LOAD / 100;
+		final int baseBytes = estimatedBytes[SENTENCE_GGA]
+				+ estimatedBytes[SENTENCE_GSA]
+				+ estimatedBytes[SENTENCE_RMC];
+		/* Min bytes of the epoch: GSV at the lowest rate */
+		final int minBytes = baseBytes + (needSatellites ? estimatedBytes[SENTENCE_GSV] / MAX_GSV_RATE : 0);
+		int gsvRate;
+
+		interval = DEFAULT_INTERVAL_MS;
+		if ((minTime > 0) && (minTime < DEFAULT_INTERVAL_MS) && (budget != 0)
+				&& ((vendor == VENDOR_MTK) || (vendor == VENDOR_UBLOX))) {
+			interval = (int)Math.max(MIN_INTERVAL_MS, (minTime + MIN_INTERVAL_MS - 1) / MIN_INTERVAL_MS * MIN_INTERVAL_MS);
+			while ((interval < DEFAULT_INTERVAL_MS) && (minBytes * 1000 / interval > budget))
+				interval += MIN_INTERVAL_MS;
+		}
+
+		gsvRate = 0;
+		if (needSatellites) {
+			gsvRate = 1;
+			if (budget != 0) {
+				while ((gsvRate < MAX_GSV_RATE)
+						&& ((baseBytes + estimatedBytes[SENTENCE_GSV] / gsvRate) * 1000 / interval > budget))
+					gsvRate += 1;
+			}
+		}
+
+		for (int i=0; i<rates.length; ++i) rates[i] = 0;
+		rates[SENTENCE_GGA] = rates[SENTENCE_GSA] = rates[SENTENCE_RMC] = 1;
+		rates[SENTENCE_GSV] = gsvRate;
+	}
+
+	private void apply() {
+		final int v = vendor;
+		boolean changed;
+
+		changed = (interval != appliedInterval) || !isConfigured;
+		for (int s: CONFIGURED_SENTENCES) {
+			if (rates[s] != appliedRates[s]) changed = true;
+		}
+		if (!changed) return;
+
+		if (D) Log.d(TAG, "configure() vendor: " + v + " GSV rate: " + rates[SENTENCE_GSV]
+				+ " interval: " + interval + " ms");
+
+		if ((v == VENDOR_SIRF) || (v == VENDOR_UNKNOWN)) {
+			for (int s: CONFIGURED_SENTENCES) {
+				if (rates[s] != appliedRates[s]) write(psrf103(s, rates[s]));
+			}
+		}
+		if ((v == VENDOR_MTK) || (v == VENDOR_UNKNOWN)) {
+			write(pmtk314(rates));
+			if (interval != appliedInterval) write(pmtk220(interval));
+		}
+		if ((v == VENDOR_UBLOX) || (v == VENDOR_UNKNOWN)) {
+			for (int s: CONFIGURED_SENTENCES) {
+				if (rates[s] != appliedRates[s]) write(ubxCfgMsg(s, rates[s]));
+			}
+			if (interval != appliedInterval) write(ubxCfgRate(interval));
+		}
+
+		System.arraycopy(rates, 0, appliedRates, 0, rates.length);
+		appliedInterval = interval;
+		isConfigured = true;
+	}
+
+	/**
+	 * @return Sentence of the NMEA address field (without talker ID), SENTENCE_UNKNOWN if not configured
+	 */
+	static int sentenceId(byte c0, byte c1, byte c2) {
+		switch (c0) {
+		case 'G':
+			if (c1 == 'G' && c2 == 'A') return SENTENCE_GGA;
+			if (c1 == 'L' && c2 == 'L') return SENTENCE_GLL;
+			if (c1 == 'S' && c2 == 'A') return SENTENCE_GSA;
+			if (c1 == 'S' && c2 == 'V') return SENTENCE_GSV;
+			break;
+		case 'R':
+			if (c1 == 'M' && c2 == 'C') return SENTENCE_RMC;
+			break;
+		case 'V':
+			if (c1 == 'T' && c2 == 'G') return SENTENCE_VTG;
+			break;
+		case 'Z':
+			if (c1 == 'D' && c2 == 'A') return SENTENCE_ZDA;
+			break;
+		}
+		return SENTENCE_UNKNOWN;
+	}
+
+	/**
+	 * SiRF PSRF103 Query/Rate Control
+	 * @param rate Output rate in seconds, 0 - disabled
+	 */
+	static byte[] psrf103(int sentence, int rate) {
+		return nmeaCommand(String.format(Locale.US, "PSRF103,%02d,00,%02d,01", sentence, rate));
+	}
+
+	/**
+	 * SiRF PSRF100 Set Serial Port: switches to SiRF binary protocol, 8N1
+	 */
+	static byte[] psrf100(int baudrate) {
+		return nmeaCommand("PSRF100,0," + baudrate + ",8,1,0");
+	}
+
+	/**
+	 * SiRF binary MID 129 Switch To NMEA Protocol with the default output
+	 */
+	static byte[] sirfSwitchToNmea(int baudrate) {
+		final byte payload[] = new byte[24];
+
+		payload[0] = (byte)SIRF_MID_SWITCH_TO_NMEA;
+		/* Debug messages: do not change */
+		payload[1] = 2;
+		/* Rate and checksum of GGA, GLL, GSA, GSV, RMC, VTG, MSS, unused, ZDA, unused */
+		for (int s=0; s<SIRF_DEFAULT_RATES.length; ++s) {
+			payload[2+2*s] = (byte)SIRF_DEFAULT_RATES[s];
+			payload[3+2*s] = 1;
+		}
+		payload[22] = (byte)(baudrate >> 8);
+		payload[23] = (byte)baudrate;
+
+		return sirfCommand(payload);
+	}
+
+	/**
+	 * SiRF PSRF104 LLA Navigation Initialization: warm start with the
+	 * position and the time, clock drift of the last session
+	 */
+	static byte[] psrf104(double latitude, double longitude, double altitude, long utcMs) {
+		final long gpsSeconds = gpsSeconds(utcMs);
+		return nmeaCommand(String.format(Locale.US, "PSRF104,%.6f,%.6f,%d,0,%d,%d,%d,%d",
+				latitude, longitude, Math.round(altitude),
+				gpsSeconds % SECONDS_PER_WEEK, gpsSeconds / SECONDS_PER_WEEK,
+				SIRF_CHANNELS, SIRF_RESET_WARM_INIT));
+	}
+
+	/**
+	 * SiRF binary MID 128 Initialize Data Source: warm start with the
+	 * ECEF position and the time, clock drift of the last session
+	 */
+	static byte[] sirfInitializeDataSource(double latitude, double longitude, double altitude, long utcMs) {
+		final byte payload[] = new byte[25];
+		final double lat = Math.toRadians(latitude);
+		final double lon = Math.toRadians(longitude);
+		final double n = WGS84_A / Math.sqrt(1.0 - WGS84_E2 * Math.sin(lat) * Math.sin(lat));
+		final long gpsSeconds = gpsSeconds(utcMs);
+		final long tow = (gpsSeconds % SECONDS_PER_WEEK) * 100 + (utcMs % 1000) / 10;
+
+		payload[0] = (byte)SIRF_MID_INITIALIZE_DATA_SOURCE;
+		putInt32Be(payload, 1, (int)Math.round((n + altitude) * Math.cos(lat) * Math.cos(lon)));
+		putInt32Be(payload, 5, (int)Math.round((n + altitude) * Math.cos(lat) * Math.sin(lon)));
+		putInt32Be(payload, 9, (int)Math.round((n * (1.0 - WGS84_E2) + altitude) * Math.sin(lat)));
+		/* Clock drift 0: last saved value */
+		putInt32Be(payload, 13, 0);
+		putInt32Be(payload, 17, (int)tow);
+		payload[21] = (byte)(gpsSeconds / SECONDS_PER_WEEK >> 8);
+		payload[22] = (byte)(gpsSeconds / SECONDS_PER_WEEK);
+		payload[23] = (byte)SIRF_CHANNELS;
+		payload[24] = (byte)SIRF_RESET_WARM_INIT;
+
+		return sirfCommand(payload);
+	}
+
+	static byte[] sirfCommand(final byte payload[]) {
+		final byte msg[] = new byte[payload.length + 8];
+		final int csum;
+
+		msg[0] = (byte)0xa0;
+		msg[1] = (byte)0xa2;
+		msg[2] = (byte)(payload.length >> 8);
+		msg[3] = (byte)payload.length;
+		System.arraycopy(payload, 0, msg, 4, payload.length);
+		csum = GpsInputReader.sirfCsum(msg, 4, payload.length);
+		msg[4 + payload.length] = (byte)(csum >> 8);
+		msg[5 + payload.length] = (byte)csum;
+		msg[6 + payload.length] = (byte)0xb0;
+		msg[7 + payload.length] = (byte)0xb3;
+
+		return msg;
+	}
+
+	/**
+	 * MTK PMTK314 SET_NMEA_OUTPUT
+	 * @param rates Output rates of the sentences in fixes, indexed by SENTENCE_XXX
+	 */
+	static byte[] pmtk314(final int rates[]) {
+		return nmeaCommand(String.format(Locale.US, "PMTK314,%d,%d,%d,%d,%d,%d,0,0,0,0,0,0,0,0,0,0,0,%d,0",
+				rates[SENTENCE_GLL], rates[SENTENCE_RMC], rates[SENTENCE_VTG],
+				rates[SENTENCE_GGA], rates[SENTENCE_GSA], rates[SENTENCE_GSV],
+				rates[SENTENCE_ZDA]));
+	}
+
+	/**
+	 * MTK PMTK220 SET_FIX_CTL
+	 */
+	static byte[] pmtk220(int intervalMs) {
+		return nmeaCommand("PMTK220," + intervalMs);
+	}
+
+	/**
+	 * MTK PMTK740 Set UTC time
+	 */
+	static byte[] pmtk740(long utcMs) {
+		final Calendar c = utcCalendar(utcMs);
+		return nmeaCommand(String.format(Locale.US, "PMTK740,%04d,%02d,%02d,%02d,%02d,%02d",
+				c.get(Calendar.YEAR), c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH),
+				c.get(Calendar.HOUR_OF_DAY), c.get(Calendar.MINUTE), c.get(Calendar.SECOND)));
+	}
+
+	/**
+	 * MTK PMTK741 Set reference location and UTC time
+	 */
+	static byte[] pmtk741(double latitude, double longitude, double altitude, long utcMs) {
+		final Calendar c = utcCalendar(utcMs);
+		return nmeaCommand(String.format(Locale.US, "PMTK741,%.6f,%.6f,%d,%04d,%02d,%02d,%02d,%02d,%02d",
+				latitude, longitude, Math.round(altitude),
+				c.get(Calendar.YEAR), c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH),
+				c.get(Calendar.HOUR_OF_DAY), c.get(Calendar.MINUTE), c.get(Calendar.SECOND)));
+	}
+
+	/**
+	 * u-blox MGA-INI-TIME_UTC: time on receipt of the message, leap seconds unknown
+	 */
+	static byte[] ubxMgaIniTimeUtc(long utcMs) {
+		final Calendar c = utcCalendar(utcMs);
+		final byte payload[] = new byte[24];
+		final int year = c.get(Calendar.YEAR);
+		final int ns = c.get(Calendar.MILLISECOND) * 1000000;
+
+		payload[0] = (byte)UBX_MGA_INI_TIME_UTC;
+		payload[3] = (byte)0x80;
+		payload[4] = (byte)year;
+		payload[5] = (byte)(year >> 8);
+		payload[6] = (byte)(c.get(Calendar.MONTH) + 1);
+		payload[7] = (byte)c.get(Calendar.DAY_OF_MONTH);
+		payload[8] = (byte)c.get(Calendar.HOUR_OF_DAY);
+		payload[9] = (byte)c.get(Calendar.MINUTE);
+		payload[10] = (byte)c.get(Calendar.SECOND);
+		putInt32Le(payload, 12, ns);
+		payload[16] = (byte)AIDING_TIME_ACCURACY_S;
+
+		return ubxCommand(UBX_CLASS_MGA, UBX_MGA_INI, payload);
+	}
+
+	/**
+	 * u-blox MGA-INI-POS_LLH
+	 * @param accuracy Position accuracy, m
+	 */
+	static byte[] ubxMgaIniPosLlh(double latitude, double longitude, double altitude, int accuracy) {
+		final byte payload[] = new byte[20];
+
+		payload[0] = (byte)UBX_MGA_INI_POS_LLH;
+		putInt32Le(payload, 4, (int)Math.round(latitude * 1.0e7));
+		putInt32Le(payload, 8, (int)Math.round(longitude * 1.0e7));
+		putInt32Le(payload, 12, (int)Math.round(altitude * 100.0));
+		putInt32Le(payload, 16, accuracy * 100);
+
+		return ubxCommand(UBX_CLASS_MGA, UBX_MGA_INI, payload);
+	}
+
+	/**
+	 * u-blox CFG-MSG: output rate of the NMEA sentence on the current port
+	 * @param rate Output rate in navigation solutions, 0 - disabled
+	 */
+	static byte[] ubxCfgMsg(int sentence, int rate) {
+		return ubxCommand(UBX_CLASS_CFG, UBX_CFG_MSG,
+				new byte[] { (byte)UBX_CLASS_NMEA, (byte)sentence, (byte)rate });
+	}
+
+	/**
+	 * u-blox CFG-RATE: measurement rate, one navigation solution per
+	 * measurement, GPS time reference
+	 */
+	static byte[] ubxCfgRate(int intervalMs) {
+		return ubxCommand(UBX_CLASS_CFG, UBX_CFG_RATE,
+				new byte[] { (byte)intervalMs, (byte)(intervalMs >> 8), 1, 0, 1, 0 });
+	}
+
+	/**
+	 * u-blox CFG-CFG: reloads message and navigation configuration from the
+	 * permanent configuration
+	 */
+	static byte[] ubxCfgCfgLoad() {
+		final byte payload[] = new byte[12];
+		payload[8] = (byte)UBX_CFG_CFG_LOAD_MASK;
+		return ubxCommand(UBX_CLASS_CFG, UBX_CFG_CFG, payload);
+	}
+
+	/**
+	 * @return "$body*XX\r\n"
+	 */
+	static byte[] nmeaCommand(String body) {
+		int csum = 0;
+		for (int i=0; i<body.length(); ++i) csum ^= body.charAt(i);
+		try {
+			return String.format(Locale.US, "$%s*%02X\r\n", body, csum).getBytes(GpsInputReader.NMEA_CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static byte[] ubxCommand(int msgClass, int msgId, final byte payload[]) {
+		final byte msg[] = new byte[payload.length + 8];
+		final int csum;
+
+		msg[0] = (byte)0xb5;
+		msg[1] = (byte)0x62;
+		msg[2] = (byte)msgClass;
+		msg[3] = (byte)msgId;
+		msg[4] = (byte)payload.length;
+		msg[5] = (byte)(payload.length >> 8);
+		System.arraycopy(payload, 0, msg, 6, payload.length);
+		csum = GpsInputReader.ubxCsum(msg, 2, payload.length + 4);
+		msg[6 + payload.length] = (byte)(csum >> 8);
+		msg[7 + payload.length] = (byte)csum;
+
+		return msg;
+	}
+
+	private static long gpsSeconds(long utcMs) {
+		return (utcMs - GPS_EPOCH_MS) / 1000 + GPS_UTC_LEAP_SECONDS;
+	}
+
+	private static Calendar utcCalendar(long utcMs) {
+		final Calendar c = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+		c.setTimeInMillis(utcMs);
+		return c;
+	}
+
+	private static void putInt32Be(final byte[] b, int p, int v) {
+		b[p] = (byte)(v >> 24);
+		b[p+1] = (byte)(v >> 16);
+		b[p+2] = (byte)(v >> 8);
+		b[p+3] = (byte)v;
+	}
+
+	private static void putInt32Le(final byte[] b, int p, int v) {
+		b[p] = (byte)v;
+		b[p+1] = (byte)(v >> 8);
+		b[p+2] = (byte)(v >> 16);
+		b[p+3] = (byte)(v >> 24);
+	}
+
+	private static boolean startsWith(final byte[] buf, int offset, int length, String s) {
+		if (length < s.length()) return false;
+		for (int i=0; i<s.length(); ++i) {
+			if (buf[offset+i] != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private static int indexOf(final byte[] buf, int offset, int length, String s) {
+		for (int p=0; p + s.length() <= length; ++p) {
+			if (startsWith(buf, offset+p, length-p, s)) return p;
+		}
+		return -1;
+	}
+
+}
@@ -29,7 +29,12 @@ public enum ReceiverInterfaces {
 	/**
 	 * GPS Receiver with USB interface
 	 */
-	USB(R.string.prefs_gps_inteface_usb);
+	USB(R.string.prefs_gps_inteface_usb),
+
+	/**
+	 * Replay of the recorded raw data log
+	 */
+	REPLAY(R.string.prefs_gps_inteface_replay);
 
 
 	public final int resId;
@@ -56,6 +61,9 @@ public enum ReceiverInterfaces {
 			if ( android.os.Build.VERSION.SDK_INT >= 12)
 				iface = new UsbInterface(pContext);
 			break;
+		case REPLAY:
+			iface = new ReplayInterface();
+			break;
 		}
 
 		if (iface == null)
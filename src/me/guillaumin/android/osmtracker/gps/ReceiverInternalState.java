@@ -3,10 +3,7 @@
  */
 package me.guillaumin.android.osmtracker.gps;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.List;
+import java.io.UnsupportedEncodingException;
 
 import me.guillaumin.android.osmtracker.OSMTracker;
 import android.location.Location;
@@ -15,6 +12,7 @@ import android.location.LocationProvider;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.text.format.Time;
 import android.util.Log;
 import static junit.framework.Assert.*;
@@ -34,15 +32,32 @@ public class ReceiverInternalState {
 	 */
 	private static final float KNOTS_TO_MPS = 0.514444f;
 
+	/*
+	 * Constellations. Values are NMEA 4.11 GNSS system IDs.
+	 * Satellite numbers in GpsStatus: GPS 1-32, SBAS 33-64, GLONASS 65-96,
+	 * BeiDou 101-163, QZSS 193-202, Galileo 211-246.
+	 */
+	private static final int GNSS_UNKNOWN = 0;
+	private static final int GNSS_GPS = 1;
+	private static final int GNSS_GLONASS = 2;
+	private static final int GNSS_GALILEO = 3;
+	private static final int GNSS_BEIDOU = 4;
+	private static final int GNSS_QZSS = 5;
+
 	private String providerName;
 
 	final private NmeaFix nmeaFix = new NmeaFix();
 	final private SirfFix sirfFix = new SirfFix();
+	final private UbxFix ubxFix = new UbxFix();
 	final private Location lastKnownLocation = new Location("");
 	final private GpsStatus lastGpsStatus = new GpsStatus();
 	private boolean hasLastKnownLocation = false;
 	private boolean isCurrentLocation = false;
 
+	/* Time to first fix of the current connection */
+	private long firstFixStartTime;
+	private boolean hasFirstFix = false;
+
 	// LocationProvider status
     private int mProviderStatus;
 
@@ -60,6 +75,7 @@ public class ReceiverInternalState {
 		this.mProviderStatus = LocationProvider.OUT_OF_SERVICE;
 		this.mLocationListeners = new LocationListenerTransporter(name);
 		this.mGpsStatusListeners = new GpsStatusTransporter();
+		this.firstFixStartTime = SystemClock.elapsedRealtime();
 	}
 
 	public synchronized void requestLocationUpdates(long minTime, float minDistance, final LocationListener listener) {
@@ -84,15 +100,45 @@ public class ReceiverInternalState {
 				|| this.mLocationListeners.hasListeners());
 	}
 
+	public boolean hasGpsStatusListeners() {
+		return this.mGpsStatusListeners.hasListeners();
+	}
+
+	/**
+	 * @return Min time between location updates requested by the listeners, ms.
+	 * 0 if none of the listeners has requested it.
+	 */
+	public long getMinTime() {
+		return this.mLocationListeners.getMinTime();
+	}
+
 
+	public boolean putNmeaMessage(final byte[] msg, int offset, int length) {
+		return nmeaFix.putMessage(msg, offset, length);
+	}
+
+	/**
+	 * Slow path. Use {@link #putNmeaMessage(byte[], int, int)} for received data
+	 */
 	public boolean putNmeaMessage(String msg) {
-		return nmeaFix.putMessage(msg);
+		final byte b[];
+		try {
+			b = msg.getBytes(GpsInputReader.NMEA_CHARSET);
+		}catch (UnsupportedEncodingException uee) {
+			Log.d(TAG, "Conversion to NMEA_CHARSET failed", uee);
+			return false;
+		}
+		return nmeaFix.putMessage(b, 0, b.length);
 	}
 
 	public boolean putSirfMessage(final byte[] msg, int offset, int length) {
 		return sirfFix.putMessage(msg, offset, length);
 	}
 
+	public boolean putUbxMessage(final byte[] msg, int offset, int length) {
+		return ubxFix.putMessage(msg, offset, length);
+	}
+
 	public Location getLastKnownLocation() {
 		Location res;
 		synchronized(lastKnownLocation) {
@@ -117,6 +163,75 @@ public class ReceiverInternalState {
 		return res;
 	}
 
+	/**
+	 * @return true if the location of the current epoch is known. Does not allocate.
+	 */
+	boolean hasCurrentLocation() {
+		synchronized(lastKnownLocation) {
+			return hasLastKnownLocation && isCurrentLocation;
+		}
+	}
+
+	/**
+	 * Sets the last known location saved by the previous session. Ignored
+	 * if a location has already been received. Listeners are not notified.
+	 */
+	void setLastKnownLocation(final Location l) {
+		synchronized(lastKnownLocation) {
+			if (hasLastKnownLocation) return;
+			lastKnownLocation.set(l);
+			hasLastKnownLocation = true;
+			isCurrentLocation = false;
+		}
+	}
+
+	/**
+	 * Starts the time to first fix measurement. Called when the connection
+	 * to the receiver is established.
+	 */
+	void startFirstFix() {
+		synchronized(lastKnownLocation) {
+			firstFixStartTime = SystemClock.elapsedRealtime();
+			hasFirstFix = false;
+			isCurrentLocation = false;
+		}
+		synchronized(lastGpsStatus) {
+			lastGpsStatus.setTimeToFirstFix(0);
+		}
+	}
+
+	/**
+	 * @return UTC time of the last known location in ms, 0 if there is no location yet.
+	 * Does not allocate.
+	 */
+	long getLastFixTime() {
+		synchronized(lastKnownLocation) {
+			return hasLastKnownLocation ? lastKnownLocation.getTime() : 0;
+		}
+	}
+
+	/**
+	 * @return Statistics of the NMEA epoch assembly
+	 */
+	public NmeaEpochStats getNmeaEpochStats(NmeaEpochStats dst) {
+		if (dst == null) {
+			dst = new NmeaEpochStats();
+		}
+		synchronized(nmeaFix.epochStats) {
+			dst.set(nmeaFix.epochStats);
+		}
+		return dst;
+	}
+
+	/**
+	 * Closes the NMEA epoch if its closing sentence is overdue. Called on
+	 * the parser thread when there is no more data to parse.
+	 * @return Time in ms until the next call, 0 if there is no open epoch
+	 */
+	public long checkEpochTimeout() {
+		return nmeaFix.checkEpochTimeout(SystemClock.elapsedRealtime());
+	}
+
 	public GpsStatus getGpsStatus(GpsStatus dst) {
 		if (dst == null) {
 			dst = new GpsStatus();
@@ -151,9 +266,14 @@ public class ReceiverInternalState {
 				isCurrentLocation = true;
 				if (D) Log.v(TAG, "New location: " + l.toString());
 				/* Update status */
-				if (hasLastKnownLocation == false) {
+				if (!hasFirstFix) {
+					final int ttff = (int)(SystemClock.elapsedRealtime() - firstFixStartTime);
+					hasFirstFix = true;
+					if (D) Log.d(TAG, "Time to first fix: " + ttff + " ms");
+					synchronized(lastGpsStatus) {
+						lastGpsStatus.setTimeToFirstFix(ttff);
+					}
 					mGpsStatusListeners.onGpsStatusChanged(GpsStatus.GPS_EVENT_FIRST_FIX);
-					hasLastKnownLocation = true;
 				}
 
 				if (mProviderStatus != LocationProvider.AVAILABLE) {
@@ -178,8 +298,8 @@ public class ReceiverInternalState {
 
 	private void setNewGpsStatus(int svCount,
 			int[] prns, float[] snrs, float[] elevations,
-			float[] azimuths, int ephemerisMask,
-			int almanacMask, int usedInFixMask) {
+			float[] azimuths, PrnMask ephemerisMask,
+			PrnMask almanacMask, PrnMask usedInFixMask) {
 		synchronized(lastGpsStatus) {
 			lastGpsStatus.setStatus(svCount > prns.length ? prns.length : svCount,
 					prns,
@@ -193,8 +313,53 @@ public class ReceiverInternalState {
 		}
 	}
 
+	/**
+	 * @param gnss Constellation, GNSS_UNKNOWN for GPS and combined (GN) talkers
+	 * @param sv Satellite number reported by the receiver
+	 * @return Satellite number in GpsStatus or 0 if it can not be represented
+	 */
+	private static int toStatusPrn(int gnss, int sv) {
+		int prn;
+
+		switch (gnss) {
+		case GNSS_UNKNOWN:
+		case GNSS_GPS:
+			/* GPS 1-32, SBAS 33-64 or 120-158, QZSS 193-202, GLONASS 65-96 */
+			prn = (sv >= 120 && sv <= 158) ? sv - 87 : sv;
+			break;
+		case GNSS_GLONASS:
+			/* NMEA 4.x: 65-96, older receivers: slot number 1-24 */
+			prn = sv <= 32 ? 64 + sv : sv;
+			break;
+		case GNSS_GALILEO:
+			/* NMEA 4.10: 1-36, u-blox extended numbering: 301-336 */
+			prn = sv <= 36 ? 210 + sv : (sv > 300 ? sv - 90 : sv);
+			break;
+		case GNSS_BEIDOU:
+			/* NMEA 4.10: 1-63, u-blox extended numbering: 401-463 */
+			prn = sv <= 63 ? 100 + sv : (sv > 400 ? sv - 300 : sv);
+			break;
+		case GNSS_QZSS:
+			prn = sv <= 10 ? 192 + sv : sv;
+			break;
+		default:
+			return 0;
+		}
+
+		return (prn > 0 && prn <= PrnMask.MAX_PRN) ? prn : 0;
+	}
+
 	private class NmeaFix {
 
+		/* Max number of satellites in the GSA and GSV tables */
+		private static final int MAX_SATELLITES = 128;
+
+		/* Max time from the start of the epoch to the timer close */
+		private static final long MAX_EPOCH_TIMEOUT_MS = 1000;
+
+		/* Added to the learned closing delay of the epoch */
+		private static final long EPOCH_TIMEOUT_SLACK_MS = 100;
+
 		/* Current epoch */
 		final NmeaFixTime currentTime = new NmeaFixTime();
 		final Time nmeaDateTime = new Time("UTC");
@@ -234,17 +399,35 @@ public class ReceiverInternalState {
 		boolean rmcStatusIsActive;
 
 
-		/* GPGSA */
+		/* GSA. Multi-GNSS receivers send a sentence per constellation */
 		boolean hasGsa;
 		int gsaFixType;
-		final int gsaPrn[] = new int[12];
+		final int gsaPrn[] = new int[MAX_SATELLITES];
+		int gsaPrnCount;
 		float gsaPdop;
 		float gsaHdop;
 		float gsaVdop;
 
-		/* GPGSV parser state */
+		/* True if the previous sentence was GSA */
+		private boolean gsaSequence;
+
+		/* GSV parser state */
 		private final NmeaGsvParser gsvParser = new NmeaGsvParser();
 
+		/* Learned sentence cycle of the receiver */
+		private final NmeaEpochCycle epochCycle = new NmeaEpochCycle();
+		final NmeaEpochStats epochStats = new NmeaEpochStats();
+
+		/* elapsedRealtime() of the current GGA, RMC or GSA sentence */
+		private long sentenceTime;
+
+		/* Parser scratch objects, reused for every sentence */
+		private final NmeaCursor cursor = new NmeaCursor();
+		private final NmeaFixTime fixTime = new NmeaFixTime();
+		private final NmeaFixTime zdaTime = new NmeaFixTime();
+		private final int gsaPrnTmp[] = new int[12];
+		private final Bundle extras = new Bundle(5);
+
 		public NmeaFix() {
 			reset();
 		}
@@ -284,14 +467,21 @@ public class ReceiverInternalState {
 			}else {
 				/* new epoch */
 				if (!epochClosed) {
-					closeEpoch(true);
+					closeEpoch(true, NmeaEpochStats.CLOSED_BY_NEXT_EPOCH, sentenceTime);
 				}
+				epochCycle.onEpochOpened(sentenceTime);
 				openEpoch(fixTime);
 			}
 			return true;
 		}
 
-		private void closeEpoch(boolean force) {
+		/**
+		 * Closes the epoch and publishes the fix
+		 * @param force Close even if GGA or RMC was not received
+		 * @param reason NmeaEpochStats.CLOSED_XXX
+		 * @param now elapsedRealtime()
+		 */
+		private void closeEpoch(boolean force, int reason, long now) {
 			int yyyy, mm, dd;
 			boolean locationValid;
 
@@ -342,18 +532,17 @@ public class ReceiverInternalState {
 				/* Update bundle */
 				if (this.hasGga || this.hasGsa) {
 					int fields = 0;
-					Bundle extras;
 
 					/* Number of satellites used in current solution */
 					int satellites = -1;
 					if (this.hasGga)
 						satellites = this.ggaNbSat;
 					if ((satellites < 0) && this.hasGsa) {
-						satellites = 0;
-						for(int prn: gsaPrn) { if (prn > 0) satellites += 1; }
+						satellites = gsaPrnCount;
 					}
 
-					extras = new Bundle(5);
+					/* Location.setExtras() makes a copy, so the bundle can be reused */
+					extras.clear();
 					if (satellites >= 0) {
 						fields += 1;
 						extras.putInt("satellites", satellites);
@@ -389,196 +578,141 @@ public class ReceiverInternalState {
 			}
 
 			epochClosed = true;
+			synchronized(epochStats) {
+				epochStats.onEpochClosed(reason, now - epochCycle.openTime);
+			}
 		}
 
-		private int nmeaFieldCount(String msg, int start) {
-			int pos;
-			final int end = msg.length();
-			int i;
-
-			i=0;
-			pos=start;
-			while (pos < end) {
-				pos = msg.indexOf(',', pos);
-				if (pos < 0)
-					break;
-				else {
-					pos += 1;
-					i += 1;
-				}
-			};
-			return i+1;
-		}
-
-		private double parseNmeaDegrees(String s, boolean oppositeDirection) throws NumberFormatException{
-			double tmp;
-			double res;
-
-			if (s.length() < 1) return Double.NaN;
-			tmp = Double.parseDouble(s);
-
-			/* Degrees */
-			res = Math.floor(tmp/100.0);
+		/**
+		 * Closes the epoch if its closing sentence is overdue
+		 * @return Time in ms until the next check, 0 if there is no open epoch
+		 */
+		long checkEpochTimeout(long now) {
+			final long deadline;
 
-			/* Minutes */
-			res = res + (tmp - 100.0 * res) / 60.0;
+			if (epochClosed || !epochCycle.isLearned())
+				return 0;
 
-			if (oppositeDirection) res = -res;
+			deadline = epochCycle.getDeadline();
+			if (now < deadline)
+				return deadline - now;
 
-			return res;
+			if (D) Log.v(TAG, "Closing sentence of the epoch not received in " + (now - epochCycle.openTime) + " ms");
+			closeEpoch(true, NmeaEpochStats.CLOSED_BY_TIMER, now);
+			return 0;
 		}
 
-		private boolean parseGpgga(String msg) {
-			int startPos, curPos;
+		private boolean parseGga(final NmeaCursor c) {
 			int fieldCount;
-			final NmeaFixTime fixTime = new NmeaFixTime();
 			double lat, lon, alt, geoidheight;
 			float hdop;
 			int fixQ, nbSat;
 
-			startPos = "$GPGGA,".length();
-			fieldCount = nmeaFieldCount(msg, startPos);
+			fieldCount = c.fieldCount();
 			if (fieldCount != 14) {
-				Log.d(TAG, "Invalid field count in $GPGGA message: " + fieldCount + " - " + msg);
+				Log.d(TAG, "Invalid field count in $--GGA message: " + fieldCount + " - " + c);
 				return false;
 			}
 
 			try {
 				/* Field 1. Time of fix */
-				curPos = msg.indexOf(',', startPos);
-				if ( curPos - startPos < 6) {
-					Log.d(TAG, "Invalid time of fix in $GPGGA message - " + msg);
-					return false;
-				}
-				fixTime.set(msg.substring(startPos, curPos));
+				c.next();
+				fixTime.set(c);
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid time of fix in $GPGGA message - " + msg);
+				Log.d(TAG, "Invalid time of fix in $--GGA message - " + c);
 				return false;
 			}
 
 			try {
-				String sLat;
-				boolean northDirection = true;
-
 				/* Field 2. Latitude */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				sLat = msg.substring(startPos, curPos);
-
+				c.next();
+				lat = c.parseDegrees(false);
 
 				/* Field 3. Latitude direction */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if ( (curPos - startPos >= 1)
-						&& (msg.charAt(startPos) == 'S') 
-						) {
-					northDirection = false;
-				}
-				lat = parseNmeaDegrees(sLat, !northDirection);
+				c.next();
+				if (c.firstChar() == 'S') lat = -lat;
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid latitude in $GPGGA message - " + msg);
+				Log.d(TAG, "Invalid latitude in $--GGA message - " + c);
 				return false;
 			}
 
 			try {
-				String sLon;
-				boolean eastDirection = true;
-
 				/* Field 4. Longitude */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				sLon = msg.substring(startPos, curPos);
+				c.next();
+				lon = c.parseDegrees(false);
 
 				/* Field 5. Longitude direction */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if ( (curPos - startPos >= 1)
-						&& (msg.charAt(startPos) == 'W') 
-						) {
-					eastDirection = false;
-				}
-				lon = parseNmeaDegrees(sLon, !eastDirection);
+				c.next();
+				if (c.firstChar() == 'W') lon = -lon;
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid longitude in $GPGGA message - " + msg);
+				Log.d(TAG, "Invalid longitude in $--GGA message - " + c);
 				return false;
 			}
 
 			/* Field 6 fix quality */
-			curPos = msg.indexOf(',', (startPos = curPos+1));
-			if (curPos-startPos == 0) {
+			c.next();
+			if (c.isEmpty()) {
 				fixQ = 1;
-			}else if (curPos-startPos > 1) {
-				Log.d(TAG, "Invalid fix quality in $GPGGA message - " + msg);
+			}else if (c.length() > 1) {
+				Log.d(TAG, "Invalid fix quality in $--GGA message - " + c);
 				return false;
 			}else {
-				fixQ = Character.digit(msg.charAt(startPos), 10);
+				fixQ = Character.digit(c.firstChar(), 10);
 				if (fixQ < 0) {
-					Log.d(TAG, "Invalid fix quality in $GPGGA message - " + msg);
+					Log.d(TAG, "Invalid fix quality in $--GGA message - " + c);
 					return false;
 				}
 			}
 
 			/* Field 7. Number of satellites being tracked */
 			try {
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) {
+				c.next();
+				if (c.isEmpty()) {
 					nbSat = -1;
 				}else {
-					nbSat = Integer.parseInt(msg.substring(startPos, curPos));
+					nbSat = c.parseInt();
 					if (nbSat < 0) throw new NumberFormatException();
 				}
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid number of tracked satellites in $GPGGA message - " + msg);
+				Log.d(TAG, "Invalid number of tracked satellites in $--GGA message - " + c);
 				return false;
 			}
 
 			/* Field 8. HDOP */
 			try {
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) {
-					hdop = Float.NaN;
-				}else {
-					hdop = Float.parseFloat(msg.substring(startPos, curPos));
-					if (hdop < 0) throw new NumberFormatException();
-				}
+				c.next();
+				hdop = c.parseFloat();
+				if (hdop < 0) throw new NumberFormatException();
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid HDOP in $GPGGA message - " + msg);
+				Log.d(TAG, "Invalid HDOP in $--GGA message - " + c);
 				return false;
 			}
 
 			/* Field 9, 10.  Altitude above mean sea level */
 			try {
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) {
-					alt = Double.NaN;
-				}else {
-					alt = Double.parseDouble(msg.substring(startPos, curPos));
-				}
+				c.next();
+				alt = c.parseDouble();
 
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if ( (curPos - startPos >= 1)
-						&& (msg.charAt(startPos) != 'M')
-						) {
+				c.next();
+				if (!c.isEmpty() && (c.firstChar() != 'M')) {
 					alt = Double.NaN;
 				}
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid altitude $GPGGA message - " + msg);
+				Log.d(TAG, "Invalid altitude $--GGA message - " + c);
 				return false;
 			}
 
 			/* Field 11, 12. Geoid height */
 			try {
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) {
-					geoidheight = Double.NaN;
-				}else {
-					geoidheight = Double.parseDouble(msg.substring(startPos, curPos));
-				}
+				c.next();
+				geoidheight = c.parseDouble();
 
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if ( (curPos - startPos >= 1)
-						&& (msg.charAt(startPos) != 'M')
-						) {
+				c.next();
+				if (!c.isEmpty() && (c.firstChar() != 'M')) {
 					geoidheight = Double.NaN;
 				}
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid geoid height $GPGGA message - " + msg);
+				Log.d(TAG, "Invalid geoid height $--GGA message - " + c);
 				return false;
 			}
 
@@ -586,7 +720,7 @@ public class ReceiverInternalState {
 
 			/* Handle received data */
 			if (!prepareEpoch(fixTime)) {
-				Log.d(TAG, "$GPRMC message from closed epoch - " + msg);
+				Log.d(TAG, "$--GGA message from closed epoch - " + c);
 				return false;
 			}
 
@@ -612,146 +746,113 @@ public class ReceiverInternalState {
 					currentLocation.removeAccuracy();
 				}
 			}
-			closeEpoch(false);
 
 			return true;
 		}
 
-		private boolean parseGprmc(String msg) {
-			int startPos, curPos;
+		private boolean parseRmc(final NmeaCursor c) {
 			int fieldCount;
 			int ddmmyy;
 			double lat, lon;
 			float speed, bearing;
 			boolean statusIsActive;
-			final NmeaFixTime fixTime = new NmeaFixTime();
 
-			startPos = "$GPRMC,".length();
-			fieldCount = nmeaFieldCount(msg, startPos);
+			fieldCount = c.fieldCount();
 			if (fieldCount < 11) {
-				Log.d(TAG, "Invalid field count in $GPGGA message: " + fieldCount + " - " + msg);
+				Log.d(TAG, "Invalid field count in $--RMC message: " + fieldCount + " - " + c);
 				return false;
 			}
 
 			try {
 				/* Field 1. Time of fix */
-				curPos = msg.indexOf(',', startPos);
-				if ( curPos - startPos < 6) {
-					Log.d(TAG, "Invalid time of fix in $GPRMC message - " + msg);
-					return false;
-				}
-				fixTime.set(msg.substring(startPos, curPos));
+				c.next();
+				fixTime.set(c);
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid time of fix in $GPRMC message - " + msg);
+				Log.d(TAG, "Invalid time of fix in $--RMC message - " + c);
 				return false;
 			}
 
 			/* Field 2. Status */
-			curPos = msg.indexOf(',', (startPos = curPos+1));
-			if (curPos-startPos == 0) {
+			c.next();
+			if (c.isEmpty()) {
 				statusIsActive = true;
-			}else if (curPos-startPos > 1) {
-				Log.d(TAG, "Invalid status in $GPRMC message - " + msg);
+			}else if (c.length() > 1) {
+				Log.d(TAG, "Invalid status in $--RMC message - " + c);
 				return false;
 			}else {
-				if ((msg.charAt(startPos) != 'A')
-						&& (msg.charAt(startPos) != 'V')) {
+				if ((c.firstChar() != 'A')
+						&& (c.firstChar() != 'V')) {
 					statusIsActive = true;
-					Log.v(TAG, "Unknown GPRMC status - " + msg);
+					Log.v(TAG, "Unknown GPRMC status - " + c);
 				}else {
-					statusIsActive = (msg.charAt(startPos) == 'A');
+					statusIsActive = (c.firstChar() == 'A');
 				}
 			}
 
 			try {
-				String sLat;
-				boolean northDirection = true;
-
 				/* Field 3. Latitude */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				sLat = msg.substring(startPos, curPos);
+				c.next();
+				lat = c.parseDegrees(false);
 
 				/* Field 4. Latitude direction */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if ( (curPos - startPos >= 1)
-						&& (msg.charAt(startPos) == 'S')
-						) {
-					northDirection = false;
-				}
-				lat = parseNmeaDegrees(sLat, !northDirection);
+				c.next();
+				if (c.firstChar() == 'S') lat = -lat;
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid latitude in $GPRMC message - " + msg);
+				Log.d(TAG, "Invalid latitude in $--RMC message - " + c);
 				return false;
 			}
 
 			try {
-				String sLon;
-				boolean eastDirection = true;
-
 				/* Field 5. Longitude */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				sLon = msg.substring(startPos, curPos);
+				c.next();
+				lon = c.parseDegrees(false);
 
 				/* Field 6. Longitude direction */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if ( (curPos - startPos >= 1)
-						&& (msg.charAt(startPos) == 'W')
-						) {
-					eastDirection = false;
-				}
-				lon = parseNmeaDegrees(sLon, !eastDirection);
+				c.next();
+				if (c.firstChar() == 'W') lon = -lon;
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid longitude in $GPRMC message - " + msg);
+				Log.d(TAG, "Invalid longitude in $--RMC message - " + c);
 				return false;
 			}
 
 			/* Field 7. Speed over the ground  */
 			try {
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) {
-					speed = Float.NaN;
-				}else {
-					speed = Float.parseFloat(msg.substring(startPos, curPos)) * KNOTS_TO_MPS;
-					if (speed < 0.0) throw new NumberFormatException();
-				}
+				c.next();
+				speed = c.parseFloat() * KNOTS_TO_MPS;
+				if (speed < 0.0) throw new NumberFormatException();
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid speed over ground in $GPRMC message - " + msg);
+				Log.d(TAG, "Invalid speed over ground in $--RMC message - " + c);
 				return false;
 			}
 
 			/* Field 8. Track angle */
 			try {
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) {
-					bearing = Float.NaN;
-				}else {
-					bearing = Float.parseFloat(msg.substring(startPos, curPos));
-				}
+				c.next();
+				bearing = c.parseFloat();
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid track angle in $GPRMC message - " + msg);
+				Log.d(TAG, "Invalid track angle in $--RMC message - " + c);
 				return false;
 			}
 
 			/* Field 9. Date */
 			try {
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) {
+				c.next();
+				if (c.isEmpty()) {
 					ddmmyy = -1;
 				}else {
-					ddmmyy = Integer.parseInt(msg.substring(startPos, curPos), 10);
+					ddmmyy = c.parseInt();
 					if ((ddmmyy < 0) || ddmmyy > 311299) throw new NumberFormatException();
 				}
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid date in $GPRMC message - " + msg);
+				Log.d(TAG, "Invalid date in $--RMC message - " + c);
 				return false;
 			}
 
 			/* Field 10,11 magnetic variation */
-			/* Handle received data */
 
 			/* handle data */
 			if (!prepareEpoch(fixTime)) {
-					Log.d(TAG, "$GPRMC message from closed epoch - " + msg);
+					Log.d(TAG, "$--RMC message from closed epoch - " + c);
 					return false;
 			}
 
@@ -773,35 +874,32 @@ public class ReceiverInternalState {
 					currentLocation.setBearing(bearing);
 				}
 			}
-			closeEpoch(false);
 			return true;
 		}
 
-		private boolean parseGpgsa(String msg) {
-			int startPos, curPos;
+		private boolean parseGsa(final NmeaCursor c, int gnss) {
 			int fieldCount;
 			int fixMode;
 			float pdop, hdop, vdop;
-			final int prns[] = new int[12];
+			final int prns[] = this.gsaPrnTmp;
 
-			startPos = "$GPGSA,".length();
-			fieldCount = nmeaFieldCount(msg, startPos);
+			fieldCount = c.fieldCount();
 			if (fieldCount < 17) {
-				Log.d(TAG, "Invalid field count in $GPGSA message: " + fieldCount + " - " + msg);
+				Log.d(TAG, "Invalid field count in $--GSA message: " + fieldCount + " - " + c);
 				return false;
 			}
 
 			/* Field 1. Auto / Manual selection if 2D/3D fix */
-			curPos = msg.indexOf(',', startPos);
+			c.next();
 
 			/* Field 2. Fix mode 1 - no fix, 2 - 2D fix, 3 - 3D fix*/
-			curPos = msg.indexOf(',', (startPos = curPos+1));
-			if (curPos - startPos == 0)
+			c.next();
+			if (c.isEmpty())
 				fixMode = -1;
 			else {
-				fixMode = Character.digit(msg.charAt(startPos), 10);
+				fixMode = Character.digit(c.firstChar(), 10);
 				if (fixMode < 0) {
-					Log.d(TAG, "Invalid 3D Fix field $GPGSA message: " + msg);
+					Log.d(TAG, "Invalid 3D Fix field $--GSA message: " + c);
 					return false;
 				}
 			}
@@ -809,110 +907,104 @@ public class ReceiverInternalState {
 			/* 12 PRNs */
 			try {
 				for (int i=0; i<12; ++i) {
-					curPos = msg.indexOf(',', (startPos = curPos+1));
-					if (curPos - startPos == 0)
+					c.next();
+					if (c.isEmpty())
 						prns[i] = -1;
 					else {
-						prns[i] = Integer.parseInt(msg.substring(startPos, curPos));
+						prns[i] = c.parseInt();
 					}
 				}
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid PRN in $GPGSA message - " + msg);
+				Log.d(TAG, "Invalid PRN in $--GSA message - " + c);
 				return false;
 			}
 
 			/* Field 15. PDOP */
 			try {
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) {
-					pdop = Float.NaN;
-				}else {
-					pdop = Float.parseFloat(msg.substring(startPos, curPos));
-				}
+				c.next();
+				pdop = c.parseFloat();
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid PDOP field in $GPGSA message - " + msg);
+				Log.d(TAG, "Invalid PDOP field in $--GSA message - " + c);
 				return false;
 			}
 
 			/* Field 16. HDOP */
 			try {
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) {
-					hdop = Float.NaN;
-				}else {
-					hdop = Float.parseFloat(msg.substring(startPos, curPos));
-				}
+				c.next();
+				hdop = c.parseFloat();
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid HDOP field in $GPGSA message - " + msg);
+				Log.d(TAG, "Invalid HDOP field in $--GSA message - " + c);
 				return false;
 			}
 
 			/* Field 17. VDOP */
 			try {
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos < 0) curPos = msg.length();
-				if (curPos-startPos == 0) {
-					vdop = Float.NaN;
-				}else {
-					vdop = Float.parseFloat(msg.substring(startPos, curPos));
-				}
+				c.next();
+				vdop = c.parseFloat();
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid VDOP field in $GPGSA message - " + msg);
+				Log.d(TAG, "Invalid VDOP field in $--GSA message - " + c);
 				return false;
 			}
 
+			/* Field 18 (NMEA 4.11). GNSS system ID */
+			if (fieldCount >= 18) {
+				c.next();
+				if (!c.isEmpty()) {
+					final int systemId = Character.digit(c.firstChar(), 16);
+					if (systemId > 0) gnss = systemId;
+				}
+			}
+
+			/* PRNs of the sentences of one epoch are merged */
+			if (!gsaSequence) this.gsaPrnCount = 0;
+			for (int prn: prns) {
+				if (prn <= 0) continue;
+				prn = toStatusPrn(gnss, prn);
+				if ((prn > 0) && (this.gsaPrnCount < this.gsaPrn.length))
+					this.gsaPrn[this.gsaPrnCount++] = prn;
+			}
+
 			this.hasGsa = true;
 			this.gsaFixType = fixMode;
 			this.gsaHdop = hdop;
 			this.gsaPdop = pdop;
 			this.gsaVdop = vdop;
-			System.arraycopy(prns, 0, this.gsaPrn, 0, prns.length);
-			if (D) Log.v(TAG, "$GPGSA. 3dfix: " + this.gsaFixType +
+			if (D) Log.v(TAG, "$--GSA. 3dfix: " + this.gsaFixType +
 					" HDOP: " + this.gsaHdop + " PDOP: " + this.gsaPdop +
-					" VDOP: " + this.gsaVdop + " PRNs: " + Arrays.toString(this.gsaPrn));
+					" VDOP: " + this.gsaVdop + " PRNs: " + this.gsaPrnCount);
 
 			return true;
 		}
 
-		private boolean parseGpzda(String msg) {
-			int startPos, curPos;
+		private boolean parseZda(final NmeaCursor c) {
 			int fieldCount;
 			int dd, mm, yyyy;
-			final NmeaFixTime currentTime = new NmeaFixTime();
+			final NmeaFixTime currentTime = this.zdaTime;
 
-			startPos = "$GPZDA,".length();
-			fieldCount = nmeaFieldCount(msg, startPos);
+			fieldCount = c.fieldCount();
 			if (fieldCount < 6) {
-				Log.d(TAG, "Invalid field count in $GPZDA message: " + fieldCount + " - " + msg);
+				Log.d(TAG, "Invalid field count in $--ZDA message: " + fieldCount + " - " + c);
 				return false;
 			}
 
 			try {
 				/* Field 1. Current time  */
-				curPos = msg.indexOf(',', startPos);
-				if ( curPos - startPos < 6) {
-					Log.d(TAG, "Invalid time in $GPZDA message - " + msg);
-					return false;
-				}
-				currentTime.set(msg.substring(startPos, curPos));
+				c.next();
+				currentTime.set(c);
 
 				/* Field 2. Day */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) throw new NumberFormatException();
-				dd = Integer.parseInt(msg.substring(startPos, curPos));
+				c.next();
+				dd = c.parseInt();
 				if (dd < 1 || dd > 31) throw new NumberFormatException();
 
 				/* Field 3. Month */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos-startPos == 0) throw new NumberFormatException();
-				mm = Integer.parseInt(msg.substring(startPos, curPos));
+				c.next();
+				mm = c.parseInt();
 				if (mm < 1 || mm > 12) throw new NumberFormatException();
 
 				/* Field 4. Year */
-				curPos = msg.indexOf(',', (startPos = curPos+1));
-				if (curPos < 0) curPos = msg.length();
-				if (curPos-startPos == 0) throw new NumberFormatException();
-				yyyy = Integer.parseInt(msg.substring(startPos, curPos));
+				c.next();
+				yyyy = c.parseInt();
 				if (yyyy < 1995) throw new NumberFormatException();
 
 				nmeaDateTime.set(
@@ -923,222 +1015,454 @@ public class ReceiverInternalState {
 						mm,
 						yyyy);
 
-				if (D) Log.v(TAG, "$GPZDA received. New time: " + nmeaDateTime.format3339(false));
+				if (D) Log.v(TAG, "$--ZDA received. New time: " + nmeaDateTime.format3339(false));
 
 			}catch(NumberFormatException ie) {
-				Log.d(TAG, "Invalid time in $GPZDA message - " + msg);
+				Log.d(TAG, "Invalid time in $--ZDA message - " + c);
 				return false;
 			}
 			return true;
 		}
 
-		private boolean putMessage(String msg) {
-			int checksumPos;
-
-			/* Trim checksum */
-			checksumPos = msg.lastIndexOf('*');
-			if (checksumPos >= 4) {
-				msg = msg.substring(0, checksumPos);
-			}
-
-			if (msg.startsWith("$GPGGA,")) {
-				return parseGpgga(msg);
-			}else if(msg.startsWith("$GPRMC,")) {
-				return parseGprmc(msg);
-			}else if (msg.startsWith("$GPGSA,")) {
-				return parseGpgsa(msg);
-			}else if (msg.startsWith("$GPGSV,")) {
-				return gsvParser.putNmeaGsvMessage(msg);
-			}else if (msg.startsWith("$GPZDA,")) {
-				return parseGpzda(msg);
-			}else if (msg.startsWith("$GPGLL,")) {
-				/* TODO: $GPGLL message */
-			}else if (msg.startsWith("$GPVTG,")) {
-				/* TODO: $GPVTG message */
-			}else {
-				if (D) Log.d(TAG, "Unknown NMEA data type. Msg: " + msg);
+		/**
+		 * @return Constellation of the talker ID of the current field
+		 */
+		private int talkerGnss(final NmeaCursor c) {
+			final char t1 = c.charAt(1);
+
+			switch (c.charAt(0)) {
+			case 'G':
+				switch (t1) {
+				case 'P': return GNSS_GPS;
+				case 'L': return GNSS_GLONASS;
+				case 'A': return GNSS_GALILEO;
+				case 'B': return GNSS_BEIDOU;
+				case 'Q': return GNSS_QZSS;
+				}
+				break;
+			case 'B':
+				if (t1 == 'D') return GNSS_BEIDOU;
+				break;
+			case 'Q':
+				if (t1 == 'Z') return GNSS_QZSS;
+				break;
+			}
+
+			/* GN - combined solution */
+			return GNSS_UNKNOWN;
+		}
+
+		/**
+		 * @return Address field (talker ID and sentence type, e.g. "GPRMC")
+		 * packed into an int, 6 bits per character. 0 if it is not 5
+		 * characters long.
+		 */
+		private int addressKey(final NmeaCursor c) {
+			int key = 0;
+
+			if (c.length() != 5) return 0;
+			for (int i=0; i<5; ++i) {
+				key = (key << 6) | ((c.charAt(i) - '0') & 0x3f);
+			}
+			return key;
+		}
+
+		private boolean putMessage(final byte[] msg, int offset, int length) {
+			final NmeaCursor c = this.cursor;
+			final boolean isGsa;
+			final int key;
+			boolean res;
+
+			if (!c.reset(msg, offset, length)) {
+				Log.d(TAG, "Not a NMEA message");
 				return false;
 			}
 
-			return true;
+			/* Address field: talker ID and sentence type. Talker is ignored
+			 * for the position sentences */
+			if (!c.fieldEquals(2, "GSV"))
+				gsvParser.flush();
+			isGsa = c.fieldEquals(2, "GSA");
+			key = addressKey(c);
+
+			res = true;
+			if (c.fieldEquals(2, "GGA")) {
+				sentenceTime = SystemClock.elapsedRealtime();
+				res = parseGga(c);
+				onFixSentence(key);
+			}else if(c.fieldEquals(2, "RMC")) {
+				sentenceTime = SystemClock.elapsedRealtime();
+				res = parseRmc(c);
+				onFixSentence(key);
+			}else if (isGsa) {
+				sentenceTime = SystemClock.elapsedRealtime();
+				res = parseGsa(c, talkerGnss(c));
+				onFixSentence(key);
+			}else if (c.fieldEquals(2, "GSV")) {
+				res = gsvParser.putNmeaGsvMessage(c, talkerGnss(c));
+			}else if (c.fieldEquals(2, "ZDA")) {
+				res = parseZda(c);
+			}else if (c.fieldEquals(2, "GLL")) {
+				/* TODO: $--GLL message */
+			}else if (c.fieldEquals(2, "VTG")) {
+				/* TODO: $--VTG message */
+			}else {
+				if (D) Log.d(TAG, "Unknown NMEA data type. Msg: " + c);
+				res = false;
+			}
+
+			gsaSequence = isGsa;
+			return res;
+		}
+
+		/**
+		 * Closes the epoch after the GGA, RMC or GSA sentence if it is the
+		 * learned closing sentence. Until the cycle is learned, the epoch
+		 * is closed when both GGA and RMC are received.
+		 */
+		private void onFixSentence(int key) {
+			if (epochCycle.onFixSentence(key, sentenceTime)) {
+				if (!epochClosed)
+					closeEpoch(true, NmeaEpochStats.CLOSED_ON_SENTENCE, sentenceTime);
+			}else if (!epochCycle.isLearned()) {
+				closeEpoch(false, NmeaEpochStats.CLOSED_ON_SENTENCE, sentenceTime);
+			}
 		}
 
-		/* GPGSV parser state */
+		/*
+		 * Sentence cycle of the receiver. Learns which GGA, RMC or GSA
+		 * sentence is the last one of the epoch, so the epoch can be closed
+		 * as soon as this sentence is parsed instead of on the first sentence
+		 * of the next epoch.
+		 *
+		 * GSA has no time field. Sentences between the last GGA/RMC of the
+		 * epoch and the first one of the next epoch are counted to the epoch.
+		 */
+		private class NmeaEpochCycle {
+			/* Number of epochs with the same last sentence to learn it */
+			private static final int CONFIRMATIONS = 2;
+
+			/* Max number of different fix sentences in the epoch */
+			private static final int MAX_KEYS = 8;
+
+			/* Learned closing sentence: address key and number in the epoch */
+			private int closerKey;
+			private int closerNumber;
+
+			/* Candidate closing sentence */
+			private int candidateKey;
+			private int candidateNumber;
+			private int confirmations;
+
+			/* Fix sentences of the current epoch and their numbers */
+			private final int keys[] = new int[MAX_KEYS];
+			private final int numbers[] = new int[MAX_KEYS];
+			private int keysCount;
+			private int lastKeyPos;
+			private long lastTime;
+
+			/* elapsedRealtime() of the start of the epoch */
+			long openTime;
+
+			/* Decaying max delay from the start of the epoch to the closing sentence */
+			private long closeDelayMs;
+
+			public boolean isLearned() {
+				return closerKey != 0;
+			}
+
+			/**
+			 * Learns the last fix sentence of the previous epoch
+			 */
+			public void onEpochOpened(long now) {
+				if (keysCount != 0)
+					learn(keys[lastKeyPos], numbers[lastKeyPos], lastTime - openTime);
+				keysCount = 0;
+				openTime = lastTime = now;
+			}
+
+			private void learn(int key, int number, long delay) {
+				if ((key == closerKey) && (number == closerNumber)) {
+					confirmations = 0;
+					return;
+				}
+
+				if ((key == candidateKey) && (number == candidateNumber)) {
+					confirmations += 1;
+				}else {
+					candidateKey = key;
+					candidateNumber = number;
+					confirmations = 1;
+				}
+
+				if (confirmations >= CONFIRMATIONS) {
+					closerKey = key;
+					closerNumber = number;
+					closeDelayMs = delay;
+					confirmations = 0;
+					synchronized(epochStats) {
+						epochStats.closingSentence = key;
+						epochStats.closingSentenceNumber = number;
+					}
+					if (D) Log.d(TAG, "Closing sentence of the epoch: " + epochStats.getClosingSentence() + "#" + number);
+				}
+			}
+
+			/**
+			 * @return true if it is the closing sentence of the epoch
+			 */
+			public boolean onFixSentence(int key, long now) {
+				int p;
+
+				for (p=0; p<keysCount; ++p) {
+					if (keys[p] == key) break;
+				}
+				if (p == keysCount) {
+					if (p == MAX_KEYS) return false;
+					keys[p] = key;
+					numbers[p] = 0;
+					keysCount += 1;
+				}
+				numbers[p] += 1;
+				lastKeyPos = p;
+				lastTime = now;
+
+				if ((key != closerKey) || (numbers[p] != closerNumber))
+					return false;
+
+				closeDelayMs = Math.max(closeDelayMs - closeDelayMs / 8, now - openTime);
+				return true;
+			}
+
+			/**
+			 * @return elapsedRealtime() when the epoch should be closed by the timer
+			 */
+			public long getDeadline() {
+				return openTime + Math.min(MAX_EPOCH_TIMEOUT_MS, 2 * closeDelayMs + EPOCH_TIMEOUT_SLACK_MS);
+			}
+		} /* class NmeaEpochCycle */
+
+		/*
+		 * GSV parser state. Satellites of all GSV sequences (GPGSV, GLGSV,
+		 * GAGSV... and the signals of NMEA 4.10) are merged into one table,
+		 * published by flush() on the first sentence after the GSV sentences.
+		 */
 		private class NmeaGsvParser {
-			private static final int NUM_SATELLITES = 12;
+			/* Current sequence: constellation * 8 + signal ID, part numbers */
+			int sequenceId;
 			int lastPartNumber;
 			int totalParts;
 			int svsInView;
+
+			/* Position of the first satellite of the current sequence */
+			int sequenceStart;
+
+			/* Sequences completed since the last flush(), bit per sequenceId */
+			long completedSequences;
+
 			int satPos;
-			final int prn[] = new int[NUM_SATELLITES];
-			final float elevation[] = new float[NUM_SATELLITES];
-			final float azimuth[] = new float[NUM_SATELLITES];
-			final float snr[] = new float[NUM_SATELLITES];
+			final int prn[] = new int[MAX_SATELLITES];
+			final float elevation[] = new float[MAX_SATELLITES];
+			final float azimuth[] = new float[MAX_SATELLITES];
+			final float snr[] = new float[MAX_SATELLITES];
+
+			/* Satellites of the current sentence */
+			private final int partPrn[] = new int[4];
+			private final float partElevation[] = new float[4];
+			private final float partAzimuth[] = new float[4];
+			private final float partSnr[] = new float[4];
+
+			private final PrnMask usedInFixMask = new PrnMask();
+			private final PrnMask allMask = new PrnMask();
 
 			public NmeaGsvParser() {
-				reset();
+				allMask.setAll();
+				flush();
 			}
 
+			/**
+			 * Drops the current sequence
+			 */
 			public void reset() {
 				lastPartNumber = totalParts = 0;
-				satPos = 0;
+				satPos = sequenceStart;
 			}
 
-			public void onMessageCompleted() {
+			/**
+			 * Publishes satellites of the completed sequences and starts a new table
+			 */
+			public void flush() {
+				if (completedSequences != 0)
+					onMessageCompleted(sequenceStart);
+				completedSequences = 0;
+				lastPartNumber = totalParts = 0;
+				satPos = sequenceStart = 0;
+			}
+
+			private void onMessageCompleted(int svCount) {
 				synchronized(NmeaFix.this) {
-					int usedInFixMask = 0;
+					usedInFixMask.clear();
 					if (NmeaFix.this.hasGsa) {
-						for (int prn: NmeaFix.this.gsaPrn) {
-							usedInFixMask |= (1<<(prn-1));
+						for (int i=0; i < NmeaFix.this.gsaPrnCount; ++i) {
+							usedInFixMask.set(NmeaFix.this.gsaPrn[i]);
 						}
 					}
 					ReceiverInternalState.this.setNewGpsStatus(
-							svsInView,
+							svCount,
 							prn,
 							snr,
 							elevation,
 							azimuth,
-							/* XXX */ 0xffffffff,
-							/* XXX */ 0xffffffff,
+							/* XXX */ allMask,
+							/* XXX */ allMask,
 							usedInFixMask
 							);
 				}
 			}
 
-			public boolean putNmeaGsvMessage(String msg) {
-				int startPos, curPos;
+			private void addSatellite(int prn, float el, float az, float snr) {
+				int p = 0;
+				while ((p < this.satPos) && (this.prn[p] != prn))
+					p += 1;
+
+				if (p == this.satPos) {
+					if (p == this.prn.length) return;
+					this.satPos += 1;
+					this.snr[p] = snr;
+				}else if (snr > this.snr[p]) {
+					/* Same satellite, another signal */
+					this.snr[p] = snr;
+				}
+				this.prn[p] = prn;
+				this.elevation[p] = el;
+				this.azimuth[p] = az;
+			}
+
+			public boolean putNmeaGsvMessage(final NmeaCursor c, int gnss) {
 				int fieldCount;
 				int curSatCnt;
-				int totalParts, partNumber, svsInView;
+				int totalParts, partNumber, svsInView, signalId, sequenceId;
 
-				startPos = "$GPGSV,".length();
-				fieldCount = nmeaFieldCount(msg, startPos);
+				fieldCount = c.fieldCount();
 				if (fieldCount < 3) {
-					Log.d(TAG, "Invalid field count in $GPGSV message: " + fieldCount + " - " + msg);
+					Log.d(TAG, "Invalid field count in $--GSV message: " + fieldCount + " - " + c);
 					reset();
 					return false;
 				}
 
-				if ((fieldCount - 3) % 4 != 0) {
-					Log.d(TAG, "Invalid field count in $GPGSV message (%4 != 0): " + fieldCount + " - " + msg);
+				/* NMEA 4.10 adds signal ID after the satellites */
+				if ((fieldCount - 3) % 4 > 1) {
+					Log.d(TAG, "Invalid field count in $--GSV message (%4 != 0): " + fieldCount + " - " + c);
 					reset();
 					return false;
 				}
+				curSatCnt = (fieldCount - 3) / 4;
 
 				try {
-					boolean isFirstPart = (this.totalParts == 0);
 					/* Field 1. Total number of parts in message */
-					curPos = msg.indexOf(',', startPos);
-					totalParts = Integer.parseInt(msg.substring(startPos, curPos));
-					if (totalParts <= 0) throw new  NumberFormatException("Wrong total part number"); 
-
-					if (isFirstPart) {
-						this.totalParts = totalParts;
-					}else {
-						if (this.totalParts != totalParts) throw new NumberFormatException("Total part number changed");
-					}
+					c.next();
+					totalParts = c.parseInt();
+					if (totalParts <= 0) throw new  NumberFormatException("Wrong total part number");
 
 					/* Field 2. Part number */
-					curPos = msg.indexOf(',', (startPos = curPos+1));
-					partNumber = Integer.parseInt(msg.substring(startPos, curPos));
-					if (partNumber <= 0) throw new  NumberFormatException("Wrong part number");
-
-					if (++this.lastPartNumber != partNumber) {
-						reset();
-						if (partNumber == 1) {
-							this.totalParts = totalParts;
-							this.lastPartNumber = 1;
-						}else {
-							Log.d(TAG, "Unexpected part number in $GPGSV message - " + msg);
-							return false;
-						}
-					}
+					c.next();
+					partNumber = c.parseInt();
+					if (partNumber <= 0 || partNumber > totalParts) throw new  NumberFormatException("Wrong part number");
 
 					/* Field 3. Total number of SVS in view */
-					curPos = msg.indexOf(',', (startPos = curPos+1));
-					if (curPos < 0) curPos = msg.length();
-					if (curPos-startPos == 0) throw new NumberFormatException("Total number of SVS in view not defined");
-					svsInView = Integer.parseInt(msg.substring(startPos, curPos));
+					c.next();
+					if (c.isEmpty()) throw new NumberFormatException("Total number of SVS in view not defined");
+					svsInView = c.parseInt();
 					if (svsInView < 0) throw new NumberFormatException("Total number of SVS < 0");
-					if (isFirstPart) {
-						this.svsInView = svsInView;
-					}else {
-						if (this.svsInView != svsInView) throw new NumberFormatException("Total number of SVS in view changed");
-					}
 
 					/* Field 4,5,6,7. PRN, elevation, azimuth, snr */
-					curSatCnt = (fieldCount - 3) / 4;
 					for(int i=0; i < curSatCnt; ++i) {
 						int prn,  el, az, snr;
-						curPos = msg.indexOf(',', (startPos = curPos+1));
-						if (curPos == startPos) {
+						c.next();
+						if (c.isEmpty()) {
 							/* PRN not defined. Skip record */
-							curPos = msg.indexOf(',', (startPos = curPos+1));
-							curPos = msg.indexOf(',', (startPos = curPos+1));
-							curPos = msg.indexOf(',', (startPos = curPos+1));
-						}else {
-							/* PRN */
-							prn = Integer.parseInt(msg.substring(startPos, curPos));
-							if (prn <= 0) throw new NumberFormatException("Wrong PRN");
-
-							/* Elevation */
-							curPos = msg.indexOf(',', (startPos = curPos+1));
-							if (curPos == startPos) el = -1;
-							else {
-								el = Integer.parseInt(msg.substring(startPos, curPos));
-								if (el < 0 || el > 90) throw new NumberFormatException("Wrong elevation");
-							}
-
-							/* Azimuth */
-							curPos = msg.indexOf(',', (startPos = curPos+1));
-							if (curPos == startPos) az = -1;
-							else {
-								az = Integer.parseInt(msg.substring(startPos, curPos));
-								if (az < 0 || az > 359) throw new NumberFormatException("Wrong azimuth");
-							}
-
-							/* SNR */
-							curPos = msg.indexOf(',', (startPos = curPos+1));
-							if (curPos < 0) curPos = msg.length();
-							if (curPos == startPos) snr = -1;
-							else {
-								snr = Integer.parseInt(msg.substring(startPos, curPos));
-								if (snr < 0 || snr > 100) throw new NumberFormatException("Wrong SNR");
-							}
-
-
-							int p = 0;
-							while (p < this.satPos) {
-								if (this.prn[p] == prn)
-									break;
-								else
-									p += 1;
-							}
-
-							if (p < this.prn.length) {
-								this.prn[p] = prn;
-								this.elevation[p] = el;
-								this.azimuth[p] = az;
-								this.snr[p] = snr;
-								if (this.satPos == p) this.satPos += 1;
-							}
+							partPrn[i] = 0;
+							c.next();
+							c.next();
+							c.next();
+							continue;
+						}
+
+						/* PRN */
+						prn = c.parseInt();
+						if (prn <= 0) throw new NumberFormatException("Wrong PRN");
+
+						/* Elevation */
+						c.next();
+						if (c.isEmpty()) el = -1;
+						else {
+							el = c.parseInt();
+							if (el < -90 || el > 90) throw new NumberFormatException("Wrong elevation");
+						}
+
+						/* Azimuth */
+						c.next();
+						if (c.isEmpty()) az = -1;
+						else {
+							az = c.parseInt();
+							if (az < 0 || az > 359) throw new NumberFormatException("Wrong azimuth");
 						}
 
-						if (this.lastPartNumber == this.totalParts) {
-							if (this.satPos < this.prn.length) {
-								Arrays.fill(this.prn, satPos, this.prn.length, -1);
-								Arrays.fill(this.elevation, satPos, this.elevation.length, -1);
-								Arrays.fill(this.azimuth, satPos, this.azimuth.length, -1);
-								Arrays.fill(this.snr, satPos, this.snr.length, -1);
-							}
-							onMessageCompleted();
+						/* SNR */
+						c.next();
+						if (c.isEmpty()) snr = -1;
+						else {
+							snr = c.parseInt();
+							if (snr < 0 || snr > 100) throw new NumberFormatException("Wrong SNR");
 						}
+
+						partPrn[i] = toStatusPrn(gnss, prn);
+						partElevation[i] = el;
+						partAzimuth[i] = az;
+						partSnr[i] = snr;
+					}
+
+					/* Field 8 (NMEA 4.10). Signal ID */
+					signalId = 0;
+					if ((fieldCount - 3) % 4 == 1) {
+						c.next();
+						signalId = Math.max(0, Character.digit(c.firstChar(), 16));
 					}
 				}catch(NumberFormatException ie) {
-					Log.d(TAG, "Malformed $GPGSV message: " + ie.getLocalizedMessage() + " - " + msg, ie);
+					Log.d(TAG, "Malformed $--GSV message: " + ie.getLocalizedMessage() + " - " + c, ie);
+					reset();
+					return false;
+				}
+
+				sequenceId = gnss * 8 + (signalId & 0x07);
+				if (partNumber == 1) {
+					/* The same sequence again: next epoch */
+					if ((completedSequences & (1L << sequenceId)) != 0)
+						flush();
+					reset();
+					this.sequenceId = sequenceId;
+					this.totalParts = totalParts;
+					this.svsInView = svsInView;
+				}else if ((this.sequenceId != sequenceId)
+						|| (this.lastPartNumber + 1 != partNumber)
+						|| (this.totalParts != totalParts)
+						|| (this.svsInView != svsInView)) {
+					Log.d(TAG, "Unexpected part number in $--GSV message - " + c);
 					reset();
 					return false;
 				}
+				this.lastPartNumber = partNumber;
+
+				for (int i=0; i < curSatCnt; ++i) {
+					if (partPrn[i] > 0)
+						addSatellite(partPrn[i], partElevation[i], partAzimuth[i], partSnr[i]);
+				}
+
+				if (partNumber == totalParts) {
+					completedSequences |= 1L << sequenceId;
+					sequenceStart = satPos;
+					lastPartNumber = this.totalParts = 0;
+				}
 
 				return true;
 			}
@@ -1168,10 +1492,13 @@ public class ReceiverInternalState {
 			this.mss = mss;
 		}
 
+		/* Max difference of the time fields of the same epoch, fits 20 Hz receivers */
+		private static final int EPOCH_TOLERANCE_MS = 20;
+
 		private boolean isCurrentEpoch(NmeaFixTime t) {
 			if (t.hhmmss != this.hhmmss)
 				return false;
-			if (Math.abs(t.mss - this.mss) > 200)
+			if (Math.abs(t.mss - this.mss) > EPOCH_TOLERANCE_MS)
 				return false;
 			return true;
 		}
@@ -1180,12 +1507,15 @@ public class ReceiverInternalState {
 		public int getMinute() { return (hhmmss / 100) % 100; }
 		public int getSecond() { return hhmmss % 100; }
 
-		public void set(String s) throws NumberFormatException {
+		/**
+		 * Sets time from the current hhmmss.sss field of the cursor
+		 */
+		public void set(final NmeaCursor c) throws NumberFormatException {
 			long dl;
 
-			if (s.length() < 6) throw new NumberFormatException();
+			if (c.length() < 6) throw new NumberFormatException();
 
-			dl = (long)(1000.0 * Double.parseDouble(s));
+			dl = c.parseFixed(3);
 			hhmmss = (int)(dl/1000);
 			mss = (int)(dl % 1000);
 			/* XXX: validation too weak */
@@ -1202,7 +1532,9 @@ public class ReceiverInternalState {
 		final Time internalTime = new Time("UTC");
 		final Location currentLocation = new Location("");
 
-		private int lastUsedInFixMask = 0;
+		private final PrnMask usedInFixMask = new PrnMask();
+		private final PrnMask ephemerisMask = new PrnMask();
+		private final PrnMask almanacMask = new PrnMask();
 
 		private int satPos = 0;
 		private final int prn[] = new int[SIRF_NUM_CHANNELS];
@@ -1281,7 +1613,7 @@ public class ReceiverInternalState {
 			second /= 1000;
 
 			// Field 12. Bitmap of SVS used in solution. (4D)
-			lastUsedInFixMask = get4d(msg, 23);
+			usedInFixMask.setGps(get4d(msg, offset+23));
 			// Field 13. Latitude (4S)
 			lat = (double)get4s(msg, offset+27) * 1.0e-7;
 			// Field 14. Longitude (4S)
@@ -1358,8 +1690,6 @@ public class ReceiverInternalState {
 		private boolean parseMeasuredTrackerDataOut(final byte msg[], int offset, int length) {
 			int payloadSize;
 			int i;
-			int ephemerisMask = 0;
-			int almanacMask = 0;
 
 			payloadSize = get2u(msg, offset+2);
 
@@ -1370,6 +1700,8 @@ public class ReceiverInternalState {
 
 			offset += 12;
 			satPos=0;
+			ephemerisMask.clear();
+			almanacMask.clear();
 			for (i=0; i<SIRF_NUM_CHANNELS; ++i, offset += 15) {
 				float avgCNO = 0;
 				int prn = (int)msg[offset+0] & 0xff;
@@ -1384,9 +1716,9 @@ public class ReceiverInternalState {
 					avgCNO /= 10.0;
 					this.snr[satPos] = avgCNO; 
 					if ((state & 0x80) != 0) {
-						ephemerisMask |= 1<<(prn-1);
+						ephemerisMask.set(prn);
 						/* XXX */
-						almanacMask |= 1<<(prn-1);
+						almanacMask.set(prn);
 					}
 					satPos += 1;
 				}
@@ -1400,7 +1732,7 @@ public class ReceiverInternalState {
 					azimuth,
 					ephemerisMask,
 					almanacMask,
-					lastUsedInFixMask);
+					usedInFixMask);
 
 			return true;
 		}
@@ -1422,7 +1754,354 @@ public class ReceiverInternalState {
 		}
 	} /* class SirfFix */
 
-	/* Transport to the main activity thread */
+	/**
+	 * u-blox UBX protocol decoder: NAV-PVT, NAV-DOP, NAV-SAT and NAV-SVINFO.
+	 * Location and satellite status are decoded into preallocated objects.
+	 */
+	private class UbxFix {
+
+		private static final int UBX_CLASS_NAV = 0x01;
+		private static final int UBX_NAV_DOP = 0x04;
+		private static final int UBX_NAV_PVT = 0x07;
+		private static final int UBX_NAV_SVINFO = 0x30;
+		private static final int UBX_NAV_SAT = 0x35;
+
+		/* Offset of the payload in the message */
+		private static final int PAYLOAD = 6;
+
+		/* NAV-SAT, NAV-SVINFO: 8 bytes header, 12 bytes per satellite */
+		private static final int MAX_SATELLITES = (GpsInputReader.MAX_MESSAGE_SIZE - 8 - 8) / 12;
+
+		/* NAV-PVT fixType */
+		private static final int FIX_TYPE_2D = 2;
+		private static final int FIX_TYPE_3D = 3;
+		private static final int FIX_TYPE_GNSS_DR = 4;
+
+		/* NAV-SAT gnssId */
+		private static final int UBX_GNSS_GPS = 0;
+		private static final int UBX_GNSS_SBAS = 1;
+		private static final int UBX_GNSS_GALILEO = 2;
+		private static final int UBX_GNSS_BEIDOU = 3;
+		private static final int UBX_GNSS_QZSS = 5;
+		private static final int UBX_GNSS_GLONASS = 6;
+
+		final Time internalTime = new Time("UTC");
+		final Location currentLocation = new Location("");
+		private final Bundle extras = new Bundle(5);
+
+		/* Last NAV-DOP */
+		private long dopITow = -1;
+		private float hdop, vdop;
+
+		private int satPos = 0;
+		private final int prn[] = new int[MAX_SATELLITES];
+		private final float elevation[] = new float[MAX_SATELLITES];
+		private final float azimuth[] = new float[MAX_SATELLITES];
+		private final float snr[] = new float[MAX_SATELLITES];
+		private final PrnMask usedInFixMask = new PrnMask();
+		private final PrnMask ephemerisMask = new PrnMask();
+		private final PrnMask almanacMask = new PrnMask();
+
+		/* 1-byte unsigned integer */
+		private int getU1(final byte msg[], int p) {
+			return (int)msg[p] & 0xff;
+		}
+
+		/* 2-bytes unsigned integer, little endian */
+		private int getU2(final byte msg[], int p) {
+			return ((int)msg[p] & 0xff) | (((int)msg[p+1] & 0xff) << 8);
+		}
+
+		/* 2-bytes signed integer, little endian */
+		private int getI2(final byte msg[], int p) {
+			return (short)getU2(msg, p);
+		}
+
+		/* 4-bytes signed integer, little endian */
+		private int getI4(final byte msg[], int p) {
+			return ((int)msg[p] & 0xff)
+					| (((int)msg[p+1] & 0xff) << 8)
+					| (((int)msg[p+2] & 0xff) << 16)
+					| (((int)msg[p+3] & 0xff) << 24);
+		}
+
+		/* 4-bytes unsigned integer, little endian */
+		private long getU4(final byte msg[], int p) {
+			return (long)getI4(msg, p) & 0xffffffffL;
+		}
+
+		/**
+		 * @return Satellite number in GpsStatus or 0 if the GNSS is not supported
+		 */
+		private int toNmeaPrn(int gnssId, int svId) {
+			switch (gnssId) {
+			case UBX_GNSS_GPS:
+			case UBX_GNSS_SBAS:
+				return toStatusPrn(GNSS_GPS, svId);
+			case UBX_GNSS_GALILEO:
+				return toStatusPrn(GNSS_GALILEO, svId);
+			case UBX_GNSS_BEIDOU:
+				return toStatusPrn(GNSS_BEIDOU, svId);
+			case UBX_GNSS_QZSS:
+				return toStatusPrn(GNSS_QZSS, svId);
+			case UBX_GNSS_GLONASS:
+				/* 255 - unknown slot */
+				return svId == 255 ? 0 : toStatusPrn(GNSS_GLONASS, svId);
+			}
+			return 0;
+		}
+
+		private boolean parseNavPvt(final byte msg[], int offset, int payloadSize) {
+			int year, month, day, hour, minute, second;
+			int valid, nano, fixType, flags, numSv;
+			long iTow;
+			double lat, lon, height, hMsl;
+			float hAcc, gSpeed, headMot, pDop;
+			int ms;
+
+			if (payloadSize != 92) {
+				Log.d(TAG, "parseNavPvt() error: payloadSize != 92 -  " + payloadSize);
+				return false;
+			}
+			offset += PAYLOAD;
+
+			/* Field 1. GPS time of week (U4, ms) */
+			iTow = getU4(msg, offset+0);
+			/* Fields 2-7. UTC year, month, day, hour, minute, second */
+			year = getU2(msg, offset+4);
+			month = getU1(msg, offset+6);
+			day = getU1(msg, offset+7);
+			hour = getU1(msg, offset+8);
+			minute = getU1(msg, offset+9);
+			second = getU1(msg, offset+10);
+			/* Field 8. Validity flags (X1): validDate, validTime */
+			valid = getU1(msg, offset+11);
+			/* Field 10. Fraction of second (I4, ns) */
+			nano = getI4(msg, offset+16);
+			/* Field 11. GNSS fix type (U1) */
+			fixType = getU1(msg, offset+20);
+			/* Field 12. Fix status flags (X1): gnssFixOK */
+			flags = getU1(msg, offset+21);
+			/* Field 14. Number of satellites used in solution (U1) */
+			numSv = getU1(msg, offset+23);
+			/* Field 15. Longitude (I4, 1e-7 deg) */
+			lon = (double)getI4(msg, offset+24) * 1.0e-7;
+			/* Field 16. Latitude (I4, 1e-7 deg) */
+			lat = (double)getI4(msg, offset+28) * 1.0e-7;
+			/* Field 17. Height above ellipsoid (I4, mm) */
+			height = (double)getI4(msg, offset+32) * 0.001;
+			/* Field 18. Height above mean sea level (I4, mm) */
+			hMsl = (double)getI4(msg, offset+36) * 0.001;
+			/* Field 19. Horizontal accuracy estimate (U4, mm) */
+			hAcc = (float)getU4(msg, offset+40) * 0.001f;
+			/* Field 25. Ground speed (I4, mm/s) */
+			gSpeed = (float)getI4(msg, offset+60) * 0.001f;
+			/* Field 26. Heading of motion (I4, 1e-5 deg) */
+			headMot = (float)getI4(msg, offset+64) * 1.0e-5f;
+			/* Field 29. Position DOP (U2, 0.01) */
+			pDop = (float)getU2(msg, offset+76) * 0.01f;
+
+			if (((flags & 0x01) == 0)
+					|| ((valid & 0x03) != 0x03)
+					|| ((fixType != FIX_TYPE_2D) && (fixType != FIX_TYPE_3D) && (fixType != FIX_TYPE_GNSS_DR))) {
+				setNewLocation(null);
+				return true;
+			}
+
+			/* nano is in range -1e9..1e9 */
+			ms = nano / 1000000;
+			if (nano < 0) {
+				second -= 1;
+				ms += 1000;
+			}
+
+			internalTime.set(second, minute, hour, day, month-1, year);
+			currentLocation.setTime(internalTime.toMillis(true) + ms);
+			currentLocation.setLatitude(lat);
+			currentLocation.setLongitude(lon);
+			if (fixType != FIX_TYPE_2D) {
+				currentLocation.setAltitude(height);
+			}else {
+				currentLocation.removeAltitude();
+			}
+			currentLocation.setSpeed(gSpeed);
+			currentLocation.setBearing(headMot);
+			currentLocation.setAccuracy(hAcc);
+
+			/* Location.setExtras() makes a copy, so the bundle can be reused */
+			extras.clear();
+			extras.putInt("satellites", numSv);
+			extras.putFloat("PDOP", pDop);
+			if (fixType != FIX_TYPE_2D) {
+				extras.putDouble("geoidheight", height - hMsl);
+			}
+			if (dopITow == iTow) {
+				extras.putFloat("HDOP", hdop);
+				extras.putFloat("VDOP", vdop);
+			}
+			currentLocation.setExtras(extras);
+			setNewLocation(currentLocation);
+
+			return true;
+		}
+
+		private boolean parseNavDop(final byte msg[], int offset, int payloadSize) {
+			if (payloadSize != 18) {
+				Log.d(TAG, "parseNavDop() error: payloadSize != 18 -  " + payloadSize);
+				return false;
+			}
+			offset += PAYLOAD;
+
+			/* Field 1. GPS time of week (U4, ms) */
+			dopITow = getU4(msg, offset+0);
+			/* Field 5. Vertical DOP (U2, 0.01) */
+			vdop = (float)getU2(msg, offset+10) * 0.01f;
+			/* Field 6. Horizontal DOP (U2, 0.01) */
+			hdop = (float)getU2(msg, offset+12) * 0.01f;
+
+			return true;
+		}
+
+		private boolean parseNavSat(final byte msg[], int offset, int payloadSize) {
+			int numSvs;
+
+			if (payloadSize < 8) {
+				Log.d(TAG, "parseNavSat() error: payloadSize < 8 -  " + payloadSize);
+				return false;
+			}
+			offset += PAYLOAD;
+
+			/* Field 3. Number of satellites (U1) */
+			numSvs = getU1(msg, offset+5);
+			if (payloadSize != 8 + 12 * numSvs) {
+				Log.d(TAG, "parseNavSat() error: payloadSize != 8+12*numSvs -  " + payloadSize);
+				return false;
+			}
+
+			offset += 8;
+			satPos = 0;
+			usedInFixMask.clear();
+			ephemerisMask.clear();
+			almanacMask.clear();
+			for (int i=0; i<numSvs; ++i, offset += 12) {
+				final int prn = toNmeaPrn(getU1(msg, offset+0), getU1(msg, offset+1));
+				final int flags;
+				if (prn <= 0) continue;
+
+				this.prn[satPos] = prn;
+				this.snr[satPos] = (float)getU1(msg, offset+2);
+				this.elevation[satPos] = (float)msg[offset+3];
+				this.azimuth[satPos] = (float)getI2(msg, offset+4);
+				flags = getI4(msg, offset+8);
+				if ((flags & 0x08) != 0) usedInFixMask.set(prn);
+				if ((flags & 0x800) != 0) ephemerisMask.set(prn);
+				if ((flags & 0x1000) != 0) almanacMask.set(prn);
+				satPos += 1;
+			}
+
+			ReceiverInternalState.this.setNewGpsStatus(
+					satPos,
+					prn,
+					snr,
+					elevation,
+					azimuth,
+					ephemerisMask,
+					almanacMask,
+					usedInFixMask);
+
+			return true;
+		}
+
+		private boolean parseNavSvinfo(final byte msg[], int offset, int payloadSize) {
+			int numCh;
+
+			if (payloadSize < 8) {
+				Log.d(TAG, "parseNavSvinfo() error: payloadSize < 8 -  " + payloadSize);
+				return false;
+			}
+			offset += PAYLOAD;
+
+			/* Field 2. Number of channels (U1) */
+			numCh = getU1(msg, offset+4);
+			if (payloadSize != 8 + 12 * numCh) {
+				Log.d(TAG, "parseNavSvinfo() error: payloadSize != 8+12*numCh -  " + payloadSize);
+				return false;
+			}
+
+			offset += 8;
+			satPos = 0;
+			usedInFixMask.clear();
+			ephemerisMask.clear();
+			almanacMask.clear();
+			for (int i=0; i<numCh; ++i, offset += 12) {
+				/* GPS 1-32, GLONASS 65-96, SBAS 120-158 */
+				int prn = getU1(msg, offset+1);
+				final int flags = getU1(msg, offset+2);
+				prn = toStatusPrn(GNSS_GPS, prn);
+				if (prn == 0) continue;
+
+				this.prn[satPos] = prn;
+				this.snr[satPos] = (float)getU1(msg, offset+4);
+				this.elevation[satPos] = (float)msg[offset+5];
+				this.azimuth[satPos] = (float)getI2(msg, offset+6);
+				if ((flags & 0x01) != 0) usedInFixMask.set(prn);
+				if ((flags & 0x08) != 0) ephemerisMask.set(prn);
+				if ((flags & 0x20) != 0) almanacMask.set(prn);
+				satPos += 1;
+			}
+
+			ReceiverInternalState.this.setNewGpsStatus(
+					satPos,
+					prn,
+					snr,
+					elevation,
+					azimuth,
+					ephemerisMask,
+					almanacMask,
+					usedInFixMask);
+
+			return true;
+		}
+
+		private boolean putMessage(final byte msg[], int offset, int length) {
+			final int msgClass, msgId, payloadSize;
+
+			msgClass = getU1(msg, offset+2);
+			msgId = getU1(msg, offset+3);
+			payloadSize = getU2(msg, offset+4);
+
+			if (D) assertEquals(length, payloadSize + 8);
+
+			if (msgClass != UBX_CLASS_NAV)
+				return false;
+
+			switch (msgId) {
+			case UBX_NAV_PVT:
+				return parseNavPvt(msg, offset, payloadSize);
+			case UBX_NAV_DOP:
+				return parseNavDop(msg, offset, payloadSize);
+			case UBX_NAV_SAT:
+				return parseNavSat(msg, offset, payloadSize);
+			case UBX_NAV_SVINFO:
+				return parseNavSvinfo(msg, offset, payloadSize);
+			}
+
+			return false;
+		}
+	} /* class UbxFix */
+
+	/**
+	 * Transport to the main activity thread.
+	 *
+	 * Listeners are kept in a copy-on-write array: registration replaces the
+	 * array under the lock of the transporter, dispatch on the parser thread
+	 * iterates the current snapshot without locking.
+	 *
+	 * One Location snapshot is allocated per epoch and shared by all the
+	 * listeners it is delivered to. It is never modified after it is posted,
+	 * so a later fix does not overwrite it. Listeners must not modify the
+	 * received Location.
+	 */
 	private static class LocationListenerTransporter {
 
 		private static final int MESSAGE_PROVIDER_DISABLED = 0;
@@ -1430,100 +2109,118 @@ public class ReceiverInternalState {
 		private static final int MESSAGE_LOCATION_CHANGED = 2;
 		private static final int MESSAGE_STATUS_CHANGED = 3;
 
-		private List<LocationListenerTransport> listeners;
+		private static final LocationListenerTransport[] NO_LISTENERS = new LocationListenerTransport[0];
+
+		private volatile LocationListenerTransport listeners[];
 		private final String receiverAddress;
 
-		public LocationListenerTransporter(String receiverAddress) {
-			this(1, receiverAddress);
-		}
+		/* Distance to the last sent location, used on the dispatching thread only */
+		private final float distance[] = new float[1];
 
-		public LocationListenerTransporter(int size, String receiverAddress) {
-			listeners = new ArrayList<LocationListenerTransport>(size);
+		public LocationListenerTransporter(String receiverAddress) {
+			this.listeners = NO_LISTENERS;
 			this.receiverAddress = receiverAddress;
 		}
 
-		public void requestLocationUpdates(long minTime, float minDistance, final LocationListener listener) {
+		/**
+		 * Registers the listener. The minTime and minDistance of a listener
+		 * already registered are replaced.
+		 */
+		public synchronized void requestLocationUpdates(long minTime, float minDistance, final LocationListener listener) {
+			final LocationListenerTransport old[] = listeners;
+			final LocationListenerTransport res[];
+
 			if (listener == null)
 				throw new IllegalArgumentException();
 
-			synchronized (listeners) {
-				for (LocationListenerTransport h: listeners) {
-					if (h.listener == listener) return;
+			for (int i=0; i<old.length; ++i) {
+				if (old[i].listener == listener) {
+					res = new LocationListenerTransport[old.length];
+					System.arraycopy(old, 0, res, 0, old.length);
+					res[i] = new LocationListenerTransport(listener, minTime, minDistance);
+					listeners = res;
+					return;
 				}
-				listeners.add(new LocationListenerTransport(listener, minTime, minDistance));
 			}
+
+			res = new LocationListenerTransport[old.length + 1];
+			System.arraycopy(old, 0, res, 0, old.length);
+			res[old.length] = new LocationListenerTransport(listener, minTime, minDistance);
+			listeners = res;
 		}
 
-		public void removeUpdates(LocationListener listener) {
+		public synchronized void removeUpdates(LocationListener listener) {
+			final LocationListenerTransport old[] = listeners;
+			final LocationListenerTransport res[];
+
 			if (listener == null) throw new IllegalArgumentException();
 
-			synchronized (listeners) {
-				Iterator<LocationListenerTransport> iter = listeners.iterator();
-				while (iter.hasNext()) {
-					if (iter.next().listener == listener) {
-						iter.remove();
-						break;
-					}
+			for (int i=0; i<old.length; ++i) {
+				if (old[i].listener == listener) {
+					res = new LocationListenerTransport[old.length - 1];
+					System.arraycopy(old, 0, res, 0, i);
+					System.arraycopy(old, i+1, res, i, old.length - i - 1);
+					listeners = res;
+					return;
 				}
 			}
 		}
 
 		public boolean hasListeners() {
-			synchronized(listeners) {
-				return !listeners.isEmpty();
+			return listeners.length != 0;
+		}
+
+		public long getMinTime() {
+			long minTime = 0;
+			for (LocationListenerTransport h: listeners) {
+				if ((h.minTime > 0)
+						&& ((minTime == 0) || (h.minTime < minTime)))
+					minTime = h.minTime;
 			}
+			return minTime;
 		}
 
 		public void onProviderDisabled() {
-			synchronized (	listeners) {
-				for (LocationListenerTransport h: listeners) {
-					h.handler.obtainMessage(MESSAGE_PROVIDER_DISABLED, null).sendToTarget();
-				}
+			for (LocationListenerTransport h: listeners) {
+				h.handler.obtainMessage(MESSAGE_PROVIDER_DISABLED, null).sendToTarget();
 			}
 		}
 
 		public void onProviderEnabled() {
-			synchronized (listeners) {
-				for (LocationListenerTransport h: listeners) {
-					h.handler.obtainMessage(MESSAGE_PROVIDER_ENABLED, null).sendToTarget();
-				}
+			for (LocationListenerTransport h: listeners) {
+				h.handler.obtainMessage(MESSAGE_PROVIDER_ENABLED, null).sendToTarget();
 			}
 		}
 
+		/**
+		 * Posts the location to the listeners whose minTime and minDistance
+		 * have passed. Called with the lock of the location held.
+		 * @param location Current location, copied if it is posted
+		 */
 		public void onLocationChanged(final Location location) {
-			synchronized (listeners) {
-				for (LocationListenerTransport h: listeners) {
-					if (h.minTime != 0) {
-						if (Math.abs(location.getTime() - h.lastSendLocation.getTime()) <= h.minTime)
-							continue;
-					}
+			Location fix = null;
 
-					if (h.minDistance != 0) {
-						if (location.distanceTo(h.lastSendLocation) <= h.minDistance)
-							continue;
-					}
-
-					if ((h.minTime != 0) || (h.minDistance != 0)) {
-						h.lastSendLocation.set(location);
-					}
-
-					h.handler.obtainMessage(MESSAGE_LOCATION_CHANGED, location).sendToTarget();
-				}
+			for (LocationListenerTransport h: listeners) {
+				if (!h.accept(location, distance)) continue;
+				if (fix == null) fix = new Location(location);
+				h.handler.obtainMessage(MESSAGE_LOCATION_CHANGED, fix).sendToTarget();
 			}
 		}
 
 		public void onStatusChanged(int status, final String toast, final String statusMessage) {
+			final LocationListenerTransport snapshot[] = listeners;
 			Bundle b = null;
+
+			if (snapshot.length == 0) return;
+
 			if (toast != null || (statusMessage != null)) {
 				b = new Bundle(2);
 				if (toast != null)  b.putString("toast", toast);
 				if (statusMessage != null) b.putString("message", statusMessage);
 			}
 			// Give the new status to the Handlers
-			synchronized (listeners) {
-				for (LocationListenerTransport h: listeners) {
-					h.handler.obtainMessage(MESSAGE_STATUS_CHANGED, status, -1, b).sendToTarget();
-				}
+			for (LocationListenerTransport h: snapshot) {
+				h.handler.obtainMessage(MESSAGE_STATUS_CHANGED, status, -1, b).sendToTarget();
 			}
 		}
 
@@ -1531,16 +2228,45 @@ public class ReceiverInternalState {
 
 			private final LocationListener listener;
 			private final Handler handler;
-			private long minTime;
-			private float minDistance;
+			private final long minTime;
+			private final float minDistance;
 
-			private Location lastSendLocation = new Location("");
+			/* Last location sent to the listener, used on the dispatching thread only */
+			private boolean hasSent;
+			private long lastSentTime;
+			private double lastSentLatitude;
+			private double lastSentLongitude;
 
 			LocationListenerTransport(LocationListener listener, long minTime, float minDistance) {
 				this.handler = new Handler(this);
 				this.listener = listener;
-				this.minDistance = 0;
-				this.minTime = 0;
+				this.minDistance = minDistance < 0 ? 0 : minDistance;
+				this.minTime = minTime < 0 ? 0 : minTime;
+				this.hasSent = false;
+			}
+
+			/**
+			 * @return true if the location is to be sent to the listener.
+			 * The location is then remembered as the last sent one.
+			 */
+			boolean accept(final Location l, final float distance[]) {
+				if (hasSent) {
+					final long dt = l.getTime() - lastSentTime;
+					/* Fix time going backwards: receiver restarted */
+					if ((dt >= 0) && (dt < minTime))
+						return false;
+					if (minDistance != 0) {
+						Location.distanceBetween(lastSentLatitude, lastSentLongitude,
+								l.getLatitude(), l.getLongitude(), distance);
+						if (distance[0] < minDistance)
+							return false;
+					}
+				}
+				hasSent = true;
+				lastSentTime = l.getTime();
+				lastSentLatitude = l.getLatitude();
+				lastSentLongitude = l.getLongitude();
+				return true;
 			}
 
 			@Override
@@ -1559,8 +2285,7 @@ public class ReceiverInternalState {
 						assertNotNull(listener);
 						assertNotNull(msg.obj);
 					}
-					Location location = new Location((Location) msg.obj);
-					listener.onLocationChanged(location);
+					listener.onLocationChanged((Location) msg.obj);
 					break;
 				case MESSAGE_STATUS_CHANGED:
 					b = (Bundle) msg.obj;
@@ -1574,62 +2299,69 @@ public class ReceiverInternalState {
 		}
 	}
 
+	/**
+	 * Transport of the GpsStatus events to the threads of the listeners.
+	 * Listeners are kept in a copy-on-write array, as in
+	 * LocationListenerTransporter.
+	 */
 	private static class GpsStatusTransporter {
 
 		private static final int MESSAGE_GPS_STATUS_CHANGED = 0;
 
-		private List<GpsStatusTransport> listeners;
+		private static final GpsStatusTransport[] NO_LISTENERS = new GpsStatusTransport[0];
+
+		private volatile GpsStatusTransport listeners[];
 
 		public GpsStatusTransporter() {
-			this(1);
+			this.listeners = NO_LISTENERS;
 		}
 
-		public GpsStatusTransporter(int size) {
-			listeners = new ArrayList<GpsStatusTransport>(size);
-		}
+		public synchronized boolean addGpsStatusListener(GpsStatus.Listener listener) {
+			final GpsStatusTransport old[] = listeners;
+			final GpsStatusTransport res[];
 
-		public boolean addGpsStatusListener(GpsStatus.Listener listener) {
 			if (listener == null)
 				throw new IllegalArgumentException();
 
-			synchronized (listeners) {
-				for (GpsStatusTransport h: listeners) {
-					if (h.listener == listener) {
-						return true;
-					}
+			for (GpsStatusTransport h: old) {
+				if (h.listener == listener) {
+					return true;
 				}
-				listeners.add(new GpsStatusTransport(listener));
 			}
 
+			res = new GpsStatusTransport[old.length + 1];
+			System.arraycopy(old, 0, res, 0, old.length);
+			res[old.length] = new GpsStatusTransport(listener);
+			listeners = res;
+
 			return true;
 		}
 
-		public void removeGpsStatusListener (GpsStatus.Listener listener) {
+		public synchronized void removeGpsStatusListener (GpsStatus.Listener listener) {
+			final GpsStatusTransport old[] = listeners;
+			final GpsStatusTransport res[];
+
 			if (listener == null)
 				throw new IllegalArgumentException();
 
-			synchronized (listeners) {
-				Iterator<GpsStatusTransport> iter = listeners.iterator();
-				while (iter.hasNext()) {
-					if (iter.next().listener == listener) {
-						iter.remove();
-						break;
-					}
+			for (int i=0; i<old.length; ++i) {
+				if (old[i].listener == listener) {
+					res = new GpsStatusTransport[old.length - 1];
+					System.arraycopy(old, 0, res, 0, i);
+					System.arraycopy(old, i+1, res, i, old.length - i - 1);
+					listeners = res;
+					return;
 				}
 			}
 		}
 
 		public boolean hasListeners() {
-			synchronized(listeners) {
-				return !listeners.isEmpty();
-			}
+			return listeners.length != 0;
 		}
 
 		public void onGpsStatusChanged(int event) {
-			synchronized (listeners) {
-				for (GpsStatusTransport h: listeners) {
-					h.handler.obtainMessage(MESSAGE_GPS_STATUS_CHANGED, event, -1).sendToTarget();
-				}
+			for (GpsStatusTransport h: listeners) {
+				h.handler.obtainMessage(MESSAGE_GPS_STATUS_CHANGED, event, -1).sendToTarget();
 			}
 		}
 
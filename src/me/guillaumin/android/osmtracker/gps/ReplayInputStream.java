@@ -0,0 +1,121 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * InputStream over a memory-mapped file. The file is mapped in windows of
+ * MAP_WINDOW_SIZE bytes, so read() copies straight from the page cache into
+ * the caller's buffer, without an intermediate buffer and a syscall per read.
+ *
+ * close() may be called from another thread to stop a reader: subsequent
+ * read() calls return -1.
+ *
+ * @author Alexey Illarionov
+ */
+final class ReplayInputStream extends InputStream {
+
+	/**
+	 * Size of the mapped window
+	 */
+	static final int MAP_WINDOW_SIZE = 4 * 1024 * 1024;
+
+	private final FileInputStream file;
+	private final FileChannel channel;
+	private final long size;
+
+	/* File offset of the end of the current window */
+	private long windowEnd;
+	private MappedByteBuffer window;
+
+	private volatile boolean closed;
+
+	public ReplayInputStream(File f) throws IOException {
+		this.file = new FileInputStream(f);
+		this.channel = file.getChannel();
+		this.size = channel.size();
+		this.windowEnd = 0;
+		this.window = null;
+		this.closed = false;
+	}
+
+	/**
+	 * @return File size
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return Number of bytes read
+	 */
+	public long position() {
+		return window == null ? 0 : windowEnd - window.remaining();
+	}
+
+	/**
+	 * Maps the next window of the file
+	 * @return false on end of file
+	 */
+	private boolean mapNextWindow() throws IOException {
+		final long length;
+
+		if (windowEnd >= size)
+			return false;
+
+		length = Math.min(MAP_WINDOW_SIZE, size - windowEnd);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, windowEnd, length);
+		windowEnd += length;
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (closed) return -1;
+		if ((window == null) || !window.hasRemaining()) {
+			if (!mapNextWindow())
+				return -1;
+		}
+		return window.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int count) throws IOException {
+		final int n;
+
+		if ((offset | count) < 0 || count > buffer.length - offset)
+			throw new IndexOutOfBoundsException();
+		if (closed) return -1;
+		if (count == 0) return 0;
+
+		if ((window == null) || !window.hasRemaining()) {
+			if (!mapNextWindow())
+				return -1;
+		}
+
+		n = Math.min(count, window.remaining());
+		window.get(buffer, offset, n);
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (closed) return 0;
+		return (int)Math.min(Integer.MAX_VALUE, size - position());
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		try {
+			channel.close();
+		}finally {
+			file.close();
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import me.guillaumin.android.osmtracker.db.DataHelper;
+import android.os.Environment;
+
+/**
+ * Replay of the raw data logs recorded by GPSLogger
+ *
+ * @author Alexey Illarionov
+ *
+ */
+public class ReplayInterface extends ReceiverInterface {
+
+	public static final String NAME = ReceiverInterfaces.REPLAY.name();
+
+	ReplayInterface() {
+	}
+
+	@Override
+	public boolean isAvailable() {
+		final String state = Environment.getExternalStorageState();
+		return Environment.MEDIA_MOUNTED.equals(state)
+				|| Environment.MEDIA_MOUNTED_READ_ONLY.equals(state);
+	}
+
+	/**
+	 * @param address Path to the raw data log
+	 */
+	@Override
+	public Receiver getReceiver(String address) {
+		return new ReplayReceiver(address);
+	}
+
+	/**
+	 * @return Raw data logs of all tracks, most recent first
+	 */
+	@Override
+	public List<Receiver> getAllReceivers()
+	{
+		List<Receiver> receivers;
+		List<File> logs;
+		File trackDirs[];
+		File storageDir;
+
+		receivers = new ArrayList<Receiver>();
+		if (!isAvailable()) return receivers;
+
+		/* Parent of the per-track directories */
+		storageDir = DataHelper.getTrackDirectory(0).getParentFile();
+		trackDirs = storageDir.listFiles();
+		if (trackDirs == null) return receivers;
+
+		logs = new ArrayList<File>();
+		for (File dir: trackDirs) {
+			File files[];
+
+			if (!dir.isDirectory()) continue;
+			files = dir.listFiles(RAW_LOG_FILTER);
+			if (files != null) logs.addAll(Arrays.asList(files));
+		}
+
+		/* File names are timestamps */
+		Collections.sort(logs, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				return rhs.getName().compareTo(lhs.getName());
+			}
+		});
+
+		for (File f: logs) {
+			receivers.add(new ReplayReceiver(f.getPath()));
+		}
+
+		return receivers;
+	}
+
+	private static final FileFilter RAW_LOG_FILTER = new FileFilter() {
+		@Override
+		public boolean accept(File f) {
+			return f.isFile() && f.getName().endsWith(DataHelper.EXTENSION_RAW);
+		}
+	};
+
+}
@@ -0,0 +1,359 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import static junit.framework.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationProvider;
+import android.os.SystemClock;
+import android.util.Log;
+import me.guillaumin.android.osmtracker.OSMTracker;
+import me.guillaumin.android.osmtracker.gps.GpsStatus.RawDataListener;
+
+/**
+ * Receiver that replays a raw data log (DataHelper.EXTENSION_RAW), recorded
+ * by GPSLogger, through GpsInputReader and ReceiverInternalState, as if it
+ * was received from the GPS.
+ *
+ * Replay is paced by the time of the parsed fixes: real-time with speed 1,
+ * N times faster with speed N, or as fast as the file can be read with
+ * speed {@link #SPEED_UNTHROTTLED}.
+ *
+ * @author Alexey Illarionov
+ */
+public class ReplayReceiver extends Receiver {
+
+	// Debugging
+	private static final String TAG = ReplayReceiver.class.getSimpleName();
+	private static final boolean D = OSMTracker.DEBUG;
+
+	public static final int STATE_CONNECTING = 1; // opening the log
+	public static final int STATE_CONNECTED = 2;  // replaying the log
+	public static final int STATE_FINISHED = 3;   // end of the log reached
+
+	/**
+	 * Replay as fast as possible
+	 */
+	public static final float SPEED_UNTHROTTLED = 0;
+
+	public static final float SPEED_REALTIME = 1;
+
+	/**
+	 * Gaps between fixes longer than this (receiver switched off, tracking
+	 * paused) are skipped during the paced replay
+	 */
+	static final long MAX_FIX_GAP_MS = 60000;
+
+	private final File mFile;
+	private volatile float mSpeed = SPEED_REALTIME;
+	private ServiceThread mServiceThread;
+	private RawDataTransporter rawDataTransporter = new RawDataTransporter();
+
+	// Receiver internal state
+	ReceiverInternalState internalState;
+
+	protected ReplayReceiver(String path) {
+		this.mFile = new File(path);
+		this.internalState = new ReceiverInternalState(this.getAddress());
+	}
+
+	/**
+	 * @return Name of the log with the name of the track directory,
+	 * e.g. "track12/20120101_120000.raw"
+	 */
+	@Override
+	public String getName() {
+		final File parent = mFile.getParentFile();
+		if (parent == null)
+			return mFile.getName();
+		return parent.getName() + File.separator + mFile.getName();
+	}
+
+	@Override
+	public String getAddress() { return mFile.getPath(); }
+
+	@Override
+	public Location getLastKnownLocation() {
+		return internalState.getLastKnownLocation();
+	}
+
+	@Override
+	public synchronized void requestLocationUpdates(long minTime, float minDistance, final LocationListener listener) {
+		internalState.requestLocationUpdates(minTime, minDistance, listener);
+		activateReplay();
+	}
+
+	@Override
+	public synchronized void removeUpdates(LocationListener listener) {
+		internalState.removeUpdates(listener);
+		deactivateReplay();
+	}
+
+	@Override
+	public boolean addRawDataListener (RawDataListener listener) {
+		rawDataTransporter.addRawDataListener(listener);
+		activateReplay();
+		return true;
+	}
+
+	@Override
+	public void removeRawDataListener(RawDataListener listener) {
+		if (listener == null)
+			throw new IllegalArgumentException();
+
+		rawDataTransporter.removeRawDataListener(listener);
+		deactivateReplay();
+	}
+
+	@Override
+	public boolean addGpsStatusListener(GpsStatus.Listener listener) {
+		internalState.addGpsStatusListener(listener);
+		activateReplay();
+		return true;
+	}
+
+	@Override
+	public void removeGpsStatusListener (GpsStatus.Listener listener) {
+		internalState.removeGpsStatusListener(listener);
+		deactivateReplay();
+	}
+
+	@Override
+	public GpsStatus getGpsStatus(GpsStatus status) {
+		return internalState.getGpsStatus(status);
+	}
+
+	@Override
+	public NmeaEpochStats getNmeaEpochStats(NmeaEpochStats stats) {
+		return internalState.getNmeaEpochStats(stats);
+	}
+
+	/**
+	 * @param speed Replay speed: 1 - real-time, N - N times faster,
+	 * {@link #SPEED_UNTHROTTLED} - no pacing.
+	 */
+	public void setSpeed(float speed) {
+		if (speed < 0 || Float.isNaN(speed))
+			throw new IllegalArgumentException("speed < 0");
+		this.mSpeed = speed;
+	}
+
+	public float getSpeed() {
+		return this.mSpeed;
+	}
+
+	private synchronized void activateReplay() {
+
+		if ( !internalState.hasListeners()
+				&& !rawDataTransporter.hasListeners()) return;
+
+		if (mServiceThread != null)
+			return;
+
+		mServiceThread = new ServiceThread();
+		mServiceThread.setPriority(Thread.MIN_PRIORITY);
+		mServiceThread.start();
+	}
+
+	private synchronized void deactivateReplay() {
+
+		if (internalState.hasListeners()
+				|| rawDataTransporter.hasListeners()
+				) return;
+
+		/* Stop service thread */
+		if (mServiceThread != null) {
+			mServiceThread.cancel();
+			mServiceThread = null;
+		}
+	}
+
+	synchronized void onConnectionStateChanged(int oldState,
+			int newState, final String toast, final String statusMessage) {
+
+		int newStatus = LocationProvider.OUT_OF_SERVICE;
+		switch (newState) {
+		case STATE_CONNECTING:
+		case STATE_FINISHED:
+			newStatus = LocationProvider.OUT_OF_SERVICE;
+			break;
+		case STATE_CONNECTED:
+			newStatus = LocationProvider.TEMPORARILY_UNAVAILABLE;
+			break;
+		default:
+			if (D) fail();
+		}
+		internalState.transportStatusChanged(newStatus, toast, statusMessage);
+	}
+
+	// Thread used to read the log
+	private class ServiceThread extends Thread {
+
+		private final String TAG = ServiceThread.class.getSimpleName();
+
+		private ReplayInputStream mInputStream;
+		private volatile boolean cancelRequested = false;
+
+		public void run() {
+			final ReplayInputStream in;
+			final InputReader reader;
+			final long startTime;
+
+			Log.i(TAG, "BEGIN ServiceThread");
+			setName("ReplayServiceThread");
+
+			setState(STATE_CONNECTING, null, "Opening " + ReplayReceiver.this.getName() + "...");
+			try {
+				in = new ReplayInputStream(mFile);
+			}catch (IOException e) {
+				Log.e(TAG, "open() failed: " + e.getLocalizedMessage());
+				setState(STATE_FINISHED, null, e.getLocalizedMessage());
+				return;
+			}
+
+			synchronized(this) {
+				if (cancelRequested) {
+					closeInputStream(in);
+					return;
+				}
+				mInputStream = in;
+			}
+
+			setState(STATE_CONNECTED, null, "Replaying " + ReplayReceiver.this.getName());
+			reader = new InputReader(in);
+			startTime = SystemClock.elapsedRealtime();
+			try {
+				reader.loop();
+			}catch (IOException e) {
+				if (!cancelRequested)
+					Log.e(TAG, "read() failed: " + e.getLocalizedMessage());
+			}finally {
+				closeInputStream(in);
+			}
+
+			Log.i(TAG, "Replay of " + in.position() + " bytes finished in "
+					+ (SystemClock.elapsedRealtime() - startTime) + " ms");
+			Log.i(TAG, "NMEA epochs: " + internalState.getNmeaEpochStats(null));
+
+			if (!cancelRequested)
+				setState(STATE_FINISHED, "Replay finished", "Replay finished");
+		} /* run() */
+
+		public void cancel() {
+			ReplayInputStream in;
+			synchronized(this) {
+				cancelRequested = true;
+				in = mInputStream;
+				mInputStream = null;
+			}
+			/* Unblock the reader: read() returns -1, pacing sleep is interrupted */
+			if (in != null) closeInputStream(in);
+			this.interrupt();
+		}
+
+		private void closeInputStream(ReplayInputStream in) {
+			try {
+				in.close();
+			}catch (IOException e) {
+				Log.e(TAG, "close() failed", e);
+			}
+		}
+
+		/**
+		 * Set the current state of the replay
+		 * @param state  An integer defining the current state
+		 * @param toast  Optional toast notification
+		 * @param statusMessage  Optional status notification
+		 */
+		private void setState(int state, final String toast, final String statusMessage) {
+			if (D) Log.d(TAG, "setState() " + state);
+			ReplayReceiver.this.onConnectionStateChanged(0, state, toast, statusMessage);
+		}
+
+		private class InputReader extends GpsInputReader {
+
+			/* Fix time and elapsedRealtime() of the replay start or of the last skipped gap */
+			private long baseFixTime;
+			private long baseRealtime;
+
+			/* Time of the last paced fix */
+			private long lastFixTime;
+
+			public InputReader(ReplayInputStream s) {
+				super(s);
+				baseFixTime = baseRealtime = lastFixTime = 0;
+			}
+
+			/**
+			 * Sleeps until the wall clock catches up with the time of the
+			 * last parsed fix, scaled by the replay speed.
+			 */
+			private void pace() {
+				final float speed = mSpeed;
+				final long fixTime;
+				final long now;
+
+				if (speed == SPEED_UNTHROTTLED) return;
+
+				fixTime = internalState.getLastFixTime();
+				if (fixTime == lastFixTime) return;
+
+				now = SystemClock.elapsedRealtime();
+				if ((lastFixTime == 0)
+						|| (fixTime < lastFixTime)
+						|| (fixTime - lastFixTime > MAX_FIX_GAP_MS)) {
+					baseFixTime = fixTime;
+					baseRealtime = now;
+				}else {
+					final long delay = baseRealtime + (long)((fixTime - baseFixTime) / speed) - now;
+					if (delay > 0) {
+						try {
+							Thread.sleep(delay);
+						}catch (InterruptedException ie) {
+							/* cancel(). Keep the flag for GpsInputReader.loop() */
+							Thread.currentThread().interrupt();
+						}
+					}
+				}
+				lastFixTime = fixTime;
+			}
+
+			@Override
+			protected void onRawDataReceived(byte[] buf, int offset, int length) {
+				rawDataTransporter.onRawDataReceived(buf, offset, length);
+			}
+
+			@Override
+			protected void onNmeaReceived(byte[] buf, int offset, int length) {
+				internalState.putNmeaMessage(buf, offset, length);
+				pace();
+			}
+
+			@Override
+			protected void onNmeaReceived(String nmea) {
+				Log.i(TAG, "NMEA: " + nmea.trim());
+			}
+
+			@Override
+			protected void onSirfReceived(byte[] buf, int offset, int length) {
+				internalState.putSirfMessage(buf, offset, length);
+				pace();
+			}
+
+			@Override
+			protected void onUbxReceived(byte[] buf, int offset, int length) {
+				internalState.putUbxMessage(buf, offset, length);
+				pace();
+			}
+
+			@Override
+			protected void onBufferFlushed() {
+				if (D) Log.v(TAG, "onBufferFlushed()");
+			}
+		}
+	}
+
+}
@@ -2,6 +2,7 @@ package me.guillaumin.android.osmtracker.gps;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import me.guillaumin.android.osmtracker.OSMTracker;
 
@@ -30,9 +31,8 @@ public class UsbAcmController extends UsbSerialController {
 	private UsbEndpoint mBulkInEndpoint = null;
 	private UsbEndpoint mBulkOutEndpoint = null;
 
-	private UsbSerialInputStream inputStream = null;
+	private InputStream inputStream = null;
 	private UsbSerialOutputStream outputStream = null;
-	private UsbSerialInterruptListener interruptListener = null;
 
 	private int mBaudrate;
 
@@ -224,10 +224,8 @@ public class UsbAcmController extends UsbSerialController {
 			Log.d(TAG, "setLineCoding() failed");
 		}
 
-		inputStream = new UsbSerialInputStream(mUsbConnection, mBulkInEndpoint);
+		inputStream = openInputStream(mUsbConnection, mBulkInEndpoint, mInterruptEndpoint);
 		outputStream = new UsbSerialOutputStream(mUsbConnection, mBulkOutEndpoint);
-		//interruptListener = new Pl2303InterruptListener(mUsbConnection, mInterruptEndpoint);
-		//interruptListener.start();
 	}
 
 	@Override
@@ -236,11 +234,6 @@ public class UsbAcmController extends UsbSerialController {
 		inputStream = null;
 		outputStream = null;
 
-		if (interruptListener != null) {
-			interruptListener.cancel();
-			interruptListener = null;
-		}
-
 		if (mUsbConnection != null) {
 			if (mCommunicationInterface != null) {
 				mUsbConnection.releaseInterface(mCommunicationInterface);
@@ -265,6 +258,19 @@ public class UsbAcmController extends UsbSerialController {
 		return outputStream;
 	}
 
+	/**
+	 * CDC SERIAL_STATE notification: 8 bytes header, UART state bitmap
+	 */
+	@Override
+	protected void onInterrupt(ByteBuffer data) {
+		final int p = data.position();
+		if ((data.remaining() >= 10)
+				&& ((data.get(p) & 0xff) == 0xa1)
+				&& ((data.get(p+1) & 0xff) == 0x20 /* SERIAL_STATE */)) {
+			onSerialState((data.get(p+8) & 0xff) | ((data.get(p+9) & 0xff) << 8));
+		}
+	}
+
 	public synchronized int getBaudRate() {
 		return mBaudrate;
 	}
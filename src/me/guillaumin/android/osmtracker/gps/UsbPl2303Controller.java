@@ -2,6 +2,7 @@ package me.guillaumin.android.osmtracker.gps;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import android.annotation.TargetApi;
@@ -40,9 +41,8 @@ class UsbPl2303Controller extends UsbSerialController {
 	private int mBaudrate;
 	private boolean isPl2303Hx;
 
-	private UsbSerialInputStream inputStream = null;
+	private InputStream inputStream = null;
 	private UsbSerialOutputStream outputStream = null;
-	private UsbSerialInterruptListener interruptListener = null;
 
 
 	public UsbPl2303Controller(UsbManager usbManager,
@@ -164,10 +164,8 @@ class UsbPl2303Controller extends UsbSerialController {
 			detach();
 			throw new UsbControllerException("pl2303SetLineCoding() failed");
 		}
-		inputStream = new UsbSerialInputStream(mUsbConnection, mBulkInEndpoint);
+		inputStream = openInputStream(mUsbConnection, mBulkInEndpoint, mInterruptEndpoint);
 		outputStream = new UsbSerialOutputStream(mUsbConnection, mBulkOutEndpoint);
-		//interruptListener = new Pl2303InterruptListener(mUsbConnection, mInterruptEndpoint);
-		//interruptListener.start();
 	}
 
 	public synchronized void detach() {
@@ -177,11 +175,6 @@ class UsbPl2303Controller extends UsbSerialController {
 		inputStream = null;
 		outputStream = null;
 
-		if (interruptListener != null) {
-			interruptListener.cancel();
-			interruptListener = null;
-		}
-
 		if (mUsbConnection != null) {
 			if (mUsbInterfaces != null) {
 				for (int i=0; i< mUsbInterfaces.length; ++i) {
@@ -202,6 +195,16 @@ class UsbPl2303Controller extends UsbSerialController {
 		return outputStream;
 	}
 
+	/**
+	 * PL2303 status notification: UART state bitmap at offset 8
+	 */
+	@Override
+	protected void onInterrupt(ByteBuffer data) {
+		if (data.remaining() >= 9) {
+			onSerialState(data.get(data.position() + 8) & 0xff);
+		}
+	}
+
 	public synchronized int getBaudRate() {
 		return mBaudrate;
 	}
@@ -109,6 +109,11 @@ public class UsbReceiver extends Receiver {
 		return internalState.getGpsStatus(status);
 	}
 
+	@Override
+	public NmeaEpochStats getNmeaEpochStats(NmeaEpochStats stats) {
+		return internalState.getNmeaEpochStats(stats);
+	}
+
 	private synchronized void activateUsbService() {
 
 		if ( !internalState.hasListeners()
@@ -134,6 +139,7 @@ public class UsbReceiver extends Receiver {
 		/* Stop service thread */
 		if (mServiceThread != null) {
 			mContext.unregisterReceiver(mUsbStateListener);
+			mServiceThread.restoreDefaults();
 			mServiceThread.cancel();
 			mServiceThread = null;
 		}
@@ -171,6 +177,7 @@ public class UsbReceiver extends Receiver {
 			break;
 		case STATE_CONNECTED:
 			newStatus = LocationProvider.TEMPORARILY_UNAVAILABLE;
+			internalState.startFirstFix();
 			break;
 		default:
 			if (D) fail();
@@ -229,6 +236,8 @@ public class UsbReceiver extends Receiver {
        private UsbSerialController serialController;
        private InputReader mInputReader = null;
        private OutputStream mOutputStream = null;
+       private Configurator mConfigurator = null;
+       private LastLocationStore mLocationStore;
        private PendingIntent mPermissionIntent;
 
        private int mConnectionState;
@@ -238,6 +247,10 @@ public class UsbReceiver extends Receiver {
            Log.i(TAG, "BEGIN ServiceThread");
            setName("UsbServiceThread");
 
+           mLocationStore = new LastLocationStore(UsbReceiver.this.mContext, UsbReceiver.this.getAddress());
+           final Location savedLocation = mLocationStore.load();
+           if (savedLocation != null) internalState.setLastKnownLocation(savedLocation);
+
            mPermissionIntent = PendingIntent.getBroadcast(
 				   UsbReceiver.this.mContext,
 				   0,
@@ -294,6 +307,7 @@ public class UsbReceiver extends Receiver {
         			   }
         		   }
         	   }
+        	   mLocationStore.save(internalState.getLastKnownLocation());
            } /* for(;!cancelRequested;) */
        } /* run() */
 
@@ -349,7 +363,10 @@ public class UsbReceiver extends Receiver {
 
        private synchronized void attachSerialDevice() throws UsbControllerException {
     	   this.serialController.attach();
-  		   this.mInputReader = new InputReader(serialController.getInputStream());
+    	   this.mConfigurator = new Configurator(UsbReceiver.this.mBaudrate);
+    	   this.mConfigurator.setAidingLocation(internalState.getLastKnownLocation());
+    	   this.mConfigurator.setSirfSwitchLeft(mLocationStore.isSirfSwitchLeft());
+  		   this.mInputReader = new InputReader(serialController.getInputStream(), mConfigurator);
 		   this.mOutputStream = serialController.getOutputStream();
        }
 
@@ -387,7 +404,6 @@ public class UsbReceiver extends Receiver {
         * Write to the connected OutStream.
         * @param buffer  The bytes to write
         */
-       @SuppressWarnings("unused")
        public void write(byte[] buffer) {
     	   OutputStream os;
     	   synchronized(this) {
@@ -406,6 +422,17 @@ public class UsbReceiver extends Receiver {
     	   }
        }
 
+       /**
+        * Restores the default output of the receiver before disconnect
+        */
+       public void restoreDefaults() {
+    	   Configurator c;
+    	   synchronized(this) {
+    		   c = mConfigurator;
+    	   }
+    	   if (c != null) c.restoreDefaults();
+       }
+
        public void cancel() {
     	   UsbSerialController s;
     	   synchronized(this) {
@@ -419,6 +446,7 @@ public class UsbReceiver extends Receiver {
 
        public synchronized void setBaudRate(int baudrate) {
     	   if (serialController != null) serialController.setBaudRate(baudrate);
+    	   if (mConfigurator != null) mConfigurator.setBaudRate(baudrate);
        }
 
   	   /**
@@ -449,30 +477,84 @@ public class UsbReceiver extends Receiver {
     		UsbReceiver.this.onConnectionStateChanged(oldState, state, toast, statusMessage);
     	}
 
+    	private class Configurator extends ReceiverConfigurator {
+
+    		   public Configurator(int baudrate) { super(baudrate); }
+
+    		   @Override
+    		   protected void write(byte[] cmd) {
+    			   ServiceThread.this.write(cmd);
+    		   }
+
+    		   @Override
+    		   protected boolean canChangeBaudRate() {
+    			   return true;
+    		   }
+
+    		   /* Does not change the baudrate of the preferences, restored on reconnect */
+    		   @Override
+    		   protected void changeBaudRate(int baudrate) {
+    			   synchronized(ServiceThread.this) {
+    				   if (serialController != null) serialController.setBaudRate(baudrate);
+    			   }
+    		   }
+
+    		   @Override
+    		   protected void saveSirfSwitchLeft(boolean left) {
+    			   mLocationStore.setSirfSwitchLeft(left);
+    		   }
+    	   }
+
     	private class InputReader extends GpsInputReader {
 
-    		   public InputReader(InputStream s) { super(s); }
+    		   private final Configurator configurator;
+
+    		   public InputReader(InputStream s, Configurator c) {
+    			   super(s);
+    			   this.configurator = c;
+    		   }
 
     		   @Override
     		   protected void onRawDataReceived(byte[] buf, int offset, int length) {
     			   rawDataTransporter.onRawDataReceived(buf, offset, length);
     		   }
 
+    		   @Override
+    		   protected void onNmeaReceived(byte[] buf, int offset, int length) {
+    			   configurator.onNmeaReceived(buf, offset, length);
+    			   internalState.putNmeaMessage(buf, offset, length);
+    		   }
+
     		   @Override
     		   protected void onNmeaReceived(String nmea) {
-    			   if (D) Log.i(TAG, "NMEA: " + nmea.trim());
-    			   internalState.putNmeaMessage(nmea);
+    			   Log.i(TAG, "NMEA: " + nmea.trim());
     		   }
 
     		   @Override
     		   protected void onSirfReceived(byte[] buf, int offset, int length) {
+    			   configurator.onSirfReceived();
     			   internalState.putSirfMessage(buf, offset, length);
     		   }
 
+    		   @Override
+    		   protected void onUbxReceived(byte[] buf, int offset, int length) {
+    			   configurator.onUbxReceived(buf, offset, length);
+    			   internalState.putUbxMessage(buf, offset, length);
+    		   }
+
     		   @Override
     		   protected void onBufferFlushed() {
     			   if (D) Log.v(TAG, "onBufferFlushed()");
     		   }
+
+    		   @Override
+    		   protected long onIdle() {
+    			   final long configureTimeout = configurator.configure(
+    					   internalState.hasGpsStatusListeners(), internalState.getMinTime(),
+    					   internalState.hasCurrentLocation());
+    			   mLocationStore.saveIfStale(internalState.getLastFixTime(), internalState);
+    			   return minIdleTimeout(configureTimeout, internalState.checkEpochTimeout());
+    		   }
     	   }
 	}
 
@@ -0,0 +1,221 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import me.guillaumin.android.osmtracker.OSMTracker;
+import android.annotation.TargetApi;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbRequest;
+import android.util.Log;
+
+/**
+ * InputStream of a USB bulk IN endpoint with QUEUED_TRANSFERS UsbRequests
+ * kept queued, so the host controller always has a buffer for the data of
+ * the device and bytes are not dropped while the reader is busy between
+ * the reads. read() copies from the oldest completed transfer and queues
+ * its buffer again once it is consumed.
+ *
+ * Notifications of the interrupt endpoint are reaped by the same
+ * requestWait() and passed to {@link #onInterrupt(ByteBuffer)}, no
+ * separate polling thread is needed.
+ *
+ * Requires API 18: earlier releases do not report the length of the
+ * completed transfer in the position of the buffer.
+ *
+ * Not thread safe: read() is called from one reader thread. To stop a
+ * reader blocked in read(), close the UsbDeviceConnection, read() then
+ * throws IOException.
+ *
+ * @author Alexey Illarionov
+ */
+@TargetApi(18)
+class UsbRequestInputStream extends InputStream {
+
+	// Debugging
+	private static final String TAG = UsbRequestInputStream.class.getSimpleName();
+	private static final boolean D = OSMTracker.DEBUG;
+
+	/**
+	 * Number of bulk IN transfers kept queued. Adapters send the data as
+	 * soon as it is received, so a transfer completes with a short packet
+	 * about every 1 ms frame: the queue covers about QUEUED_TRANSFERS ms
+	 * without reads, plus the FIFO of the adapter.
+	 */
+	static final int QUEUED_TRANSFERS = 32;
+
+	/**
+	 * Size of the transfer in max packets
+	 */
+	static final int TRANSFER_PACKETS = 4;
+
+	private final UsbDeviceConnection connection;
+	private final UsbRequest bulkRequests[];
+	private final UsbRequest interruptRequest;
+	private final ByteBuffer interruptBuffer;
+
+	/* Completed transfer being read, null if none */
+	private UsbRequest current;
+	private ByteBuffer currentBuffer;
+
+	private boolean closed;
+
+	/* Statistics */
+	private long receivedBytes;
+	private long transfers;
+
+	/**
+	 * @param interruptEndpoint Interrupt IN endpoint or null
+	 * @throws IOException UsbRequest initialization failed
+	 */
+	public UsbRequestInputStream(UsbDeviceConnection connection,
+			UsbEndpoint bulkInEndpoint,
+			UsbEndpoint interruptEndpoint) throws IOException {
+		final int transferSize = bulkInEndpoint.getMaxPacketSize() * TRANSFER_PACKETS;
+
+		this.connection = connection;
+		this.bulkRequests = new UsbRequest[QUEUED_TRANSFERS];
+		this.closed = false;
+
+		try {
+			for (int i=0; i<QUEUED_TRANSFERS; ++i) {
+				final ByteBuffer b = ByteBuffer.allocateDirect(transferSize);
+				bulkRequests[i] = new UsbRequest();
+				if (!bulkRequests[i].initialize(connection, bulkInEndpoint))
+					throw new IOException("UsbRequest.initialize() failed");
+				bulkRequests[i].setClientData(b);
+				queue(bulkRequests[i], b);
+			}
+
+			if (interruptEndpoint != null) {
+				interruptBuffer = ByteBuffer.allocateDirect(interruptEndpoint.getMaxPacketSize());
+				interruptRequest = new UsbRequest();
+				if (!interruptRequest.initialize(connection, interruptEndpoint))
+					throw new IOException("UsbRequest.initialize() failed");
+				interruptRequest.setClientData(interruptBuffer);
+				queue(interruptRequest, interruptBuffer);
+			}else {
+				interruptBuffer = null;
+				interruptRequest = null;
+			}
+		}catch (IOException e) {
+			release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Called on the reader thread with the notification received from the
+	 * interrupt endpoint. Data is between the position and the limit of
+	 * the buffer.
+	 */
+	protected void onInterrupt(final ByteBuffer data) {
+	}
+
+	@Override
+	public int read() throws IOException {
+		final byte b[] = new byte[1];
+		if (read(b, 0, 1) < 0) return -1;
+		return b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int count) throws IOException {
+		final int n;
+
+		if (count == 0) return 0;
+
+		if ((currentBuffer == null) || !currentBuffer.hasRemaining()) {
+			if (current != null) {
+				queue(current, currentBuffer);
+				current = null;
+				currentBuffer = null;
+			}
+			waitForData();
+		}
+
+		n = Math.min(count, currentBuffer.remaining());
+		currentBuffer.get(buffer, offset, n);
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return currentBuffer == null ? 0 : currentBuffer.remaining();
+	}
+
+	/**
+	 * Waits for the completed bulk IN transfer with data, handles the
+	 * interrupt notifications meanwhile
+	 */
+	private void waitForData() throws IOException {
+		for (;;) {
+			final UsbRequest r;
+			final ByteBuffer b;
+
+			if (closed) throw new IOException("closed");
+
+			r = connection.requestWait();
+			if (r == null) {
+				/* Connection closed or error */
+				release();
+				throw new IOException("requestWait() failed");
+			}
+
+			b = (ByteBuffer)r.getClientData();
+			b.flip();
+
+			if (r == interruptRequest) {
+				if (D) Log.v(TAG, "Interrupt received: " + b.remaining() + " bytes");
+				if (b.hasRemaining()) onInterrupt(b);
+				queue(r, b);
+			}else if (b.hasRemaining()) {
+				transfers += 1;
+				receivedBytes += b.remaining();
+				current = r;
+				currentBuffer = b;
+				return;
+			}else {
+				/* Zero length packet */
+				queue(r, b);
+			}
+		}
+	}
+
+	private void queue(final UsbRequest r, final ByteBuffer b) throws IOException {
+		b.clear();
+		if (!r.queue(b, b.capacity()))
+			throw new IOException("UsbRequest.queue() failed");
+	}
+
+	/**
+	 * Closes the requests. The requests still queued are released by
+	 * UsbDeviceConnection.close().
+	 */
+	private void release() {
+		if (closed) return;
+		closed = true;
+		if (D) Log.d(TAG, "Received " + receivedBytes + " bytes in " + transfers + " transfers");
+		for (UsbRequest r: bulkRequests) {
+			if (r != null) r.close();
+		}
+		if (interruptRequest != null) interruptRequest.close();
+	}
+
+	/**
+	 * @return Total number of the received bytes
+	 */
+	public long getReceivedBytes() {
+		return receivedBytes;
+	}
+
+	/**
+	 * @return Number of the completed bulk IN transfers with data
+	 */
+	public long getTransfers() {
+		return transfers;
+	}
+
+}
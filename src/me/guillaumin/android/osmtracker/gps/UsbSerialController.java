@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import me.guillaumin.android.osmtracker.OSMTracker;
 
@@ -18,7 +17,7 @@ import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbEndpoint;
 import android.hardware.usb.UsbManager;
-import android.hardware.usb.UsbRequest;
+import android.os.Build;
 import android.util.Log;
 
 @TargetApi(12)
@@ -30,6 +29,20 @@ public abstract class UsbSerialController {
 
     public static final int DEFAULT_BAUDRATE = 4800;
 
+    /* UsbRequest reports the length of the completed transfer since API 18 */
+    private static final int USB_REQUEST_MIN_SDK = 18;
+
+    /* UART state bitmap of CDC SERIAL_STATE and PL2303 status notifications */
+    protected static final int SERIAL_STATE_DCD = 0x01;
+    protected static final int SERIAL_STATE_DSR = 0x02;
+    protected static final int SERIAL_STATE_BREAK = 0x04;
+    protected static final int SERIAL_STATE_RING = 0x08;
+    protected static final int SERIAL_STATE_FRAMING = 0x10;
+    protected static final int SERIAL_STATE_PARITY = 0x20;
+    protected static final int SERIAL_STATE_OVERRUN = 0x40;
+    private static final int SERIAL_STATE_ERRORS = SERIAL_STATE_FRAMING
+    		| SERIAL_STATE_PARITY | SERIAL_STATE_OVERRUN;
+
     protected UsbManager mUsbManager;
 	protected UsbDevice mUsbDevice;
 
@@ -123,53 +136,50 @@ public abstract class UsbSerialController {
 		public UsbControllerException(String msg) { super(msg); }
 	}
 
-	protected static class UsbSerialInterruptListener extends Thread {
-
-		private boolean cancelRequested = false;
-		private UsbDeviceConnection mUsbConnection;
-		private ByteBuffer buffer;
-		private UsbRequest request;
-
-		public UsbSerialInterruptListener(UsbDeviceConnection connection, UsbEndpoint endpoint) {
-			this.mUsbConnection = connection;
-			this.setName("PL2303InterruptListener");
-			buffer =  ByteBuffer.allocate(endpoint.getMaxPacketSize());
-			request = new UsbRequest();
-			request.initialize(connection, endpoint);
-		}
-
-		@Override
-		public void run() {
-			mainloop: while(!cancelRequested()) {
-				request.queue(buffer, buffer.capacity());
-				if (mUsbConnection.requestWait() == request) {
-					if (D) Log.v(TAG, "Interrupt received: " + buffer.toString() +
-							Arrays.toString(buffer.array()));
-					synchronized(this) {
-						try {
-							this.wait(100);
-						} catch (InterruptedException e) {
-							break mainloop;
-						}
-						if (cancelRequested) break mainloop;
+	/**
+	 * Opens the input stream of the bulk IN endpoint: queued UsbRequests
+	 * since API 18, synchronous bulkTransfer() on the earlier releases.
+	 * Notifications of the interrupt endpoint are passed to
+	 * {@link #onInterrupt(ByteBuffer)} by the UsbRequest stream only.
+	 * @param interruptEndpoint Interrupt IN endpoint or null
+	 */
+	protected InputStream openInputStream(UsbDeviceConnection connection,
+			UsbEndpoint bulkInEndpoint,
+			UsbEndpoint interruptEndpoint) throws UsbControllerException {
+		if (Build.VERSION.SDK_INT >= USB_REQUEST_MIN_SDK) {
+			try {
+				return new UsbRequestInputStream(connection, bulkInEndpoint, interruptEndpoint) {
+					@Override
+					protected void onInterrupt(ByteBuffer data) {
+						UsbSerialController.this.onInterrupt(data);
 					}
-				}else {
-					Log.e(TAG, "requestWait failed, exiting");
-					break mainloop;
-				}
+				};
+			}catch (IOException e) {
+				throw new UsbControllerException(e.getLocalizedMessage());
 			}
-			Log.d(TAG, "Pl2303InterruptListener thread stopped");
 		}
+		return new UsbSerialInputStream(connection, bulkInEndpoint);
+	}
 
-		public synchronized void cancel() {
-			cancelRequested = true;
-			this.notify();
-		}
+	/**
+	 * Called on the input reader thread with the notification of the
+	 * interrupt endpoint
+	 */
+	protected void onInterrupt(ByteBuffer data) {
+	}
 
-		private synchronized boolean cancelRequested() {
-			return this.cancelRequested;
+	/**
+	 * Logs the line errors of the UART state bitmap. Overruns are the bytes
+	 * dropped by the device.
+	 */
+	protected void onSerialState(int state) {
+		if (D) Log.v(TAG, "Serial state: 0x" + Integer.toHexString(state));
+		if ((state & SERIAL_STATE_ERRORS) != 0) {
+			Log.w(TAG, "Line errors:"
+					+ ((state & SERIAL_STATE_OVERRUN) != 0 ? " overrun" : "")
+					+ ((state & SERIAL_STATE_FRAMING) != 0 ? " framing" : "")
+					+ ((state & SERIAL_STATE_PARITY) != 0 ? " parity" : ""));
 		}
-
 	}
 
 	protected class UsbSerialInputStream extends InputStream {
@@ -0,0 +1,277 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.guillaumin.android.osmtracker.R;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import me.guillaumin.android.osmtracker.exception.ExportTrackException;
+import android.app.AlertDialog;
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.DialogInterface.OnCancelListener;
+import android.content.DialogInterface.OnClickListener;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.widget.Toast;
+
+/**
+ * Exports all the tracks to the external storage, as {@link ExportToStorageTask},
+ * several tracks at once on a pool of {@link #getWorkerCount()} threads.
+ * Tracks exported after their last trackpoint and way point are skipped.
+ *
+ * One dialog shows the progress of all the exports, in points, and can
+ * cancel them. The errors are reported per track at the end.
+ */
+public class ExportAllTracksTask extends AsyncTask<Void, Integer, List<String>> {
+
+	private static final String TAG = ExportAllTracksTask.class.getSimpleName();
+
+	/**
+	 * Exports writing to the storage at once. Each export already reads
+	 * the database and writes its file on two threads (see {@link ExportPipeline}),
+	 * and the external storage is one device: more writers only compete for it.
+	 */
+	private static final int MAX_STORAGE_WRITERS = 2;
+
+	private static final String[] PROJECTION = {
+		Schema.COL_ID,
+		Schema.COL_START_DATE,
+		Schema.COL_EXPORT_DATE,
+		Schema.COL_MODIFIED_TIMESTAMP,
+		Schema.COL_TRACKPOINT_COUNT,
+		Schema.COL_WAYPOINT_COUNT
+	};
+
+	private final Context context;
+
+	/**
+	 * Dialog to display while exporting
+	 */
+	private ProgressDialog dialog;
+
+	/**
+	 * Points written by all the exports
+	 */
+	private final AtomicInteger pointsWritten = new AtomicInteger();
+
+	/**
+	 * Tracks exported, successfully or not
+	 */
+	private final AtomicInteger tracksDone = new AtomicInteger();
+
+	/**
+	 * Tracks to export and tracks up to date, as published by {@link #doInBackground(Void...)}
+	 */
+	private int trackCount = 0;
+	private int skippedCount = 0;
+
+	public ExportAllTracksTask(Context context) {
+		this.context = context;
+	}
+
+	/**
+	 * @return Number of tracks exported at once, up to one per core
+	 */
+	static int getWorkerCount() {
+		return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_STORAGE_WRITERS));
+	}
+
+	@Override
+	protected void onPreExecute() {
+		// Display dialog
+		dialog = new ProgressDialog(context);
+		dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+		dialog.setIndeterminate(true);
+		dialog.setTitle(R.string.menu_exportall);
+		dialog.setMessage(context.getResources().getString(R.string.trackmgr_exportall_progress)
+				.replace("{0}", "0").replace("{1}", "0"));
+		dialog.setCancelable(true);
+		dialog.setOnCancelListener(new OnCancelListener() {
+			@Override
+			public void onCancel(DialogInterface dialog) {
+				cancel(true);
+			}
+		});
+		dialog.show();
+	}
+
+	@Override
+	protected List<String> doInBackground(Void... params) {
+		List<Long> trackIds = new ArrayList<Long>();
+		int pointCount = 0;
+		int skippedCount = 0;
+		Cursor c = context.getContentResolver().query(TrackContentProvider.CONTENT_URI_TRACK,
+				PROJECTION, null, null, Schema.COL_START_DATE + " desc");
+		try {
+			while (c.moveToNext()) {
+				// Last modification: last trackpoint or way point (notes, pictures,
+				// voice recordings), or creation of a track without any
+				long modified = c.isNull(3) ? c.getLong(1) : c.getLong(3);
+				if (!c.isNull(2) && c.getLong(2) >= modified) {
+					skippedCount++;
+				} else {
+					trackIds.add(c.getLong(0));
+					pointCount += c.getInt(4) + c.getInt(5);
+				}
+			}
+		} finally {
+			c.close();
+		}
+		int trackCount = trackIds.size();
+		Log.v(TAG, "Exporting " + trackCount + " tracks, " + skippedCount + " up to date");
+		publishProgress(0, 0, pointCount, trackCount, skippedCount);
+
+		List<String> errors = new ArrayList<String>();
+		if (trackCount == 0) {
+			return errors;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(getWorkerCount(), trackCount), new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "gpx-export-" + threadCount.incrementAndGet());
+			}
+		});
+		List<Future<File>> exports = new ArrayList<Future<File>>(trackCount);
+		for (long trackId : trackIds) {
+			exports.add(executor.submit(new TrackExport(trackId)));
+		}
+		executor.shutdown();
+
+		try {
+			for (int i = 0; i < trackCount && !isCancelled(); i++) {
+				try {
+					exports.get(i).get();
+				} catch (ExecutionException ee) {
+					Throwable cause = ee.getCause();
+					Log.w(TAG, "Unable to export track #" + trackIds.get(i), cause);
+					errors.add(context.getResources().getString(R.string.trackmgr_exportall_track_error)
+							.replace("{0}", Long.toString(trackIds.get(i)))
+							.replace("{1}", String.valueOf(cause.getMessage())));
+				}
+			}
+		} catch (InterruptedException ie) {
+			// Cancelled
+		}
+		if (isCancelled()) {
+			// Stops the running exports, the queued ones are dropped
+			executor.shutdownNow();
+		}
+		return errors;
+	}
+
+	/**
+	 * @param values Points written and tracks exported, then the total
+	 * number of points, of tracks to export and of tracks up to date
+	 * when they are known
+	 */
+	@Override
+	protected void onProgressUpdate(Integer... values) {
+		if (values.length > 2) {
+			dialog.setIndeterminate(false);
+			dialog.setMax(values[2]);
+			trackCount = values[3];
+			skippedCount = values[4];
+		}
+		// Exports publish their progress concurrently
+		dialog.setProgress(Math.max(dialog.getProgress(), values[0]));
+		dialog.setMessage(context.getResources().getString(R.string.trackmgr_exportall_progress)
+				.replace("{0}", Integer.toString(values[1]))
+				.replace("{1}", Integer.toString(trackCount)));
+	}
+
+	@Override
+	protected void onPostExecute(List<String> errors) {
+		dialog.dismiss();
+		if (!errors.isEmpty()) {
+			StringBuilder message = new StringBuilder();
+			for (String error : errors) {
+				if (message.length() > 0) {
+					message.append('\n');
+				}
+				message.append(error);
+			}
+			new AlertDialog.Builder(context)
+				.setTitle(android.R.string.dialog_alert_title)
+				.setMessage(message)
+				.setIcon(android.R.drawable.ic_dialog_alert)
+				.setNeutralButton(android.R.string.ok, new OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						dialog.dismiss();
+					}
+				})
+				.show();
+		} else {
+			Toast.makeText(context, context.getResources().getString(R.string.trackmgr_exportall_done)
+					.replace("{0}", Integer.toString(trackCount))
+					.replace("{1}", Integer.toString(skippedCount)), Toast.LENGTH_LONG).show();
+		}
+	}
+
+	@Override
+	protected void onCancelled() {
+		dialog.dismiss();
+		Toast.makeText(context, R.string.trackmgr_exportall_cancelled, Toast.LENGTH_SHORT).show();
+	}
+
+	/**
+	 * Export of one track, on a thread of the pool. Its progress is added
+	 * to the progress of all the exports.
+	 */
+	private final class TrackExport implements Callable<File> {
+		private final long trackId;
+
+		private int written = 0;
+
+		TrackExport(long trackId) {
+			this.trackId = trackId;
+		}
+
+		@Override
+		public File call() throws ExportTrackException {
+			ExportTrackTask task = new ExportToStorageTask(context, trackId) {
+				@Override
+				void reportProgress(Integer... values) {
+					int delta = values[0] - written;
+					written = values[0];
+					ExportAllTracksTask.this.publishProgress(pointsWritten.addAndGet(delta), tracksDone.get());
+				}
+			};
+			boolean completed = false;
+			try {
+				File trackFile = task.export();
+				completed = true;
+				// Force rescan of GPX file
+				context.sendBroadcast(new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, Uri.fromFile(trackFile)));
+				return trackFile;
+			} finally {
+				if (!completed) {
+					// Don't leave a partial file, whatever the error
+					File trackFile = task.getTrackFile();
+					if (trackFile != null && trackFile.exists()) {
+						trackFile.delete();
+					}
+				}
+				publishProgress(pointsWritten.get(), tracksDone.incrementAndGet());
+			}
+		}
+	}
+
+}
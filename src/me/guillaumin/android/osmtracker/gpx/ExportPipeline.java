@@ -0,0 +1,303 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import me.guillaumin.android.osmtracker.db.TrackContentProvider;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Writes the trackpoints of a track in two stages: the calling thread
+ * pages the points out of the database in blocks of {@link #BLOCK_SIZE}
+ * points, in primitive arrays, while a writer thread serializes the
+ * previous blocks. Up to {@link #QUEUE_SIZE} blocks are read ahead of the
+ * writer, the blocks are recycled.
+ *
+ * The points are written by time, as ExportTrackTask queried them.
+ */
+public final class ExportPipeline {
+
+	/**
+	 * Points per query and per block
+	 */
+	public static final int BLOCK_SIZE = 1000;
+
+	/**
+	 * Blocks read and not written yet
+	 */
+	public static final int QUEUE_SIZE = 4;
+
+	/**
+	 * Blocks in the queue, one read and one written
+	 */
+	private static final int MAX_BLOCKS = QUEUE_SIZE + 2;
+
+	private static final String[] PROJECTION = {
+		Schema.COL_ID,
+		Schema.COL_LATITUDE,
+		Schema.COL_LONGITUDE,
+		Schema.COL_ELEVATION,
+		Schema.COL_ACCURACY,
+		Schema.COL_TIMESTAMP
+	};
+
+	/**
+	 * Points after the last one of the previous page, in the sort order:
+	 * a range of the time index of the track. Arguments: timestamp,
+	 * timestamp and id of the last point.
+	 */
+	public static final String SELECTION_AFTER = Schema.COL_TIMESTAMP + " >= ? AND ("
+			+ Schema.COL_TIMESTAMP + " > ? OR " + Schema.COL_ID + " > ?)";
+
+	/**
+	 * Order of the points, and of the pages
+	 */
+	public static final String SORT_ORDER = Schema.COL_TIMESTAMP + " asc, " + Schema.COL_ID + " asc";
+
+	/**
+	 * Receives the progress of the writer, on the writer thread
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param count Number of trackpoints written so far
+		 */
+		void onTrackPointsWritten(int count);
+	}
+
+	/**
+	 * Trackpoints in primitive arrays, missing elevations and accuracies are NaN
+	 */
+	private static final class Block {
+		final double[] latitudes;
+		final double[] longitudes;
+		final double[] elevations;
+		final double[] accuracies;
+		final long[] timestamps;
+		int size;
+
+		Block(int capacity) {
+			latitudes = new double[capacity];
+			longitudes = new double[capacity];
+			elevations = new double[capacity];
+			accuracies = new double[capacity];
+			timestamps = new long[capacity];
+		}
+	}
+
+	/**
+	 * Marks the end of the points in the queue
+	 */
+	private static final Block END = new Block(0);
+
+	private final ContentResolver contentResolver;
+
+	private final Uri pageUri;
+
+	/**
+	 * Blocks read, in order
+	 */
+	private final BlockingQueue<Block> readBlocks = new ArrayBlockingQueue<Block>(QUEUE_SIZE);
+
+	/**
+	 * Blocks written, to be read again
+	 */
+	private final BlockingQueue<Block> freeBlocks = new ArrayBlockingQueue<Block>(MAX_BLOCKS);
+
+	private int blocks = 0;
+
+	public ExportPipeline(ContentResolver contentResolver, long trackId) {
+		this.contentResolver = contentResolver;
+		this.pageUri = pageUri(trackId);
+	}
+
+	/**
+	 * @return Uri of a page of the trackpoints of a track, queried in the
+	 * {@link #SORT_ORDER}, after the previous page with {@link #SELECTION_AFTER}
+	 */
+	public static Uri pageUri(long trackId) {
+		return TrackContentProvider.limitUri(TrackContentProvider.trackPointsUri(trackId), BLOCK_SIZE);
+	}
+
+	/**
+	 * Writes the trackpoints of the track. Reads them on the calling
+	 * thread, serializes them on a writer thread: the writer must not be
+	 * used by another thread until the method returns. The writer thread
+	 * is done when the method returns or throws, interrupted or not.
+	 * @param writer Writer of the GPX, inside a track
+	 * @param listener Progress listener, or null
+	 * @return Number of trackpoints written
+	 * @throws IOException Error of the writer, or interruption of the calling thread
+	 */
+	public int writeTrackPoints(GpxWriter writer, ProgressListener listener) throws IOException {
+		WriterThread writerThread = new WriterThread(writer, listener);
+		boolean allRead = false;
+		boolean interrupted = false;
+
+		writerThread.start();
+		try {
+			read(writerThread);
+			allRead = true;
+		} catch (InterruptedException ie) {
+			interrupted = true;
+		} finally {
+			if (! allRead) {
+				writerThread.cancelled = true;
+			}
+			interrupted |= finish(writerThread);
+		}
+
+		if (interrupted) {
+			throw new InterruptedIOException("Export interrupted");
+		} else if (writerThread.failure instanceof IOException) {
+			throw (IOException) writerThread.failure;
+		} else if (writerThread.failure != null) {
+			throw (RuntimeException) writerThread.failure;
+		}
+		return writerThread.count;
+	}
+
+	/**
+	 * Queues the end and waits for the writer thread, even if the calling
+	 * thread is interrupted: then the writer skips the remaining blocks.
+	 * @return true if the calling thread was interrupted
+	 */
+	private boolean finish(WriterThread writerThread) {
+		boolean interrupted = false;
+		boolean ended = false;
+		for (;;) {
+			try {
+				if (! ended) {
+					readBlocks.put(END);
+					ended = true;
+				}
+				writerThread.join();
+				return interrupted;
+			} catch (InterruptedException ie) {
+				interrupted = true;
+				writerThread.cancelled = true;
+			}
+		}
+	}
+
+	/**
+	 * Pages the points into blocks and queues them, until the writer fails
+	 */
+	private void read(WriterThread writerThread) throws InterruptedException {
+		String lastTimestamp = null;
+		String lastId = null;
+
+		while (writerThread.failure == null) {
+			Block b = freeBlocks.poll();
+			if (b == null) {
+				if (blocks < MAX_BLOCKS) {
+					b = new Block(BLOCK_SIZE);
+					blocks++;
+				} else {
+					b = freeBlocks.take();
+				}
+			}
+
+			Cursor c = (lastId == null)
+					? contentResolver.query(pageUri, PROJECTION, null, null, SORT_ORDER)
+					: contentResolver.query(pageUri, PROJECTION, SELECTION_AFTER,
+							new String[] {lastTimestamp, lastTimestamp, lastId}, SORT_ORDER);
+			try {
+				b.size = 0;
+				while (c.moveToNext()) {
+					int i = b.size++;
+					b.latitudes[i] = c.getDouble(1);
+					b.longitudes[i] = c.getDouble(2);
+					b.elevations[i] = c.isNull(3) ? Double.NaN : c.getDouble(3);
+					b.accuracies[i] = c.isNull(4) ? Double.NaN : c.getDouble(4);
+					b.timestamps[i] = c.getLong(5);
+				}
+				if (b.size > 0) {
+					c.moveToLast();
+					lastId = Long.toString(c.getLong(0));
+					lastTimestamp = Long.toString(c.getLong(5));
+				}
+			} finally {
+				c.close();
+			}
+
+			if (b.size == 0) {
+				freeBlocks.put(b);
+				break;
+			}
+			readBlocks.put(b);
+			if (b.size < BLOCK_SIZE) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Serializes the queued blocks until the end. After a failure or when
+	 * cancelled, keeps recycling the blocks without writing them so the
+	 * reader never waits.
+	 */
+	private final class WriterThread extends Thread {
+		private final GpxWriter writer;
+		private final ProgressListener listener;
+
+		volatile Exception failure;
+
+		/**
+		 * Set when the reading stops early: the blocks left are not written
+		 */
+		volatile boolean cancelled = false;
+
+		int count = 0;
+
+		WriterThread(GpxWriter writer, ProgressListener listener) {
+			super("gpx-writer");
+			this.writer = writer;
+			this.listener = listener;
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (;;) {
+					Block b = readBlocks.take();
+					if (b == END) {
+						break;
+					}
+					if (failure == null && ! cancelled) {
+						try {
+							write(b);
+						} catch (IOException ioe) {
+							failure = ioe;
+						} catch (RuntimeException re) {
+							failure = re;
+						}
+					}
+					freeBlocks.put(b);
+				}
+			} catch (InterruptedException ie) {
+				// Not interrupted: the reader always queues the end
+			}
+		}
+
+		private void write(Block b) throws IOException {
+			for (int i = 0; i < b.size; i++) {
+				double elevation = b.elevations[i];
+				double accuracy = b.accuracies[i];
+				writer.writeTrackPoint(b.latitudes[i], b.longitudes[i],
+						! Double.isNaN(elevation), elevation,
+						b.timestamps[i],
+						! Double.isNaN(accuracy), accuracy);
+			}
+			count += b.size;
+			if (listener != null) {
+				listener.onTrackPointsWritten(count);
+			}
+		}
+	}
+
+}
@@ -27,6 +27,29 @@ public class ExportToStorageTask extends ExportTrackTask {
 
 	@Override
 	protected File getExportDirectory(Date startDate) throws ExportTrackException {
+		boolean directoryPerTrack = PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+				OSMTracker.Preferences.KEY_OUTPUT_DIR_PER_TRACK, 
+				OSMTracker.Preferences.VAL_OUTPUT_GPX_OUTPUT_DIR_PER_TRACK);
+				
+		String perTrackDirectory = "";
+		if (directoryPerTrack) {
+			// If the user wants a directory per track, then create a name for the destination directory
+			// based on the start date of the track
+			perTrackDirectory = File.separator + DataHelper.formatFilename(startDate.getTime());
+		}
+		
+		return getStorageDirectory(context, perTrackDirectory);
+	}
+
+	/**
+	 * Gets the directory defined by the user on the external storage, or
+	 * one of its sub directories, and creates it if needed
+	 * @param context {@link Context} to get the preferences and resources
+	 * @param subDirectory Path of the sub directory starting with a separator, or ""
+	 * @return The directory
+	 * @throws ExportTrackException If the directory cannot be created
+	 */
+	static File getStorageDirectory(Context context, String subDirectory) throws ExportTrackException {
 		File sdRoot = Environment.getExternalStorageDirectory();
 		
 		// The location that the user has specified gpx files 
@@ -35,22 +58,13 @@ public class ExportToStorageTask extends ExportTrackTask {
 		String userGPXExportDirectoryName = prefs.getString(
 				OSMTracker.Preferences.KEY_STORAGE_DIR,	OSMTracker.Preferences.VAL_STORAGE_DIR);
 
-		boolean directoryPerTrack = prefs.getBoolean(OSMTracker.Preferences.KEY_OUTPUT_DIR_PER_TRACK, 
-				OSMTracker.Preferences.VAL_OUTPUT_GPX_OUTPUT_DIR_PER_TRACK);
-				
 		// Create the path to the directory to which we will be writing
 		// Trim the directory name, as additional spaces at the end will 
 		// not allow the directory to be created if required
 		String exportDirectoryPath = userGPXExportDirectoryName.trim();
-		String perTrackDirectory = "";
-		if (directoryPerTrack) {
-			// If the user wants a directory per track, then create a name for the destination directory
-			// based on the start date of the track
-			perTrackDirectory = File.separator + DataHelper.FILENAME_FORMATTER.format(startDate);
-		}
 		
 		// Create a file based on the path we've generated above
-		File trackGPXExportDirectory = new File(sdRoot + exportDirectoryPath + perTrackDirectory);
+		File trackGPXExportDirectory = new File(sdRoot + exportDirectoryPath + subDirectory);
 
 		// Create track directory if needed
 		if (! trackGPXExportDirectory.exists()) {
@@ -63,7 +77,7 @@ public class ExportToStorageTask extends ExportTrackTask {
 				// Specific hack for Google Nexus  S(See issue #168)
 				if (android.os.Build.MODEL.equals(OSMTracker.Devices.NEXUS_S)) {
 					// exportDirectoryPath always starts with "/"
-					trackGPXExportDirectory = new File(exportDirectoryPath + perTrackDirectory);
+					trackGPXExportDirectory = new File(exportDirectoryPath + subDirectory);
 					trackGPXExportDirectory.mkdirs();
 				}
 			}
@@ -0,0 +1,276 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import me.guillaumin.android.osmtracker.R;
+import me.guillaumin.android.osmtracker.db.DataHelper;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import me.guillaumin.android.osmtracker.exception.ExportTrackException;
+import android.app.AlertDialog;
+import android.app.ProgressDialog;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.DialogInterface.OnCancelListener;
+import android.content.DialogInterface.OnClickListener;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.widget.Toast;
+
+/**
+ * Exports tracks and their media into one ZIP file, in the directory
+ * defined by the user on the external storage. Each track is exported as
+ * {@link ExportToStorageTask} would, into a directory of the archive
+ * named after its start date and id (see {@link TrackArchive}).
+ *
+ * The archive is written as the tracks are read, without temporary files.
+ * The export date of the tracks is only set once the archive is complete.
+ */
+public class ExportToZipTask extends AsyncTask<Void, Integer, Boolean> {
+
+	private static final String TAG = ExportToZipTask.class.getSimpleName();
+
+	/**
+	 * Extension of the archive
+	 */
+	private static final String EXTENSION_ZIP = ".zip";
+
+	/**
+	 * Size of the buffer of the archive
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Context context;
+
+	/**
+	 * Tracks to export, in the order of the archive
+	 */
+	private final long[] trackIds;
+
+	/**
+	 * Dialog to display while exporting
+	 */
+	private ProgressDialog dialog;
+
+	/**
+	 * Archive being written
+	 */
+	private File zipFile;
+
+	private TrackArchive archive;
+
+	/**
+	 * Points written by the previous tracks
+	 */
+	private int pointsWritten = 0;
+
+	/**
+	 * Message in case of an error
+	 */
+	private String errorMsg = null;
+
+	public ExportToZipTask(Context context, long... trackIds) {
+		this.context = context;
+		this.trackIds = trackIds;
+	}
+
+	@Override
+	protected void onPreExecute() {
+		// Display dialog
+		dialog = new ProgressDialog(context);
+		dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+		dialog.setIndeterminate(true);
+		dialog.setTitle(R.string.menu_exportzip);
+		dialog.setCancelable(true);
+		dialog.setOnCancelListener(new OnCancelListener() {
+			@Override
+			public void onCancel(DialogInterface dialog) {
+				cancel(true);
+			}
+		});
+		dialog.show();
+	}
+
+	@Override
+	protected Boolean doInBackground(Void... params) {
+		int pointCount = 0;
+		for (long trackId : trackIds) {
+			Cursor c = context.getContentResolver().query(
+					ContentUris.withAppendedId(TrackContentProvider.CONTENT_URI_TRACK, trackId),
+					new String[] {Schema.COL_TRACKPOINT_COUNT, Schema.COL_WAYPOINT_COUNT}, null, null, null);
+			try {
+				if (c.moveToFirst()) {
+					pointCount += c.getInt(0) + c.getInt(1);
+				}
+			} finally {
+				c.close();
+			}
+		}
+		publishProgress(0, pointCount);
+
+		try {
+			zipFile = new File(ExportToStorageTask.getStorageDirectory(context, ""),
+					"osmtracker_" + DataHelper.formatFilename(System.currentTimeMillis()) + EXTENSION_ZIP);
+			Log.v(TAG, "Exporting " + trackIds.length + " tracks to " + zipFile);
+			List<Long> exported = new ArrayList<Long>(trackIds.length);
+			archive = new TrackArchive(new BufferedOutputStream(new FileOutputStream(zipFile), BUFFER_SIZE));
+			try {
+				for (int i = 0; i < trackIds.length && !isCancelled(); i++) {
+					TrackEntries entries = new TrackEntries(trackIds[i]);
+					entries.export();
+					exported.add(trackIds[i]);
+					pointsWritten += entries.written;
+				}
+			} finally {
+				archive.close();
+			}
+
+			if (!isCancelled()) {
+				// The archive is complete and closed: its tracks are exported
+				long exportTime = System.currentTimeMillis();
+				for (long trackId : exported) {
+					DataHelper.setTrackExportDate(trackId, exportTime, context.getContentResolver());
+				}
+			}
+		} catch (ExportTrackException ete) {
+			errorMsg = ete.getMessage();
+		} catch (IOException ioe) {
+			errorMsg = ioe.getMessage();
+		}
+
+		if (errorMsg != null || isCancelled()) {
+			// Don't leave a partial archive
+			if (zipFile != null) {
+				zipFile.delete();
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param values Number of points written, and the total number of
+	 * points when it is known
+	 */
+	@Override
+	protected void onProgressUpdate(Integer... values) {
+		if (values.length > 1) {
+			dialog.setIndeterminate(false);
+			dialog.setMax(values[1]);
+		}
+		dialog.setProgress(values[0]);
+	}
+
+	@Override
+	protected void onPostExecute(Boolean success) {
+		dialog.dismiss();
+		if (!success) {
+			new AlertDialog.Builder(context)
+				.setTitle(android.R.string.dialog_alert_title)
+				.setMessage(context.getResources()
+						.getString(R.string.trackmgr_export_error)
+						.replace("{0}", String.valueOf(errorMsg)))
+				.setIcon(android.R.drawable.ic_dialog_alert)
+				.setNeutralButton(android.R.string.ok, new OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						dialog.dismiss();
+					}
+				})
+				.show();
+		} else {
+			// Force rescan of the archive
+			context.sendBroadcast(new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, Uri.fromFile(zipFile)));
+			Toast.makeText(context, context.getResources().getString(R.string.trackmgr_exportzip_done)
+					.replace("{0}", zipFile.getAbsolutePath()), Toast.LENGTH_LONG).show();
+		}
+	}
+
+	@Override
+	protected void onCancelled() {
+		dialog.dismiss();
+		Toast.makeText(context, R.string.trackmgr_exportall_cancelled, Toast.LENGTH_SHORT).show();
+	}
+
+	/**
+	 * Export of one track into its directory of the archive
+	 */
+	private final class TrackEntries extends ExportTrackTask {
+
+		/**
+		 * Points of the track written
+		 */
+		int written = 0;
+
+		TrackEntries(long trackId) {
+			super(ExportToZipTask.this.context, trackId);
+		}
+
+		/**
+		 * @return Directory of the track in the archive, not on the storage.
+		 * Named after its id too, as tracks can start in the same second.
+		 */
+		@Override
+		protected File getExportDirectory(Date startDate) throws ExportTrackException {
+			return new File(DataHelper.formatFilename(startDate.getTime()) + "_" + trackId);
+		}
+
+		@Override
+		protected boolean exportMediaFiles() {
+			return true;
+		}
+
+		/**
+		 * @return false, set by {@link ExportToZipTask#doInBackground(Void...)}
+		 * once the archive is complete
+		 */
+		@Override
+		protected boolean updateExportDate() {
+			return false;
+		}
+
+		/**
+		 * @return false, the archive deflates the GPX files
+		 */
+		@Override
+		protected boolean compressGpx() {
+			return false;
+		}
+
+		@Override
+		protected OutputStream openTrackFile(File target) throws IOException {
+			return archive.openEntry(target);
+		}
+
+		@Override
+		protected void copyWaypointFiles(File gpxOutputDirectory) throws IOException {
+			File trackDir = DataHelper.getTrackDirectory(trackId);
+			File[] files = trackDir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					if (file.isFile()) {
+						archive.addFile(gpxOutputDirectory, file);
+					}
+				}
+			}
+		}
+
+		@Override
+		void reportProgress(Integer... values) {
+			written = values[0];
+			ExportToZipTask.this.publishProgress(pointsWritten + written);
+		}
+	}
+
+}
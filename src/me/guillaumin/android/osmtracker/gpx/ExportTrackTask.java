@@ -1,15 +1,12 @@
 package me.guillaumin.android.osmtracker.gpx;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Writer;
-import java.net.URLEncoder;
-import java.text.SimpleDateFormat;
+import java.io.OutputStream;
 import java.util.Date;
-import java.util.TimeZone;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 import me.guillaumin.android.osmtracker.OSMTracker;
 import me.guillaumin.android.osmtracker.R;
@@ -53,28 +50,10 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 		Pattern.compile("[ '\"/\\\\*?~@<>]");  // must double-escape \
 
 	/**
-	 * XML header.
+	 * Size of the output buffer of the compressed GPX files
 	 */
-	private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>";
-	
-	private static final String CDATA_START = "<![CDATA[";
-	private static final String CDATA_END = "]]>";
-	
-	/**
-	 * GPX opening tag
-	 */
-	private static final String TAG_GPX = "<gpx"
-		+ " xmlns=\"http://www.topografix.com/GPX/1/1\""
-		+ " version=\"1.1\""
-		+ " creator=\"OSMTracker for Android™ - http://osmtracker-android.googlecode.com/\""
-		+ " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
-		+ " xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1 http://www.topografix.com/GPX/1/1/gpx.xsd \">";
-	
-	/**
-	 * Date format for a point timestamp.
-	 */
-	private SimpleDateFormat pointDateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-	
+	private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
 	/**
 	 * {@link Context} to get resources
 	 */
@@ -119,10 +98,19 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 	 */
 	protected abstract boolean updateExportDate();
 
+	/**
+	 * Whereas to gzip the GPX file or not, as in the preferences by default
+	 * @return
+	 */
+	protected boolean compressGpx() {
+		return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+				OSMTracker.Preferences.KEY_OUTPUT_COMPRESS,
+				OSMTracker.Preferences.VAL_OUTPUT_COMPRESS);
+	}
+
 	public ExportTrackTask(Context context, long trackId) {
 		this.context = context;
 		this.trackId = trackId;
-		pointDateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
 	}
 	
 	@Override
@@ -149,13 +137,46 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 		}
 		return true;
 	}
+
+	/**
+	 * Exports the track on the calling thread, without the dialog of the
+	 * task. Used by {@link ExportAllTracksTask} to run several exports at
+	 * once, its progress is reported to {@link #reportProgress(Integer...)}.
+	 * @return The exported GPX file
+	 * @throws ExportTrackException
+	 */
+	File export() throws ExportTrackException {
+		exportTrackAsGpx(trackId);
+		return trackFile;
+	}
+
+	/**
+	 * @return The GPX file of the export, null before the export starts writing it
+	 */
+	File getTrackFile() {
+		return trackFile;
+	}
+
+	/**
+	 * Reports the progress of the export, as {@link #onProgressUpdate(Integer...)}
+	 * values. Published to the dialog of the task by default.
+	 */
+	void reportProgress(Integer... values) {
+		publishProgress(values);
+	}
 	
-	/*
+	/**
+	 * @param values Number of points written, and the total number of
+	 * points when it is known
+	 */
 	@Override
 	protected void onProgressUpdate(Integer... values) {
+		if (values.length > 1) {
+			dialog.setIndeterminate(false);
+			dialog.setMax(values[1]);
+		}
 		dialog.setProgress(values[0]);
 	}
-	*/
 
 	@Override
 	protected void onPostExecute(Boolean success) {
@@ -197,10 +218,13 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 			// to avoid overwriting another track on one hand or needlessly creating additional
 			// directories to avoid overwriting.
 			Date startDate = new Date();
+			int pointCount = 0;
 			if (null != c && 1 <= c.getCount()) {
 				c.moveToFirst();
 				long startDateInMilliseconds = c.getLong(c.getColumnIndex(Schema.COL_START_DATE));
 				startDate.setTime(startDateInMilliseconds);
+				pointCount = c.getInt(c.getColumnIndex(Schema.COL_TRACKPOINT_COUNT))
+						+ c.getInt(c.getColumnIndex(Schema.COL_WAYPOINT_COUNT));
 			}
 
 			File trackGPXExportDirectory = getExportDirectory(startDate);
@@ -210,18 +234,14 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 			trackFile = new File(trackGPXExportDirectory, filenameBase);
 
 			
-			Cursor cTrackPoints = cr.query(TrackContentProvider.trackPointsUri(trackId), null,
-					null, null, Schema.COL_TIMESTAMP + " asc");
 			Cursor cWayPoints = cr.query(TrackContentProvider.waypointsUri(trackId), null, null,
 					null, Schema.COL_TIMESTAMP + " asc");
 
-			if (null != cTrackPoints && null != cWayPoints) {
-				dialog.setIndeterminate(false);
-				dialog.setProgress(0);
-				dialog.setMax(cTrackPoints.getCount() + cWayPoints.getCount());
+			if (null != cWayPoints) {
+				reportProgress(0, pointCount);
 				
 				try {
-					writeGpxFile(cTrackPoints, cWayPoints, trackFile);
+					writeGpx(cWayPoints, openTrackFile(trackFile));
 					if (exportMediaFiles()) {
 						copyWaypointFiles(trackGPXExportDirectory);
 					}
@@ -231,7 +251,6 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 				} catch (IOException ioe) {
 					throw new ExportTrackException(ioe.getMessage());
 				} finally {
-					cTrackPoints.close();
 					cWayPoints.close();
 				}
 			}
@@ -241,13 +260,44 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 	}
 
 	/**
-	 * Writes the GPX file
-	 * @param cTrackPoints Cursor to track points.
+	 * Writes the GPX of the track to a stream, without the media files and
+	 * outside of the export directory. Used by {@link TrackGpxBody} to upload
+	 * the track as it is read. The progress is reported to
+	 * {@link #reportProgress(Integer...)}, starting with the number of points.
+	 * @param out Stream to write to, closed once the GPX is written
+	 * @throws IOException
+	 */
+	void writeGpx(OutputStream out) throws IOException {
+		ContentResolver cr = context.getContentResolver();
+		int pointCount = 0;
+		Cursor c = cr.query(ContentUris.withAppendedId(TrackContentProvider.CONTENT_URI_TRACK, trackId),
+				new String[] {Schema.COL_TRACKPOINT_COUNT, Schema.COL_WAYPOINT_COUNT}, null, null, null);
+		try {
+			if (c.moveToFirst()) {
+				pointCount = c.getInt(0) + c.getInt(1);
+			}
+		} finally {
+			c.close();
+		}
+		reportProgress(0, pointCount);
+
+		Cursor cWayPoints = cr.query(TrackContentProvider.waypointsUri(trackId), null, null,
+				null, Schema.COL_TIMESTAMP + " asc");
+		try {
+			writeGpx(cWayPoints, out);
+		} finally {
+			cWayPoints.close();
+		}
+	}
+
+	/**
+	 * Writes the GPX, compressed if {@link #compressGpx()}. The track
+	 * points are read and written by an {@link ExportPipeline}.
 	 * @param cWayPoints Cursor to way points.
-	 * @param target Target GPX file
+	 * @param out Stream to the target, closed once the GPX is written
 	 * @throws IOException 
 	 */
-	private void writeGpxFile(Cursor cTrackPoints, Cursor cWayPoints, File target) throws IOException {
+	private void writeGpx(Cursor cWayPoints, OutputStream out) throws IOException {
 		
 		String accuracyOutput = PreferenceManager.getDefaultSharedPreferences(context).getString(
 				OSMTracker.Preferences.KEY_OUTPUT_ACCURACY,
@@ -256,87 +306,52 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 				OSMTracker.Preferences.KEY_OUTPUT_GPX_HDOP_APPROXIMATION,
 				OSMTracker.Preferences.VAL_OUTPUT_GPX_HDOP_APPROXIMATION);
 		
-		Writer writer = null;
+		if (compressGpx()) {
+			out = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+		}
+		GpxWriter writer = new GpxWriter(out, fillHDOP, accuracyOutput,
+				context.getResources().getString(R.string.various_unit_meters),
+				context.getResources().getString(R.string.various_accuracy));
 		try {
-			writer = new BufferedWriter(new FileWriter(target));
-			
-			writer.write(XML_HEADER + "\n");
-			writer.write(TAG_GPX + "\n");
+			writer.writeHeader();
 			
-			writeWayPoints(writer, cWayPoints, accuracyOutput, fillHDOP);
-			writeTrackPoints(context.getResources().getString(R.string.gpx_track_name), writer, cTrackPoints, fillHDOP);
+			final int wayPointCount = writeWayPoints(writer, cWayPoints);
+			String hdopComment = fillHDOP ? context.getResources().getString(R.string.gpx_hdop_approximation_cmt) : null;
+			writer.beginTrack(context.getResources().getString(R.string.gpx_track_name), hdopComment);
+			new ExportPipeline(context.getContentResolver(), trackId).writeTrackPoints(writer,
+					new ExportPipeline.ProgressListener() {
+						@Override
+						public void onTrackPointsWritten(int count) {
+							reportProgress(wayPointCount + count);
+						}
+					});
+			writer.endTrack();
 			
-			writer.write("</gpx>");
+			writer.writeFooter();
 		} finally {
-			if (writer != null) {
-				writer.close();
-			}
+			writer.close();
 		}
 	}
 	
 	/**
-	 * Iterates on track points and write them.
-	 * @param trackName Name of the track (metadata).
-	 * @param fw Writer to the target file.
-	 * @param c Cursor to track points.
-	 * @param fillHDOP Indicates whether fill <hdop> tag with approximation from location accuracy.
+	 * Opens the GPX file of the track for writing. The stream is closed
+	 * once the file is written.
+	 * @param target Target GPX file, in the {@link #getExportDirectory(Date)}
+	 * @return Stream to the file
 	 * @throws IOException
 	 */
-	private void writeTrackPoints(String trackName, Writer fw, Cursor c, boolean fillHDOP) throws IOException {
-		// Update dialog every 1%
-		int dialogUpdateThreshold = c.getCount() / 100;
-		if (dialogUpdateThreshold == 0) {
-			dialogUpdateThreshold++;
-		}
-		
-		fw.write("\t" + "<trk>" + "\n");
-		fw.write("\t\t" + "<name>" + CDATA_START + trackName + CDATA_END + "</name>" + "\n");
-		if (fillHDOP) {
-			fw.write("\t\t" + "<cmt>"
-					+ CDATA_START
-					+ context.getResources().getString(R.string.gpx_hdop_approximation_cmt)
-					+ CDATA_END
-					+ "</cmt>" + "\n");
-		}
-		
-		fw.write("\t\t" + "<trkseg>" + "\n");
-		
-		int i=0;
-		for(c.moveToFirst(); !c.isAfterLast(); c.moveToNext(),i++) {
-			StringBuffer out = new StringBuffer();
-			out.append("\t\t\t" + "<trkpt lat=\"" 
-					+ c.getDouble(c.getColumnIndex(Schema.COL_LATITUDE)) + "\" "
-					+ "lon=\"" + c.getDouble(c.getColumnIndex(Schema.COL_LONGITUDE)) + "\">" + "\n");
-	        if (! c.isNull(c.getColumnIndex(Schema.COL_ELEVATION))) {
-	        	out.append("\t\t\t\t" + "<ele>" + c.getDouble(c.getColumnIndex(Schema.COL_ELEVATION)) + "</ele>" + "\n");
-	        }
-	        out.append("\t\t\t\t" + "<time>" + pointDateFormatter.format(new Date(c.getLong(c.getColumnIndex(Schema.COL_TIMESTAMP)))) + "</time>" + "\n");
-	        
-	        if(fillHDOP && ! c.isNull(c.getColumnIndex(Schema.COL_ACCURACY))) {
-				out.append("\t\t\t\t" + "<hdop>" + (c.getDouble(c.getColumnIndex(Schema.COL_ACCURACY)) / OSMTracker.HDOP_APPROXIMATION_FACTOR) + "</hdop>" + "\n");
-	        }
-	       
-	        out.append("\t\t\t" + "</trkpt>" + "\n");
-	        fw.write(out.toString());
-
-	        if (i % dialogUpdateThreshold == 0) {
-		    	dialog.incrementProgressBy(dialogUpdateThreshold);
-		    }
-		}
-		
-		fw.write("\t\t" + "</trkseg>" + "\n");
-		fw.write("\t" + "</trk>" + "\n");
+	protected OutputStream openTrackFile(File target) throws IOException {
+		return new FileOutputStream(target);
 	}
-	
+
 	/**
 	 * Iterates on way points and write them.
-	 * @param fw Writer to the target file.
+	 * @param writer Writer to the target file.
 	 * @param c Cursor to way points.
-	 * @param accuracyInfo Constant describing how to include (or not) accuracy info for way points.
-	 * @param fillHDOP Indicates whether fill <hdop> tag with approximation from location accuracy.
+	 * @return Number of way points written
 	 * @throws IOException
 	 */
-	private void writeWayPoints(Writer fw, Cursor c, String accuracyInfo, boolean fillHDOP) throws IOException {
+	private int writeWayPoints(GpxWriter writer, Cursor c) throws IOException {
 
 		// Update dialog every 1%
 		int dialogUpdateThreshold = c.getCount() / 100;
@@ -344,78 +359,23 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 			dialogUpdateThreshold++;
 		}
 		
-		// Label for meter unit
-		String meterUnit = context.getResources().getString(R.string.various_unit_meters);
-		// Word "accuracy"
-		String accuracy = context.getResources().getString(R.string.various_accuracy);
-		
 		int i=0;
 		for(c.moveToFirst(); !c.isAfterLast(); c.moveToNext(), i++) {
-			StringBuffer out = new StringBuffer();
-			out.append("\t" + "<wpt lat=\""
-					+ c.getDouble(c.getColumnIndex(Schema.COL_LATITUDE)) + "\" "
-					+ "lon=\"" + c.getDouble(c.getColumnIndex(Schema.COL_LONGITUDE)) + "\">" + "\n");
-	        if (! c.isNull(c.getColumnIndex(Schema.COL_ELEVATION))) {
-	        	out.append("\t\t" + "<ele>" + c.getDouble(c.getColumnIndex(Schema.COL_ELEVATION)) + "</ele>" + "\n");
-	        }
-		    out.append("\t\t" + "<time>" + pointDateFormatter.format(new Date(c.getLong(c.getColumnIndex(Schema.COL_TIMESTAMP)))) + "</time>" + "\n");
-
-		    String name = c.getString(c.getColumnIndex(Schema.COL_NAME));
-		    
-		    if (! OSMTracker.Preferences.VAL_OUTPUT_ACCURACY_NONE.equals(accuracyInfo) && ! c.isNull(c.getColumnIndex(Schema.COL_ACCURACY))) {
-		    	// Outputs accuracy info for way point
-		    	if (OSMTracker.Preferences.VAL_OUTPUT_ACCURACY_WPT_NAME.equals(accuracyInfo)) {
-		    		// Output accuracy with name
-		    		out.append("\t\t" + "<name>"
-		    				+ CDATA_START 
-		    				+ name
-		    				+ " (" + c.getDouble(c.getColumnIndex(Schema.COL_ACCURACY)) + meterUnit + ")"
-		    				+ CDATA_END
-		    				+ "</name>" + "\n");
-		    	} else if (OSMTracker.Preferences.VAL_OUTPUT_ACCURACY_WPT_CMT.equals(accuracyInfo)) {
-		    		// Output accuracy in separate tag
-		    		out.append("\t\t" + "<name>" + CDATA_START + name + CDATA_END + "</name>" + "\n");
-		    		out.append("\t\t" + "<cmt>" + CDATA_START + accuracy + ": " + c.getDouble(c.getColumnIndex(Schema.COL_ACCURACY)) + meterUnit + CDATA_END + "</cmt>" + "\n");
-		    	} else {
-		    		// Unknown value for accuracy info, shouldn't occur but who knows ?
-		    		// See issue #68. Output at least the name just in case.
-		    		out.append("\t\t" + "<name>" + CDATA_START + name + CDATA_END + "</name>" + "\n");
-		    	}
-		    } else {
-		    	// No accuracy info requested, or available
-		    	out.append("\t\t" + "<name>" + CDATA_START + name + CDATA_END + "</name>" + "\n");
-		    }
-			
-		    String link = c.getString(c.getColumnIndex(Schema.COL_LINK));
-		    if (link != null) {
-		       	out.append("\t\t" + "<link href=\"" + URLEncoder.encode(link) + "\">" + "\n");
-		       	out.append("\t\t\t" + "<text>" + link +"</text>\n");
-		       	out.append("\t\t" + "</link>" + "\n");
-		    }
-		    
-		    if (! c.isNull(c.getColumnIndex(Schema.COL_NBSATELLITES))) {
-		    	out.append("\t\t" + "<sat>" + c.getInt(c.getColumnIndex(Schema.COL_NBSATELLITES)) + "</sat>" + "\n");
-		    }
+			writer.writeWayPoint(c);
 
-		    if(fillHDOP && ! c.isNull(c.getColumnIndex(Schema.COL_ACCURACY))) {
-				out.append("\t\t" + "<hdop>" + (c.getDouble(c.getColumnIndex(Schema.COL_ACCURACY)) / OSMTracker.HDOP_APPROXIMATION_FACTOR) + "</hdop>" + "\n");
-	        }
-		    
-		    out.append("\t" + "</wpt>" + "\n");
-		    
-		    fw.write(out.toString());
-
-		    if (i % dialogUpdateThreshold == 0) {
-		    	dialog.incrementProgressBy(dialogUpdateThreshold);
-		    }
+			if (i % dialogUpdateThreshold == 0) {
+				reportProgress(i + 1);
+			}
 		}
+		return i;
 	}
 
 	/**
 	 * Copy all files from the OSMTracker external storage location to gpxOutputDirectory
 	 * @param gpxOutputDirectory The directory to which the track is being exported
+	 * @throws IOException
 	 */
-	private void copyWaypointFiles(File gpxOutputDirectory) {
+	protected void copyWaypointFiles(File gpxOutputDirectory) throws IOException {
 		// Get the new location where files related to these waypoints are/should be stored		
 		File trackDir = DataHelper.getTrackDirectory(trackId);
 
@@ -431,6 +391,7 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 	 * The filename will have the start date, and/or the track name if available.
 	 * If no name is available, fall back to the start date and time.
 	 * Track name characters will be sanitized using {@link #FILENAME_CHARS_BLACKLIST_PATTERN}.
+	 * The extension is .gpx, or .gpx.gz if {@link #compressGpx()}.
 	 * @param c  Track info: {@link Schema#COL_NAME}, {@link Schema#COL_START_DATE}
 	 * @return  GPX filename, not including the path
 	 */
@@ -456,9 +417,12 @@ public abstract class ExportTrackTask  extends AsyncTask<Void, Integer, Boolean>
 			final long startDate = c.getLong(c.getColumnIndex(Schema.COL_START_DATE));
 			if (filenameBase.length() > 0)
 				filenameBase.append('_');
-			filenameBase.append(DataHelper.FILENAME_FORMATTER.format(new Date(startDate)));
+			filenameBase.append(DataHelper.formatFilename(startDate));
 		}
 		filenameBase.append(DataHelper.EXTENSION_GPX);
+		if (compressGpx()) {
+			filenameBase.append(DataHelper.EXTENSION_GZ);
+		}
 		return filenameBase.toString();
 	}
 
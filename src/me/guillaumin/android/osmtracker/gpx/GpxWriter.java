@@ -0,0 +1,516 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+import me.guillaumin.android.osmtracker.OSMTracker;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import android.database.Cursor;
+
+/**
+ * Streaming GPX 1.1 serializer. Writes UTF-8 into one reusable buffer,
+ * flushed to the stream when full: no String is built per point.
+ * Coordinates are written with {@link #COORDINATE_DECIMALS} decimals,
+ * timestamps as ISO-8601 UTC seconds from a date cached per day.
+ *
+ * The column indexes of a cursor are resolved on the first row written
+ * from it. Not thread safe.
+ */
+public final class GpxWriter implements Closeable {
+
+	/**
+	 * Decimals of the latitudes and longitudes, 1.1 cm at the equator,
+	 * the precision of the OpenStreetMap database
+	 */
+	public static final int COORDINATE_DECIMALS = 7;
+
+	/**
+	 * Decimals of the elevations and of the HDOPs
+	 */
+	public static final int VALUE_DECIMALS = 2;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L,
+		10000000L, 100000000L, 1000000000L};
+
+	private static final long SECONDS_PER_DAY = 86400;
+
+	private static final byte[] XML_HEADER = utf8("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+
+	private static final byte[] TAG_GPX = utf8("<gpx"
+		+ " xmlns=\"http://www.topografix.com/GPX/1/1\""
+		+ " version=\"1.1\""
+		+ " creator=\"OSMTracker for Android™ - http://osmtracker-android.googlecode.com/\""
+		+ " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+		+ " xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1 http://www.topografix.com/GPX/1/1/gpx.xsd \">\n");
+
+	private static final byte[] TAG_GPX_END = utf8("</gpx>");
+
+	private static final byte[] CDATA_START = utf8("<![CDATA[");
+	private static final byte[] CDATA_END = utf8("]]>");
+
+	private static final byte[] TRK_START = utf8("\t<trk>\n\t\t<name>");
+	private static final byte[] TRK_CMT = utf8("</name>\n\t\t<cmt>");
+	private static final byte[] TRK_CMT_END = utf8("</cmt>\n");
+	private static final byte[] TRK_NAME_END = utf8("</name>\n");
+	private static final byte[] TRKSEG_START = utf8("\t\t<trkseg>\n");
+	private static final byte[] TRK_END = utf8("\t\t</trkseg>\n\t</trk>\n");
+
+	private static final byte[] TRKPT_LAT = utf8("\t\t\t<trkpt lat=\"");
+	private static final byte[] TRKPT_ELE = utf8("\t\t\t\t<ele>");
+	private static final byte[] TRKPT_TIME = utf8("\t\t\t\t<time>");
+	private static final byte[] TRKPT_HDOP = utf8("\t\t\t\t<hdop>");
+	private static final byte[] TRKPT_END = utf8("\t\t\t</trkpt>\n");
+
+	private static final byte[] WPT_LAT = utf8("\t<wpt lat=\"");
+	private static final byte[] WPT_ELE = utf8("\t\t<ele>");
+	private static final byte[] WPT_TIME = utf8("\t\t<time>");
+	private static final byte[] WPT_NAME = utf8("\t\t<name>");
+	private static final byte[] WPT_CMT = utf8("\t\t<cmt>");
+	private static final byte[] WPT_LINK = utf8("\t\t<link href=\"");
+	private static final byte[] WPT_LINK_TEXT = utf8("\">\n\t\t\t<text>");
+	private static final byte[] WPT_LINK_END = utf8("</text>\n\t\t</link>\n");
+	private static final byte[] WPT_SAT = utf8("\t\t<sat>");
+	private static final byte[] WPT_HDOP = utf8("\t\t<hdop>");
+	private static final byte[] WPT_END = utf8("\t</wpt>\n");
+
+	private static final byte[] LON = utf8("\" lon=\"");
+	private static final byte[] LAT_LON_END = utf8("\">\n");
+	private static final byte[] ELE_END = utf8("</ele>\n");
+	private static final byte[] TIME_END = utf8("</time>\n");
+	private static final byte[] HDOP_END = utf8("</hdop>\n");
+	private static final byte[] NAME_END = utf8("</name>\n");
+	private static final byte[] CMT_END = utf8("</cmt>\n");
+	private static final byte[] SAT_END = utf8("</sat>\n");
+
+	private final OutputStream out;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+
+	/**
+	 * Writes the &lt;hdop&gt; of the points, approximated from their accuracy
+	 */
+	private final boolean fillHDOP;
+
+	/**
+	 * Output of the accuracy of the waypoints, {@link OSMTracker.Preferences#KEY_OUTPUT_ACCURACY}
+	 */
+	private final String accuracyInfo;
+
+	/**
+	 * Label of the meter unit and word "accuracy", for the accuracy of the waypoints
+	 */
+	private final String meterUnit;
+	private final String accuracyLabel;
+
+	/**
+	 * ISO-8601 timestamp of {@link #timeSecond}, the date is the one of {@link #timeDay}
+	 */
+	private final byte[] time = utf8("0000-00-00T00:00:00Z");
+	private long timeSecond = Long.MIN_VALUE;
+	private long timeDay = Long.MIN_VALUE;
+
+	private final byte[] digits = new byte[20];
+
+	/**
+	 * Cursor of the column indexes of the trackpoints, and of the waypoints
+	 */
+	private Cursor trackPointCursor;
+	private int tpLatitude, tpLongitude, tpElevation, tpTimestamp, tpAccuracy;
+	private Cursor wayPointCursor;
+	private int wpLatitude, wpLongitude, wpElevation, wpTimestamp, wpAccuracy, wpName, wpLink, wpNbSatellites;
+
+	/**
+	 * @param out Stream of the GPX file, closed by {@link #close()}
+	 * @param fillHDOP Indicates whether fill &lt;hdop&gt; tag with approximation from location accuracy.
+	 * @param accuracyInfo Constant describing how to include (or not) accuracy info for way points.
+	 * @param meterUnit Label for meter unit
+	 * @param accuracyLabel Word "accuracy"
+	 */
+	public GpxWriter(OutputStream out, boolean fillHDOP, String accuracyInfo, String meterUnit, String accuracyLabel) {
+		this.out = out;
+		this.fillHDOP = fillHDOP;
+		this.accuracyInfo = accuracyInfo;
+		this.meterUnit = meterUnit;
+		this.accuracyLabel = accuracyLabel;
+	}
+
+	/**
+	 * Writes the XML header and the opening &lt;gpx&gt; tag
+	 */
+	public void writeHeader() throws IOException {
+		write(XML_HEADER);
+		write(TAG_GPX);
+	}
+
+	/**
+	 * Writes the closing &lt;/gpx&gt; tag
+	 */
+	public void writeFooter() throws IOException {
+		write(TAG_GPX_END);
+	}
+
+	/**
+	 * Opens the track and its segment
+	 * @param name Name of the track (metadata).
+	 * @param comment Comment of the track, or null
+	 */
+	public void beginTrack(String name, String comment) throws IOException {
+		write(TRK_START);
+		write(CDATA_START);
+		writeText(name);
+		write(CDATA_END);
+		if (comment != null) {
+			write(TRK_CMT);
+			write(CDATA_START);
+			writeText(comment);
+			write(CDATA_END);
+			write(TRK_CMT_END);
+		} else {
+			write(TRK_NAME_END);
+		}
+		write(TRKSEG_START);
+	}
+
+	/**
+	 * Closes the segment and the track
+	 */
+	public void endTrack() throws IOException {
+		write(TRK_END);
+	}
+
+	/**
+	 * Writes the trackpoint of the current row of the cursor
+	 * @param c Cursor to track points.
+	 */
+	public void writeTrackPoint(Cursor c) throws IOException {
+		if (c != trackPointCursor) {
+			tpLatitude = c.getColumnIndex(Schema.COL_LATITUDE);
+			tpLongitude = c.getColumnIndex(Schema.COL_LONGITUDE);
+			tpElevation = c.getColumnIndex(Schema.COL_ELEVATION);
+			tpTimestamp = c.getColumnIndex(Schema.COL_TIMESTAMP);
+			tpAccuracy = c.getColumnIndex(Schema.COL_ACCURACY);
+			trackPointCursor = c;
+		}
+		final boolean hasElevation = ! c.isNull(tpElevation);
+		final boolean hasAccuracy = ! c.isNull(tpAccuracy);
+		writeTrackPoint(c.getDouble(tpLatitude), c.getDouble(tpLongitude),
+				hasElevation, hasElevation ? c.getDouble(tpElevation) : 0,
+				c.getLong(tpTimestamp),
+				hasAccuracy, hasAccuracy ? c.getDouble(tpAccuracy) : 0);
+	}
+
+	/**
+	 * Writes a trackpoint
+	 * @param timestamp Time of the point, ms since the epoch
+	 */
+	public void writeTrackPoint(double latitude, double longitude, boolean hasElevation, double elevation,
+			long timestamp, boolean hasAccuracy, double accuracy) throws IOException {
+		write(TRKPT_LAT);
+		writeDecimal(latitude, COORDINATE_DECIMALS);
+		write(LON);
+		writeDecimal(longitude, COORDINATE_DECIMALS);
+		write(LAT_LON_END);
+		if (hasElevation) {
+			write(TRKPT_ELE);
+			writeDecimal(elevation, VALUE_DECIMALS);
+			write(ELE_END);
+		}
+		write(TRKPT_TIME);
+		writeTime(timestamp);
+		write(TIME_END);
+		if (fillHDOP && hasAccuracy) {
+			write(TRKPT_HDOP);
+			writeDecimal(accuracy / OSMTracker.HDOP_APPROXIMATION_FACTOR, VALUE_DECIMALS);
+			write(HDOP_END);
+		}
+		write(TRKPT_END);
+	}
+
+	/**
+	 * Writes the waypoint of the current row of the cursor
+	 * @param c Cursor to way points.
+	 */
+	public void writeWayPoint(Cursor c) throws IOException {
+		if (c != wayPointCursor) {
+			wpLatitude = c.getColumnIndex(Schema.COL_LATITUDE);
+			wpLongitude = c.getColumnIndex(Schema.COL_LONGITUDE);
+			wpElevation = c.getColumnIndex(Schema.COL_ELEVATION);
+			wpTimestamp = c.getColumnIndex(Schema.COL_TIMESTAMP);
+			wpAccuracy = c.getColumnIndex(Schema.COL_ACCURACY);
+			wpName = c.getColumnIndex(Schema.COL_NAME);
+			wpLink = c.getColumnIndex(Schema.COL_LINK);
+			wpNbSatellites = c.getColumnIndex(Schema.COL_NBSATELLITES);
+			wayPointCursor = c;
+		}
+
+		write(WPT_LAT);
+		writeDecimal(c.getDouble(wpLatitude), COORDINATE_DECIMALS);
+		write(LON);
+		writeDecimal(c.getDouble(wpLongitude), COORDINATE_DECIMALS);
+		write(LAT_LON_END);
+		if (! c.isNull(wpElevation)) {
+			write(WPT_ELE);
+			writeDecimal(c.getDouble(wpElevation), VALUE_DECIMALS);
+			write(ELE_END);
+		}
+		write(WPT_TIME);
+		writeTime(c.getLong(wpTimestamp));
+		write(TIME_END);
+
+		String name = c.getString(wpName);
+		write(WPT_NAME);
+		write(CDATA_START);
+		writeText(name);
+		if (! OSMTracker.Preferences.VAL_OUTPUT_ACCURACY_NONE.equals(accuracyInfo) && ! c.isNull(wpAccuracy)) {
+			// Outputs accuracy info for way point
+			if (OSMTracker.Preferences.VAL_OUTPUT_ACCURACY_WPT_NAME.equals(accuracyInfo)) {
+				// Output accuracy with name
+				writeText(" (" + c.getDouble(wpAccuracy) + meterUnit + ")");
+				write(CDATA_END);
+				write(NAME_END);
+			} else if (OSMTracker.Preferences.VAL_OUTPUT_ACCURACY_WPT_CMT.equals(accuracyInfo)) {
+				// Output accuracy in separate tag
+				write(CDATA_END);
+				write(NAME_END);
+				write(WPT_CMT);
+				write(CDATA_START);
+				writeText(accuracyLabel + ": " + c.getDouble(wpAccuracy) + meterUnit);
+				write(CDATA_END);
+				write(CMT_END);
+			} else {
+				// Unknown value for accuracy info, shouldn't occur but who knows ?
+				// See issue #68. Output at least the name just in case.
+				write(CDATA_END);
+				write(NAME_END);
+			}
+		} else {
+			// No accuracy info requested, or available
+			write(CDATA_END);
+			write(NAME_END);
+		}
+
+		String link = c.getString(wpLink);
+		if (link != null) {
+			write(WPT_LINK);
+			writeText(URLEncoder.encode(link, "UTF-8"));
+			write(WPT_LINK_TEXT);
+			writeText(link);
+			write(WPT_LINK_END);
+		}
+
+		if (! c.isNull(wpNbSatellites)) {
+			write(WPT_SAT);
+			writeLong(c.getInt(wpNbSatellites));
+			write(SAT_END);
+		}
+
+		if (fillHDOP && ! c.isNull(wpAccuracy)) {
+			write(WPT_HDOP);
+			writeDecimal(c.getDouble(wpAccuracy) / OSMTracker.HDOP_APPROXIMATION_FACTOR, VALUE_DECIMALS);
+			write(HDOP_END);
+		}
+
+		write(WPT_END);
+	}
+
+	/**
+	 * Writes the buffer to the stream and flushes it
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Writes the buffer and closes the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	/**
+	 * Makes room for n bytes in the buffer
+	 */
+	private void reserve(int n) throws IOException {
+		if (position + n > buffer.length) {
+			flushBuffer();
+		}
+	}
+
+	private void write(byte[] b) throws IOException {
+		write(b, b.length);
+	}
+
+	private void write(byte[] b, int length) throws IOException {
+		if (length > buffer.length) {
+			flushBuffer();
+			out.write(b, 0, length);
+			return;
+		}
+		reserve(length);
+		System.arraycopy(b, 0, buffer, position, length);
+		position += length;
+	}
+
+	/**
+	 * Writes a String in UTF-8, invalid surrogates as '?'
+	 */
+	private void writeText(String s) throws IOException {
+		if (s == null) {
+			s = "null";
+		}
+		final int length = s.length();
+		for (int i = 0; i < length; i++) {
+			reserve(4);
+			final char ch = s.charAt(i);
+			if (ch < 0x80) {
+				buffer[position++] = (byte) ch;
+			} else if (ch < 0x800) {
+				buffer[position++] = (byte) (0xc0 | (ch >> 6));
+				buffer[position++] = (byte) (0x80 | (ch & 0x3f));
+			} else if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+				final int cp = Character.toCodePoint(ch, s.charAt(++i));
+				buffer[position++] = (byte) (0xf0 | (cp >> 18));
+				buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				buffer[position++] = (byte) (0x80 | (cp & 0x3f));
+			} else if (Character.isHighSurrogate(ch) || Character.isLowSurrogate(ch)) {
+				buffer[position++] = '?';
+			} else {
+				buffer[position++] = (byte) (0xe0 | (ch >> 12));
+				buffer[position++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+				buffer[position++] = (byte) (0x80 | (ch & 0x3f));
+			}
+		}
+	}
+
+	/**
+	 * Writes a non-negative integer
+	 */
+	private void writeLong(long v) throws IOException {
+		int n = digits.length;
+		do {
+			digits[--n] = (byte) ('0' + (v % 10));
+			v /= 10;
+		} while (v > 0);
+		reserve(digits.length - n);
+		System.arraycopy(digits, n, buffer, position, digits.length - n);
+		position += digits.length - n;
+	}
+
+	/**
+	 * Writes a decimal rounded to the given number of decimals, without
+	 * trailing zeros nor exponent. Values too large for a fixed
+	 * precision, infinities and NaN are written as by Double.toString().
+	 */
+	private void writeDecimal(double v, int decimals) throws IOException {
+		final double abs = Math.abs(v);
+		if (! (abs < 1e9)) {
+			writeText(Double.toString(v));
+			return;
+		}
+		final long scale = POWERS_OF_TEN[decimals];
+		final long units = (long) (abs * scale + 0.5);
+		if (units != 0 && v < 0) {
+			reserve(1);
+			buffer[position++] = '-';
+		}
+		writeLong(units / scale);
+
+		long fraction = units % scale;
+		if (fraction != 0) {
+			int n = decimals;
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				n--;
+			}
+			reserve(n + 1);
+			buffer[position++] = '.';
+			for (int i = position + n - 1; i >= position; i--) {
+				buffer[i] = (byte) ('0' + (fraction % 10));
+				fraction /= 10;
+			}
+			position += n;
+		}
+	}
+
+	/**
+	 * Writes a timestamp as yyyy-MM-dd'T'HH:mm:ss'Z', years 0 to 9999
+	 * @param timestamp ms since the epoch
+	 */
+	private void writeTime(long timestamp) throws IOException {
+		final long second = floorDiv(timestamp, 1000);
+		if (second != timeSecond) {
+			final long day = floorDiv(second, SECONDS_PER_DAY);
+			if (day != timeDay) {
+				setDate(day);
+				timeDay = day;
+			}
+			final int secondOfDay = (int) (second - day * SECONDS_PER_DAY);
+			setDigits(11, 2, secondOfDay / 3600);
+			setDigits(14, 2, secondOfDay / 60 % 60);
+			setDigits(17, 2, secondOfDay % 60);
+			timeSecond = second;
+		}
+		write(time);
+	}
+
+	/**
+	 * Sets the date of {@link #time} to the given day since the epoch,
+	 * with the days-to-civil algorithm of the proleptic Gregorian calendar
+	 */
+	private void setDate(long day) {
+		final long z = day + 719468;
+		final long era = (z >= 0 ? z : z - 146096) / 146097;
+		final long dayOfEra = z - era * 146097;
+		final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		final long mp = (5 * dayOfYear + 2) / 153;
+		final int dayOfMonth = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+		final int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		setDigits(0, 4, (int) year);
+		setDigits(5, 2, month);
+		setDigits(8, 2, dayOfMonth);
+	}
+
+	private void setDigits(int offset, int count, int value) {
+		for (int i = offset + count - 1; i >= offset; i--) {
+			time[i] = (byte) ('0' + (value % 10));
+			value /= 10;
+		}
+	}
+
+	private static long floorDiv(long x, long y) {
+		final long q = x / y;
+		return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+	}
+
+	private static byte[] utf8(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException uee) {
+			throw new IllegalStateException(uee);
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import me.guillaumin.android.osmtracker.db.DataHelper;
+
+/**
+ * ZIP archive of exported tracks, written to a stream as the entries are
+ * added. GPX files are deflated, pictures and voice recordings are stored
+ * as they are already compressed.
+ *
+ * Entry names must be unique: each track has a directory of its own.
+ */
+final class TrackArchive implements Closeable {
+
+	/**
+	 * Size of the buffer of the media files copy
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final ZipOutputStream zip;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	/**
+	 * @param out Stream of the archive, buffered
+	 */
+	TrackArchive(OutputStream out) {
+		zip = new ZipOutputStream(out);
+	}
+
+	/**
+	 * @param file File in a directory of the archive
+	 * @return Name of its entry
+	 */
+	private static String entryName(File file) {
+		return file.getPath().replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * Starts a deflated entry
+	 * @param file Path of the entry in the archive
+	 * @return Stream to the entry, closing it closes the entry
+	 * @throws IOException
+	 */
+	OutputStream openEntry(File file) throws IOException {
+		zip.putNextEntry(new ZipEntry(entryName(file)));
+		return new EntryOutputStream();
+	}
+
+	/**
+	 * Adds a media file: stored if it is a picture or a voice recording,
+	 * deflated otherwise
+	 * @param directory Directory of the archive
+	 * @param file Media file to add
+	 * @throws IOException
+	 */
+	void addFile(File directory, File file) throws IOException {
+		ZipEntry entry = new ZipEntry(entryName(new File(directory, file.getName())));
+		entry.setTime(file.lastModified());
+
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(DataHelper.EXTENSION_JPG) || name.endsWith(DataHelper.EXTENSION_3GPP)) {
+			// Stored entries need their size and CRC before their data:
+			// the file is read twice
+			CRC32 crc = new CRC32();
+			long size = 0;
+			InputStream in = new FileInputStream(file);
+			try {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					crc.update(buffer, 0, read);
+					size += read;
+				}
+			} finally {
+				in.close();
+			}
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(size);
+			entry.setCompressedSize(size);
+			entry.setCrc(crc.getValue());
+		}
+
+		zip.putNextEntry(entry);
+		InputStream in = new FileInputStream(file);
+		try {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				zip.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		zip.closeEntry();
+	}
+
+	/**
+	 * Writes the central directory and closes the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		zip.close();
+	}
+
+	/**
+	 * Stream to the current entry
+	 */
+	private final class EntryOutputStream extends FilterOutputStream {
+
+		EntryOutputStream() {
+			super(zip);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			zip.closeEntry();
+		}
+	}
+
+}
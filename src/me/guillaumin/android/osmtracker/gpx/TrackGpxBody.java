@@ -0,0 +1,161 @@
+package me.guillaumin.android.osmtracker.gpx;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+
+import me.guillaumin.android.osmtracker.db.TrackContentProvider;
+
+import org.apache.http.entity.mime.content.AbstractContentBody;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+
+/**
+ * Multipart body of the GPX of a track, written from the database to the
+ * request as it is sent: no temporary file, and the length of the body is
+ * unknown, so the request is chunked. The body can be written only once.
+ */
+public class TrackGpxBody extends AbstractContentBody {
+
+	public static final String GPX_MIMETYPE = "application/gpx+xml";
+
+	public static final String GZIP_MIMETYPE = "application/x-gzip";
+
+	private static final String GPX_CHARSET = "UTF-8";
+
+	/**
+	 * Receives the progress of the upload, on the thread writing the request
+	 * or on the writer thread of the {@link ExportPipeline}
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param count Number of way points and track points sent so far
+		 * @param total Number of points of the track
+		 */
+		void onPointsSent(int count, int total);
+	}
+
+	private final Track track;
+
+	private final boolean compress;
+
+	private final String filename;
+
+	private final ProgressListener listener;
+
+	/**
+	 * Reads the filename of the track, the points are read when the body is written
+	 * @param compress Whereas to gzip the GPX or not
+	 * @param listener Listener of the progress, can be null
+	 */
+	public TrackGpxBody(Context context, long trackId, boolean compress, ProgressListener listener) {
+		super(compress ? GZIP_MIMETYPE : GPX_MIMETYPE);
+		this.track = new Track(context, trackId);
+		this.compress = compress;
+		this.listener = listener;
+
+		Cursor c = context.getContentResolver().query(ContentUris.withAppendedId(
+				TrackContentProvider.CONTENT_URI_TRACK, trackId), null, null, null, null);
+		try {
+			c.moveToFirst();
+			filename = track.buildGPXFilename(c);
+		} finally {
+			c.close();
+		}
+	}
+
+	/**
+	 * @return Filename of the GPX, as exported to the storage
+	 */
+	@Override
+	public String getFilename() {
+		return filename;
+	}
+
+	@Override
+	public String getCharset() {
+		return compress ? null : GPX_CHARSET;
+	}
+
+	@Override
+	public String getTransferEncoding() {
+		return "binary";
+	}
+
+	/**
+	 * @return -1, the length is known once the body is written
+	 */
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		// The other parts follow: don't close the request stream
+		track.writeGpx(new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		});
+	}
+
+	/**
+	 * Writer of the GPX, as exported to the storage
+	 */
+	private final class Track extends ExportTrackTask {
+
+		/**
+		 * Number of points of the track, reported before the first point
+		 */
+		private int total = 0;
+
+		Track(Context context, long trackId) {
+			super(context, trackId);
+		}
+
+		/**
+		 * @return null, the GPX is not written to a directory
+		 */
+		@Override
+		protected File getExportDirectory(Date startDate) {
+			return null;
+		}
+
+		@Override
+		protected boolean exportMediaFiles() {
+			return false;
+		}
+
+		@Override
+		protected boolean updateExportDate() {
+			return false;
+		}
+
+		@Override
+		protected boolean compressGpx() {
+			return compress;
+		}
+
+		@Override
+		void reportProgress(Integer... values) {
+			if (values.length > 1) {
+				total = values[1];
+			}
+			if (listener != null) {
+				listener.onPointsSent(values[0], total);
+			}
+		}
+	}
+
+}
@@ -2,7 +2,6 @@ package me.guillaumin.android.osmtracker.osm;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
@@ -11,7 +10,7 @@ import me.guillaumin.android.osmtracker.OSMTracker;
 import me.guillaumin.android.osmtracker.R;
 import me.guillaumin.android.osmtracker.db.DataHelper;
 import me.guillaumin.android.osmtracker.db.model.Track.OSMVisibility;
-import me.guillaumin.android.osmtracker.osm.ProgressMultipartEntity.ProgressListener;
+import me.guillaumin.android.osmtracker.gpx.TrackGpxBody;
 import me.guillaumin.android.osmtracker.util.DialogUtils;
 import oauth.signpost.commonshttp.CommonsHttpOAuthConsumer;
 
@@ -20,7 +19,6 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntity;
-import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.client.DefaultHttpClient;
 
@@ -34,15 +32,14 @@ import android.preference.PreferenceManager;
 import android.util.Log;
 
 /**
- * Uploads a GPX file to OpenStreetMap
+ * Uploads a track to OpenStreetMap. The GPX is gzipped and written
+ * from the database to the request, see {@link TrackGpxBody}.
  * 
  * @author Nicolas Guillaumin
  */
-public class UploadToOpenStreetMapTask extends AsyncTask<Void, Void, Void> {
+public class UploadToOpenStreetMapTask extends AsyncTask<Void, Integer, Void> {
 
 	private static final String TAG = UploadToOpenStreetMapTask.class.getSimpleName();
-
-	private static final String GPX_MIMETYPE = "application/gpx+xml";
 	
 	/** Upload progress dialog */
 	private ProgressDialog dialog;
@@ -50,15 +47,12 @@ public class UploadToOpenStreetMapTask extends AsyncTask<Void, Void, Void> {
 	private final Activity activity;
 	private final long trackId;
 	
+	/** URL of the GPX create API */
+	private final String url;
+
 	/** OAuth consumer to sign the post request */
 	private final CommonsHttpOAuthConsumer oAuthConsumer;
 	
-	/** File to export */
-	private final File gpxFile;
-	
-	/** Filename to use when uploading */
-	private final String filename;
-	
 	/** Track description */
 	private final String description;
 	
@@ -84,14 +78,23 @@ public class UploadToOpenStreetMapTask extends AsyncTask<Void, Void, Void> {
 	
 	public UploadToOpenStreetMapTask(Activity activity,
 			long trackId, CommonsHttpOAuthConsumer oAuthConsumer,
-			File gpxFile, String filename,
 			String description, String tags, OSMVisibility visibility) {
+		this(activity, trackId, oAuthConsumer, description, tags, visibility,
+				OpenStreetMapConstants.Api.Gpx.CREATE);
+	}
+
+	/**
+	 * @param url URL of the GPX create API, of OpenStreetMap or of a test server
+	 */
+	public UploadToOpenStreetMapTask(Activity activity,
+			long trackId, CommonsHttpOAuthConsumer oAuthConsumer,
+			String description, String tags, OSMVisibility visibility,
+			String url) {
 		this.activity = activity;
 		this.trackId = trackId;
-		this.filename = filename;
+		this.url = url;
 		
 		this.oAuthConsumer = oAuthConsumer;
-		this.gpxFile = gpxFile;
 		this.description = (description == null) ? "test" : description;
 		this.tags = (tags == null) ? "test" : tags;
 		this.visibility = (visibility == null) ? OSMVisibility.Private : visibility;
@@ -101,47 +104,14 @@ public class UploadToOpenStreetMapTask extends AsyncTask<Void, Void, Void> {
 	protected void onPreExecute() {
 		try {
 			// Prepare and OAuth-sign the request request
-			request = new HttpPost(OpenStreetMapConstants.Api.Gpx.CREATE);
+			request = new HttpPost(url);
 			oAuthConsumer.sign(request);
 			
-			final long totalSize = gpxFile.length();
-			
-			// Custom entity to display a progress bar while uploading
-            MultipartEntity entity = new ProgressMultipartEntity(
-            		HttpMultipartMode.BROWSER_COMPATIBLE,
-            		Charset.defaultCharset(),
-            		new ProgressListener() {
-				@Override
-				public void transferred(long num) {
-					dialog.incrementProgressBy((int) num);
-					if (num >= totalSize) {
-						// Finish sending. Switch to an indeterminate progress
-						// dialog while the OSM server processes the request
-						activity.runOnUiThread(new Runnable() {
-							@Override
-							public void run() {
-					    		dialog.setIndeterminate(true);
-					    		dialog.setCancelable(false);
-								dialog.setTitle(activity.getResources().getString(R.string.osm_upload_waiting_response));
-							}
-						});
-					}
-					
-				}
-			});
-
-            // API parameters
-            entity.addPart(OpenStreetMapConstants.Api.Gpx.Parameters.FILE, new FileBody(gpxFile, filename, GPX_MIMETYPE, Charset.defaultCharset().name()));
-            entity.addPart(OpenStreetMapConstants.Api.Gpx.Parameters.DESCRIPTION, new StringBody(description, Charset.defaultCharset()));
-            entity.addPart(OpenStreetMapConstants.Api.Gpx.Parameters.TAGS, new StringBody(tags, Charset.defaultCharset()));
-            entity.addPart(OpenStreetMapConstants.Api.Gpx.Parameters.VISIBILITY, new StringBody(visibility.toString().toLowerCase(),Charset.defaultCharset()));
-            request.setEntity(entity);
-            
-    		// Display progress dialog
+    		// Display progress dialog, indeterminate until the number
+    		// of points is known
     		dialog = new ProgressDialog(activity);
     		dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
-    		dialog.setIndeterminate(false);
-    		dialog.setMax((int) totalSize);
+    		dialog.setIndeterminate(true);
     		dialog.setTitle(
     				activity.getResources().getString(R.string.osm_upload_sending)
     				.replace("{0}", Long.toString(trackId)));
@@ -156,6 +126,23 @@ public class UploadToOpenStreetMapTask extends AsyncTask<Void, Void, Void> {
 		}
 	}
 	
+	/**
+	 * @param values Number of points sent, and number of points of the track
+	 */
+	@Override
+	protected void onProgressUpdate(Integer... values) {
+		if (values[0] < values[1]) {
+			dialog.setIndeterminate(false);
+			dialog.setMax(values[1]);
+			dialog.setProgress(values[0]);
+		} else {
+			// Finish sending. Switch to an indeterminate progress
+			// dialog while the OSM server processes the request
+			dialog.setIndeterminate(true);
+			dialog.setTitle(activity.getResources().getString(R.string.osm_upload_waiting_response));
+		}
+	}
+
 	@Override
 	protected void onPostExecute(Void result) {
 		switch (resultCode) {
@@ -246,6 +233,21 @@ public class UploadToOpenStreetMapTask extends AsyncTask<Void, Void, Void> {
 	@Override
 	protected Void doInBackground(Void... params) {
 		try {
+			// The GPX is written to the request as it is sent, with
+			// the progress of the points sent. OSM accepts gzipped GPX.
+			MultipartEntity entity = new MultipartEntity(HttpMultipartMode.BROWSER_COMPATIBLE, null, Charset.defaultCharset());
+			entity.addPart(OpenStreetMapConstants.Api.Gpx.Parameters.FILE,
+					new TrackGpxBody(activity, trackId, true, new TrackGpxBody.ProgressListener() {
+						@Override
+						public void onPointsSent(int count, int total) {
+							publishProgress(count, total);
+						}
+					}));
+			entity.addPart(OpenStreetMapConstants.Api.Gpx.Parameters.DESCRIPTION, new StringBody(description, Charset.defaultCharset()));
+			entity.addPart(OpenStreetMapConstants.Api.Gpx.Parameters.TAGS, new StringBody(tags, Charset.defaultCharset()));
+			entity.addPart(OpenStreetMapConstants.Api.Gpx.Parameters.VISIBILITY, new StringBody(visibility.toString().toLowerCase(), Charset.defaultCharset()));
+			request.setEntity(entity);
+
 			// Post request and get response code
 			DefaultHttpClient httpClient = new DefaultHttpClient();
 			response = httpClient.execute(request);
@@ -4,7 +4,6 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Date;
 
 import me.guillaumin.android.osmtracker.OSMTracker;
 import me.guillaumin.android.osmtracker.R;
@@ -12,12 +11,14 @@ import me.guillaumin.android.osmtracker.activity.TrackLogger;
 import me.guillaumin.android.osmtracker.db.DataHelper;
 import me.guillaumin.android.osmtracker.db.TrackContentProvider;
 import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import me.guillaumin.android.osmtracker.db.TrackPointWriter;
 import me.guillaumin.android.osmtracker.gps.GpsSatellite;
 import me.guillaumin.android.osmtracker.gps.GpsStatus;
 import me.guillaumin.android.osmtracker.gps.GpsStatus.RawDataListener;
 import me.guillaumin.android.osmtracker.gps.Receiver;
 import me.guillaumin.android.osmtracker.gps.UsbReceiver;
 import me.guillaumin.android.osmtracker.gps.ReceiverInterfaces;
+import me.guillaumin.android.osmtracker.gps.ReplayReceiver;
 import android.annotation.SuppressLint;
 import android.app.Notification;
 import android.app.NotificationManager;
@@ -34,8 +35,12 @@ import android.location.LocationProvider;
 import android.os.Binder;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
+import android.os.Process;
 import android.preference.PreferenceManager;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
@@ -82,12 +87,41 @@ public class GPSLogger extends Service implements
 
 
 	private static final String TAG = GPSLogger.class.getSimpleName();
+	private static final boolean D = OSMTracker.DEBUG;
+
+	/**
+	 * Number of fixes between the logs of the fix processing times
+	 */
+	private static final int TIMING_LOG_INTERVAL = 60;
 
 	/**
 	 * Data helper.
 	 */
 	private DataHelper dataHelper;
 
+	/**
+	 * Buffered writer of the track points, used on {@link #dbThread}
+	 */
+	private TrackPointWriter trackPointWriter;
+
+	/**
+	 * Thread of the database and file operations: track points, way points
+	 * and the end of the track. Operations are run in the order they are
+	 * posted, the main thread only updates the UI.
+	 */
+	private HandlerThread dbThread;
+
+	/**
+	 * Handler of {@link #dbThread}
+	 */
+	private Handler dbHandler;
+
+	/**
+	 * Time spent per fix on the main thread and on the database thread. Debug only.
+	 */
+	private final FixTiming mainThreadTiming = new FixTiming("Main thread");
+	private final FixTiming dbThreadTiming = new FixTiming("Database thread");
+
 	/**
 	 * GPS REceiver
 	 */
@@ -169,20 +203,27 @@ public class GPSLogger extends Service implements
 				// Track a way point
 				Bundle extras = intent.getExtras();
 				if (extras != null) {
-					Location l;
+					final Location l;
 					Bundle b;
 					// because of the gps logging interval our last fix could be very old
 					// so we'll request the last known location from the gps provider
 					l = gpsReceiver.getLastKnownLocation();
-					b = l.getExtras();
-					if (b != null)
-						lastNbSatellites = b.getInt("satellites", lastNbSatellites);
 					if(l != null){
-						Long trackId = extras.getLong(Schema.COL_TRACK_ID);
-						String uuid = extras.getString(OSMTracker.INTENT_KEY_UUID);
-						String name = extras.getString(OSMTracker.INTENT_KEY_NAME);
-						String link = extras.getString(OSMTracker.INTENT_KEY_LINK);
-						dataHelper.wayPoint(trackId, l, lastNbSatellites, name, link, uuid);
+						b = l.getExtras();
+						if (b != null)
+							lastNbSatellites = b.getInt("satellites", lastNbSatellites);
+						final long trackId = extras.getLong(Schema.COL_TRACK_ID);
+						final String uuid = extras.getString(OSMTracker.INTENT_KEY_UUID);
+						final String name = extras.getString(OSMTracker.INTENT_KEY_NAME);
+						final String link = extras.getString(OSMTracker.INTENT_KEY_LINK);
+						final int nbSatellites = lastNbSatellites;
+						// Inserting and renaming the linked file
+						dbHandler.post(new Runnable() {
+							@Override
+							public void run() {
+								dataHelper.wayPoint(trackId, l, nbSatellites, name, link, uuid);
+							}
+						});
 						lastLocation.set(l);
 						locationAvailable = true;
 					}
@@ -191,18 +232,28 @@ public class GPSLogger extends Service implements
 				// Update an existing waypoint
 				Bundle extras = intent.getExtras();
 				if (extras != null) {
-					Long trackId = extras.getLong(Schema.COL_TRACK_ID);
-					String uuid = extras.getString(OSMTracker.INTENT_KEY_UUID);
-					String name = extras.getString(OSMTracker.INTENT_KEY_NAME);
-					String link = extras.getString(OSMTracker.INTENT_KEY_LINK);
-					dataHelper.updateWayPoint(trackId, uuid, name, link);
+					final long trackId = extras.getLong(Schema.COL_TRACK_ID);
+					final String uuid = extras.getString(OSMTracker.INTENT_KEY_UUID);
+					final String name = extras.getString(OSMTracker.INTENT_KEY_NAME);
+					final String link = extras.getString(OSMTracker.INTENT_KEY_LINK);
+					dbHandler.post(new Runnable() {
+						@Override
+						public void run() {
+							dataHelper.updateWayPoint(trackId, uuid, name, link);
+						}
+					});
 				}
 			} else if (OSMTracker.INTENT_DELETE_WP.equals(intent.getAction())) {
 				// Delete an existing waypoint
 				Bundle extras = intent.getExtras();
 				if (extras != null) {
-					String uuid = extras.getString(OSMTracker.INTENT_KEY_UUID);
-					dataHelper.deleteWayPoint(uuid);
+					final String uuid = extras.getString(OSMTracker.INTENT_KEY_UUID);
+					dbHandler.post(new Runnable() {
+						@Override
+						public void run() {
+							dataHelper.deleteWayPoint(uuid);
+						}
+					});
 				}
 			} else if (OSMTracker.INTENT_START_TRACKING.equals(intent.getAction()) ) {
 				Bundle extras = intent.getExtras();
@@ -223,7 +274,8 @@ public class GPSLogger extends Service implements
 
 	private final LocationListener locationListener = new LocationListener()  {
 		@Override
-		public void onLocationChanged(Location location) {
+		public void onLocationChanged(final Location location) {
+			final long start = D ? System.nanoTime() : 0;
 
 			// first of all we check if the time from the last used fix to the current fix is greater than the logging interval
 			if((lastGPSTimestamp + gpsLoggingInterval) < System.currentTimeMillis()){
@@ -241,9 +293,18 @@ public class GPSLogger extends Service implements
 				localBroadcastSender.sendBroadcast(intent);
 
 				if (isTracking) {
-					dataHelper.track(currentTrackId, location);
+					final long trackId = currentTrackId;
+					dbHandler.post(new Runnable() {
+						@Override
+						public void run() {
+							final long start = D ? System.nanoTime() : 0;
+							trackPointWriter.track(trackId, location);
+							if (D) dbThreadTiming.add(System.nanoTime() - start);
+						}
+					});
 				}
 			}
+			if (D) mainThreadTiming.add(System.nanoTime() - start);
 		}
 
 		@Override
@@ -319,6 +380,26 @@ public class GPSLogger extends Service implements
 
 	};
 
+	/**
+	 * Mean time spent per fix on one thread, logged every TIMING_LOG_INTERVAL fixes
+	 */
+	private static class FixTiming {
+		private final String name;
+		private long fixes;
+		private long totalNs;
+
+		FixTiming(String name) {
+			this.name = name;
+		}
+
+		void add(long ns) {
+			fixes += 1;
+			totalNs += ns;
+			if (fixes % TIMING_LOG_INTERVAL == 0)
+				Log.d(TAG, name + ": " + (totalNs / fixes / 1000) + " us/fix, " + fixes + " fixes");
+		}
+	}
+
 	private class RawDataLogger {
 
 		/**
@@ -374,7 +455,7 @@ public class GPSLogger extends Service implements
 			// Ensure that this location can be written to
 			if (trackDir.exists() && trackDir.canWrite()) {
 				rawLogFile = new File(trackDir,
-						DataHelper.FILENAME_FORMATTER.format(new Date()) + DataHelper.EXTENSION_RAW);
+						DataHelper.formatFilename(System.currentTimeMillis()) + DataHelper.EXTENSION_RAW);
 			} else {
 				Log.w(TAG, "The directory [" + trackDir.getAbsolutePath() + "] will not allow files to be created");
 				return false;
@@ -523,6 +604,11 @@ public class GPSLogger extends Service implements
 		Log.v(TAG, "Service onCreate()");
 		dataHelper = new DataHelper(this);
 
+		dbThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+		dbThread.start();
+		dbHandler = new Handler(dbThread.getLooper());
+		trackPointWriter = new TrackPointWriter(this, dbHandler);
+
 		preferences = PreferenceManager.getDefaultSharedPreferences(
 				this.getApplicationContext());
 
@@ -587,6 +673,15 @@ public class GPSLogger extends Service implements
 		// Cancel any existing notification
 		stopNotifyBackgroundService();
 
+		// Stop the database thread once the pending operations are done
+		dbHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				trackPointWriter.flush();
+				Looper.myLooper().quit();
+			}
+		});
+
 		super.onDestroy();
 	}
 
@@ -643,12 +738,22 @@ public class GPSLogger extends Service implements
 		setIsTracking(false);
 		locationAvailable = false;
 		rawDataLogger.deactivate();
-		wakeLock.release();
 
-		if (currentTrackId > 0) {
-			dataHelper.stopTracking(currentTrackId);
+		// Queued after the pending track points. The CPU is held until they are written.
+		final long trackId = currentTrackId;
+		if (trackId > 0) {
 			currentTrackId = -1;
 		}
+		dbHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				trackPointWriter.flush();
+				if (trackId > 0) {
+					dataHelper.stopTracking(trackId);
+				}
+				wakeLock.release();
+			}
+		});
 		this.stopSelf();
 	}
 
@@ -679,6 +784,10 @@ public class GPSLogger extends Service implements
 			prefKey = OSMTracker.Preferences.KEY_GPS_USB_RECEIVER;
 			prefVal = null;
 			break;
+		case REPLAY:
+			prefKey = OSMTracker.Preferences.KEY_GPS_REPLAY_FILE;
+			prefVal = null;
+			break;
 		default:
 			prefKey = prefVal = null;
 			assert(false);
@@ -699,6 +808,8 @@ public class GPSLogger extends Service implements
 					OSMTracker.Preferences.KEY_GPS_USB_BAUDRATE,
 					OSMTracker.Preferences.VAL_GPS_USB_BAUDRATE));
 			r.setBaudRate(baudrate);
+		}else if (gpsReceiver instanceof ReplayReceiver) {
+			((ReplayReceiver)gpsReceiver).setSpeed(getReplaySpeed());
 		}
 
 		// Register ourselves for location updates
@@ -708,6 +819,12 @@ public class GPSLogger extends Service implements
 	}
 
 
+	private float getReplaySpeed() {
+		return Float.parseFloat(preferences.getString(
+				OSMTracker.Preferences.KEY_GPS_REPLAY_SPEED,
+				OSMTracker.Preferences.VAL_GPS_REPLAY_SPEED));
+	}
+
 	private void deactivateGpsReceiver()
 	{
 		// Unregister listener
@@ -766,6 +883,10 @@ public class GPSLogger extends Service implements
 						OSMTracker.Preferences.VAL_GPS_USB_BAUDRATE));
 				r.setBaudRate(baudrate);
 			}
+		}else if (key.equals(OSMTracker.Preferences.KEY_GPS_REPLAY_SPEED)) {
+			if (gpsReceiver instanceof ReplayReceiver) {
+				((ReplayReceiver)gpsReceiver).setSpeed(getReplaySpeed());
+			}
 		}else if(key.equals(OSMTracker.Preferences.KEY_GPS_BUILTIN_RECEIVER)) {
 			// TODO
 			/*
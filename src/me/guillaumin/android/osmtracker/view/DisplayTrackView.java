@@ -15,6 +15,7 @@ import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
+import android.net.Uri;
 import android.os.Handler;
 import android.util.Log;
 import android.widget.TextView;
@@ -48,6 +49,11 @@ public class DisplayTrackView extends TextView {
 	 */
 	private double[][] coords;
 
+	/**
+	 * Highest trackpoint id read into {@link #coords}, -1 if none
+	 */
+	private long lastTrackPointId = -1;
+
 	/**
 	 * Array of pixels coordinates to display track
 	 */
@@ -115,12 +121,22 @@ public class DisplayTrackView extends TextView {
 		
 		@Override
 		public void onChange(boolean selfChange) {
+			onChange(selfChange, null);
+		}
+
+		@Override
+		public void onChange(boolean selfChange, Uri uri) {
 			// width & height could be = 0 if the view had
 			// not been attached to window & measured when onChange()
 			// is fired.
 			if (getWidth() > 0 && getHeight() > 0) {
-				// Populate new data, and recompute projection
-				populateCoords();
+				// API 16+: nothing to read if the inserted points were already read
+				long lastId = TrackContentProvider.getLastRowId(uri);
+				if (lastId != -1 && lastId <= lastTrackPointId) {
+					return;
+				}
+				// Append the new points, and recompute projection
+				appendCoords();
 				projectData(getWidth(), getHeight());
 				// Force view redraw
 				invalidate();
@@ -264,17 +280,63 @@ public class DisplayTrackView extends TextView {
 				TrackContentProvider.trackPointsUri(currentTrackId),
 				null, null, null, TrackContentProvider.Schema.COL_TIMESTAMP + " asc");
 		coords = new double[c.getCount()][2];
+		lastTrackPointId = -1;
 		int i=0;
 		
 		for(c.moveToFirst(); !c.isAfterLast(); c.moveToNext(), i++) {
 			coords[i][MercatorProjection.LONGITUDE] = c.getDouble(c.getColumnIndex(Schema.COL_LONGITUDE));
 			coords[i][MercatorProjection.LATITUDE] = c.getDouble(c.getColumnIndex(Schema.COL_LATITUDE));
+			lastTrackPointId = Math.max(lastTrackPointId, c.getLong(c.getColumnIndex(Schema.COL_ID)));
 		}
 		c.close();
 		
 		Log.v(TAG, "Extracted " + coords.length + " track points from DB.");
 		
-		c = getContext().getContentResolver().query(
+		populateWayPointsCoords();
+	}
+
+	/**
+	 * Appends the trackpoints inserted since the last read to the
+	 * coordinates, and reads the waypoints again
+	 */
+	private void appendCoords() {
+		if (coords == null) {
+			populateCoords();
+			return;
+		}
+
+		Cursor c = getContext().getContentResolver().query(
+				TrackContentProvider.trackPointsUri(currentTrackId),
+				new String[] {Schema.COL_ID, Schema.COL_LATITUDE, Schema.COL_LONGITUDE},
+				Schema.COL_ID + " > ?", new String[] {Long.toString(lastTrackPointId)},
+				Schema.COL_ID + " asc");
+		int count = c.getCount();
+		if (count > 0) {
+			// Only the row references are copied
+			double[][] appended = new double[coords.length + count][];
+			System.arraycopy(coords, 0, appended, 0, coords.length);
+			int i = coords.length;
+			for(c.moveToFirst(); !c.isAfterLast(); c.moveToNext(), i++) {
+				appended[i] = new double[2];
+				appended[i][MercatorProjection.LONGITUDE] = c.getDouble(2);
+				appended[i][MercatorProjection.LATITUDE] = c.getDouble(1);
+				lastTrackPointId = c.getLong(0);
+			}
+			coords = appended;
+		}
+		c.close();
+
+		Log.v(TAG, "Appended " + count + " track points from DB.");
+
+		populateWayPointsCoords();
+	}
+
+	/**
+	 * Populate waypoint coordinates from the current track Database
+	 */
+	private void populateWayPointsCoords() {
+		int i;
+		Cursor c = getContext().getContentResolver().query(
 				TrackContentProvider.waypointsUri(currentTrackId),
 				null, null, null, TrackContentProvider.Schema.COL_TIMESTAMP + " asc");
 		wayPointsCoords = new double[c.getCount()][2];
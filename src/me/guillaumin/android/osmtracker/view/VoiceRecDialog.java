@@ -1,7 +1,6 @@
 package me.guillaumin.android.osmtracker.view;
 
 import java.io.File;
-import java.util.Date;
 import java.util.UUID;
 
 import me.guillaumin.android.osmtracker.OSMTracker;
@@ -319,7 +318,7 @@ public class VoiceRecDialog extends ProgressDialog implements OnInfoListener{
 		// Ensure that this location can be written to 
 		if (trackDir.exists() && trackDir.canWrite()) {
 			audioFile = new File(trackDir, 
-					DataHelper.FILENAME_FORMATTER.format(new Date()) + DataHelper.EXTENSION_3GPP);
+					DataHelper.formatFilename(System.currentTimeMillis()) + DataHelper.EXTENSION_3GPP);
 			} else {
 			Log.w(TAG, "The directory [" + trackDir.getAbsolutePath() + "] will not allow files to be created");
 		}
@@ -0,0 +1,93 @@
+package me.guillaumin.android.osmtracker.db;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+
+/**
+ * Coalescing of the insertion notifications by {@link ChangeNotifier}
+ */
+public class ChangeNotifierTest extends AndroidTestCase {
+
+	private static final long WINDOW_MS = 500;
+
+	/**
+	 * Time to wait for a delayed notification, after the window
+	 */
+	private static final long TIMEOUT_MS = WINDOW_MS + 5000;
+
+	private static final Uri TRACKPOINTS = TrackContentProvider.trackPointsUri(1);
+
+	private static final Uri WAYPOINTS = TrackContentProvider.waypointsUri(1);
+
+	/**
+	 * Notified Uris, in order
+	 */
+	private final BlockingQueue<Uri> notified = new LinkedBlockingQueue<Uri>();
+
+	private ChangeNotifier notifier;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		MockContentResolver resolver = new MockContentResolver() {
+			@Override
+			public void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork) {
+				notified.add(uri);
+			}
+		};
+		// Delayed notifications are sent on the main thread
+		notifier = new ChangeNotifier(resolver, new Handler(Looper.getMainLooper()), WINDOW_MS);
+	}
+
+	public void testFirstInsertion() {
+		notifier.rowsInserted(TRACKPOINTS, 1, 3);
+		Assert.assertEquals(TrackContentProvider.rowIdRangeUri(TRACKPOINTS, 1, 3), notified.poll());
+		Assert.assertTrue(notified.isEmpty());
+	}
+
+	public void testCoalescing() throws Exception {
+		notifier.rowsInserted(TRACKPOINTS, 1, 1);
+		Assert.assertEquals(TrackContentProvider.rowIdRangeUri(TRACKPOINTS, 1, 1), notified.poll());
+
+		// In the window: one notification of the range at the end of the window
+		notifier.rowsInserted(TRACKPOINTS, 4, 5);
+		notifier.rowsInserted(TRACKPOINTS, 2, 3);
+		notifier.rowsInserted(TRACKPOINTS, 6, 6);
+		Assert.assertTrue(notified.isEmpty());
+		Assert.assertEquals(TrackContentProvider.rowIdRangeUri(TRACKPOINTS, 2, 6),
+				notified.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+		// The delayed notification starts a new window
+		notifier.rowsInserted(TRACKPOINTS, 7, 7);
+		Assert.assertTrue(notified.isEmpty());
+		Assert.assertEquals(TrackContentProvider.rowIdRangeUri(TRACKPOINTS, 7, 7),
+				notified.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+		Assert.assertNull(notified.poll(2 * WINDOW_MS, TimeUnit.MILLISECONDS));
+	}
+
+	public void testUrisApart() {
+		notifier.rowsInserted(TRACKPOINTS, 1, 1);
+		notifier.rowsInserted(WAYPOINTS, 1, 1);
+		Assert.assertEquals(TrackContentProvider.rowIdRangeUri(TRACKPOINTS, 1, 1), notified.poll());
+		Assert.assertEquals(TrackContentProvider.rowIdRangeUri(WAYPOINTS, 1, 1), notified.poll());
+	}
+
+	public void testQuietWindow() throws Exception {
+		notifier.rowsInserted(TRACKPOINTS, 1, 1);
+		Assert.assertNotNull(notified.poll());
+		Thread.sleep(WINDOW_MS + 100);
+
+		notifier.rowsInserted(TRACKPOINTS, 2, 2);
+		Assert.assertEquals(TrackContentProvider.rowIdRangeUri(TRACKPOINTS, 2, 2), notified.poll());
+	}
+
+}
@@ -0,0 +1,174 @@
+package me.guillaumin.android.osmtracker.db;
+
+import junit.framework.Assert;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.location.Location;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+/**
+ * {@link TrackSummary} updated as the points are inserted, as
+ * TrackContentProvider does, against the summary rebuilt from the points
+ * when the database is upgraded
+ */
+public class TrackSummaryTest extends AndroidTestCase {
+
+	private static final long TRACK_ID = 1;
+
+	private static final long TIME = 1400000000000L;
+
+	/**
+	 * Latitude, longitude, elevation (NaN for none) of the trackpoints,
+	 * south-west of Greenwich
+	 */
+	private static final double[][] POINTS = {
+		{-10.0, -20.0, 100.0},
+		{-10.0, -19.999, Double.NaN},
+		{-10.001, -19.998, 105.5},
+		{-9.999, -19.998, 103.0},
+		{-10.0, -20.002, 104.0}
+	};
+
+	private DatabaseHelper dbHelper;
+	private SQLiteDatabase db;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		RenamingDelegatingContext context = new RenamingDelegatingContext(getContext(), "test.");
+		context.deleteDatabase("OSMTracker");
+		dbHelper = new DatabaseHelper(context);
+		db = dbHelper.getWritableDatabase();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		dbHelper.close();
+		super.tearDown();
+	}
+
+	private static ContentValues trackPoint(int i) {
+		ContentValues values = new ContentValues();
+		values.put(Schema.COL_TRACK_ID, TRACK_ID);
+		values.put(Schema.COL_LATITUDE, POINTS[i][0]);
+		values.put(Schema.COL_LONGITUDE, POINTS[i][1]);
+		if (!Double.isNaN(POINTS[i][2])) {
+			values.put(Schema.COL_ELEVATION, POINTS[i][2]);
+		}
+		values.put(Schema.COL_TIMESTAMP, TIME + 1000 * i);
+		return values;
+	}
+
+	/**
+	 * Inserts the points of [from, to) and a way point, half a second after
+	 * the last of them, in one batch, as
+	 * TrackContentProvider does: summary loaded, updated, then saved
+	 */
+	private void insertBatch(int from, int to) {
+		TrackSummary s = TrackSummary.load(db, TRACK_ID);
+		for (int i = from; i < to; i++) {
+			ContentValues values = trackPoint(i);
+			Assert.assertTrue(db.insert(Schema.TBL_TRACKPOINT, null, values) != -1);
+			s.addTrackPoint(values);
+		}
+		ContentValues wayPoint = new ContentValues();
+		wayPoint.put(Schema.COL_TRACK_ID, TRACK_ID);
+		wayPoint.put(Schema.COL_LATITUDE, POINTS[from][0]);
+		wayPoint.put(Schema.COL_LONGITUDE, POINTS[from][1]);
+		wayPoint.put(Schema.COL_TIMESTAMP, TIME + 1000 * to - 500);
+		wayPoint.put(Schema.COL_NBSATELLITES, 0);
+		Assert.assertTrue(db.insert(Schema.TBL_WAYPOINT, null, wayPoint) != -1);
+		s.addWayPoint(wayPoint);
+		s.save(db);
+	}
+
+	/**
+	 * @return Columns of the summary row of the track
+	 */
+	private ContentValues summaryRow() {
+		Cursor c = db.query(Schema.TBL_TRACK_SUMMARY, null, Schema.COL_TRACK_ID + " = ?",
+				new String[] {Long.toString(TRACK_ID)}, null, null, null);
+		try {
+			Assert.assertTrue(c.moveToFirst());
+			ContentValues row = new ContentValues();
+			for (int i = 0; i < c.getColumnCount(); i++) {
+				if (c.isNull(i)) {
+					row.putNull(c.getColumnName(i));
+				} else {
+					row.put(c.getColumnName(i), c.getDouble(i));
+				}
+			}
+			return row;
+		} finally {
+			c.close();
+		}
+	}
+
+	public void testIncremental() {
+		insertBatch(0, 2);
+		insertBatch(2, 3);
+		insertBatch(3, POINTS.length);
+
+		ContentValues row = summaryRow();
+		Assert.assertEquals(POINTS.length, row.getAsInteger(Schema.COL_TRACKPOINT_COUNT).intValue());
+		Assert.assertEquals(3, row.getAsInteger(Schema.COL_WAYPOINT_COUNT).intValue());
+		Assert.assertEquals(TIME, row.getAsLong(Schema.COL_START_TIMESTAMP).longValue());
+		Assert.assertEquals(-10.0, row.getAsDouble(Schema.COL_START_LATITUDE), 0);
+		Assert.assertEquals(-20.0, row.getAsDouble(Schema.COL_START_LONGITUDE), 0);
+		Assert.assertEquals(TIME + 4000, row.getAsLong(Schema.COL_END_TIMESTAMP).longValue());
+		// Last way point
+		Assert.assertEquals(TIME + 4500, row.getAsLong(Schema.COL_MODIFIED_TIMESTAMP).longValue());
+		Assert.assertEquals(-10.0, row.getAsDouble(Schema.COL_END_LATITUDE), 0);
+		Assert.assertEquals(-20.002, row.getAsDouble(Schema.COL_END_LONGITUDE), 0);
+		Assert.assertEquals(104.0, row.getAsDouble(Schema.COL_LAST_ELEVATION), 0);
+		Assert.assertEquals(-10.001, row.getAsDouble(Schema.COL_MIN_LATITUDE), 0);
+		Assert.assertEquals(-9.999, row.getAsDouble(Schema.COL_MAX_LATITUDE), 0);
+		Assert.assertEquals(-20.002, row.getAsDouble(Schema.COL_MIN_LONGITUDE), 0);
+		Assert.assertEquals(-19.998, row.getAsDouble(Schema.COL_MAX_LONGITUDE), 0);
+		// Climbs of 5.5 m and 1 m, across the point without elevation
+		Assert.assertEquals(6.5, row.getAsDouble(Schema.COL_ELEVATION_GAIN), 1e-9);
+
+		double distance = 0;
+		float[] result = new float[1];
+		for (int i = 1; i < POINTS.length; i++) {
+			Location.distanceBetween(POINTS[i - 1][0], POINTS[i - 1][1], POINTS[i][0], POINTS[i][1], result);
+			distance += result[0];
+		}
+		Assert.assertEquals(distance, row.getAsDouble(Schema.COL_DISTANCE), 1e-6);
+	}
+
+	public void testIncrementalEqualsBackfill() {
+		insertBatch(0, 1);
+		insertBatch(1, 4);
+		insertBatch(4, POINTS.length);
+		ContentValues incremental = summaryRow();
+
+		TrackSummary.build(db, TRACK_ID).save(db);
+		ContentValues backfill = summaryRow();
+
+		Assert.assertEquals(incremental.size(), backfill.size());
+		for (String column : incremental.keySet()) {
+			if (incremental.get(column) == null) {
+				Assert.assertNull(column, backfill.get(column));
+			} else {
+				Assert.assertEquals(column, incremental.getAsDouble(column), backfill.getAsDouble(column), 1e-6);
+			}
+		}
+	}
+
+	public void testEmptyTrack() {
+		Assert.assertEquals(0, TrackSummary.load(db, TRACK_ID).trackPointCount);
+
+		TrackSummary.build(db, TRACK_ID).save(db);
+		ContentValues row = summaryRow();
+		Assert.assertEquals(0, row.getAsInteger(Schema.COL_TRACKPOINT_COUNT).intValue());
+		Assert.assertEquals(0, row.getAsInteger(Schema.COL_WAYPOINT_COUNT).intValue());
+		Assert.assertNull(row.get(Schema.COL_START_TIMESTAMP));
+		Assert.assertNull(row.get(Schema.COL_LAST_ELEVATION));
+		Assert.assertEquals(0.0, row.getAsDouble(Schema.COL_DISTANCE), 0);
+	}
+
+}
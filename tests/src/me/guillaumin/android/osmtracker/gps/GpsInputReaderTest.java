@@ -0,0 +1,333 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Message framing of {@link GpsInputReader} and its ring buffer: messages
+ * wrapping around the end of the ring are read from the mirror region.
+ */
+public class GpsInputReaderTest extends TestCase {
+
+	/**
+	 * More than {@link GpsInputReader#MAX_BUFFER_SIZE}: the ring wraps
+	 * around even if it grows to its max size
+	 */
+	private static final int INPUT_SIZE = 3 * GpsInputReader.MAX_BUFFER_SIZE;
+
+	/**
+	 * Input stream returning a few bytes per read(), so the messages are
+	 * split between reads
+	 */
+	private static class ChunkedInputStream extends ByteArrayInputStream {
+
+		ChunkedInputStream(byte[] buf) {
+			super(buf);
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, 1 + pos % 97));
+		}
+	}
+
+	/**
+	 * Records the messages and the raw data
+	 */
+	private static class RecordingReader extends GpsInputReader {
+
+		final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		final List<String> nmea = new ArrayList<String>();
+		final List<byte[]> ubx = new ArrayList<byte[]>();
+
+		/**
+		 * Messages read from the mirror, after the end of the ring
+		 */
+		int mirrored = 0;
+
+		RecordingReader(byte[] input) {
+			super(new ChunkedInputStream(input), 1);
+		}
+
+		@Override
+		protected void onRawDataReceived(byte[] buf, int offset, int length) {
+			raw.write(buf, offset, length);
+		}
+
+		@Override
+		protected void onNmeaReceived(byte[] buf, int offset, int length) {
+			nmea.add(string(buf, offset, length));
+			countMirrored(buf, offset, length);
+		}
+
+		@Override
+		protected void onSirfReceived(byte[] buf, int offset, int length) {
+			Assert.fail("SiRF message");
+		}
+
+		@Override
+		protected void onUbxReceived(byte[] buf, int offset, int length) {
+			byte[] msg = new byte[length];
+			System.arraycopy(buf, offset, msg, 0, length);
+			ubx.add(msg);
+			countMirrored(buf, offset, length);
+		}
+
+		@Override
+		protected void onBufferFlushed() {
+		}
+
+		private void countMirrored(byte[] buf, int offset, int length) {
+			if (offset + length > buf.length - MAX_MESSAGE_SIZE) {
+				mirrored++;
+			}
+		}
+	}
+
+	static byte[] bytes(String s) {
+		try {
+			return s.getBytes(GpsInputReader.NMEA_CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	static String string(byte[] b, int offset, int length) {
+		try {
+			return new String(b, offset, length, GpsInputReader.NMEA_CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @return "$" + body + "*XX\r\n" with the checksum of the body
+	 */
+	static String nmea(String body) {
+		int csum = 0;
+		for (int i = 0; i < body.length(); i++) {
+			csum ^= body.charAt(i);
+		}
+		return String.format("$%s*%02X\r\n", body, csum);
+	}
+
+	/**
+	 * @return UBX message: sync chars, class, id, length, payload and checksum
+	 */
+	static byte[] ubx(int msgClass, int msgId, byte[] payload) {
+		byte[] msg = new byte[payload.length + 8];
+		msg[0] = (byte) 0xb5;
+		msg[1] = (byte) 0x62;
+		msg[2] = (byte) msgClass;
+		msg[3] = (byte) msgId;
+		msg[4] = (byte) payload.length;
+		msg[5] = (byte) (payload.length >> 8);
+		System.arraycopy(payload, 0, msg, 6, payload.length);
+		int csum = GpsInputReader.ubxCsum(msg, 2, payload.length + 4);
+		msg[msg.length - 2] = (byte) (csum >> 8);
+		msg[msg.length - 1] = (byte) csum;
+		return msg;
+	}
+
+	private static int looksLikeNmea(String s) {
+		byte[] b = bytes(s);
+		return GpsInputReader.looksLikeNmea(b, 0, b.length);
+	}
+
+	public void testNmeaFraming() {
+		String gga = nmea("GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,");
+		Assert.assertEquals(gga.length(), looksLikeNmea(gga));
+		// The checksum is optional
+		Assert.assertEquals(13, looksLikeNmea("$GPGGA,1234\r\n"));
+		// Garbage after the message
+		Assert.assertEquals(gga.length(), looksLikeNmea(gga + "$GP"));
+	}
+
+	public void testTruncatedNmea() {
+		String gga = nmea("GPGGA,123519,4807.038,N");
+		for (int length = 1; length < gga.length(); length++) {
+			Assert.assertEquals(gga.substring(0, length), GpsInputReader.LOOKS_LIKE_TRUNCATED_MSG,
+					looksLikeNmea(gga.substring(0, length)));
+		}
+	}
+
+	public void testCorruptNmea() {
+		Assert.assertEquals(GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG, looksLikeNmea(""));
+		Assert.assertEquals(GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG, looksLikeNmea("GPGGA,1\r\n"));
+		Assert.assertEquals(GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG, looksLikeNmea("$G1GGA,1\r\n"));
+		Assert.assertEquals(GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG, looksLikeNmea("$GPGGA,1\rX"));
+		Assert.assertEquals(GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG, looksLikeNmea("$GPGGA,1*4G\r\n"));
+		Assert.assertEquals(GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG, looksLikeNmea("$GPGGA,1*45X\r\n"));
+	}
+
+	public void testNmeaChecksumMismatch() {
+		String gga = nmea("GPGGA,123519,4807.038,N");
+		String corrupt = gga.replace("4807", "4817");
+		Assert.assertEquals(GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG, looksLikeNmea(corrupt));
+	}
+
+	/**
+	 * SiRF MID 132, software version poll, from the SiRF binary protocol
+	 * reference
+	 */
+	private static final byte[] POLL_SW_VERSION = {(byte) 0xa0, (byte) 0xa2, 0x00, 0x02,
+		(byte) 0x84, 0x00, 0x00, (byte) 0x84, (byte) 0xb0, (byte) 0xb3};
+
+	public void testSirfFraming() {
+		Assert.assertEquals(0x84, GpsInputReader.sirfCsum(POLL_SW_VERSION, 4, 2));
+		Assert.assertEquals(POLL_SW_VERSION.length,
+				GpsInputReader.looksLikeSirf(POLL_SW_VERSION, 0, POLL_SW_VERSION.length));
+		byte[] b = new byte[POLL_SW_VERSION.length + 4];
+		System.arraycopy(POLL_SW_VERSION, 0, b, 2, POLL_SW_VERSION.length);
+		Assert.assertEquals(POLL_SW_VERSION.length, GpsInputReader.looksLikeSirf(b, 2, b.length));
+	}
+
+	public void testTruncatedSirf() {
+		for (int length = 0; length < POLL_SW_VERSION.length; length++) {
+			Assert.assertEquals(GpsInputReader.LOOKS_LIKE_TRUNCATED_MSG,
+					GpsInputReader.looksLikeSirf(POLL_SW_VERSION, 0, length));
+		}
+	}
+
+	public void testCorruptSirf() {
+		// Start sequence, payload, checksum, end sequence
+		for (int i : new int[] {0, 1, 4, 5, 6, 7, 8, 9}) {
+			byte[] corrupt = POLL_SW_VERSION.clone();
+			corrupt[i] ^= 0x10;
+			Assert.assertEquals("Byte " + i, GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG,
+					GpsInputReader.looksLikeSirf(corrupt, 0, corrupt.length));
+		}
+		// Payload longer than 1023 bytes
+		byte[] corrupt = POLL_SW_VERSION.clone();
+		corrupt[2] = 0x04;
+		Assert.assertEquals(GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG,
+				GpsInputReader.looksLikeSirf(corrupt, 0, corrupt.length));
+	}
+
+	/**
+	 * UBX-CFG-MSG disabling GLL, with the checksum of the u-blox protocol
+	 * description
+	 */
+	private static final byte[] CFG_MSG = {(byte) 0xb5, 0x62, 0x06, 0x01, 0x03, 0x00,
+		(byte) 0xf0, 0x01, 0x00, (byte) 0xfb, 0x11};
+
+	public void testUbxChecksum() {
+		Assert.assertEquals(0xfb11, GpsInputReader.ubxCsum(CFG_MSG, 2, 7));
+		Assert.assertTrue(Arrays.equals(CFG_MSG, ubx(0x06, 0x01, new byte[] {(byte) 0xf0, 0x01, 0x00})));
+	}
+
+	public void testUbxFraming() {
+		Assert.assertEquals(CFG_MSG.length, GpsInputReader.looksLikeUbx(CFG_MSG, 0, CFG_MSG.length));
+		byte[] b = new byte[CFG_MSG.length + 4];
+		System.arraycopy(CFG_MSG, 0, b, 2, CFG_MSG.length);
+		Assert.assertEquals(CFG_MSG.length, GpsInputReader.looksLikeUbx(b, 2, b.length));
+		// No payload
+		byte[] poll = ubx(0x01, 0x07, new byte[0]);
+		Assert.assertEquals(8, GpsInputReader.looksLikeUbx(poll, 0, poll.length));
+	}
+
+	public void testTruncatedUbx() {
+		for (int length = 0; length < CFG_MSG.length; length++) {
+			Assert.assertEquals(GpsInputReader.LOOKS_LIKE_TRUNCATED_MSG,
+					GpsInputReader.looksLikeUbx(CFG_MSG, 0, length));
+		}
+	}
+
+	public void testCorruptUbx() {
+		// Sync chars, payload, checksum
+		for (int i : new int[] {0, 1, 6, 7, 8, 9, 10}) {
+			byte[] corrupt = CFG_MSG.clone();
+			corrupt[i] ^= 0x10;
+			Assert.assertEquals("Byte " + i, GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG,
+					GpsInputReader.looksLikeUbx(corrupt, 0, corrupt.length));
+		}
+		// Payload longer than a message
+		byte[] corrupt = CFG_MSG.clone();
+		corrupt[4] = corrupt[5] = (byte) 0xff;
+		Assert.assertEquals(GpsInputReader.LOOKS_NOT_LIKE_GPS_MSG,
+				GpsInputReader.looksLikeUbx(corrupt, 0, corrupt.length));
+	}
+
+	/**
+	 * Sentences of all lengths, every 7th with a wrong checksum, with
+	 * garbage between them, through the ring buffer
+	 */
+	public void testNmeaRingWrapAround() throws Exception {
+		StringBuilder input = new StringBuilder();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; input.length() < INPUT_SIZE; i++) {
+			StringBuilder body = new StringBuilder("GPTXT,").append(i).append(',');
+			for (int j = 0; j < i % 71; j++) {
+				body.append((char) ('A' + j % 26));
+			}
+			String sentence = nmea(body.toString());
+			if (i % 7 == 0) {
+				sentence = sentence.replace("GPTXT", "GPTXU");
+			} else {
+				expected.add(sentence);
+			}
+			input.append(sentence);
+			if (i % 5 == 0) {
+				input.append("$GP\u00ff\r\n");
+			}
+		}
+		// Truncated at the end of the stream: not received
+		input.append("$GPTXT,end");
+
+		byte[] b = bytes(input.toString());
+		RecordingReader reader = new RecordingReader(b);
+		reader.loop();
+
+		Assert.assertTrue(Arrays.equals(b, reader.raw.toByteArray()));
+		Assert.assertEquals(expected.size(), reader.nmea.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i), reader.nmea.get(i));
+		}
+		Assert.assertTrue(reader.mirrored > 0);
+	}
+
+	/**
+	 * UBX messages of all sizes up to the max, every 7th with a wrong
+	 * checksum, between NMEA sentences, through the ring buffer
+	 */
+	public void testUbxRingWrapAround() throws Exception {
+		ByteArrayOutputStream input = new ByteArrayOutputStream();
+		List<byte[]> expected = new ArrayList<byte[]>();
+		String gsa = nmea("GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,1.3,2.1");
+		for (int i = 0; input.size() < INPUT_SIZE; i++) {
+			byte[] payload = new byte[(i * 37) % (GpsInputReader.MAX_MESSAGE_SIZE - 7)];
+			for (int j = 0; j < payload.length; j++) {
+				payload[j] = (byte) (i + j);
+			}
+			byte[] msg = ubx(0x01, i & 0xff, payload);
+			if (i % 7 == 0) {
+				msg[msg.length - 1] ^= 0x01;
+			} else {
+				expected.add(msg);
+			}
+			input.write(msg);
+			input.write(bytes(gsa));
+		}
+
+		RecordingReader reader = new RecordingReader(input.toByteArray());
+		reader.loop();
+
+		Assert.assertEquals(expected.size(), reader.ubx.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertTrue("Message " + i, Arrays.equals(expected.get(i), reader.ubx.get(i)));
+		}
+		Assert.assertTrue(reader.nmea.size() >= expected.size());
+		for (String s : reader.nmea) {
+			Assert.assertEquals(gsa, s);
+		}
+		Assert.assertTrue(reader.mirrored > 0);
+	}
+
+}
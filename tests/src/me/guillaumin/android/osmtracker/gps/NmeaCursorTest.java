@@ -0,0 +1,136 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.io.UnsupportedEncodingException;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Field access and number parsing of {@link NmeaCursor}
+ */
+public class NmeaCursorTest extends TestCase {
+
+	private static final String GGA = "$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47\r\n";
+
+	private final NmeaCursor cursor = new NmeaCursor();
+
+	/**
+	 * Resets the cursor to the sentence and moves it to a field
+	 * @param field Index of the field, 0 for the address field
+	 */
+	private NmeaCursor field(String sentence, int field) throws UnsupportedEncodingException {
+		byte[] b = sentence.getBytes(GpsInputReader.NMEA_CHARSET);
+		Assert.assertTrue(sentence, cursor.reset(b, 0, b.length));
+		for (int i = 0; i < field; i++) {
+			Assert.assertTrue(sentence, cursor.next());
+		}
+		return cursor;
+	}
+
+	private NmeaCursor value(String value) throws UnsupportedEncodingException {
+		return field("$GPXXX," + value, 1);
+	}
+
+	public void testFields() throws Exception {
+		field(GGA, 0);
+		Assert.assertTrue(cursor.fieldEquals("GPGGA"));
+		Assert.assertTrue(cursor.fieldEquals(2, "GGA"));
+		Assert.assertFalse(cursor.fieldEquals(2, "GSA"));
+		Assert.assertEquals(14, cursor.fieldCount());
+		Assert.assertTrue(cursor.next());
+		Assert.assertEquals(123519, cursor.parseInt());
+
+		// Empty field before the checksum, the checksum is not a field
+		field(GGA, 14);
+		Assert.assertTrue(cursor.isEmpty());
+		Assert.assertEquals(0, cursor.firstChar());
+		Assert.assertFalse(cursor.next());
+	}
+
+	public void testNotASentence() throws Exception {
+		byte[] b = "GPGGA,123519\r\n".getBytes(GpsInputReader.NMEA_CHARSET);
+		Assert.assertFalse(cursor.reset(b, 0, b.length));
+		Assert.assertFalse(cursor.reset(b, 0, 0));
+		Assert.assertFalse(cursor.next());
+	}
+
+	public void testTruncatedSentence() throws Exception {
+		field("$GPGGA,123519,48", 2);
+		Assert.assertEquals(48, cursor.parseInt());
+		Assert.assertFalse(cursor.next());
+	}
+
+	public void testParseDegrees() throws Exception {
+		Assert.assertEquals(48.1173, field(GGA, 2).parseDegrees(false), 1e-9);
+		Assert.assertEquals(11.0 + 31.0 / 60.0, field(GGA, 4).parseDegrees(false), 1e-9);
+		Assert.assertEquals(0.0001 / 60.0, value("00000.0001").parseDegrees(false), 1e-12);
+		// Minutes beyond 9 decimals are truncated
+		Assert.assertEquals(48.1173, value("4807.0380000000009").parseDegrees(false), 1e-12);
+		Assert.assertTrue(Double.isNaN(value("").parseDegrees(false)));
+	}
+
+	public void testParseDegreesSouthWest() throws Exception {
+		Assert.assertEquals(-48.1173, field(GGA, 2).parseDegrees(true), 1e-9);
+		Assert.assertEquals(-(179.0 + 59.9999 / 60.0), value("17959.9999").parseDegrees(true), 1e-9);
+	}
+
+	public void testParseDegreesNegative() throws Exception {
+		try {
+			value("-4807.038").parseDegrees(false);
+			Assert.fail("Negative coordinate parsed");
+		} catch (NumberFormatException e) {
+			// Expected, the hemisphere gives the sign
+		}
+	}
+
+	public void testParseFixed() throws Exception {
+		Assert.assertEquals(54540, value("545.4").parseFixed(2));
+		Assert.assertEquals(12000, value("12").parseFixed(3));
+		Assert.assertEquals(5, value("+5").parseFixed(0));
+		Assert.assertEquals(0, value("0").parseFixed(7));
+	}
+
+	public void testParseFixedTruncates() throws Exception {
+		Assert.assertEquals(9, value("0.96").parseFixed(1));
+		// Towards zero
+		Assert.assertEquals(-12, value("-1.25").parseFixed(1));
+		Assert.assertEquals(0, value("-0.05").parseFixed(1));
+		// Digits beyond 18 significant digits are dropped
+		Assert.assertEquals(12345678, value("1.23456789012345678901").parseFixed(7));
+	}
+
+	public void testParseFixedErrors() throws Exception {
+		String[] invalid = {"", "-", ".", "1.2.3", "12a", "9223372036854775807"};
+		for (String s : invalid) {
+			try {
+				value(s).parseFixed(0);
+				Assert.fail("Parsed \"" + s + "\"");
+			} catch (NumberFormatException e) {
+				// Expected
+			}
+		}
+		try {
+			value("9223372036854775").parseFixed(6);
+			Assert.fail("Overflow not detected");
+		} catch (NumberFormatException e) {
+			// Expected
+		}
+	}
+
+	public void testParseDouble() throws Exception {
+		Assert.assertEquals(-12.5, value("-12.5").parseDouble(), 0);
+		Assert.assertEquals(0.9f, field(GGA, 8).parseFloat(), 0);
+		Assert.assertTrue(Double.isNaN(value("").parseDouble()));
+	}
+
+	public void testParseInt() throws Exception {
+		Assert.assertEquals(-2147483647, value("-2147483647").parseInt());
+		try {
+			value("2147483648").parseInt();
+			Assert.fail("Overflow not detected");
+		} catch (NumberFormatException e) {
+			// Expected
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Satellite sets of {@link PrnMask}, across the boundaries of its words
+ */
+public class PrnMaskTest extends TestCase {
+
+	private final PrnMask mask = new PrnMask();
+
+	public void testSetGet() {
+		int[] prns = {1, 32, 33, 63, 64, 65, 128, 129, 192, 193, PrnMask.MAX_PRN};
+		for (int prn : prns) {
+			mask.set(prn);
+		}
+		for (int prn = 1; prn <= PrnMask.MAX_PRN; prn++) {
+			boolean expected = false;
+			for (int p : prns) {
+				expected |= (p == prn);
+			}
+			Assert.assertEquals("PRN " + prn, expected, mask.get(prn));
+		}
+		Assert.assertEquals("[1,32,33,63,64,65,128,129,192,193,255]", mask.toString());
+	}
+
+	public void testOutOfRange() {
+		mask.set(0);
+		mask.set(-1);
+		mask.set(PrnMask.MAX_PRN + 1);
+		Assert.assertEquals("[]", mask.toString());
+
+		mask.setAll();
+		Assert.assertFalse(mask.get(0));
+		Assert.assertFalse(mask.get(-1));
+		Assert.assertFalse(mask.get(PrnMask.MAX_PRN + 1));
+		Assert.assertTrue(mask.get(1));
+		Assert.assertTrue(mask.get(PrnMask.MAX_PRN));
+	}
+
+	public void testSetGps() {
+		mask.set(5);
+		mask.set(33);
+		mask.set(65);
+		// PRN 1, 2 and 32, bit 31 is the sign bit of the int
+		mask.setGps(0x80000003);
+		Assert.assertEquals("[1,2,32,33,65]", mask.toString());
+
+		mask.setGps(0);
+		Assert.assertEquals("[33,65]", mask.toString());
+	}
+
+	public void testCopyAndClear() {
+		mask.set(7);
+		mask.set(200);
+		PrnMask copy = new PrnMask();
+		copy.set(99);
+		copy.set(mask);
+		Assert.assertEquals("[7,200]", copy.toString());
+
+		mask.clear();
+		Assert.assertEquals("[]", mask.toString());
+		Assert.assertEquals("[7,200]", copy.toString());
+	}
+
+}
@@ -0,0 +1,209 @@
+package me.guillaumin.android.osmtracker.gps;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import android.location.Location;
+
+/**
+ * UBX decoder of {@link ReceiverInternalState}: locations of NAV-PVT, with
+ * the DOPs of NAV-DOP, and satellites of NAV-SAT.
+ */
+public class UbxFixTest extends TestCase {
+
+	private static final int NAV = 0x01;
+	private static final int NAV_DOP = 0x04;
+	private static final int NAV_PVT = 0x07;
+	private static final int NAV_SAT = 0x35;
+
+	private static final int ITOW = 123456000;
+
+	private ReceiverInternalState state;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		state = new ReceiverInternalState();
+	}
+
+	private static ByteBuffer payload(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * NAV-PVT of 2014-03-15 12:34:56 minus 2 ms, south-west of Greenwich
+	 */
+	private static byte[] navPvt(int fixType, int flags) {
+		ByteBuffer p = payload(92);
+		p.putInt(0, ITOW);
+		p.putShort(4, (short) 2014);
+		p.put(6, (byte) 3);
+		p.put(7, (byte) 15);
+		p.put(8, (byte) 12);
+		p.put(9, (byte) 34);
+		p.put(10, (byte) 56);
+		// validDate, validTime, fullyResolved
+		p.put(11, (byte) 0x07);
+		p.putInt(16, -2000000);
+		p.put(20, (byte) fixType);
+		p.put(21, (byte) flags);
+		p.put(23, (byte) 12);
+		p.putInt(24, -1234567891);
+		p.putInt(28, -337654321);
+		p.putInt(32, 45678);
+		p.putInt(36, 12345);
+		p.putInt(40, 2500);
+		p.putInt(60, 1500);
+		p.putInt(64, 27000000);
+		p.putShort(76, (short) 156);
+		return GpsInputReaderTest.ubx(NAV, NAV_PVT, p.array());
+	}
+
+	private static byte[] navDop(int iTow) {
+		ByteBuffer p = payload(18);
+		p.putInt(0, iTow);
+		p.putShort(10, (short) 210);
+		p.putShort(12, (short) 95);
+		return GpsInputReaderTest.ubx(NAV, NAV_DOP, p.array());
+	}
+
+	/**
+	 * @param sats gnssId, svId, cno, elev, azim, flags of each satellite
+	 */
+	private static byte[] navSat(int[][] sats) {
+		ByteBuffer p = payload(8 + 12 * sats.length);
+		p.putInt(0, ITOW);
+		p.put(4, (byte) 1);
+		p.put(5, (byte) sats.length);
+		for (int i = 0; i < sats.length; i++) {
+			int o = 8 + 12 * i;
+			p.put(o, (byte) sats[i][0]);
+			p.put(o + 1, (byte) sats[i][1]);
+			p.put(o + 2, (byte) sats[i][2]);
+			p.put(o + 3, (byte) sats[i][3]);
+			p.putShort(o + 4, (short) sats[i][4]);
+			p.putInt(o + 8, sats[i][5]);
+		}
+		return GpsInputReaderTest.ubx(NAV, NAV_SAT, p.array());
+	}
+
+	private boolean put(byte[] msg) {
+		Assert.assertEquals(msg.length, GpsInputReader.looksLikeUbx(msg, 0, msg.length));
+		return state.putUbxMessage(msg, 0, msg.length);
+	}
+
+	public void testNavPvt3d() {
+		Assert.assertTrue(put(navDop(ITOW)));
+		Assert.assertTrue(put(navPvt(3, 0x01)));
+
+		Location l = state.getCurrentLocation();
+		Assert.assertNotNull(l);
+		Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		time.clear();
+		time.set(2014, Calendar.MARCH, 15, 12, 34, 55);
+		time.set(Calendar.MILLISECOND, 998);
+		Assert.assertEquals(time.getTimeInMillis(), l.getTime());
+		Assert.assertEquals(-33.7654321, l.getLatitude(), 1e-9);
+		Assert.assertEquals(-123.4567891, l.getLongitude(), 1e-9);
+		Assert.assertTrue(l.hasAltitude());
+		Assert.assertEquals(45.678, l.getAltitude(), 1e-9);
+		Assert.assertEquals(1.5f, l.getSpeed(), 1e-6f);
+		Assert.assertEquals(270f, l.getBearing(), 1e-3f);
+		Assert.assertEquals(2.5f, l.getAccuracy(), 1e-6f);
+		Assert.assertEquals(12, l.getExtras().getInt("satellites"));
+		Assert.assertEquals(1.56f, l.getExtras().getFloat("PDOP"), 1e-6f);
+		Assert.assertEquals(0.95f, l.getExtras().getFloat("HDOP"), 1e-6f);
+		Assert.assertEquals(2.1f, l.getExtras().getFloat("VDOP"), 1e-6f);
+		Assert.assertEquals(45.678 - 12.345, l.getExtras().getDouble("geoidheight"), 1e-9);
+	}
+
+	public void testNavPvt2d() {
+		// NAV-DOP of another epoch: not used
+		Assert.assertTrue(put(navDop(ITOW - 1000)));
+		Assert.assertTrue(put(navPvt(2, 0x01)));
+
+		Location l = state.getCurrentLocation();
+		Assert.assertNotNull(l);
+		Assert.assertFalse(l.hasAltitude());
+		Assert.assertFalse(l.getExtras().containsKey("geoidheight"));
+		Assert.assertFalse(l.getExtras().containsKey("HDOP"));
+	}
+
+	public void testNavPvtNoFix() {
+		Assert.assertTrue(put(navPvt(3, 0x01)));
+		Assert.assertNotNull(state.getCurrentLocation());
+
+		// gnssFixOK not set: the location is lost
+		Assert.assertTrue(put(navPvt(3, 0x00)));
+		Assert.assertNull(state.getCurrentLocation());
+		Assert.assertNotNull(state.getLastKnownLocation());
+
+		// No fix
+		Assert.assertTrue(put(navPvt(3, 0x01)));
+		Assert.assertTrue(put(navPvt(0, 0x01)));
+		Assert.assertNull(state.getCurrentLocation());
+	}
+
+	public void testNavPvtWrongSize() {
+		byte[] msg = GpsInputReaderTest.ubx(NAV, NAV_PVT, new byte[84]);
+		Assert.assertFalse(state.putUbxMessage(msg, 0, msg.length));
+		Assert.assertNull(state.getLastKnownLocation());
+	}
+
+	public void testNavSat() {
+		Assert.assertTrue(put(navSat(new int[][] {
+				{0, 5, 40, 45, 270, 0x08 | 0x800},
+				{6, 3, 30, -5, 10, 0x1000},
+				{2, 36, 35, 60, 180, 0x08},
+				{3, 7, 25, 20, 90, 0},
+				{1, 120, 33, 30, 200, 0x800},
+				// Unknown GLONASS slot, IMES: not reported
+				{6, 255, 20, 10, 10, 0},
+				{4, 1, 20, 10, 10, 0},
+				{5, 1, 28, 70, 359, 0x08 | 0x800 | 0x1000}
+		})));
+
+		Map<Integer, GpsSatellite> sats = new HashMap<Integer, GpsSatellite>();
+		for (GpsSatellite s : state.getGpsStatus(null).getSatellites()) {
+			sats.put(s.getPrn(), s);
+		}
+		Assert.assertEquals(6, sats.size());
+
+		assertSatellite(sats.get(5), 40, 45, 270, true, true, false);
+		// GLONASS 65-96, negative elevation
+		assertSatellite(sats.get(67), 30, -5, 10, false, false, true);
+		// Galileo 211-246
+		assertSatellite(sats.get(246), 35, 60, 180, true, false, false);
+		// BeiDou 101-163
+		assertSatellite(sats.get(107), 25, 20, 90, false, false, false);
+		// SBAS 120-158 as 33-71
+		assertSatellite(sats.get(33), 33, 30, 200, false, true, false);
+		// QZSS 193-202
+		assertSatellite(sats.get(193), 28, 70, 359, true, true, true);
+	}
+
+	public void testNavSatWrongSize() {
+		byte[] msg = navSat(new int[][] {{0, 5, 40, 45, 270, 0x08}});
+		// Two satellites announced, one sent
+		msg[6 + 5] = 2;
+		Assert.assertFalse(state.putUbxMessage(msg, 0, msg.length));
+	}
+
+	private static void assertSatellite(GpsSatellite s, float snr, float elevation, float azimuth,
+			boolean usedInFix, boolean hasEphemeris, boolean hasAlmanac) {
+		Assert.assertNotNull(s);
+		Assert.assertEquals(snr, s.getSnr(), 0);
+		Assert.assertEquals(elevation, s.getElevation(), 0);
+		Assert.assertEquals(azimuth, s.getAzimuth(), 0);
+		Assert.assertEquals(usedInFix, s.usedInFix());
+		Assert.assertEquals(hasEphemeris, s.hasEphemeris());
+		Assert.assertEquals(hasAlmanac, s.hasAlmanac());
+	}
+
+}
@@ -1,21 +1,102 @@
 package me.guillaumin.android.osmtracker.test.activity;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.Assert;
 import me.guillaumin.android.osmtracker.activity.OpenStreetMapUpload;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import me.guillaumin.android.osmtracker.db.model.Track.OSMVisibility;
+import me.guillaumin.android.osmtracker.osm.OpenStreetMapConstants;
+import me.guillaumin.android.osmtracker.osm.UploadToOpenStreetMapTask;
 import me.guillaumin.android.osmtracker.test.util.MockData;
+import me.guillaumin.android.osmtracker.test.util.MockOSMServer;
+import oauth.signpost.commonshttp.CommonsHttpOAuthConsumer;
+import android.content.Intent;
 import android.test.ActivityInstrumentationTestCase2;
 
 public class OSMUploadTest extends ActivityInstrumentationTestCase2<OpenStreetMapUpload> {
 
+	private long trackId;
+	private MockOSMServer server;
+
 	public OSMUploadTest() {
 		super("me.guillaumin.android.osmtracker", OpenStreetMapUpload.class);
 	}
-	
+
 	@Override
 	protected void setUp() throws Exception {
-		MockData.mockBigTrack(getInstrumentation().getContext(), 2000, 2000);
+		trackId = MockData.mockBigTrack(getInstrumentation().getContext(), 2000, 2000);
+		Intent i = new Intent();
+		i.putExtra(Schema.COL_TRACK_ID, trackId);
+		setActivityIntent(i);
+		server = new MockOSMServer();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.close();
+		super.tearDown();
 	}
-	
-	public void test() {
-		System.out.println("Test");
+
+	public void testStreamedCompressedUpload() throws Throwable {
+		final OpenStreetMapUpload activity = getActivity();
+		final CommonsHttpOAuthConsumer oAuthConsumer = new CommonsHttpOAuthConsumer(
+				OpenStreetMapConstants.OAuth.CONSUMER_KEY,
+				OpenStreetMapConstants.OAuth.CONSUMER_SECRET);
+		oAuthConsumer.setTokenWithSecret("token", "secret");
+
+		runTestOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				new UploadToOpenStreetMapTask(activity, trackId, oAuthConsumer,
+						"description", "tags", OSMVisibility.Private,
+						server.getGpxCreateUrl()).execute();
+			}
+		});
+
+		MockOSMServer.Request request = server.awaitRequest(60, TimeUnit.SECONDS);
+		Assert.assertNotNull(request);
+		Assert.assertEquals("POST", request.method);
+		Assert.assertEquals(MockOSMServer.GPX_CREATE_PATH, request.path);
+		// Written as the track is read: the length is unknown
+		Assert.assertEquals("chunked", request.headers.get("transfer-encoding"));
+		Assert.assertNull(request.headers.get("content-length"));
+
+		String partHeaders = request.getPartHeaders(OpenStreetMapConstants.Api.Gpx.Parameters.FILE);
+		Assert.assertTrue(partHeaders, partHeaders.contains(".gpx.gz\""));
+		Assert.assertTrue(partHeaders, partHeaders.contains("Content-Type: application/x-gzip"));
+
+		String gpx = gunzip(request.getPart(OpenStreetMapConstants.Api.Gpx.Parameters.FILE));
+		Assert.assertTrue(gpx.startsWith("<?xml"));
+		Assert.assertEquals(2000, count(gpx, "<wpt "));
+		Assert.assertEquals(2000, count(gpx, "<trkpt "));
+		Assert.assertTrue(gpx.trim().endsWith("</gpx>"));
+		Assert.assertEquals("description",
+				new String(request.getPart(OpenStreetMapConstants.Api.Gpx.Parameters.DESCRIPTION), "UTF-8"));
+	}
+
+	private static int count(String s, String element) {
+		int count = 0;
+		for (int i = s.indexOf(element); i != -1; i = s.indexOf(element, i + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+	private static String gunzip(byte[] compressed) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return out.toString("UTF-8");
 	}
 }
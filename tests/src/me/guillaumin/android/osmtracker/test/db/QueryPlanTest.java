@@ -0,0 +1,170 @@
+package me.guillaumin.android.osmtracker.test.db;
+
+import java.util.regex.Pattern;
+
+import junit.framework.Assert;
+import me.guillaumin.android.osmtracker.db.DatabaseHelper;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import me.guillaumin.android.osmtracker.gpx.ExportPipeline;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on the queries of TrackContentProvider, as built
+ * by the provider for the selections and sort orders of its callers, and
+ * fails when one of them sorts in a temporary B-tree or scans the
+ * trackpoint or waypoint table.
+ */
+public class QueryPlanTest extends AndroidTestCase {
+
+	/**
+	 * Sort of the query in a temporary B-tree, "USE TEMP B-TREE FOR ORDER BY"
+	 */
+	private static final Pattern TEMP_BTREE = Pattern.compile("TEMP B-TREE");
+
+	/**
+	 * Full scan of the points: "SCAN TABLE trackpoint" or "SCAN trackpoint",
+	 * depending on the SQLite release
+	 */
+	private static final Pattern POINTS_SCAN = Pattern.compile(
+			"SCAN (TABLE )?(" + Schema.TBL_TRACKPOINT + "|" + Schema.TBL_WAYPOINT + ")\\b");
+
+	private DatabaseHelper dbHelper;
+	private SQLiteDatabase db;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		RenamingDelegatingContext context = new RenamingDelegatingContext(getContext(), "test.");
+		context.deleteDatabase("OSMTracker");
+		dbHelper = new DatabaseHelper(context);
+		db = dbHelper.getReadableDatabase();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		dbHelper.close();
+		super.tearDown();
+	}
+
+	/**
+	 * URI_CODE_TRACK_TRACKPOINTS: ExportTrackTask, DisplayTrackView
+	 */
+	public void testTrackPointsByTime() {
+		assertPlan(TrackContentProvider.trackPointsUri(1), null, Schema.COL_TIMESTAMP + " asc");
+	}
+
+	/**
+	 * URI_CODE_TRACK_TRACKPOINTS: ExportPipeline, first page, then the pages
+	 * after the last point of the previous page
+	 */
+	public void testTrackPointsPageByTime() {
+		assertPlan(ExportPipeline.pageUri(1), null, ExportPipeline.SORT_ORDER);
+		assertPlan(ExportPipeline.pageUri(1), ExportPipeline.SELECTION_AFTER, ExportPipeline.SORT_ORDER);
+	}
+
+	/**
+	 * URI_CODE_TRACK_TRACKPOINTS: DisplayTrackMap, new points of the track
+	 */
+	public void testTrackPointsAfterId() {
+		assertPlan(TrackContentProvider.trackPointsUri(1), Schema.COL_ID + " > ?", Schema.COL_ID + " asc");
+	}
+
+	/**
+	 * URI_CODE_TRACK_START
+	 */
+	public void testTrackStart() {
+		assertPlan(TrackContentProvider.trackStartUri(1), null, null);
+	}
+
+	/**
+	 * URI_CODE_TRACK_END
+	 */
+	public void testTrackEnd() {
+		assertPlan(TrackContentProvider.trackEndUri(1), null, null);
+	}
+
+	/**
+	 * URI_CODE_TRACK_WAYPOINTS: ExportTrackTask, DisplayTrackView, WaypointList, WayPointsOverlay
+	 */
+	public void testWayPointsByTime() {
+		assertPlan(TrackContentProvider.waypointsUri(1), null, Schema.COL_TIMESTAMP + " asc");
+	}
+
+	/**
+	 * URI_CODE_WAYPOINT_UUID: delete of a waypoint
+	 */
+	public void testWayPointByUuid() {
+		assertPlan(Uri.withAppendedPath(TrackContentProvider.CONTENT_URI_WAYPOINT_UUID, "uuid"), null, null);
+	}
+
+	/**
+	 * URI_CODE_TRACK: TrackManager
+	 */
+	public void testTracksByStartDate() {
+		assertPlan(TrackContentProvider.CONTENT_URI_TRACK, null, Schema.COL_START_DATE + " desc");
+		assertPlan(TrackContentProvider.CONTENT_URI_TRACK, null, Schema.COL_START_DATE + " asc");
+	}
+
+	/**
+	 * URI_CODE_TRACK_ID: TrackDetail
+	 */
+	public void testTrackById() {
+		assertPlan(ContentUris.withAppendedId(TrackContentProvider.CONTENT_URI_TRACK, 1), null, null);
+	}
+
+	/**
+	 * URI_CODE_TRACK_ACTIVE: DataHelper.getActiveTrackId()
+	 */
+	public void testActiveTrack() {
+		assertPlan(TrackContentProvider.CONTENT_URI_TRACK_ACTIVE, null, null);
+	}
+
+	/**
+	 * Runs EXPLAIN QUERY PLAN on the query of the Uri built by the provider
+	 * @param selection Selection of the caller, its arguments are all "1"
+	 */
+	private void assertPlan(Uri uri, String selection, String sortOrder) {
+		String[] selectionArgs = null;
+		if (selection != null) {
+			selectionArgs = new String[countArgs(selection)];
+			for (int i = 0; i < selectionArgs.length; i++) {
+				selectionArgs[i] = "1";
+			}
+		}
+		TrackContentProvider.Query query = TrackContentProvider.buildQuery(uri, null, selection, selectionArgs, sortOrder);
+		String sql = query.getSql();
+
+		StringBuilder plan = new StringBuilder();
+		Cursor c = db.rawQuery("explain query plan " + sql, query.getSelectionArgs());
+		try {
+			int detail = c.getColumnIndexOrThrow("detail");
+			while (c.moveToNext()) {
+				plan.append(c.getString(detail)).append('\n');
+			}
+		} finally {
+			c.close();
+		}
+
+		Assert.assertFalse("Sort in a temporary B-tree: " + sql + "\n" + plan,
+				TEMP_BTREE.matcher(plan).find());
+		Assert.assertFalse("Full scan: " + sql + "\n" + plan,
+				POINTS_SCAN.matcher(plan).find());
+	}
+
+	private static int countArgs(String selection) {
+		int n = 0;
+		if (selection != null) {
+			for (int i = 0; i < selection.length(); i++) {
+				if (selection.charAt(i) == '?') n++;
+			}
+		}
+		return n;
+	}
+
+}
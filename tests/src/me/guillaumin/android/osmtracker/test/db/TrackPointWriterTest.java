@@ -0,0 +1,157 @@
+package me.guillaumin.android.osmtracker.test.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import me.guillaumin.android.osmtracker.db.TrackPointWriter;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.location.Location;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+
+/**
+ * Writes of {@link TrackPointWriter}: the buffered points are written in
+ * one bulk insert when the buffer is full, when they are too old, and when
+ * the track changes.
+ */
+public class TrackPointWriterTest extends AndroidTestCase {
+
+	private static final long TIME = 1400000000000L;
+
+	/**
+	 * Records the bulk inserts instead of writing them
+	 */
+	private static class RecordingProvider extends MockContentProvider {
+		final List<Uri> uris = new ArrayList<Uri>();
+		final List<ContentValues[]> values = new ArrayList<ContentValues[]>();
+		final CountDownLatch inserted = new CountDownLatch(1);
+
+		@Override
+		public synchronized int bulkInsert(Uri uri, ContentValues[] values) {
+			this.uris.add(uri);
+			this.values.add(values);
+			inserted.countDown();
+			return values.length;
+		}
+
+		synchronized int count() {
+			return values.size();
+		}
+	}
+
+	private RecordingProvider provider;
+	private TrackPointWriter writer;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		provider = new RecordingProvider();
+		final MockContentResolver resolver = new MockContentResolver();
+		resolver.addProvider(TrackContentProvider.AUTHORITY, provider);
+		Context context = new ContextWrapper(getContext()) {
+			@Override
+			public ContentResolver getContentResolver() {
+				return resolver;
+			}
+		};
+		// The age timer runs on the main thread
+		writer = new TrackPointWriter(context, new Handler(Looper.getMainLooper()));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		writer.flush();
+		super.tearDown();
+	}
+
+	private static Location location(int i, long time) {
+		Location l = new Location("test");
+		l.setLatitude(i);
+		l.setLongitude(-i);
+		l.setTime(time);
+		return l;
+	}
+
+	private void assertInsert(int index, long trackId, int firstLatitude, int count) {
+		Assert.assertEquals(TrackContentProvider.trackPointsUri(trackId), provider.uris.get(index));
+		ContentValues[] values = provider.values.get(index);
+		Assert.assertEquals(count, values.length);
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(trackId, values[i].getAsLong(Schema.COL_TRACK_ID).longValue());
+			Assert.assertEquals(firstLatitude + i, values[i].getAsDouble(Schema.COL_LATITUDE), 0);
+			Assert.assertEquals(-(firstLatitude + i), values[i].getAsDouble(Schema.COL_LONGITUDE), 0);
+		}
+	}
+
+	public void testFlushOnCount() {
+		for (int i = 0; i < TrackPointWriter.MAX_PENDING_POINTS - 1; i++) {
+			writer.track(1, location(i, TIME + i));
+		}
+		Assert.assertEquals(0, provider.count());
+		Assert.assertEquals(TrackPointWriter.MAX_PENDING_POINTS - 1, writer.getPendingCount());
+
+		int last = TrackPointWriter.MAX_PENDING_POINTS - 1;
+		writer.track(1, location(last, TIME + last));
+		Assert.assertEquals(1, provider.count());
+		Assert.assertEquals(0, writer.getPendingCount());
+		assertInsert(0, 1, 0, TrackPointWriter.MAX_PENDING_POINTS);
+	}
+
+	public void testFlushOnAge() {
+		writer.track(1, location(0, TIME));
+		writer.track(1, location(1, TIME + TrackPointWriter.MAX_PENDING_AGE_MS - 1));
+		Assert.assertEquals(0, provider.count());
+
+		writer.track(1, location(2, TIME + TrackPointWriter.MAX_PENDING_AGE_MS));
+		Assert.assertEquals(1, provider.count());
+		assertInsert(0, 1, 0, 3);
+	}
+
+	public void testFlushOnClockChange() {
+		writer.track(1, location(0, TIME));
+		writer.track(1, location(1, TIME - 1000));
+		Assert.assertEquals(1, provider.count());
+		assertInsert(0, 1, 0, 2);
+	}
+
+	public void testFlushOnTrackChange() {
+		writer.track(1, location(0, TIME));
+		writer.track(1, location(1, TIME + 1));
+		writer.track(1, location(2, TIME + 2));
+		writer.track(2, location(3, TIME + 3));
+		Assert.assertEquals(1, provider.count());
+		assertInsert(0, 1, 0, 3);
+		Assert.assertEquals(1, writer.getPendingCount());
+
+		writer.flush();
+		Assert.assertEquals(2, provider.count());
+		assertInsert(1, 2, 3, 1);
+
+		// Nothing to write
+		writer.flush();
+		Assert.assertEquals(2, provider.count());
+	}
+
+	/**
+	 * No location after the first one: written by the timer
+	 */
+	public void testFlushTimer() throws Exception {
+		writer.track(1, location(0, TIME));
+		Assert.assertTrue(provider.inserted.await(TrackPointWriter.MAX_PENDING_AGE_MS + 5000, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(1, provider.count());
+		assertInsert(0, 1, 0, 1);
+	}
+
+}
@@ -0,0 +1,144 @@
+package me.guillaumin.android.osmtracker.test.gpx;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.InputStreamReader;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import junit.framework.Assert;
+import me.guillaumin.android.osmtracker.OSMTracker;
+import me.guillaumin.android.osmtracker.activity.TrackManager;
+import me.guillaumin.android.osmtracker.db.DataHelper;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider;
+import me.guillaumin.android.osmtracker.db.TrackContentProvider.Schema;
+import me.guillaumin.android.osmtracker.gpx.ExportToZipTask;
+import me.guillaumin.android.osmtracker.test.util.MockData;
+import android.content.ContentUris;
+import android.content.SharedPreferences.Editor;
+import android.database.Cursor;
+import android.os.Environment;
+import android.preference.PreferenceManager;
+import android.test.ActivityInstrumentationTestCase2;
+
+public class ExportToZipTaskTest extends ActivityInstrumentationTestCase2<TrackManager> {
+
+	private static final FilenameFilter ZIP_FILTER = new FilenameFilter() {
+		@Override
+		public boolean accept(File dir, String filename) {
+			return filename.startsWith("osmtracker_") && filename.endsWith(".zip");
+		}
+	};
+
+	private long trackId;
+	private File exportDirectory;
+
+	public ExportToZipTaskTest() {
+		super("me.guillaumin.android.osmtracker", TrackManager.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		exportDirectory = new File(Environment.getExternalStorageDirectory(), "osmtracker");
+		File[] archives = exportDirectory.listFiles(ZIP_FILTER);
+		if (archives != null) {
+			for (File archive : archives) {
+				Assert.assertTrue(archive.delete());
+			}
+		}
+
+		trackId = MockData.mockTrack(getActivity());
+		new DataHelper(getActivity()).stopTracking(trackId);
+
+		// The ZIP export must ignore the compression of the storage export
+		Editor e = PreferenceManager.getDefaultSharedPreferences(getActivity()).edit();
+		e.clear();
+		e.putBoolean(OSMTracker.Preferences.KEY_OUTPUT_COMPRESS, true);
+		e.commit();
+	}
+
+	public void testPlainGpxEntries() throws Exception {
+		Assert.assertTrue(new ExportToZipTask(getActivity(), trackId).execute().get());
+
+		File[] archives = exportDirectory.listFiles(ZIP_FILTER);
+		Assert.assertNotNull(archives);
+		Assert.assertEquals(1, archives.length);
+
+		ZipFile zip = new ZipFile(archives[0]);
+		try {
+			int gpxCount = 0;
+			for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = entries.nextElement();
+				Assert.assertFalse(entry.getName(), entry.getName().endsWith(DataHelper.EXTENSION_GZ));
+				if (entry.getName().endsWith(DataHelper.EXTENSION_GPX)) {
+					gpxCount++;
+					// Deflated once, by the archive
+					Assert.assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(zip.getInputStream(entry), "UTF-8"));
+					try {
+						Assert.assertTrue(reader.readLine().startsWith("<?xml"));
+					} finally {
+						reader.close();
+					}
+				}
+			}
+			Assert.assertEquals(1, gpxCount);
+		} finally {
+			zip.close();
+		}
+	}
+
+	/**
+	 * Mock tracks all start at the same date: their entries must not collide
+	 */
+	public void testTracksStartingTogether() throws Exception {
+		long otherTrackId = MockData.mockTrack(getActivity());
+		new DataHelper(getActivity()).stopTracking(otherTrackId);
+		Assert.assertNull(getExportDate(trackId));
+
+		Assert.assertTrue(new ExportToZipTask(getActivity(), trackId, otherTrackId).execute().get());
+
+		File[] archives = exportDirectory.listFiles(ZIP_FILTER);
+		Assert.assertNotNull(archives);
+		Assert.assertEquals(1, archives.length);
+
+		ZipFile zip = new ZipFile(archives[0]);
+		try {
+			Set<String> directories = new HashSet<String>();
+			for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = entries.nextElement();
+				if (entry.getName().endsWith(DataHelper.EXTENSION_GPX)) {
+					directories.add(new File(entry.getName()).getParent());
+				}
+			}
+			Assert.assertEquals(2, directories.size());
+		} finally {
+			zip.close();
+		}
+
+		// Set once the archive is complete
+		Assert.assertNotNull(getExportDate(trackId));
+		Assert.assertNotNull(getExportDate(otherTrackId));
+	}
+
+	/**
+	 * @return Export date of the track, null if not exported
+	 */
+	private Long getExportDate(long id) {
+		Cursor c = getActivity().getContentResolver().query(
+				ContentUris.withAppendedId(TrackContentProvider.CONTENT_URI_TRACK, id),
+				new String[] {Schema.COL_EXPORT_DATE}, null, null, null);
+		try {
+			Assert.assertTrue(c.moveToFirst());
+			return c.isNull(0) ? null : c.getLong(0);
+		} finally {
+			c.close();
+		}
+	}
+
+}
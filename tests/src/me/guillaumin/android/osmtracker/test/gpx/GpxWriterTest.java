@@ -0,0 +1,100 @@
+package me.guillaumin.android.osmtracker.test.gpx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import me.guillaumin.android.osmtracker.gpx.GpxWriter;
+
+/**
+ * Numbers of {@link GpxWriter}: coordinates rounded to 7 decimals,
+ * elevations to 2 decimals, half away from zero, without trailing zeros.
+ */
+public class GpxWriterTest extends TestCase {
+
+	/**
+	 * 2014-05-13T16:53:20Z
+	 */
+	private static final long TIME = 1400000000000L;
+
+	/**
+	 * @return GPX of the trackpoint
+	 */
+	private static String trackPoint(double latitude, double longitude, double elevation) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GpxWriter writer = new GpxWriter(out, false, null, "m", "accuracy");
+		writer.writeTrackPoint(latitude, longitude, true, elevation, TIME, false, 0);
+		writer.close();
+		return out.toString("UTF-8");
+	}
+
+	private static void assertTrackPoint(String lat, String lon, String ele,
+			double latitude, double longitude, double elevation) throws IOException {
+		Assert.assertEquals("\t\t\t<trkpt lat=\"" + lat + "\" lon=\"" + lon + "\">\n"
+				+ "\t\t\t\t<ele>" + ele + "</ele>\n"
+				+ "\t\t\t\t<time>2014-05-13T16:53:20Z</time>\n"
+				+ "\t\t\t</trkpt>\n",
+				trackPoint(latitude, longitude, elevation));
+	}
+
+	private static void assertCoordinate(String expected, double coordinate) throws IOException {
+		assertTrackPoint(expected, expected, "0", coordinate, coordinate, 0);
+	}
+
+	private static void assertElevation(String expected, double elevation) throws IOException {
+		assertTrackPoint("0", "0", expected, 0, 0, elevation);
+	}
+
+	public void testCoordinates() throws IOException {
+		assertTrackPoint("48.1173", "11.5166667", "545.4", 48.1173, 11.0 + 31.0 / 60.0, 545.4);
+		assertCoordinate("100", 100);
+		assertCoordinate("10.5", 10.5);
+		assertCoordinate("0.0000001", 0.0000001);
+	}
+
+	public void testNegativeCoordinates() throws IOException {
+		assertTrackPoint("-33.7654321", "-123.4567891", "-12.5", -33.7654321, -123.4567891, -12.5);
+		assertCoordinate("-0.5", -0.5);
+		assertCoordinate("-180", -180);
+	}
+
+	public void testCoordinateRounding() throws IOException {
+		assertCoordinate("123.4567892", 123.456789151);
+		assertCoordinate("123.4567891", 123.456789149);
+		assertCoordinate("-123.4567892", -123.456789151);
+		assertCoordinate("-123.4567891", -123.456789149);
+		// 2^-24: 0.0000000596
+		assertCoordinate("0.0000001", 1.0 / (1 << 24));
+		// Carries into the integer part
+		assertCoordinate("180", 179.99999996);
+		assertCoordinate("-1", -0.99999996);
+		// Rounded to zero, without sign
+		assertCoordinate("0", 0.00000004);
+		assertCoordinate("0", -0.00000004);
+	}
+
+	public void testElevationRounding() throws IOException {
+		// Exact halves: 0.125, 0.375
+		assertElevation("0.13", 0.125);
+		assertElevation("-0.38", -0.375);
+		assertElevation("0.12", 0.124);
+		assertElevation("-13", -12.999);
+		assertElevation("0.1", 0.1);
+		assertElevation("0", -0.004);
+		assertElevation("8848.86", 8848.86);
+		assertElevation("-430.5", -430.5);
+	}
+
+	/**
+	 * Out of the fixed-point range: as Double.toString()
+	 */
+	public void testLargeValues() throws IOException {
+		assertElevation("1.0E9", 1e9);
+		assertElevation("-1.0E9", -1e9);
+		assertElevation("NaN", Double.NaN);
+		assertElevation("Infinity", Double.POSITIVE_INFINITY);
+		assertElevation("999999999.99", 999999999.99);
+	}
+
+}
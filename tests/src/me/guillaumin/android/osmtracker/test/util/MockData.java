@@ -50,8 +50,9 @@ public class MockData {
 		Uri trackUri = cr.insert(TrackContentProvider.CONTENT_URI_TRACK, values);
 		long trackId = ContentUris.parseId(trackUri);
 
-		DataHelper helper = new DataHelper(context);
-		for (Object[] mock: mockTrackPoints) {
+		ContentValues[] trackPoints = new ContentValues[mockTrackPoints.length];
+		for (int i=0; i<mockTrackPoints.length; i++) {
+			Object[] mock = mockTrackPoints[i];
 			Location l = new Location("test");
 			l.setLatitude((Double) mock[0]);
 			l.setLongitude((Double) mock[1]);
@@ -59,9 +60,11 @@ public class MockData {
 			l.setAltitude((Double) mock[3]);
 			l.setSpeed((Float) mock[4]);
 			l.setTime(c.getTime().getTime());
-			helper.track(trackId, l);
+			trackPoints[i] = trackPoint(trackId, l);
 		}
-		
+		cr.bulkInsert(TrackContentProvider.trackPointsUri(trackId), trackPoints);
+
+		DataHelper helper = new DataHelper(context);
 		for (Object[] mock: mockWayPoints) {
 			Location l = new Location("test");
 			l.setLatitude((Double) mock[0]);
@@ -91,7 +94,7 @@ public class MockData {
 		
 		Random r = new Random();
 
-		DataHelper helper = new DataHelper(context);
+		ContentValues[] trackPoints = new ContentValues[numWayPoints];
 		for (int i=0; i<numWayPoints; i++) {
 			Location l = new Location("test");
 			l.setLatitude((r.nextDouble() * 180) -90);
@@ -100,9 +103,11 @@ public class MockData {
 			l.setAltitude((r.nextDouble() * 2000) - 1000);
 			l.setSpeed(r.nextFloat() * 200);
 			l.setTime(System.currentTimeMillis());
-			helper.track(trackId, l);
+			trackPoints[i] = trackPoint(trackId, l);
 		}
-		
+		cr.bulkInsert(TrackContentProvider.trackPointsUri(trackId), trackPoints);
+
+		DataHelper helper = new DataHelper(context);
 		for (int i=0; i<numTrackPoints; i++) {
 			Location l = new Location("test");
 			l.setLatitude((r.nextDouble() * 180) -90);
@@ -122,4 +127,18 @@ public class MockData {
 		return trackId;
 
 	}
+
+	/**
+	 * @return Trackpoint row of a location, with the GPS clock
+	 */
+	private static ContentValues trackPoint(long trackId, Location l) {
+		ContentValues values = new ContentValues();
+		values.put(Schema.COL_TRACK_ID, trackId);
+		values.put(Schema.COL_LATITUDE, l.getLatitude());
+		values.put(Schema.COL_LONGITUDE, l.getLongitude());
+		values.put(Schema.COL_ELEVATION, l.getAltitude());
+		values.put(Schema.COL_ACCURACY, l.getAccuracy());
+		values.put(Schema.COL_TIMESTAMP, l.getTime());
+		return values;
+	}
 }
@@ -0,0 +1,204 @@
+package me.guillaumin.android.osmtracker.test.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in of the OpenStreetMap GPX create API: records the requests
+ * posted to {@link #getGpxCreateUrl()} and answers them with the id of the
+ * new GPX file, as OSM does.
+ */
+public class MockOSMServer {
+
+	public static final String GPX_CREATE_PATH = "/api/0.6/gpx/create";
+
+	/**
+	 * Id of the GPX file returned to each request
+	 */
+	public static final String GPX_ID = "1234";
+
+	private static final String ISO_8859_1 = "ISO-8859-1";
+
+	/**
+	 * A request received by the server
+	 */
+	public static class Request {
+		public String method;
+		public String path;
+		/** Headers, by lower case name */
+		public final Map<String, String> headers = new HashMap<String, String>();
+		public byte[] body;
+
+		/**
+		 * @param name Name of a part of a multipart/form-data body
+		 * @return Headers of the part, as sent, or null if there is no such part
+		 */
+		public String getPartHeaders(String name) throws IOException {
+			int[] part = findPart(name);
+			return (part == null) ? null : new String(body, part[0], part[1] - part[0], ISO_8859_1);
+		}
+
+		/**
+		 * @param name Name of a part of a multipart/form-data body
+		 * @return Content of the part, or null if there is no such part
+		 */
+		public byte[] getPart(String name) throws IOException {
+			int[] part = findPart(name);
+			if (part == null) {
+				return null;
+			}
+			byte[] content = new byte[part[2] - part[1]];
+			System.arraycopy(body, part[1], content, 0, content.length);
+			return content;
+		}
+
+		/**
+		 * @return Start of the headers, start and end of the content of the part
+		 */
+		private int[] findPart(String name) throws IOException {
+			String contentType = headers.get("content-type");
+			String boundary = "--" + contentType.substring(contentType.indexOf("boundary=") + "boundary=".length())
+					.split(";")[0].trim();
+			// ISO-8859-1 maps each byte to one char
+			String text = new String(body, ISO_8859_1);
+			int start = text.indexOf(boundary);
+			while (start != -1) {
+				int headersStart = start + boundary.length() + 2;
+				int headersEnd = text.indexOf("\r\n\r\n", headersStart);
+				if (headersEnd == -1) {
+					return null;
+				}
+				int end = text.indexOf("\r\n" + boundary, headersEnd);
+				if (end == -1) {
+					return null;
+				}
+				if (text.substring(headersStart, headersEnd).contains("name=\"" + name + "\"")) {
+					return new int[] {headersStart, headersEnd + 4, end};
+				}
+				start = end + 2;
+			}
+			return null;
+		}
+	}
+
+	private final ServerSocket serverSocket;
+	private final BlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+	private final Thread thread;
+
+	public MockOSMServer() throws IOException {
+		serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		thread = new Thread("mock-osm-server") {
+			@Override
+			public void run() {
+				try {
+					for (;;) {
+						Socket socket = serverSocket.accept();
+						try {
+							requests.put(handle(socket));
+						} finally {
+							socket.close();
+						}
+					}
+				} catch (IOException ioe) {
+					// Closed
+				} catch (InterruptedException ie) {
+					// Closed
+				}
+			}
+		};
+		thread.start();
+	}
+
+	public String getGpxCreateUrl() {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort() + GPX_CREATE_PATH;
+	}
+
+	/**
+	 * @return The next request received, or null if none is received in time
+	 */
+	public Request awaitRequest(long timeout, TimeUnit unit) throws InterruptedException {
+		return requests.poll(timeout, unit);
+	}
+
+	public void close() throws IOException {
+		serverSocket.close();
+		thread.interrupt();
+	}
+
+	private static Request handle(Socket socket) throws IOException {
+		InputStream in = socket.getInputStream();
+		Request request = new Request();
+
+		String[] requestLine = readLine(in).split(" ");
+		request.method = requestLine[0];
+		request.path = requestLine[1];
+		String line;
+		while ((line = readLine(in)).length() > 0) {
+			int colon = line.indexOf(':');
+			request.headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+		}
+
+		if ("100-continue".equalsIgnoreCase(request.headers.get("expect"))) {
+			socket.getOutputStream().write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(ISO_8859_1));
+		}
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		if ("chunked".equalsIgnoreCase(request.headers.get("transfer-encoding"))) {
+			int size;
+			while ((size = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0) {
+				copy(in, body, size);
+				readLine(in);
+			}
+			while (readLine(in).length() > 0) {
+				// Trailers
+			}
+		} else if (request.headers.containsKey("content-length")) {
+			copy(in, body, Integer.parseInt(request.headers.get("content-length")));
+		}
+		request.body = body.toByteArray();
+
+		OutputStream out = socket.getOutputStream();
+		int status = (GPX_CREATE_PATH.equals(request.path) && "POST".equals(request.method)) ? 200 : 404;
+		out.write(("HTTP/1.1 " + status + " " + (status == 200 ? "OK" : "Not Found") + "\r\n"
+				+ "Content-Type: text/plain; charset=utf-8\r\n"
+				+ "Content-Length: " + GPX_ID.length() + "\r\n"
+				+ "Connection: close\r\n"
+				+ "\r\n"
+				+ GPX_ID).getBytes(ISO_8859_1));
+		out.flush();
+		return request;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1 && c != '\n') {
+			if (c != '\r') {
+				sb.append((char) c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void copy(InputStream in, OutputStream out, int length) throws IOException {
+		byte[] buffer = new byte[8192];
+		while (length > 0) {
+			int read = in.read(buffer, 0, Math.min(buffer.length, length));
+			if (read == -1) {
+				throw new IOException("Truncated request");
+			}
+			out.write(buffer, 0, read);
+			length -= read;
+		}
+	}
+}